@@ -13,6 +13,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -58,8 +61,11 @@ import de.geolykt.presence.common.Configuration;
 import de.geolykt.presence.common.DataSource;
 import de.geolykt.presence.common.PermissionMatrix;
 import de.geolykt.presence.common.PresenceData;
+import de.geolykt.presence.common.util.ContenderTable;
 import de.geolykt.presence.common.util.ElementAlreadyExistsException;
 import de.geolykt.presence.common.util.PlayerAttachedScore;
+import de.geolykt.presence.common.util.PlayerChunkPosition;
+import de.geolykt.presence.common.util.ScoreDecay;
 import de.geolykt.presence.common.util.WorldPosition;
 import de.geolykt.presence.i18n.I18NKey;
 import de.geolykt.presence.i18n.LocalisationContainer;
@@ -81,6 +87,17 @@ public class PresenceBukkit extends JavaPlugin {
     private static final Map<UUID, Long> GRACEFUL_LAND = new HashMap<>();
     private static final Collection<UUID> RECONNECTED_PLAYERS = new HashSet<>(); // Note: the reconnected_players field is only used to re-trigger flight between disconnections and should not be used for anything else.
 
+    // The area that is shown by the claim map, relative to the chunk of the player
+    private static final int MAP_MIN_DELTA_X = -14;
+    private static final int MAP_MIN_DELTA_Y = -5;
+    private static final int MAP_WIDTH = 28;
+    private static final int MAP_HEIGHT = 10;
+
+    /**
+     * The largest amount of chunks that can be assigned to or removed from a chunk group with a single command.
+     */
+    private static final int MAX_BULK_AREA = 128 * 128;
+
     @NotNull
     private static final JoinConfiguration SPACE_WITH_SPACE_SUFFIX = JoinConfiguration.builder()
             .suffix(Component.space()).separator(Component.space()).build();
@@ -88,6 +105,8 @@ public class PresenceBukkit extends JavaPlugin {
     @NotNull
     private final LocalisationContainer i18n = new LocalisationContainer();
     private boolean successfullLoad = false;
+    @Nullable
+    private volatile ExecutorService claimTickExecutor;
 
     private static final void sendActionbarMessage(@NotNull Player p, @NotNull String message, TextColor color) {
         p.sendActionBar(Component.text(message, color));
@@ -157,6 +176,10 @@ public class PresenceBukkit extends JavaPlugin {
                 sender.sendMessage(ChatColor.GREEN + "/claims" + ChatColor.BLUE + " trust <player>" + ChatColor.RED + " : " + ChatColor.WHITE + i18n.get(I18NKey.INFO_CLAIMS_TRUST, senderLocale));
                 sender.sendMessage(ChatColor.GREEN + "/claims" + ChatColor.BLUE + " untrust <player>" + ChatColor.RED + " : " + ChatColor.WHITE + i18n.get(I18NKey.INFO_CLAIMS_UNTRUST, senderLocale));
                 sender.sendMessage(ChatColor.GREEN + "/claims" + ChatColor.BLUE + " perm" + ChatColor.RED + " : " + ChatColor.WHITE + i18n.get(I18NKey.INFO_CLAIMS_PERM, senderLocale));
+                sender.sendMessage(ChatColor.GREEN + "/claims" + ChatColor.BLUE + " stats [player]" + ChatColor.RED + " : " + ChatColor.WHITE + i18n.get(I18NKey.INFO_CLAIMS_STATS, senderLocale));
+                if (sender.hasPermission("presence.admin.purge")) {
+                    sender.sendMessage(ChatColor.GREEN + "/claims" + ChatColor.BLUE + " purge <player>" + ChatColor.RED + " : " + ChatColor.WHITE + i18n.get(I18NKey.INFO_CLAIMS_PURGE, senderLocale));
+                }
                 return true;
             case "togglesb":
                 if (sender instanceof Player) {
@@ -220,6 +243,54 @@ public class PresenceBukkit extends JavaPlugin {
                 }
                 return true;
             }
+            case "stats": {
+                OfflinePlayer player;
+                if (args.length == 1) {
+                    if (!(sender instanceof Player)) {
+                        sender.sendMessage(Component.text(i18n.get(I18NKey.CMD_UNSPECIFIED_TARGET, senderLocale), NamedTextColor.RED));
+                        return true;
+                    }
+                    player = (Player) sender;
+                } else {
+                    if (!sender.hasPermission("presence.admin.stats")) {
+                        sender.sendMessage(Component.text(i18n.get(I18NKey.CLAIMS_NO_PERMISSION, senderLocale), NamedTextColor.RED));
+                        return true;
+                    }
+                    player = Bukkit.getOfflinePlayerIfCached(args[1]);
+                    if (player == null || (!player.hasPlayedBefore() && !player.isOnline())) {
+                        sender.sendMessage(Component.text(i18n.get(I18NKey.CMD_UNKNOWN_TARGET, senderLocale), NamedTextColor.RED));
+                        return true;
+                    }
+                }
+                PresenceData data = DataSource.getData();
+                UUID uid = player.getUniqueId();
+                int presenceChunks = 0;
+                int ownedChunks = 0;
+                for (World world : Bukkit.getWorlds()) {
+                    presenceChunks += data.getPresenceChunks(uid, world.getUID()).length;
+                    ownedChunks += data.getOwnedChunks(uid, world.getUID()).length;
+                }
+                sender.sendMessage(Component.text(i18n.get(I18NKey.STATS_RESULT, senderLocale, player.getName(), data.getTotalPresence(uid), presenceChunks, ownedChunks), NamedTextColor.GREEN));
+                return true;
+            }
+            case "purge": {
+                if (!sender.hasPermission("presence.admin.purge")) {
+                    sender.sendMessage(Component.text(i18n.get(I18NKey.CLAIMS_NO_PERMISSION, senderLocale), NamedTextColor.RED));
+                    return true;
+                }
+                if (args.length == 1) {
+                    sender.sendMessage(Component.text(i18n.get(I18NKey.CMD_UNSPECIFIED_TARGET, senderLocale), NamedTextColor.RED));
+                    return true;
+                }
+                OfflinePlayer player = Bukkit.getOfflinePlayerIfCached(args[1]);
+                if (player == null || (!player.hasPlayedBefore() && !player.isOnline())) {
+                    sender.sendMessage(Component.text(i18n.get(I18NKey.CMD_UNKNOWN_TARGET, senderLocale), NamedTextColor.RED));
+                    return true;
+                }
+                int purged = DataSource.getData().purgePlayer(player.getUniqueId());
+                sender.sendMessage(Component.text(i18n.get(I18NKey.PURGE_SUCCESS, senderLocale, player.getName(), purged), NamedTextColor.GREEN));
+                return true;
+            }
             case "perm":
             case "perms":
             case "permission":
@@ -309,6 +380,83 @@ public class PresenceBukkit extends JavaPlugin {
             return;
         }
 
+        if (args.length == 3 && (args[0].equalsIgnoreCase("trust") || args[0].equalsIgnoreCase("untrust"))) {
+            ChunkGroup cgroup = groupManager.getChunkGroup(player.getUniqueId(), args[1]);
+            if (cgroup == null) {
+                player.sendMessage(Component.text(i18n.get(I18NKey.CHUNKGROUPS_NOT_A_GROUP, senderLocale), NamedTextColor.RED)
+                        .append(Component.text(args[1], NamedTextColor.DARK_RED)));
+                return;
+            }
+            OfflinePlayer target = Bukkit.getOfflinePlayerIfCached(args[2]);
+            if (target == null || (!target.hasPlayedBefore() && !target.isOnline())) {
+                player.sendMessage(Component.text(i18n.get(I18NKey.CMD_UNKNOWN_TARGET, senderLocale), NamedTextColor.RED));
+                return;
+            }
+            if (args[0].equalsIgnoreCase("trust")) {
+                groupManager.addTrustedPlayer(cgroup, target.getUniqueId());
+                player.sendMessage(Component.text(i18n.get(I18NKey.TRUST_SUCCESS, senderLocale, target.getName()), NamedTextColor.GREEN));
+            } else if (groupManager.removeTrustedPlayer(cgroup, target.getUniqueId())) {
+                player.sendMessage(Component.text(i18n.get(I18NKey.UNTRUST_SUCCESS, senderLocale, target.getName()), NamedTextColor.GREEN));
+            } else {
+                player.sendMessage(Component.text(i18n.get(I18NKey.UNTRUST_NOT_TRUSTED, senderLocale), NamedTextColor.RED));
+            }
+            return;
+        }
+
+        if ((args.length == 3 || args.length == 6) && (args[0].equalsIgnoreCase("assign") || args[0].equalsIgnoreCase("unassign"))) {
+            ChunkGroup cgroup = groupManager.getChunkGroup(player.getUniqueId(), args[1]);
+            if (cgroup == null) {
+                player.sendMessage(Component.text(i18n.get(I18NKey.CHUNKGROUPS_NOT_A_GROUP, senderLocale), NamedTextColor.RED)
+                        .append(Component.text(args[1], NamedTextColor.DARK_RED)));
+                return;
+            }
+            int fromX, fromZ, toX, toZ;
+            try {
+                if (args.length == 3) {
+                    int radius = Integer.parseInt(args[2]);
+                    if (radius < 0) {
+                        throw new NumberFormatException("Negative radius");
+                    }
+                    int chunkX = player.getLocation().getBlockX() >> 4;
+                    int chunkZ = player.getLocation().getBlockZ() >> 4;
+                    fromX = chunkX - radius;
+                    fromZ = chunkZ - radius;
+                    toX = chunkX + radius;
+                    toZ = chunkZ + radius;
+                } else {
+                    int x1 = Integer.parseInt(args[2]);
+                    int z1 = Integer.parseInt(args[3]);
+                    int x2 = Integer.parseInt(args[4]);
+                    int z2 = Integer.parseInt(args[5]);
+                    fromX = Math.min(x1, x2);
+                    fromZ = Math.min(z1, z2);
+                    toX = Math.max(x1, x2);
+                    toZ = Math.max(z1, z2);
+                }
+            } catch (NumberFormatException e) {
+                player.sendMessage(Component.text(i18n.get(I18NKey.CHUNKGROUPS_ASSIGN_INVALID_SYNTAX, senderLocale), NamedTextColor.RED));
+                return;
+            }
+            long area = ((long) toX - fromX + 1) * ((long) toZ - fromZ + 1);
+            if (area > MAX_BULK_AREA) {
+                player.sendMessage(Component.text(i18n.get(I18NKey.CHUNKGROUPS_AREA_TOO_LARGE, senderLocale, area, MAX_BULK_AREA), NamedTextColor.RED));
+                return;
+            }
+            UUID world = player.getWorld().getUID();
+            if (args[0].equalsIgnoreCase("assign")) {
+                int assigned = DataSource.getData().assignChunks(cgroup, world, fromX, fromZ, toX, toZ);
+                if (assigned == -1) {
+                    player.sendMessage(Component.text(i18n.get(I18NKey.CHUNKGROUPS_NOT_THE_OWNER_AREA, senderLocale), NamedTextColor.DARK_RED));
+                } else {
+                    player.sendMessage(Component.text(i18n.get(I18NKey.CHUNKGROUPS_AREA_ASSIGNED, senderLocale, assigned), NamedTextColor.GREEN));
+                }
+            } else {
+                int removed = DataSource.getData().unassignChunks(cgroup, world, fromX, fromZ, toX, toZ);
+                player.sendMessage(Component.text(i18n.get(I18NKey.CHUNKGROUPS_AREA_UNASSIGNED, senderLocale, removed), NamedTextColor.GREEN));
+            }
+            return;
+        }
+
         if (args.length == 2) {
             if (args[0].equalsIgnoreCase("manage")) {
                 args = new @NotNull String[] {args[1]};
@@ -351,7 +499,7 @@ public class PresenceBukkit extends JavaPlugin {
                     return;
                 }
                 WorldPosition pos = new WorldPosition(world, PresenceData.hashPositions(chunkX, chunkZ));
-                if (cgroup.claimedChunks().contains(pos)) {
+                if (DataSource.getData().getChunkGroupManager().getGroupAt(pos) == cgroup) {
                     player.sendMessage(Component.text(i18n.get(I18NKey.CHUNKGROUPS_ALREADY_ASSIGNED_ITSELF, senderLocale), NamedTextColor.RED));
                     return;
                 }
@@ -636,7 +784,7 @@ public class PresenceBukkit extends JavaPlugin {
                             sender.sendMessage(Component.text(i18n.get(I18NKey.PERM_UNKNOWN_ACTION, senderLocale, args[3]), NamedTextColor.RED));
                             return;
                         }
-                        if (group.permissionRef().compareAndSet(oldPerm, perms)) {
+                        if (DataSource.getData().getChunkGroupManager().compareAndSetPermissions(group, oldPerm, perms)) {
                             break;
                         }
                     }
@@ -664,7 +812,7 @@ public class PresenceBukkit extends JavaPlugin {
                          perms = group.permissions();
                          PermissionMatrix oldPerm = perms;
                          perms = perms.alterExplosions(!perms.getExplosionsEnabled());
-                         if (group.permissionRef().compareAndSet(oldPerm, perms)) {
+                         if (DataSource.getData().getChunkGroupManager().compareAndSetPermissions(group, oldPerm, perms)) {
                              break;
                          }
                      }
@@ -707,7 +855,21 @@ public class PresenceBukkit extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        ExecutorService executor = claimTickExecutor;
+        if (executor != null) {
+            claimTickExecutor = null;
+            executor.shutdown();
+            try {
+                // Pending ticks should be part of the save
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    getSLF4JLogger().warn("Claim ticks did not finish in time. Some ticks may not be saved.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         if (successfullLoad) {
+            DataSource.getData().closeJournal();
             DataSource.getData().save(getDataFolder());
         }
     }
@@ -758,14 +920,35 @@ public class PresenceBukkit extends JavaPlugin {
                 }
             }
         }
+        ContenderTable.Storage contenderStorage;
+        try {
+            contenderStorage = ContenderTable.Storage.byName(bukkitCfg.getString("chunk-storage", "heap"));
+        } catch (IllegalArgumentException e) {
+            getSLF4JLogger().error("Unknown chunk-storage \"{}\", falling back to heap storage.", bukkitCfg.getString("chunk-storage"));
+            contenderStorage = ContenderTable.Storage.HEAP;
+        }
+        int compressionLevel = bukkitCfg.getInt("compression-level", 0);
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            getSLF4JLogger().error("Invalid compression-level {}, saved data will not be compressed.", compressionLevel);
+            compressionLevel = 0;
+        }
         Configuration config = new Configuration(bukkitCfg.getInt("scoreboard-refresh"), 
                 bukkitCfg.getInt("tick-interval"),
                 bukkitCfg.getInt("travel-interval"),
                 bukkitCfg.getInt("autosave-interval"),
+                bukkitCfg.getInt("journal-commit-interval", 20),
+                compressionLevel,
                 bukkitCfg.getDouble("tick-nearby-chance"),
-                bukkitCfg.getBoolean("enable-claim-fly"), harvestableCrops);
+                bukkitCfg.getBoolean("enable-claim-fly"),
+                bukkitCfg.getBoolean("async-claim-tick"),
+                new ScoreDecay(bukkitCfg.getInt("decay-interval"), bukkitCfg.getDouble("decay-factor")),
+                bukkitCfg.getInt("contenders-per-chunk"),
+                contenderStorage,
+                harvestableCrops);
         DataSource.setConfiguration(config);
-        DataSource.setData(new PresenceData(config.getTickNearbyChunksChance()));
+        DataSource.setData(new PresenceData(config.getTickNearbyChunksChance(), config.getScoreDecay(),
+                config.getContendersPerChunk(), config.getContenderStorage()));
+        DataSource.getData().setCompressionLevel(config.getCompressionLevel());
 
         try {
             DataSource.getData().load(getDataFolder());
@@ -787,11 +970,21 @@ public class PresenceBukkit extends JavaPlugin {
         Bukkit.getPluginManager().registerEvents(new PresenceListener(this), this);
 
         // Register tasks
+        if (config.isClaimTickingAsync()) {
+            // A single thread is used so that batches are applied in the order they were captured
+            claimTickExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Presence claim ticking");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
         Bukkit.getScheduler().scheduleSyncRepeatingTask(this, () -> {
-            // perhaps we can do this async, but given the relative speed of this operation, this is not
-            // really required
-            PresenceData data = DataSource.getData();
-            for (Player player : Bukkit.getOnlinePlayers()) {
+            // Player positions can only be safely obtained on the main thread, but the ticks themselves
+            // can be applied asynchronously if the server owner wishes so
+            Collection<? extends Player> players = Bukkit.getOnlinePlayers();
+            PlayerChunkPosition[] positions = new PlayerChunkPosition[players.size()];
+            int i = 0;
+            for (Player player : players) {
                 if (player == null || player.getGameMode() == GameMode.SPECTATOR || player.getGameMode() == GameMode.CREATIVE) {
                     continue;
                 }
@@ -800,7 +993,14 @@ public class PresenceBukkit extends JavaPlugin {
                 if (world == null) {
                     continue;
                 }
-                data.tick(player.getUniqueId(), world.getUID(), position.getBlockX() >> 4, position.getBlockZ() >> 4);
+                positions[i++] = new PlayerChunkPosition(player.getUniqueId(), world.getUID(), position.getBlockX() >> 4, position.getBlockZ() >> 4);
+            }
+            PlayerChunkPosition[] snapshot = Arrays.copyOf(positions, i);
+            ExecutorService executor = claimTickExecutor;
+            if (executor == null) {
+                DataSource.getData().tickAll(snapshot);
+            } else {
+                executor.execute(() -> DataSource.getData().tickAll(snapshot));
             }
         }, config.getClaimTickInterval(), config.getClaimTickInterval());
         Bukkit.getScheduler().scheduleSyncRepeatingTask(this, () -> {
@@ -927,6 +1127,16 @@ public class PresenceBukkit extends JavaPlugin {
         Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
             DataSource.getData().save(getDataFolder());
         }, config.getAutosaveInterval(), config.getAutosaveInterval());
+        if (config.getJournalCommitInterval() > 0) {
+            try {
+                DataSource.getData().enableJournal(getDataFolder());
+                Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+                    DataSource.getData().commitJournal();
+                }, config.getJournalCommitInterval(), config.getJournalCommitInterval());
+            } catch (IOException e) {
+                getSLF4JLogger().error("Unable to open the journal. Changes since the last autosave will be lost on a crash.", e);
+            }
+        }
 
         successfullLoad = true;
     }
@@ -1031,10 +1241,16 @@ public class PresenceBukkit extends JavaPlugin {
             final String ownerKey = i18n.get(I18NKey.CLAIMMAP_OWNER, playerLocale);
             final String noowner = i18n.get(I18NKey.CLAIMMAP_NO_OWNER, playerLocale);
 
-            for (int yDelta = -5; yDelta < 5; yDelta++) {
+            // Resolve the owners of the whole map at once, and the trust of every owner only once
+            PlayerAttachedScore[] leaders = new PlayerAttachedScore[MAP_WIDTH * MAP_HEIGHT];
+            data.getOwners(world, chunkX + MAP_MIN_DELTA_X, chunkY + MAP_MIN_DELTA_Y,
+                    chunkX + MAP_MIN_DELTA_X + MAP_WIDTH - 1, chunkY + MAP_MIN_DELTA_Y + MAP_HEIGHT - 1, leaders);
+            Map<UUID, Boolean> trusted = new HashMap<>();
+
+            for (int yDelta = MAP_MIN_DELTA_Y; yDelta < MAP_MIN_DELTA_Y + MAP_HEIGHT; yDelta++) {
                 Component comp = Component.empty();
-                for (int xDelta = -14; xDelta < 14; xDelta++) {
-                    PlayerAttachedScore leader = data.getOwner(world, chunkX + xDelta, chunkY + yDelta);
+                for (int xDelta = MAP_MIN_DELTA_X; xDelta < MAP_MIN_DELTA_X + MAP_WIDTH; xDelta++) {
+                    PlayerAttachedScore leader = leaders[(yDelta - MAP_MIN_DELTA_Y) * MAP_WIDTH + (xDelta - MAP_MIN_DELTA_X)];
 
                     TextComponent.Builder chunk = Component.text();
                     chunk.content(" +");
@@ -1057,7 +1273,7 @@ public class PresenceBukkit extends JavaPlugin {
                         if (owner.equals(plyr)) {
                             type = relationTypeOwner;
                             colorCoding = NamedTextColor.DARK_GREEN;
-                        } else if (data.getChunkGroupManager().isTrusted(owner, plyr)) {
+                        } else if (trusted.computeIfAbsent(owner, o -> data.getChunkGroupManager().isTrusted(o, plyr))) {
                             colorCoding = NamedTextColor.DARK_BLUE;
                             type = relationTypeTrusted;
                         } else {
@@ -1,5 +1,6 @@
 package de.geolykt.presence;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -8,6 +9,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.entity.Entity;
@@ -33,6 +35,8 @@ import org.bukkit.event.entity.PlayerLeashEntityEvent;
 import org.bukkit.event.player.PlayerInteractEntityEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerUnleashEntityEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.metadata.FixedMetadataValue;
 import org.bukkit.metadata.MetadataValue;
 import org.bukkit.projectiles.ProjectileSource;
@@ -56,8 +60,29 @@ public class PresenceListener implements Listener {
     @NotNull
     private final PresenceBukkit pl;
 
+    private static record WorldIndex(@NotNull World world, int index) { }
+
+    /**
+     * The worlds whose index within the {@link PresenceData} is already known. The array is replaced as a whole whenever
+     * a world is loaded or unloaded - the amount of worlds is usually small enough for a linear scan to beat a hash lookup.
+     */
+    @NotNull
+    private volatile WorldIndex @NotNull[] worldIndices = new WorldIndex[0];
+
     public PresenceListener(@NotNull PresenceBukkit plugin) {
         this.pl = plugin;
+        for (World world : plugin.getServer().getWorlds()) {
+            registerWorld(world);
+        }
+    }
+
+    private int getWorldIndex(@NotNull World world) {
+        for (WorldIndex entry : this.worldIndices) {
+            if (entry.world() == world) {
+                return entry.index();
+            }
+        }
+        return data.getWorldIndex(world.getUID());
     }
 
     private void noteCancelled(@NotNull Player player) {
@@ -69,6 +94,37 @@ public class PresenceListener implements Listener {
         }
     }
 
+    private synchronized void registerWorld(@NotNull World world) {
+        WorldIndex[] indices = this.worldIndices;
+        for (WorldIndex entry : indices) {
+            if (entry.world() == world) {
+                return;
+            }
+        }
+        indices = Arrays.copyOf(indices, indices.length + 1);
+        indices[indices.length - 1] = new WorldIndex(world, data.getWorldIndex(world.getUID()));
+        this.worldIndices = indices;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent e) {
+        registerWorld(e.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public synchronized void onWorldUnload(WorldUnloadEvent e) {
+        WorldIndex[] indices = this.worldIndices;
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i].world() == e.getWorld()) {
+                WorldIndex[] newIndices = new WorldIndex[indices.length - 1];
+                System.arraycopy(indices, 0, newIndices, 0, i);
+                System.arraycopy(indices, i + 1, newIndices, i, newIndices.length - i);
+                this.worldIndices = newIndices;
+                return;
+            }
+        }
+    }
+
     @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
     public void onBlockBreak(BlockBreakEvent e) {
         Block block = e.getBlock();
@@ -79,12 +135,12 @@ public class PresenceListener implements Listener {
         int chunkX = block.getX() >> 4;
         int chunkY = block.getZ() >> 4;
         if (presenceConfig.isHarvestableCrop(block.getType())) {
-            if (!data.canHarvest(e.getPlayer().getUniqueId(), block.getWorld().getUID(), chunkX, chunkY)) {
+            if (!data.canHarvest(e.getPlayer().getUniqueId(), getWorldIndex(block.getWorld()), chunkX, chunkY)) {
                 e.setCancelled(true);
                 noteCancelled(e.getPlayer());
             }
         } else {
-            if (!data.canBreak(e.getPlayer().getUniqueId(), block.getWorld().getUID(), chunkX, chunkY)) {
+            if (!data.canBreak(e.getPlayer().getUniqueId(), getWorldIndex(block.getWorld()), chunkX, chunkY)) {
                 e.setCancelled(true);
                 noteCancelled(e.getPlayer());
             } else {
@@ -98,7 +154,7 @@ public class PresenceListener implements Listener {
         Block block = e.getBlock();
         int chunkX = block.getX() >> 4;
         int chunkY = block.getZ() >> 4;
-        if (!data.canBreak(e.getPlayer().getUniqueId(), block.getWorld().getUID(), chunkX, chunkY)) {
+        if (!data.canBreak(e.getPlayer().getUniqueId(), getWorldIndex(block.getWorld()), chunkX, chunkY)) {
             e.setCancelled(true);
             noteCancelled(e.getPlayer());
         }
@@ -113,11 +169,11 @@ public class PresenceListener implements Listener {
         int chunkX = block.getX() >> 4;
         int chunkY = block.getZ() >> 4;
         if (e.getAction() == Action.PHYSICAL && block.getType() == Material.FARMLAND) {
-            if (!data.canTrample(e.getPlayer().getUniqueId(), block.getWorld().getUID(), chunkX, chunkY)) {
+            if (!data.canTrample(e.getPlayer().getUniqueId(), getWorldIndex(block.getWorld()), chunkX, chunkY)) {
                 e.setCancelled(true);
                 noteCancelled(e.getPlayer());
             }
-        } else if (!data.canInteractWithBlock(e.getPlayer().getUniqueId(), block.getWorld().getUID(), chunkX, chunkY)) {
+        } else if (!data.canInteractWithBlock(e.getPlayer().getUniqueId(), getWorldIndex(block.getWorld()), chunkX, chunkY)) {
             e.setCancelled(true);
             noteCancelled(e.getPlayer());
         }
@@ -128,7 +184,7 @@ public class PresenceListener implements Listener {
         Block placed = e.getBlockPlaced();
         int chunkX = placed.getX() >> 4;
         int chunkY = placed.getZ() >> 4; // This is something that I will get wrong one day
-        if (!data.canBuild(e.getPlayer().getUniqueId(), placed.getWorld().getUID(), chunkX, chunkY)) {
+        if (!data.canBuild(e.getPlayer().getUniqueId(), getWorldIndex(placed.getWorld()), chunkX, chunkY)) {
             e.setCancelled(true);
             noteCancelled(e.getPlayer());
         } else if (placed.getType() == Material.SPONGE) {
@@ -141,7 +197,7 @@ public class PresenceListener implements Listener {
 
         if (e.getCause() == DamageCause.BLOCK_EXPLOSION || e.getCause() == DamageCause.ENTITY_EXPLOSION) {
             Location loc = e.getEntity().getLocation();
-            boolean bool = !data.canExplode(e.getEntity().getWorld().getUID(), loc.getBlockX() >> 4, loc.getBlockZ() >> 4);
+            boolean bool = !data.canExplode(getWorldIndex(e.getEntity().getWorld()), loc.getBlockX() >> 4, loc.getBlockZ() >> 4);
             if (bool) {
                 e.setCancelled(true);
                 return;
@@ -179,14 +235,14 @@ public class PresenceListener implements Listener {
         int chunkY = loc.getBlockZ() >> 4;
 
         if (e.getEntity().customName() == null) {
-            if (!data.canAttack(damagerUUID, loc.getWorld().getUID(), chunkX, chunkY)) {
+            if (!data.canAttack(damagerUUID, getWorldIndex(loc.getWorld()), chunkX, chunkY)) {
                 e.setCancelled(true);
                 if (damager != null) {
                     noteCancelled((Player) damager);
                 }
             }
         } else {
-            if (!data.canAttackNamed(damagerUUID, loc.getWorld().getUID(), chunkX, chunkY)) {
+            if (!data.canAttackNamed(damagerUUID, getWorldIndex(loc.getWorld()), chunkX, chunkY)) {
                 e.setCancelled(true);
                 if (damager != null) {
                     noteCancelled((Player) damager);
@@ -200,7 +256,7 @@ public class PresenceListener implements Listener {
         Location loc = e.getRightClicked().getLocation();
         int chunkX = loc.getBlockX() >> 4;
         int chunkY = loc.getBlockZ() >> 4;
-        if (!data.canInteractWithEntities(e.getPlayer().getUniqueId(), loc.getWorld().getUID(), chunkX, chunkY)) {
+        if (!data.canInteractWithEntities(e.getPlayer().getUniqueId(), getWorldIndex(loc.getWorld()), chunkX, chunkY)) {
             e.setCancelled(true);
             noteCancelled(e.getPlayer());
         }
@@ -211,7 +267,7 @@ public class PresenceListener implements Listener {
         Location loc = e.getEntity().getLocation();
         int chunkX = loc.getBlockX() >> 4;
         int chunkY = loc.getBlockZ() >> 4;
-        if (!data.canInteractWithEntities(e.getPlayer().getUniqueId(), loc.getWorld().getUID(), chunkX, chunkY)) {
+        if (!data.canInteractWithEntities(e.getPlayer().getUniqueId(), getWorldIndex(loc.getWorld()), chunkX, chunkY)) {
             e.setCancelled(true);
             noteCancelled(e.getPlayer());
         }
@@ -222,7 +278,7 @@ public class PresenceListener implements Listener {
         Location loc = e.getEntity().getLocation();
         int chunkX = loc.getBlockX() >> 4;
         int chunkY = loc.getBlockZ() >> 4;
-        if (!data.canInteractWithEntities(e.getPlayer().getUniqueId(), loc.getWorld().getUID(), chunkX, chunkY)) {
+        if (!data.canInteractWithEntities(e.getPlayer().getUniqueId(), getWorldIndex(loc.getWorld()), chunkX, chunkY)) {
             e.setCancelled(true);
             noteCancelled(e.getPlayer());
         }
@@ -231,14 +287,14 @@ public class PresenceListener implements Listener {
     @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
     public void onExplosion(BlockExplodeEvent evt) {
         evt.blockList().removeIf(block -> {
-            return !data.canExplode(block.getWorld().getUID(), block.getX() >> 4, block.getZ() >> 4);
+            return !data.canExplode(getWorldIndex(block.getWorld()), block.getX() >> 4, block.getZ() >> 4);
         });
     }
 
     @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
     public void onExplosion(EntityExplodeEvent evt) {
         evt.blockList().removeIf(block -> {
-            return !data.canExplode(block.getWorld().getUID(), block.getX() >> 4, block.getZ() >> 4);
+            return !data.canExplode(getWorldIndex(block.getWorld()), block.getX() >> 4, block.getZ() >> 4);
         });
     }
 
@@ -249,7 +305,7 @@ public class PresenceListener implements Listener {
             Block block = evt.getBlock();
             int chunkX = block.getX() >> 4;
             int chunkY = block.getZ() >> 4;
-            if (!data.canBuild(e.getUniqueId(), block.getWorld().getUID(), chunkX, chunkY)) {
+            if (!data.canBuild(e.getUniqueId(), getWorldIndex(block.getWorld()), chunkX, chunkY)) {
                 evt.setCancelled(true);
                 noteCancelled((Player) e);
             }
@@ -261,7 +317,7 @@ public class PresenceListener implements Listener {
         Block block = e.getBlock();
         int chunkX = block.getX() >> 4;
         int chunkY = block.getZ() >> 4;
-        if (!data.canInteractWithBlock(e.getPlayer().getUniqueId(), block.getWorld().getUID(), chunkX, chunkY)) {
+        if (!data.canInteractWithBlock(e.getPlayer().getUniqueId(), getWorldIndex(block.getWorld()), chunkX, chunkY)) {
             e.setCancelled(true);
             noteCancelled(e.getPlayer());
         }
@@ -283,7 +339,7 @@ public class PresenceListener implements Listener {
             BlockState block = iter.next();
             int chunkX = block.getX() >> 4;
             int chunkY = block.getZ() >> 4;
-            if (!data.canBreak(puid, block.getWorld().getUID(), chunkX, chunkY)) {
+            if (!data.canBreak(puid, getWorldIndex(block.getWorld()), chunkX, chunkY)) {
                 iter.remove();
             }
         }
@@ -86,6 +86,12 @@ public class PresencePlaceholders extends PlaceholderExpansion {
         case "playerpresence": {
             return Integer.toString(DataSource.getData().getPresence(player.getUniqueId(), world, chunkX, chunkY));
         }
+        case "totalpresence": {
+            return Long.toString(DataSource.getData().getTotalPresence(player.getUniqueId()));
+        }
+        case "ownedchunks": {
+            return Integer.toString(DataSource.getData().getOwnedChunks(player.getUniqueId(), world).length);
+        }
         default:
             // Invalid placeholder
             return null;
@@ -1,15 +1,23 @@
 package de.geolykt.presence.common;
 
-import java.util.Collection;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.jetbrains.annotations.NotNull;
 
-import de.geolykt.presence.common.util.WorldPosition;
-
+import de.geolykt.presence.common.util.WorldChunkSet;
+
+/**
+ * A named group of chunks of a player that share the same permissions.
+ *
+ * @param name The name of the group, unique for the owner of the group
+ * @param owner The owner of the group
+ * @param permissionRef The permissions that apply to the chunks of the group
+ * @param claimedChunks The chunks that are assigned to the group, keyed by the ids of the worlds
+ * @param id The id of the group, which is unique within its {@link ChunkGroupManager} but not persisted across restarts
+ */
 public record ChunkGroup(@NotNull String name, @NotNull UUID owner, @NotNull AtomicReference<PermissionMatrix> permissionRef,
-        @NotNull Collection<WorldPosition> claimedChunks) {
+        @NotNull WorldChunkSet claimedChunks, int id) {
 
     @SuppressWarnings("null") // The reference should ideally not store null values
     @NotNull
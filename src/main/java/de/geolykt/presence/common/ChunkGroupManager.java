@@ -6,14 +6,15 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Collection;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.Adler32;
 import java.util.zip.CheckedInputStream;
@@ -25,18 +26,121 @@ import org.jetbrains.annotations.Nullable;
 import com.google.common.primitives.Longs;
 import com.google.common.primitives.Shorts;
 
+import de.geolykt.presence.common.util.BlockCompression;
+import de.geolykt.presence.common.util.DenseIdMap;
 import de.geolykt.presence.common.util.ElementAlreadyExistsException;
 import de.geolykt.presence.common.util.PlayerAttachedString;
+import de.geolykt.presence.common.util.RegionatedIntIntToIntMap;
+import de.geolykt.presence.common.util.RegionatedIntIntToLongMap;
+import de.geolykt.presence.common.util.TrustGraph;
+import de.geolykt.presence.common.util.UUIDRegistry;
+import de.geolykt.presence.common.util.WorldChunkSet;
 import de.geolykt.presence.common.util.WorldPosition;
 
 public class ChunkGroupManager {
 
-    protected static final short CURRENT_VERSION = 1;
-    private final Map<WorldPosition, ChunkGroup> groupedChunks = new ConcurrentHashMap<>();
+    protected static final short CURRENT_VERSION = 2;
+
+    /**
+     * Set within the version of chunkgroups.dat if the payload is stored within a {@link BlockCompression} container.
+     */
+    protected static final short COMPRESSED_FLAG = 0x4000;
+
+    /**
+     * Set within the version of chunkgroups.dat if the checksummed part of the file starts with the journal sequence
+     * number the chunk groups include, see {@link #loadSafely(InputStream)}.
+     */
+    protected static final short SEQUENCED_FLAG = 0x2000;
     private final Map<PlayerAttachedString, ChunkGroup> groupNames = new ConcurrentHashMap<>();
-    private final Map<UUID, PermissionMatrix> playerDefaults = new ConcurrentHashMap<>();
-    private final Map<UUID, Set<UUID>> trustedPlayers = new ConcurrentHashMap<>();
-    private final Map<UUID, Set<ChunkGroup>> playerGroups = new ConcurrentHashMap<>();
+
+    /**
+     * The {@link ChunkGroup#id() ids} of the chunk groups of every grouped chunk, keyed by the ids provided by {@link #worldIds}
+     * and the chunk coordinates. Ungrouped chunks map to {@link #NO_GROUP}.
+     *
+     * <p>A chunk is first assigned to a group within this index and only then added to the {@link ChunkGroup#claimedChunks()
+     * claimed chunks} of the group, removals happen in the opposite order.
+     */
+    private final DenseIdMap<RegionatedIntIntToIntMap> groupIndex = new DenseIdMap<>();
+
+    /**
+     * The chunk groups, keyed by their {@link ChunkGroup#id() ids}.
+     */
+    private final DenseIdMap<ChunkGroup> groupsById = new DenseIdMap<>();
+
+    private static final int NO_GROUP = -1;
+
+    /**
+     * The effective permissions of every owned chunk, keyed by the ids provided by {@link #worldIds} and the chunk coordinates.
+     * The lower 32 bits of a word store the id of the owner plus one, the upper 32 bits store the {@link PermissionMatrix#pack() packed}
+     * permission matrix that applies to the chunk and the {@link #GROUP_TRUSTS} flag. Unowned chunks are not stored.
+     *
+     * <p>Every modification that may alter the effective permissions of a chunk first modifies the state the permissions are derived
+     * from and then recomputes the word, see {@link #refreshPermissionWord(int, int, int)}.
+     */
+    private final DenseIdMap<RegionatedIntIntToLongMap> permissionWords = new DenseIdMap<>();
+
+    /**
+     * Flag within the permission words that is set if the chunk is within a chunk group that trusts any players.
+     */
+    private static final long GROUP_TRUSTS = 1L << 63;
+
+    /**
+     * The default permissions of every player, keyed by the ids provided by {@link #playerIds}.
+     */
+    private final DenseIdMap<PermissionMatrix> playerDefaults = new DenseIdMap<>();
+
+    /**
+     * The chunks owned by every player as per {@link #setOwner(int, int, int, int)}, keyed by the ids provided by {@link #playerIds}.
+     * The sets may contain chunks that are no longer owned by the player, but every chunk whose {@link #permissionWords permission word}
+     * names the player as its owner is within the set of the player. The permission word of a chunk is only assigned to a player while
+     * holding the monitor of the set of the player, which is also held while chunks are pruned from the set and while the default
+     * permissions of the player are replaced.
+     */
+    private final DenseIdMap<WorldChunkSet> ownedChunks = new DenseIdMap<>();
+
+    /**
+     * The trust relations between players, based on the ids provided by {@link #playerIds}.
+     */
+    private final TrustGraph trusts = new TrustGraph();
+
+    /**
+     * The players trusted within individual chunk groups, keyed by the {@link ChunkGroup#id() id of the group}
+     * and the ids provided by {@link #playerIds}.
+     */
+    private final TrustGraph groupTrusts = new TrustGraph();
+
+    private final AtomicInteger nextGroupId = new AtomicInteger();
+
+    /**
+     * The amount of modifications of the persisted state of the manager, see {@link #getModificationCount()}.
+     */
+    private final AtomicInteger modifications = new AtomicInteger();
+
+    /**
+     * The chunk groups owned by every player, keyed by the ids provided by {@link #playerIds}.
+     */
+    private final DenseIdMap<Set<ChunkGroup>> playerGroups = new DenseIdMap<>();
+
+    @NotNull
+    private final UUIDRegistry playerIds;
+
+    @NotNull
+    private final UUIDRegistry worldIds;
+
+    public ChunkGroupManager() {
+        this(new UUIDRegistry(), new UUIDRegistry());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param playerIds The registry used to obtain the ids of players, usually shared with {@link PresenceData}
+     * @param worldIds The registry used to obtain the ids of worlds, usually shared with {@link PresenceData}
+     */
+    public ChunkGroupManager(@NotNull UUIDRegistry playerIds, @NotNull UUIDRegistry worldIds) {
+        this.playerIds = playerIds;
+        this.worldIds = worldIds;
+    }
 
     /**
      * Adds the player "trusted" to the list of trusted players of the player "truster".
@@ -47,15 +151,32 @@ public class ChunkGroupManager {
      * @return True if the trusting player did not already trust the trusted player. See {@link Set#add(Object)}.
      */
     public boolean addTrustedPlayer(@NotNull UUID truster, @NotNull UUID trusted) {
-        Set<UUID> trustedPlayers = this.trustedPlayers.get(truster);
-        if (trustedPlayers == null) {
-            trustedPlayers = ConcurrentHashMap.newKeySet();
-            Set<UUID> var10001 = this.trustedPlayers.putIfAbsent(trusted, trustedPlayers);
-            if (var10001 != null) { // Race condition
-                trustedPlayers = var10001;
-            }
+        if (!trusts.add(playerIds.getOrCreateId(truster), playerIds.getOrCreateId(trusted))) {
+            return false;
         }
-        return trustedPlayers.add(trusted);
+        modifications.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Adds a player to the list of trusted players of a chunk group. Within the chunks of the group the player is
+     * treated as {@link PermissionMatrix#PERSON_TRUSTED trusted}, in addition to the players trusted by the owner of the chunk.
+     * This method is fully safe to use in a concurrent environment, provided it isn't within the loading phase.
+     *
+     * @param group The chunk group
+     * @param trusted The player that is trusted within the chunk group
+     * @return True if the player was not already trusted within the group
+     */
+    public boolean addTrustedPlayer(@NotNull ChunkGroup group, @NotNull UUID trusted) {
+        boolean hadTrusts = groupTrusts.trustsAnyone(group.id());
+        if (!groupTrusts.add(group.id(), playerIds.getOrCreateId(trusted))) {
+            return false;
+        }
+        modifications.incrementAndGet();
+        if (!hadTrusts) {
+            refreshPermissionWords(group);
+        }
+        return true;
     }
 
     /**
@@ -74,12 +195,16 @@ public class ChunkGroupManager {
         if (owner == null) {
             return true;
         }
-        ChunkGroup group = groupedChunks.get(pos);
+        ChunkGroup group = getGroupAt(pos);
         PermissionMatrix perms = getPermissionMatrix(owner, group);
         int type = getRelationship(owner, player, group);
         return perms.canAttack(type);
     }
 
+    public boolean canAttack(int player, int world, int x, int z) {
+        return isPermitted(player, world, x, z, PermissionMatrix.PACKED_ATTACK);
+    }
+
     /**
      * Checks whether the given player has the permissions required to attack nametagged entities in the provided chunk.
      * If there is no chunk group at the specified location then the permission according to the
@@ -96,12 +221,16 @@ public class ChunkGroupManager {
         if (owner == null) {
             return true;
         }
-        ChunkGroup group = groupedChunks.get(pos);
+        ChunkGroup group = getGroupAt(pos);
         PermissionMatrix perms = getPermissionMatrix(owner, group);
         int type = getRelationship(owner, player, group);
         return perms.canAttackNamedEntities(type);
     }
 
+    public boolean canAttackNamedEntities(int player, int world, int x, int z) {
+        return isPermitted(player, world, x, z, PermissionMatrix.PACKED_ATTACK_NAMED);
+    }
+
     /**
      * Checks whether the given player has break permission for the given chunk.
      * If there is no chunk group at the specified location then the permission according to the
@@ -118,12 +247,16 @@ public class ChunkGroupManager {
         if (owner == null) {
             return true;
         }
-        ChunkGroup group = groupedChunks.get(pos);
+        ChunkGroup group = getGroupAt(pos);
         PermissionMatrix perms = getPermissionMatrix(owner, group);
         int type = getRelationship(owner, player, group);
         return perms.canDestroy(type);
     }
 
+    public boolean canBreak(int player, int world, int x, int z) {
+        return isPermitted(player, world, x, z, PermissionMatrix.PACKED_DESTROY);
+    }
+
     /**
      * Checks whether the given player has the build permission for the given chunk.
      * If there is no chunk group at the specified location then the permission according to the
@@ -140,12 +273,16 @@ public class ChunkGroupManager {
         if (owner == null) {
             return true;
         }
-        ChunkGroup group = groupedChunks.get(pos);
+        ChunkGroup group = getGroupAt(pos);
         PermissionMatrix perms = getPermissionMatrix(owner, group);
         int type = getRelationship(owner, player, group);
         return perms.canBuild(type);
     }
 
+    public boolean canBuild(int player, int world, int x, int z) {
+        return isPermitted(player, world, x, z, PermissionMatrix.PACKED_BUILD);
+    }
+
     /**
      * Checks whether explosions are enabled in the given chunk or for the given owner player.
      * If there is no chunk group at the specified location then the permission according to the
@@ -161,11 +298,16 @@ public class ChunkGroupManager {
         if (owner == null) {
             return true;
         }
-        ChunkGroup group = groupedChunks.get(pos);
+        ChunkGroup group = getGroupAt(pos);
         PermissionMatrix perms = getPermissionMatrix(owner, group);
         return perms.getExplosionsEnabled();
     }
 
+    public boolean canExplode(int world, int x, int z) {
+        long word = getPermissionWord(world, x, z);
+        return word == 0L || PermissionMatrix.isPermitted((int) (word >>> 32), PermissionMatrix.PACKED_EXPLOSIONS, 1);
+    }
+
     /**
      * Checks whether the given player is able to harvest crops within the given chunk.
      * Melon and Pumpkin stems are not counted as crops by default. This permission can be helpful
@@ -184,12 +326,16 @@ public class ChunkGroupManager {
         if (owner == null) {
             return true;
         }
-        ChunkGroup group = groupedChunks.get(pos);
+        ChunkGroup group = getGroupAt(pos);
         PermissionMatrix perms = getPermissionMatrix(owner, group);
         int type = getRelationship(owner, player, group);
         return perms.canHarvestCrops(type);
     }
 
+    public boolean canHarvestCrops(int player, int world, int x, int z) {
+        return isPermitted(player, world, x, z, PermissionMatrix.PACKED_HARVEST_CROPS);
+    }
+
     /**
      * Checks whether the given player has the permission to interact with blocks in the given chunk.
      * If there is no chunk group at the specified location then the permission according to the
@@ -206,12 +352,16 @@ public class ChunkGroupManager {
         if (owner == null) {
             return true;
         }
-        ChunkGroup group = groupedChunks.get(pos);
+        ChunkGroup group = getGroupAt(pos);
         PermissionMatrix perms = getPermissionMatrix(owner, group);
         int type = getRelationship(owner, player, group);
         return perms.canInteract(type);
     }
 
+    public boolean canInteract(int player, int world, int x, int z) {
+        return isPermitted(player, world, x, z, PermissionMatrix.PACKED_INTERACT);
+    }
+
     /**
      * Checks whether the given player has the permission to interact with entities within the given chunk.
      * If there is no chunk group at the specified location then the permission according to the
@@ -228,12 +378,16 @@ public class ChunkGroupManager {
         if (owner == null) {
             return true;
         }
-        ChunkGroup group = groupedChunks.get(pos);
+        ChunkGroup group = getGroupAt(pos);
         PermissionMatrix perms = getPermissionMatrix(owner, group);
         int type = getRelationship(owner, player, group);
         return perms.canInteractWithEntity(type);
     }
 
+    public boolean canInteractWithEntities(int player, int world, int x, int z) {
+        return isPermitted(player, world, x, z, PermissionMatrix.PACKED_INTERACT_ENTITY);
+    }
+
     /**
      * Checks whether the given player is able to trample crops (and farmland overall) within the given chunk.
      * If there is no chunk group at the specified location then the permission according to the
@@ -250,16 +404,20 @@ public class ChunkGroupManager {
         if (owner == null) {
             return true;
         }
-        ChunkGroup group = groupedChunks.get(pos);
+        ChunkGroup group = getGroupAt(pos);
         PermissionMatrix perms = getPermissionMatrix(owner, group);
         int type = getRelationship(owner, player, group);
         return perms.canTrampleCrops(type);
     }
 
+    public boolean canTrampleCrops(int player, int world, int x, int z) {
+        return isPermitted(player, world, x, z, PermissionMatrix.PACKED_TRAMPLE);
+    }
+
     /**
      * Obtains the effective permission matrix for the given chunk group. If the chunk group is null, then
      * the permission matrix of the owner is returned. If the owner does not have a permission matrix assigned
-     * as of yet, then the default permission matrix will be assigned to the owner and the default permission matrix returned.
+     * as of yet, then the default permission matrix is returned. This method never modifies the state of the manager.
      * Like most other operations in this class, it is fully safe to use concurrently outside of the startup phase.
      *
      * @param owner The owner player. Used for fallback purposes
@@ -268,16 +426,18 @@ public class ChunkGroupManager {
      */
     @NotNull
     public PermissionMatrix getPermissionMatrix(@NotNull UUID owner, @Nullable ChunkGroup group) {
+        if (group == null) {
+            return getPermissionMatrix(playerIds.getId(owner), null);
+        } else {
+            return group.permissions();
+        }
+    }
+
+    @NotNull
+    private PermissionMatrix getPermissionMatrix(int owner, @Nullable ChunkGroup group) {
         if (group == null) {
             PermissionMatrix perms = playerDefaults.get(owner);
-            if (perms == null) {
-                perms = PermissionMatrix.DEFAULT;
-                PermissionMatrix retain = playerDefaults.putIfAbsent(owner, perms);
-                if (retain != null) { // Race condition
-                    perms = retain;
-                }
-            }
-            return perms;
+            return perms == null ? PermissionMatrix.DEFAULT : perms;
         } else {
             return group.permissions();
         }
@@ -287,6 +447,13 @@ public class ChunkGroupManager {
         if (owner.equals(player)) {
             return PermissionMatrix.PERSON_OWNER;
         }
+        return getRelationship(playerIds.getId(owner), playerIds.getId(player), group);
+    }
+
+    private int getRelationship(int owner, int player, @Nullable ChunkGroup group) {
+        if (owner == player) {
+            return PermissionMatrix.PERSON_OWNER;
+        }
         int type;
         if (group == null) {
             if (isTrusted(owner, player)) {
@@ -295,8 +462,7 @@ public class ChunkGroupManager {
                 type = PermissionMatrix.PERSON_STRANGER;
             }
         } else {
-            // TODO per-group trusts
-            if (isTrusted(owner, player)) {
+            if (isTrusted(owner, player) || groupTrusts.isTrusted(group.id(), player)) {
                 type = PermissionMatrix.PERSON_TRUSTED;
             } else {
                 type = PermissionMatrix.PERSON_STRANGER;
@@ -307,7 +473,87 @@ public class ChunkGroupManager {
 
     @Override
     public int hashCode() {
-        return groupedChunks.hashCode() ^ 0x485986 ^ playerDefaults.hashCode() ^ trustedPlayers.hashCode();
+        return getGroupedChunksByName().hashCode() ^ 0x485986 ^ getDefaultsByUUID().hashCode() ^ getTrustsByUUID().hashCode()
+                ^ getGroupTrustsByName().hashCode();
+    }
+
+    /**
+     * Obtains a copy of the chunk group assignments that refers to the groups by their owner and name,
+     * which unlike the groups themselves are comparable across instances.
+     *
+     * @return A snapshot of the grouped chunks
+     */
+    @NotNull
+    private Map<WorldPosition, PlayerAttachedString> getGroupedChunksByName() {
+        Map<WorldPosition, PlayerAttachedString> chunks = new HashMap<>();
+        for (Map.Entry<PlayerAttachedString, ChunkGroup> entry : groupNames.entrySet()) {
+            long[][] claimed = entry.getValue().claimedChunks().getChunks();
+            for (int world = 0; world < claimed.length; world++) {
+                if (claimed[world] == null) {
+                    continue;
+                }
+                UUID worldUUID = Objects.requireNonNull(worldIds.getUUID(world));
+                for (long chunk : claimed[world]) {
+                    chunks.put(new WorldPosition(worldUUID, chunk), entry.getKey());
+                }
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Obtains a copy of the player default permissions that is keyed by the UUIDs of the players, which
+     * unlike the ids are comparable across instances.
+     *
+     * @return A snapshot of the player default permissions
+     */
+    @NotNull
+    private Map<UUID, PermissionMatrix> getDefaultsByUUID() {
+        Map<UUID, PermissionMatrix> defaults = new HashMap<>();
+        playerDefaults.forEach((player, perms) -> defaults.put(playerIds.getUUID(player), perms));
+        return defaults;
+    }
+
+    /**
+     * Obtains a copy of the trusted players that is keyed by the UUIDs of the players, which
+     * unlike the ids are comparable across instances.
+     *
+     * @return A snapshot of the trusted players
+     */
+    @NotNull
+    private Map<UUID, Set<UUID>> getTrustsByUUID() {
+        Map<UUID, Set<UUID>> trusts = new HashMap<>();
+        this.trusts.forEach((truster, trusted) -> {
+            Set<UUID> uuids = new HashSet<>();
+            for (int id : trusted) {
+                uuids.add(playerIds.getUUID(id));
+            }
+            trusts.put(playerIds.getUUID(truster), uuids);
+        });
+        return trusts;
+    }
+
+    /**
+     * Obtains a copy of the players trusted within chunk groups that is keyed by the owner and the name of the groups,
+     * which unlike the ids of the groups are comparable across instances.
+     *
+     * @return A snapshot of the players trusted within chunk groups
+     */
+    @NotNull
+    private Map<PlayerAttachedString, Set<UUID>> getGroupTrustsByName() {
+        Map<PlayerAttachedString, Set<UUID>> trusts = new HashMap<>();
+        for (Map.Entry<PlayerAttachedString, ChunkGroup> entry : groupNames.entrySet()) {
+            Set<UUID> trusted = getTrustedPlayers(entry.getValue());
+            if (!trusted.isEmpty()) {
+                trusts.put(entry.getKey(), trusted);
+            }
+        }
+        return trusts;
+    }
+
+    @NotNull
+    private static UUID intern(@NotNull UUIDRegistry registry, @NotNull UUID uuid) {
+        return Objects.requireNonNull(registry.getUUID(registry.getOrCreateId(uuid)));
     }
 
     /**
@@ -319,15 +565,69 @@ public class ChunkGroupManager {
      * @return True if the trusted player is within the list of trusted players of the truster. See {@link Set#contains(Object)}.
      */
     public boolean isTrusted(@NotNull UUID truster, @NotNull UUID trusted) {
-        Set<UUID> trustedPlayers = this.trustedPlayers.get(truster);
-        if (trustedPlayers == null) {
-            trustedPlayers = ConcurrentHashMap.newKeySet();
-            Set<UUID> var10001 = this.trustedPlayers.putIfAbsent(trusted, trustedPlayers);
-            if (var10001 != null) { // Race condition
-                trustedPlayers = var10001;
-            }
+        return isTrusted(playerIds.getId(truster), playerIds.getId(trusted));
+    }
+
+    private boolean isTrusted(int truster, int trusted) {
+        return trusts.isTrusted(truster, trusted);
+    }
+
+    /**
+     * Obtains the players that are trusted by a player.
+     * This method is fully safe to use in a concurrent environment, provided it isn't within the loading phase.
+     *
+     * @param truster The trusting player
+     * @return The players that are trusted by the trusting player
+     */
+    @NotNull
+    public Set<UUID> getTrustedPlayers(@NotNull UUID truster) {
+        return toUUIDs(trusts.getTrusted(playerIds.getId(truster)));
+    }
+
+    /**
+     * Obtains the players that are trusted within a chunk group. Players trusted by the owner of the group are
+     * not included unless they are trusted within the group, too.
+     *
+     * @param group The chunk group
+     * @return The players that are trusted within the chunk group
+     */
+    @NotNull
+    public Set<UUID> getTrustedPlayers(@NotNull ChunkGroup group) {
+        return toUUIDs(groupTrusts.getTrusted(group.id()));
+    }
+
+    /**
+     * Checks whether a player is trusted within a chunk group, either by the group itself or by the owner of the group.
+     * This method is fully safe to use in a concurrent environment, provided it isn't within the loading phase.
+     *
+     * @param group The chunk group
+     * @param trusted The player to check
+     * @return True if the player is trusted within the chunk group
+     */
+    public boolean isTrusted(@NotNull ChunkGroup group, @NotNull UUID trusted) {
+        int trustedId = playerIds.getId(trusted);
+        return groupTrusts.isTrusted(group.id(), trustedId) || isTrusted(playerIds.getId(group.owner()), trustedId);
+    }
+
+    /**
+     * Obtains the players that trust a player, which is the reverse of {@link #getTrustedPlayers(UUID)}.
+     * This method is fully safe to use in a concurrent environment, provided it isn't within the loading phase.
+     *
+     * @param trusted The trusted player
+     * @return The players that trust the given player
+     */
+    @NotNull
+    public Set<UUID> getTrustingPlayers(@NotNull UUID trusted) {
+        return toUUIDs(trusts.getTrusters(playerIds.getId(trusted)));
+    }
+
+    @NotNull
+    private Set<UUID> toUUIDs(int @NotNull[] players) {
+        Set<UUID> uuids = new HashSet<>();
+        for (int player : players) {
+            uuids.add(Objects.requireNonNull(playerIds.getUUID(player)));
         }
-        return trustedPlayers.contains(trusted);
+        return uuids;
     }
 
     private boolean readElementStartByte(@NotNull InputStream input) throws IOException {
@@ -342,69 +642,96 @@ public class ChunkGroupManager {
     }
 
     protected void load(@NotNull DataInputStream in, short version) throws IOException {
-        groupedChunks.clear();
         groupNames.clear();
+        groupIndex.clear();
+        groupsById.clear();
         playerDefaults.clear();
-        trustedPlayers.clear();
+        trusts.clear();
+        groupTrusts.clear();
         playerGroups.clear();
 
         while(readElementStartByte(in)) {
-            UUID ownerId = new UUID(in.readLong(), in.readLong());
+            UUID ownerId = intern(playerIds, new UUID(in.readLong(), in.readLong()));
             String groupName = in.readUTF();
             PermissionMatrix perms = PermissionMatrix.deserialize(in, version);
             if (groupName == null) {
                 throw new IOException(groupName);
             }
-            Collection<WorldPosition> positions = new HashSet<>();
-            ChunkGroup cgroup = new ChunkGroup(groupName, ownerId, new AtomicReference<>(perms), positions);
+            ChunkGroup cgroup = new ChunkGroup(groupName, ownerId, new AtomicReference<>(perms), new WorldChunkSet(), nextGroupId.getAndIncrement());
             groupNames.put(new PlayerAttachedString(ownerId, groupName), cgroup);
+            groupsById.put(cgroup.id(), cgroup);
 
-            Set<ChunkGroup> groups = playerGroups.get(ownerId);
+            int ownerIntId = playerIds.getId(ownerId);
+            Set<ChunkGroup> groups = playerGroups.get(ownerIntId);
             if (groups == null) {
                 groups = ConcurrentHashMap.newKeySet();
-                if (!Objects.isNull(playerGroups.put(ownerId, groups))) {
+                if (!Objects.isNull(playerGroups.put(ownerIntId, groups))) {
                     throw new ConcurrentModificationException("Error L340. Make sure no plugin is accessing the chunk group manager during the load phase.");
                 }
             }
             groups.add(cgroup);
 
             while(readElementStartByte(in)) {
-                WorldPosition pos = new WorldPosition(new UUID(in.readLong(), in.readLong()), in.readLong());
-                positions.add(pos);
-                groupedChunks.put(pos, cgroup);
+                int world = worldIds.getOrCreateId(new UUID(in.readLong(), in.readLong()));
+                long chunk = in.readLong();
+                cgroup.claimedChunks().add(world, chunk);
+                getOrCreateGroupIndex(world).put((int) (chunk >> 32), (int) chunk, cgroup.id());
+            }
+
+            if (version >= 2) {
+                while (readElementStartByte(in)) {
+                    groupTrusts.add(cgroup.id(), playerIds.getOrCreateId(new UUID(in.readLong(), in.readLong())));
+                }
             }
         }
 
         while (readElementStartByte(in)) {
-            UUID player = new UUID(in.readLong(), in.readLong());
+            int player = playerIds.getOrCreateId(new UUID(in.readLong(), in.readLong()));
             PermissionMatrix perms = PermissionMatrix.deserialize(in, version);
             playerDefaults.put(player, perms);
         }
 
         while (readElementStartByte(in)) {
-            UUID truster = new UUID(in.readLong(), in.readLong());
-            Set<UUID> trusted = ConcurrentHashMap.newKeySet();
+            int truster = playerIds.getOrCreateId(new UUID(in.readLong(), in.readLong()));
             while (readElementStartByte(in)) {
-                trusted.add(new UUID(in.readLong(), in.readLong()));
+                trusts.add(truster, playerIds.getOrCreateId(new UUID(in.readLong(), in.readLong())));
             }
-            if (trusted.isEmpty()) {
-                continue; // Slowly purge out useless keys
-            }
-            trustedPlayers.put(truster, trusted);
         }
+
+        permissionWords.forEach((world, words) -> {
+            words.forEach((x, z, word) -> refreshPermissionWord(world, x, z));
+        });
+        modifications.incrementAndGet();
     }
 
-    public void loadSafely(@NotNull InputStream in) throws IOException {
+    /**
+     * Loads the chunk groups as written to chunkgroups.dat, consisting of the version, the checksum and the state.
+     *
+     * @param in The input stream to read from
+     * @return The journal sequence number stored in front of the state if the version has the {@link #SEQUENCED_FLAG} set, 0 otherwise
+     * @throws IOException If an I/O error occurs, the version is unknown or the checksum does not match
+     */
+    public long loadSafely(@NotNull InputStream in) throws IOException {
         short version = Shorts.fromBytes((byte) in.read(), (byte) in.read());
-        if (version != 0 && version != 1) {
-            throw new IOException("Invalid version. Expected 0 or 1, got " + version);
+        boolean compressed = (version & COMPRESSED_FLAG) != 0;
+        boolean sequenced = (version & SEQUENCED_FLAG) != 0;
+        version &= ~(COMPRESSED_FLAG | SEQUENCED_FLAG);
+        if (version < 0 || version > CURRENT_VERSION) {
+            throw new IOException("Invalid version. Expected 0 to " + CURRENT_VERSION + ", got " + version);
         }
         long shouldBeChecksum = Longs.fromByteArray(in.readNBytes(8));
         CheckedInputStream cin = new CheckedInputStream(in, new Adler32());
-        load(new DataInputStream(cin), version);
+        long sequence = sequenced ? Longs.fromByteArray(cin.readNBytes(8)) : 0;
+        if (compressed) {
+            // The checksum covers the compressed bytes, all of which are read by BlockCompression#decompress
+            load(new DataInputStream(BlockCompression.decompress(cin)), version);
+        } else {
+            load(new DataInputStream(cin), version);
+        }
         if (cin.getChecksum().getValue() != shouldBeChecksum) {
             throw new IOException("Expected checksum and actual checksum do not match.");
         }
+        return sequence;
     }
 
     /**
@@ -416,15 +743,36 @@ public class ChunkGroupManager {
      * @return True if the trusting player trusted the trusted player. See {@link Set#remove(Object)}.
      */
     public boolean removeTrustedPlayer(@NotNull UUID truster, @NotNull UUID trusted) {
-        Set<UUID> trustedPlayers = this.trustedPlayers.get(truster);
-        if (trustedPlayers == null) {
-            trustedPlayers = ConcurrentHashMap.newKeySet();
-            Set<UUID> var10001 = this.trustedPlayers.putIfAbsent(trusted, trustedPlayers);
-            if (var10001 != null) { // Race condition
-                trustedPlayers = var10001;
-            }
+        int trusterId = playerIds.getId(truster);
+        int trustedId = playerIds.getId(trusted);
+        if (trusterId == UUIDRegistry.UNKNOWN_ID || trustedId == UUIDRegistry.UNKNOWN_ID) {
+            return false;
+        }
+        if (!trusts.remove(trusterId, trustedId)) {
+            return false;
         }
-        return trustedPlayers.remove(trusted);
+        modifications.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes a player from the list of trusted players of a chunk group.
+     * This method is fully safe to use in a concurrent environment, provided it isn't within the loading phase.
+     *
+     * @param group The chunk group
+     * @param trusted The player that should no longer be trusted within the chunk group
+     * @return True if the player was trusted within the group
+     */
+    public boolean removeTrustedPlayer(@NotNull ChunkGroup group, @NotNull UUID trusted) {
+        int trustedId = playerIds.getId(trusted);
+        if (trustedId == UUIDRegistry.UNKNOWN_ID || !groupTrusts.remove(group.id(), trustedId)) {
+            return false;
+        }
+        modifications.incrementAndGet();
+        if (!groupTrusts.trustsAnyone(group.id())) {
+            refreshPermissionWords(group);
+        }
+        return true;
     }
 
     protected void save(@NotNull DataOutputStream out, short version) throws IOException {
@@ -434,38 +782,64 @@ public class ChunkGroupManager {
             out.writeLong(cgroup.owner().getLeastSignificantBits());
             out.writeUTF(cgroup.name());
             cgroup.permissions().serialize(out, version);
-            for (WorldPosition pos : cgroup.claimedChunks()) {
-                out.write(1);
-                out.writeLong(pos.world().getMostSignificantBits());
-                out.writeLong(pos.world().getLeastSignificantBits());
-                out.writeLong(pos.chunkPos());
+            long[][] claimed = cgroup.claimedChunks().getChunks();
+            for (int world = 0; world < claimed.length; world++) {
+                if (claimed[world] == null) {
+                    continue;
+                }
+                UUID worldUUID = Objects.requireNonNull(worldIds.getUUID(world));
+                for (long chunk : claimed[world]) {
+                    out.write(1);
+                    out.writeLong(worldUUID.getMostSignificantBits());
+                    out.writeLong(worldUUID.getLeastSignificantBits());
+                    out.writeLong(chunk);
+                }
             }
             out.write(0);
+            if (version >= 2) {
+                for (int trusted : groupTrusts.getTrusted(cgroup.id())) {
+                    writeUUID(out, trusted);
+                }
+                out.write(0);
+            }
         }
         out.write(0);
 
-        for (Map.Entry<UUID, PermissionMatrix> e : playerDefaults.entrySet()) {
-            out.write(1);
-            out.writeLong(e.getKey().getMostSignificantBits());
-            out.writeLong(e.getKey().getLeastSignificantBits());
-            e.getValue().serialize(out, version);
+        int players = playerIds.size();
+        for (int player = 0; player < players; player++) {
+            PermissionMatrix perms = playerDefaults.get(player);
+            if (perms == null) {
+                continue;
+            }
+            writeUUID(out, player);
+            perms.serialize(out, version);
         }
         out.write(0);
 
-        for (Map.Entry<UUID, Set<UUID>> e : trustedPlayers.entrySet()) {
-            out.write(1);
-            out.writeLong(e.getKey().getMostSignificantBits());
-            out.writeLong(e.getKey().getLeastSignificantBits());
-            for (UUID id : e.getValue()) {
-                out.write(1);
-                out.writeLong(id.getMostSignificantBits());
-                out.writeLong(id.getLeastSignificantBits());
+        for (int player = 0; player < players; player++) {
+            int[] trusted = trusts.getTrusted(player);
+            if (trusted.length == 0) {
+                continue;
+            }
+            writeUUID(out, player);
+            for (int id : trusted) {
+                writeUUID(out, id);
             }
             out.write(0);
         }
         out.write(0);
     }
 
+    private void writeUUID(@NotNull DataOutputStream out, int player) throws IOException {
+        UUID uuid = playerIds.getUUID(player);
+        if (uuid == null) {
+            throw new IllegalStateException("Unregistered player id: " + player);
+        }
+        out.write(1);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
     public void saveSafely(@NotNull OutputStream out) throws IOException {
         ByteArrayOutputStream tout = new ByteArrayOutputStream();
         CheckedOutputStream cout = new CheckedOutputStream(tout, new Adler32());
@@ -486,7 +860,55 @@ public class ChunkGroupManager {
      * @param perms The new permissions
      */
     public void setPlayerDefaultPermissions(@NotNull UUID player, @NotNull PermissionMatrix perms) {
-        playerDefaults.put(player, perms);
+        int playerId = playerIds.getOrCreateId(player);
+        WorldChunkSet owned = getOwnedChunks(playerId);
+        long[][] chunks;
+        synchronized (owned) {
+            // Owners that are assigned concurrently either see the new defaults or are part of the snapshot
+            playerDefaults.put(playerId, perms);
+            chunks = owned.getChunks();
+        }
+        modifications.incrementAndGet();
+        for (int world = 0; world < chunks.length; world++) {
+            if (chunks[world] == null) {
+                continue;
+            }
+            for (long chunk : chunks[world]) {
+                refreshPermissionWord(world, (int) (chunk >> 32), (int) chunk);
+            }
+        }
+    }
+
+    /**
+     * Sets the permissions of a chunk group if the current permissions of the group are the expected permissions,
+     * as per {@link AtomicReference#compareAndSet(Object, Object)}. The permissions of a group should only be altered
+     * through this method, as the effective permissions of the chunks of the group are cached otherwise.
+     *
+     * @param group The chunk group
+     * @param expected The expected current permissions of the group
+     * @param perms The new permissions of the group
+     * @return True if the permissions were set, false if the current permissions were not the expected ones
+     */
+    public boolean compareAndSetPermissions(@NotNull ChunkGroup group, @NotNull PermissionMatrix expected, @NotNull PermissionMatrix perms) {
+        if (!group.permissionRef().compareAndSet(expected, perms)) {
+            return false;
+        }
+        modifications.incrementAndGet();
+        refreshPermissionWords(group);
+        return true;
+    }
+
+    /**
+     * Obtains the amount of modifications of the state that is persisted by {@link #saveSafely(OutputStream)},
+     * such as the assignment of chunks to groups or the alteration of trust relations and permissions.
+     * The count is only meant to be compared with earlier counts in order to detect whether the state was
+     * modified in the meantime. Modifications of the permissions of a group that bypass
+     * {@link #compareAndSetPermissions(ChunkGroup, PermissionMatrix, PermissionMatrix)} are not counted.
+     *
+     * @return The modification count
+     */
+    public int getModificationCount() {
+        return modifications.get();
     }
 
     /**
@@ -500,7 +922,7 @@ public class ChunkGroupManager {
      */
     @Nullable
     public Set<ChunkGroup> getOwnedGroups(@NotNull UUID player) {
-        return this.playerGroups.get(player);
+        return this.playerGroups.get(playerIds.getId(player));
     }
 
     /**
@@ -516,18 +938,18 @@ public class ChunkGroupManager {
     @NotNull
     public ChunkGroup createChunkGroup(@NotNull UUID player, @NotNull String name) throws ElementAlreadyExistsException {
         PermissionMatrix perms = PermissionMatrix.DEFAULT;
-        Set<WorldPosition> positions = ConcurrentHashMap.newKeySet();
-        if (positions == null) {
-            throw new NullPointerException();
-        }
-        ChunkGroup group = new ChunkGroup(name, player, new AtomicReference<>(perms), positions);
+        player = intern(playerIds, player);
+        ChunkGroup group = new ChunkGroup(name, player, new AtomicReference<>(perms), new WorldChunkSet(), nextGroupId.getAndIncrement());
         if (groupNames.putIfAbsent(new PlayerAttachedString(player, name), group) != null) {
             throw new ElementAlreadyExistsException("There is already a chunk group with the given owner and name.");
         }
-        Set<ChunkGroup> playerGroups = this.playerGroups.get(player);
+        groupsById.put(group.id(), group);
+        modifications.incrementAndGet();
+        int playerId = playerIds.getId(player);
+        Set<ChunkGroup> playerGroups = this.playerGroups.get(playerId);
         if (playerGroups == null) {
             playerGroups = ConcurrentHashMap.newKeySet();
-            Set<ChunkGroup> retained = this.playerGroups.putIfAbsent(player, playerGroups);
+            Set<ChunkGroup> retained = this.playerGroups.putIfAbsent(playerId, playerGroups);
             if (retained != null) {
                 playerGroups = retained;
             }
@@ -539,16 +961,218 @@ public class ChunkGroupManager {
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof ChunkGroupManager other) {
-            return other.groupedChunks.equals(this.groupedChunks)
-                    && other.playerDefaults.equals(this.playerDefaults)
-                    && other.trustedPlayers.equals(this.trustedPlayers);
+            return other.getGroupedChunksByName().equals(this.getGroupedChunksByName())
+                    && other.getDefaultsByUUID().equals(this.getDefaultsByUUID())
+                    && other.getTrustsByUUID().equals(this.getTrustsByUUID())
+                    && other.getGroupTrustsByName().equals(this.getGroupTrustsByName());
         }
         return false;
     }
 
     @Nullable
     public ChunkGroup getGroupAt(@NotNull WorldPosition position) {
-        return groupedChunks.get(position);
+        return getGroupAt(worldIds.getId(position.world()), getX(position), getZ(position));
+    }
+
+    /**
+     * Obtains the chunk group a chunk is assigned to. Unlike {@link #getGroupAt(WorldPosition)} this method
+     * does not require the position to be allocated, which makes it suitable for frequent permission checks.
+     *
+     * @param world The id of the world as provided by the world {@link UUIDRegistry}
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @return The chunk group of the chunk, or null if the chunk is not grouped
+     */
+    @Nullable
+    public ChunkGroup getGroupAt(int world, int x, int z) {
+        RegionatedIntIntToIntMap groups = groupIndex.get(world);
+        return groups == null ? null : groupsById.get(groups.get(x, z));
+    }
+
+    @NotNull
+    private RegionatedIntIntToIntMap getOrCreateGroupIndex(int world) {
+        RegionatedIntIntToIntMap groups = groupIndex.get(world);
+        if (groups == null) {
+            groups = new RegionatedIntIntToIntMap(NO_GROUP);
+            RegionatedIntIntToIntMap retain = groupIndex.putIfAbsent(world, groups);
+            if (retain != null) { // Race condition
+                groups = retain;
+            }
+        }
+        return groups;
+    }
+
+    private static int getX(@NotNull WorldPosition position) {
+        return (int) (position.chunkPos() >> 32);
+    }
+
+    private static int getZ(@NotNull WorldPosition position) {
+        return (int) position.chunkPos();
+    }
+
+    private long getPermissionWord(int world, int x, int z) {
+        RegionatedIntIntToLongMap words = permissionWords.get(world);
+        return words == null ? 0L : words.get(x, z);
+    }
+
+    private boolean isPermitted(int player, int world, int x, int z, int permission) {
+        long word = getPermissionWord(world, x, z);
+        if (word == 0L) {
+            return true;
+        }
+        int owner = (int) word - 1;
+        int packed = (int) (word >>> 32);
+        if (owner == player) {
+            return PermissionMatrix.isPermitted(packed, permission, PermissionMatrix.PERSON_OWNER);
+        }
+        boolean stranger = PermissionMatrix.isPermitted(packed, permission, PermissionMatrix.PERSON_STRANGER);
+        if (stranger == PermissionMatrix.isPermitted(packed, permission, PermissionMatrix.PERSON_TRUSTED)) {
+            return stranger; // The relationship does not matter
+        }
+        if (isTrusted(owner, player)) {
+            return !stranger;
+        }
+        if ((word & GROUP_TRUSTS) != 0) {
+            ChunkGroup group = getGroupAt(world, x, z);
+            if (group != null && groupTrusts.isTrusted(group.id(), player)) {
+                return !stranger;
+            }
+        }
+        return stranger;
+    }
+
+    private long computePermissionWord(int owner, int world, int x, int z) {
+        ChunkGroup group = getGroupAt(world, x, z);
+        PermissionMatrix perms = getPermissionMatrix(owner, group);
+        long word = ((long) perms.pack() << 32) | ((owner + 1) & 0xFFFFFFFFL);
+        if (group != null && groupTrusts.trustsAnyone(group.id())) {
+            word |= GROUP_TRUSTS;
+        }
+        return word;
+    }
+
+    /**
+     * Recomputes the effective permissions of a chunk after the permissions that apply to the chunk were modified.
+     * The owner of the chunk is retained, unowned chunks are left untouched.
+     *
+     * @param world The id of the world of the chunk
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     */
+    private void refreshPermissionWord(int world, int x, int z) {
+        RegionatedIntIntToLongMap words = permissionWords.get(world);
+        if (words == null) {
+            return;
+        }
+        while (true) {
+            long word = words.get(x, z);
+            if (word == 0L) {
+                return;
+            }
+            long updated = computePermissionWord((int) word - 1, world, x, z);
+            if (word == updated || words.compareAndSet(x, z, word, updated)) {
+                return;
+            }
+        }
+    }
+
+    private void refreshPermissionWords(@NotNull ChunkGroup group) {
+        long[][] claimed = group.claimedChunks().getChunks();
+        for (int world = 0; world < claimed.length; world++) {
+            if (claimed[world] == null) {
+                continue;
+            }
+            for (long chunk : claimed[world]) {
+                refreshPermissionWord(world, (int) (chunk >> 32), (int) chunk);
+            }
+        }
+    }
+
+    /**
+     * Sets the owner of a chunk, which is the leader of the chunk as tracked by {@link PresenceData}.
+     * The owner defines which permissions apply to a chunk that is not within a chunk group and to whom the
+     * {@link PermissionMatrix#PERSON_OWNER owner} and {@link PermissionMatrix#PERSON_TRUSTED trusted} permissions apply.
+     * This method is fully safe to use in a concurrent environment, provided it isn't within the loading phase.
+     *
+     * @param world The id of the world as provided by the world {@link UUIDRegistry}
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @param owner The id of the owner as provided by the player {@link UUIDRegistry}, {@link UUIDRegistry#UNKNOWN_ID} if the chunk is unowned
+     */
+    public void setOwner(int world, int x, int z, int owner) {
+        RegionatedIntIntToLongMap words = permissionWords.get(world);
+        if (words == null) {
+            if (owner == UUIDRegistry.UNKNOWN_ID) {
+                return;
+            }
+            words = new RegionatedIntIntToLongMap();
+            RegionatedIntIntToLongMap retain = permissionWords.putIfAbsent(world, words);
+            if (retain != null) { // Race condition
+                words = retain;
+            }
+        }
+        long chunk = PresenceData.hashPositions(x, z);
+        while (true) {
+            long word = words.get(x, z);
+            int previous = (int) word - 1;
+            if (owner == UUIDRegistry.UNKNOWN_ID) {
+                if (word == 0L) {
+                    return;
+                }
+                if (words.compareAndSet(x, z, word, 0L)) {
+                    pruneOwnedChunk(previous, words, world, x, z);
+                    return;
+                }
+                continue;
+            }
+            WorldChunkSet owned = getOwnedChunks(owner);
+            synchronized (owned) {
+                long updated = computePermissionWord(owner, world, x, z);
+                if (word != updated && !words.compareAndSet(x, z, word, updated)) {
+                    continue;
+                }
+                owned.add(world, chunk);
+            }
+            if (word != 0L && previous != owner) {
+                pruneOwnedChunk(previous, words, world, x, z);
+            }
+            return;
+        }
+    }
+
+    @NotNull
+    private WorldChunkSet getOwnedChunks(int player) {
+        WorldChunkSet owned = ownedChunks.get(player);
+        if (owned == null) {
+            owned = new WorldChunkSet();
+            WorldChunkSet retained = ownedChunks.putIfAbsent(player, owned);
+            if (retained != null) { // Race condition
+                owned = retained;
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * Removes a chunk from the {@link #ownedChunks owned chunks} of a player unless the player owns the chunk (again).
+     *
+     * @param player The id of the player that previously owned the chunk
+     * @param words The permission words of the world of the chunk
+     * @param world The id of the world of the chunk
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     */
+    private void pruneOwnedChunk(int player, @NotNull RegionatedIntIntToLongMap words, int world, int x, int z) {
+        WorldChunkSet owned = ownedChunks.get(player);
+        if (owned == null) {
+            return;
+        }
+        synchronized (owned) {
+            long word = words.get(x, z);
+            if (word == 0L || (int) word - 1 != player) {
+                owned.remove(world, PresenceData.hashPositions(x, z));
+            }
+        }
     }
 
     @Nullable
@@ -567,18 +1191,64 @@ public class ChunkGroupManager {
      * @return True if the chunk position was added to the chunk group without problems. False if it was not performed (e.g. already assigned to a different group)
      */
     public boolean addChunk(@NotNull ChunkGroup group, @NotNull WorldPosition position) {
-        ChunkGroup old = groupedChunks.putIfAbsent(position, group);
-        if (old == group) {
-            return true;
+        return addChunk(group, worldIds.getOrCreateId(position.world()), getX(position), getZ(position));
+    }
+
+    /**
+     * Assigns a chunk to a given group, see {@link #addChunk(ChunkGroup, WorldPosition)}.
+     *
+     * @param group The group to assign the chunk to
+     * @param world The id of the world as provided by the world {@link UUIDRegistry}
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @return True if the chunk was added to the chunk group without problems. False if it was not performed (e.g. already assigned to a different group)
+     */
+    public boolean addChunk(@NotNull ChunkGroup group, int world, int x, int z) {
+        RegionatedIntIntToIntMap groups = getOrCreateGroupIndex(world);
+        if (!groups.compareAndSet(x, z, NO_GROUP, group.id())) {
+            return groups.get(x, z) == group.id();
+        }
+        boolean ch = group.claimedChunks().add(world, PresenceData.hashPositions(x, z));
+        if (!ch) {
+            System.err.println("Error code L538. Please report this issue to the maintainers of Presence.");
         }
-        if (old == null) {
-            boolean ch = group.claimedChunks().add(position);
-            if (!ch) {
-                System.err.println("Error code L538. Please report this issue to the maintainers of Presence.");
+        modifications.incrementAndGet();
+        refreshPermissionWord(world, x, z);
+        return true;
+    }
+
+    /**
+     * Assigns multiple chunks of a world to a given group in a single pass. Chunks that are already assigned to a group,
+     * including the given group, are skipped. The chunks are assigned one after another and only then added to the
+     * {@link ChunkGroup#claimedChunks() claimed chunks} of the group, so concurrent readers may observe a batch that is only
+     * partially assigned, or chunks that are assigned to the group but not yet claimed by it. Like many other operations
+     * within this class, this method is perfectly safe to invoke in a concurrent environment.
+     *
+     * @param group The group to assign the chunks to
+     * @param world The id of the world as provided by the world {@link UUIDRegistry}
+     * @param chunks The positions of the chunks as per {@link PresenceData#hashPositions(int, int)}. The chunks that were
+     * assigned are moved to the start of the array.
+     * @param count The amount of chunks to assign, starting from the first element of the array
+     * @return The amount of chunks that were assigned to the group
+     */
+    public int addChunks(@NotNull ChunkGroup group, int world, long @NotNull[] chunks, int count) {
+        RegionatedIntIntToIntMap groups = getOrCreateGroupIndex(world);
+        int assigned = 0;
+        for (int i = 0; i < count; i++) {
+            long chunk = chunks[i];
+            if (groups.compareAndSet((int) (chunk >> 32), (int) chunk, NO_GROUP, group.id())) {
+                chunks[assigned++] = chunk;
             }
-            return true;
         }
-        return false;
+        // Chunks that were claimed already are assigned to the group all the same, so they count as assigned
+        group.claimedChunks().addAll(world, chunks, assigned);
+        if (assigned != 0) {
+            modifications.incrementAndGet();
+        }
+        for (int i = 0; i < assigned; i++) {
+            refreshPermissionWord(world, (int) (chunks[i] >> 32), (int) chunks[i]);
+        }
+        return assigned;
     }
 
     /**
@@ -594,28 +1264,88 @@ public class ChunkGroupManager {
      * @return True if a change occurred, false otherwise
      */
     public boolean removeChunk(@NotNull ChunkGroup group, @NotNull WorldPosition position) {
-        if (!group.claimedChunks().remove(position)) {
+        int world = worldIds.getId(position.world());
+        if (world == UUIDRegistry.UNKNOWN_ID) {
             return false;
         }
-        if (!groupedChunks.remove(position, group)) {
+        return removeChunk(group, world, getX(position), getZ(position));
+    }
+
+    /**
+     * Removes a chunk from the given group, see {@link #removeChunk(ChunkGroup, WorldPosition)}.
+     *
+     * @param group The group to remove the chunk from
+     * @param world The id of the world as provided by the world {@link UUIDRegistry}
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @return True if a change occurred, false otherwise
+     */
+    public boolean removeChunk(@NotNull ChunkGroup group, int world, int x, int z) {
+        if (!group.claimedChunks().remove(world, PresenceData.hashPositions(x, z))) {
+            return false;
+        }
+        modifications.incrementAndGet();
+        if (!getOrCreateGroupIndex(world).compareAndSet(x, z, group.id(), NO_GROUP)) {
             // Race condition. I am unsure how to solve this one
             System.err.println("Error code L563. Please report this issue to the maintainers of Presence.");
         }
+        refreshPermissionWord(world, x, z);
         return true;
     }
 
+    /**
+     * Removes multiple chunks of a world from a given group in a single pass, which is the reverse of
+     * {@link #addChunks(ChunkGroup, int, long[], int)}. Chunks that are not assigned to the group are skipped.
+     *
+     * @param group The group to remove the chunks from
+     * @param world The id of the world as provided by the world {@link UUIDRegistry}
+     * @param chunks The positions of the chunks as per {@link PresenceData#hashPositions(int, int)}. The chunks that were
+     * removed are moved to the start of the array.
+     * @param count The amount of chunks to remove, starting from the first element of the array
+     * @return The amount of chunks that were removed from the group
+     */
+    public int removeChunks(@NotNull ChunkGroup group, int world, long @NotNull[] chunks, int count) {
+        RegionatedIntIntToIntMap groups = groupIndex.get(world);
+        if (groups == null) {
+            return 0;
+        }
+        int candidates = 0;
+        for (int i = 0; i < count; i++) {
+            long chunk = chunks[i];
+            if (groups.get((int) (chunk >> 32), (int) chunk) == group.id()) {
+                chunks[candidates++] = chunk;
+            }
+        }
+        int removed = group.claimedChunks().removeAll(world, chunks, candidates);
+        if (removed != 0) {
+            modifications.incrementAndGet();
+        }
+        int unassigned = 0;
+        for (int i = 0; i < removed; i++) {
+            long chunk = chunks[i];
+            int x = (int) (chunk >> 32);
+            int z = (int) chunk;
+            // A chunk that is no longer assigned to the group within the index was not removed by this invocation
+            if (groups.compareAndSet(x, z, group.id(), NO_GROUP)) {
+                chunks[unassigned++] = chunk;
+            }
+            refreshPermissionWord(world, x, z);
+        }
+        return unassigned;
+    }
+
     public void setChunk(@NotNull ChunkGroup group, @NotNull WorldPosition position) {
-        ChunkGroup currentAssigned = groupedChunks.get(position);
+        ChunkGroup currentAssigned = getGroupAt(position);
         if (currentAssigned == group) {
             return;
         }
         while (!addChunk(group, position)) {
-            currentAssigned = groupedChunks.get(position);
+            currentAssigned = getGroupAt(position);
             if (currentAssigned == null) { // shouldn't happen
                 continue;
             }
             while (!removeChunk(currentAssigned, position)) {
-                currentAssigned = groupedChunks.get(position);
+                currentAssigned = getGroupAt(position);
                 if (currentAssigned == null) {
                     break;
                 }
@@ -5,27 +5,47 @@ import java.util.Set;
 import org.bukkit.Material;
 import org.jetbrains.annotations.NotNull;
 
+import de.geolykt.presence.common.util.ContenderTable;
+import de.geolykt.presence.common.util.ScoreDecay;
+
 public class Configuration {
 
     private final int autosaveInterval;
     private final int claimTickInterval;
     private final int claimTravelInterval;
+    private final int compressionLevel;
+    private final int contendersPerChunk;
+    private final int journalCommitInterval;
     private final int scoreboardRefreshInterval;
     private final double tickNearbyChunksChance;
     private final boolean allowFlight;
+    private final boolean asyncClaimTicking;
+
+    @NotNull
+    private final ScoreDecay scoreDecay;
+
+    @NotNull
+    private final ContenderTable.Storage contenderStorage;
 
     @NotNull
     private final Set<Material> harvestableCrops;
 
     public Configuration(int sbRefresh, int tickInterval, int travelInterval,
-            int autosave, double recursiveTickChance,
-            boolean flightInClaims, @NotNull Set<Material> harvestableCrops) {
+            int autosave, int journalCommitInterval, int compressionLevel, double recursiveTickChance,
+            boolean flightInClaims, boolean asyncClaimTicking, @NotNull ScoreDecay scoreDecay,
+            int contendersPerChunk, @NotNull ContenderTable.Storage contenderStorage, @NotNull Set<Material> harvestableCrops) {
         this.scoreboardRefreshInterval = sbRefresh;
         this.claimTickInterval = tickInterval;
         this.claimTravelInterval = travelInterval;
         this.autosaveInterval = autosave;
+        this.journalCommitInterval = journalCommitInterval;
+        this.compressionLevel = compressionLevel;
         this.tickNearbyChunksChance = recursiveTickChance;
         this.allowFlight = flightInClaims;
+        this.asyncClaimTicking = asyncClaimTicking;
+        this.scoreDecay = scoreDecay;
+        this.contendersPerChunk = contendersPerChunk;
+        this.contenderStorage = contenderStorage;
         this.harvestableCrops = harvestableCrops;
     }
 
@@ -42,6 +62,16 @@ public class Configuration {
         return autosaveInterval;
     }
 
+    /**
+     * The interval between the commits of the journal, which is written between autosaves so that a crash
+     * does not lose all modifications since the last autosave. 0 or less disables the journal.
+     *
+     * @return The journal commit interval in ticks
+     */
+    public int getJournalCommitInterval() {
+        return journalCommitInterval;
+    }
+
     public int getClaimTickInterval() {
         return claimTickInterval;
     }
@@ -57,14 +87,62 @@ public class Configuration {
         return claimTravelInterval;
     }
 
+    /**
+     * The {@link java.util.zip.Deflater} level of the saved data, see {@link PresenceData#setCompressionLevel(int)}.
+     *
+     * @return The compression level from 1 to 9, or 0 if the saved data is not compressed
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * The amount of players with the most presence that are tracked per chunk.
+     *
+     * @return The amount of contenders per chunk
+     */
+    public int getContendersPerChunk() {
+        return contendersPerChunk;
+    }
+
+    /**
+     * The storage engine of the contenders of the chunks, which also holds the owners of the chunks.
+     *
+     * @return The storage engine of the contenders
+     */
+    @NotNull
+    public ContenderTable.Storage getContenderStorage() {
+        return contenderStorage;
+    }
+
     public int getScoreboardRefreshInterval() {
         return scoreboardRefreshInterval;
     }
 
+    /**
+     * The decay of presence scores. The decay interval is in minutes.
+     *
+     * @return The decay of presence scores
+     */
+    @NotNull
+    public ScoreDecay getScoreDecay() {
+        return scoreDecay;
+    }
+
     public double getTickNearbyChunksChance() {
         return tickNearbyChunksChance;
     }
 
+    /**
+     * Checks whether claims should be ticked outside of the main server thread. If true, the main thread
+     * only captures the positions of the players while a dedicated worker thread applies the ticks.
+     *
+     * @return True if claim ticking is performed asynchronously
+     */
+    public boolean isClaimTickingAsync() {
+        return asyncClaimTicking;
+    }
+
     /**
      * Checks whether a given material is an harvestable crop. This is used indirectly by
      * {@link PermissionMatrix#canHarvestCrops(int)} and other methods.
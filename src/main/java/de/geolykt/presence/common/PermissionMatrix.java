@@ -17,6 +17,21 @@ public final class PermissionMatrix {
     public static final byte PERSON_STRANGER = 0b00_00_00_10;
     public static final byte PERSON_TRUSTED  = 0b00_00_01_00;
 
+    /**
+     * The offsets of the individual permissions within the word returned by {@link #pack()}. Every permission
+     * occupies three bits, which are laid out like the bits of {@link #PERSON_OWNER}, {@link #PERSON_STRANGER}
+     * and {@link #PERSON_TRUSTED}. Explosions only occupy a single bit.
+     */
+    public static final int PACKED_ATTACK = 0;
+    public static final int PACKED_ATTACK_NAMED = 3;
+    public static final int PACKED_BUILD = 6;
+    public static final int PACKED_DESTROY = 9;
+    public static final int PACKED_HARVEST_CROPS = 12;
+    public static final int PACKED_INTERACT = 15;
+    public static final int PACKED_INTERACT_ENTITY = 18;
+    public static final int PACKED_TRAMPLE = 21;
+    public static final int PACKED_EXPLOSIONS = 24;
+
     @NotNull
     public static final PermissionMatrix DEFAULT = new PermissionMatrix(
             PERSON_OWNER | PERSON_TRUSTED,
@@ -343,6 +358,41 @@ public final class PermissionMatrix {
         return explosions;
     }
 
+    /**
+     * Checks whether a person has a permission within a word returned by {@link #pack()}.
+     *
+     * @param packed The packed permission matrix
+     * @param permission The offset of the permission, such as {@link #PACKED_BUILD}
+     * @param person The person to check, such as {@link #PERSON_TRUSTED}. Should be 1 for {@link #PACKED_EXPLOSIONS}
+     * @return True if the person has the permission
+     */
+    @Contract(pure = true)
+    public static boolean isPermitted(int packed, int permission, int person) {
+        return ((packed >>> permission) & person) != 0;
+    }
+
+    /**
+     * Packs the permission matrix into a single word, which allows to store the permissions without referring to
+     * a matrix instance. The word can be queried via {@link #isPermitted(int, int, int)}.
+     *
+     * @return The packed permission matrix
+     */
+    @Contract(pure = true)
+    public final int pack() {
+        int packed = (this.attack & 0b111) << PACKED_ATTACK;
+        packed |= (this.attackNamed & 0b111) << PACKED_ATTACK_NAMED;
+        packed |= (this.build & 0b111) << PACKED_BUILD;
+        packed |= (this.destroy & 0b111) << PACKED_DESTROY;
+        packed |= (this.harvestCrops & 0b111) << PACKED_HARVEST_CROPS;
+        packed |= (this.interact & 0b111) << PACKED_INTERACT;
+        packed |= (this.interactEntity & 0b111) << PACKED_INTERACT_ENTITY;
+        packed |= (this.trample & 0b111) << PACKED_TRAMPLE;
+        if (this.explosions) {
+            packed |= 1 << PACKED_EXPLOSIONS;
+        }
+        return packed;
+    }
+
     public final void serialize(@NotNull OutputStream out, short version) throws IOException {
         out.write(this.attack);
         out.write(this.attackNamed);
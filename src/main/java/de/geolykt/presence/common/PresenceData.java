@@ -1,35 +1,60 @@
 package de.geolykt.presence.common;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.util.Map;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.zip.Adler32;
 import java.util.zip.CheckedInputStream;
-import java.util.zip.CheckedOutputStream;
-import java.util.zip.Checksum;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import de.geolykt.presence.common.util.PlayerAttachedPosition;
+import com.google.common.primitives.Longs;
+import com.google.common.primitives.Shorts;
+
+import de.geolykt.presence.common.util.BlockCompression;
+import de.geolykt.presence.common.util.CheckedFileWriter;
+import de.geolykt.presence.common.util.ChunkScoreMap;
+import de.geolykt.presence.common.util.ContenderTable;
+import de.geolykt.presence.common.util.DenseIdMap;
+import de.geolykt.presence.common.util.HeapContenderTable;
 import de.geolykt.presence.common.util.PlayerAttachedScore;
+import de.geolykt.presence.common.util.PlayerChunkIndex;
+import de.geolykt.presence.common.util.PlayerChunkPosition;
+import de.geolykt.presence.common.util.RegionatedIntIntToLongMap;
 import de.geolykt.presence.common.util.RegionatedIntIntToObjectMap;
-import de.geolykt.presence.common.util.UUIDIntIntConcurrentMap;
-import de.geolykt.presence.common.util.WorldPosition;
+import de.geolykt.presence.common.util.ScoreDecay;
+import de.geolykt.presence.common.util.UUIDRegistry;
+import de.geolykt.presence.common.util.VarInts;
+import de.geolykt.presence.common.util.WriteAheadJournal;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
 import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
 /**
  * Base data holder.
@@ -42,110 +67,342 @@ public class PresenceData {
         return (((long) x) << 32) | (y & 0xFFFFFFFFL);
     }
 
+    /**
+     * The presence of every player in every chunk, keyed by the ids provided by {@link #playerIds} and {@link #worldIds}.
+     */
     @NotNull
-    private final ChunkGroupManager chunkGroups = new ChunkGroupManager();
-
-    private final Map<PlayerAttachedPosition, PlayerAttachedScore> counts = new ConcurrentHashMap<>();
+    private final ChunkScoreMap counts;
 
-    private final UUIDIntIntConcurrentMap<PlayerAttachedScore> leaders = new UUIDIntIntConcurrentMap<>();
+    @NotNull
+    private final ScoreDecay decay;
 
     private final double recursiveTick;
 
-    private final Map<WorldPosition, PlayerAttachedScore> successors = new ConcurrentHashMap<>();
+    /**
+     * The players with the most presence in every chunk, keyed by the ids provided by {@link #worldIds}.
+     * The first contender of a chunk is the owner of the chunk.
+     */
+    @NotNull
+    private final DenseIdMap<ContenderTable> contenders = new DenseIdMap<>();
+
+    /**
+     * The presence functions of every world, keyed by the ids provided by {@link #worldIds}. See {@link #getPresenceFunction(int)}.
+     */
+    @NotNull
+    private final DenseIdMap<ContenderTable.ChunkPresence> presenceFunctions = new DenseIdMap<>();
+
+    private final int contenderCapacity;
+
+    @NotNull
+    private final ContenderTable.Storage contenderStorage;
+
+    /**
+     * The chunks every player has presence in, keyed by the ids provided by {@link #playerIds} and {@link #worldIds}.
+     */
+    @NotNull
+    private final PlayerChunkIndex playerChunks = new PlayerChunkIndex();
+
+    /**
+     * The ids of all known players. Shared with {@link #chunkGroups} and persisted, so the ids are stable across restarts.
+     */
+    @NotNull
+    private final UUIDRegistry playerIds = new UUIDRegistry();
+
+    /**
+     * The ids of all known worlds. Shared with {@link #chunkGroups} and persisted, so the ids are stable across restarts.
+     */
+    @NotNull
+    private final UUIDRegistry worldIds = new UUIDRegistry();
+
+    @NotNull
+    private final ChunkGroupManager chunkGroups = new ChunkGroupManager(playerIds, worldIds);
+
+    /**
+     * The journal of the modifications since the last save, or null if journaling is not enabled.
+     * See {@link #enableJournal(File)}.
+     */
+    @Nullable
+    private volatile WriteAheadJournal journal;
+
+    /**
+     * The generation of the next journal file. Every journal file is named after its generation and only
+     * contains modifications that happened after the modifications of the files with a lower generation.
+     */
+    private long journalGeneration; // Guarded by "this"
+
+    /**
+     * The {@link ChunkGroupManager#getModificationCount() modification count} of the chunk groups as of the last
+     * time the chunk groups were written to the journal.
+     */
+    private volatile int journaledGroupModifications;
+
+    /**
+     * The ids of the players and worlds whose UUID was already written to the current journal file. Journal records refer
+     * to players and worlds by their id, and the UUID of an id is only written the first time the file refers to the id.
+     * Only accessed while records are appended to the journal and while the journal is rotated.
+     */
+    @NotNull
+    private final BitSet journaledPlayers = new BitSet();
+
+    @NotNull
+    private final BitSet journaledWorlds = new BitSet();
+
+    /**
+     * The sequence number of the next journal record. Records are numbered in the order they are appended to the journal.
+     * Every region file and chunkgroups.dat stores the sequence number of the first record it does not include,
+     * so that replaying the journal skips the records that are already part of the saved files.
+     */
+    @NotNull
+    private final AtomicLong journalSequence = new AtomicLong();
+
+    /**
+     * Makes capturing the state for a save atomic with respect to journaled modifications.
+     * Modifications hold the read lock while they are written to the journal and applied, while a save holds the write lock
+     * while it rotates the journal, and again for every region it captures. Every journaled modification of a region is thus
+     * either included by the region file or has a sequence number that is at least the one stored in the region file.
+     */
+    @NotNull
+    private final ReentrantReadWriteLock journalLock = new ReentrantReadWriteLock();
+
+    /**
+     * The state of a replay of the journal while loading, see {@link #replayJournal(Path, JournalReplay)}.
+     *
+     * @author Geolykt
+     */
+    private static final class JournalReplay {
+
+        /**
+         * The {@link PresenceData#journalSequence sequence numbers} stored in the region files, keyed by the id of the
+         * world and the region coordinates. Regions without a file do not include any record.
+         */
+        @NotNull
+        private final DenseIdMap<RegionatedIntIntToLongMap> regionSequences = new DenseIdMap<>();
+
+        /**
+         * The sequence number stored in chunkgroups.dat.
+         */
+        private long chunkGroupSequence;
+
+        /**
+         * The lowest sequence number that is not used by any saved file or replayed record.
+         */
+        private long nextSequence;
+
+        /**
+         * The ids of the players and worlds defined by the journal file that is being replayed, indexed by the id
+         * used within the file. Undefined ids are -1.
+         */
+        private int @NotNull[] players = new int[0];
+
+        private int @NotNull[] worlds = new int[0];
+
+        private void startFile() {
+            players = new int[0];
+            worlds = new int[0];
+        }
+
+        private static int @NotNull[] define(int @NotNull[] ids, int journalId, int id) throws IOException {
+            if (journalId < 0) {
+                throw new IOException("Negative id in the journal: " + journalId);
+            }
+            if (journalId >= ids.length) {
+                int oldLength = ids.length;
+                ids = Arrays.copyOf(ids, Math.max(journalId + 1, oldLength << 1));
+                Arrays.fill(ids, oldLength, ids.length, -1);
+            }
+            ids[journalId] = id;
+            return ids;
+        }
+
+        private static int resolve(int @NotNull[] ids, int journalId) throws IOException {
+            if (journalId < 0 || journalId >= ids.length || ids[journalId] == -1) {
+                throw new IOException("Undefined id in the journal: " + journalId);
+            }
+            return ids[journalId];
+        }
+
+        private long getRegionSequence(int world, int x, int z) {
+            RegionatedIntIntToLongMap sequences = regionSequences.get(world);
+            return sequences == null ? 0 : sequences.get(x >> 8, z >> 8);
+        }
+
+        private synchronized void setRegionSequence(int world, int regionX, int regionZ, long sequence) {
+            RegionatedIntIntToLongMap sequences = regionSequences.get(world);
+            if (sequences == null) {
+                sequences = new RegionatedIntIntToLongMap();
+                regionSequences.put(world, sequences);
+            }
+            sequences.put(regionX, regionZ, sequence);
+            nextSequence = Math.max(nextSequence, sequence);
+        }
+    }
+
+    /**
+     * The folder within the data folder that contains the region files of the presence counts.
+     */
+    @NotNull
+    private static final String REGIONS_FOLDER = "regions";
+
+    /**
+     * The first byte of presence counts in the current format. Presence counts in the legacy format start with the
+     * marker of their first entry instead, which is either 1 or 2, or 0 if there are no entries.
+     */
+    private static final int STATE_V2 = 3;
+
+    /**
+     * The first byte of presence counts that are stored within a {@link BlockCompression} container.
+     */
+    private static final int STATE_COMPRESSED = 4;
+
+    /**
+     * The first byte of presence counts that are preceded by the {@link #journalSequence sequence number} of the first
+     * journal record they do not include. The presence counts themselves start with their own marker.
+     */
+    private static final int STATE_SEQUENCED = 5;
+
+    /**
+     * The {@link java.util.zip.Deflater} level of saved files, or 0 if saved files are not compressed.
+     */
+    private volatile int compressionLevel;
+
+    private static final int JOURNAL_PRESENCE = 1;
+    private static final int JOURNAL_CHUNK_GROUPS = 2;
+    private static final int JOURNAL_PURGE = 3;
+    private static final int JOURNAL_PLAYER = 4;
+    private static final int JOURNAL_WORLD = 5;
+
+    /**
+     * The amount of players per chunk whose presence is tracked by default.
+     */
+    public static final int DEFAULT_CONTENDERS = 4;
 
     public PresenceData(double tickNearbyChance) {
+        this(tickNearbyChance, ScoreDecay.NONE);
+    }
+
+    public PresenceData(double tickNearbyChance, @NotNull ScoreDecay decay) {
+        this(tickNearbyChance, decay, DEFAULT_CONTENDERS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tickNearbyChance The chance of ticking a nearby chunk when ticking a chunk
+     * @param decay The decay of the presence scores. The unit of the decay interval is given by {@link #getCurrentTime()}.
+     * @param contenderCapacity The amount of players with the most presence that are tracked per chunk, at least 2
+     */
+    public PresenceData(double tickNearbyChance, @NotNull ScoreDecay decay, int contenderCapacity) {
+        this(tickNearbyChance, decay, contenderCapacity, ContenderTable.Storage.HEAP);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tickNearbyChance The chance of ticking a nearby chunk when ticking a chunk
+     * @param decay The decay of the presence scores. The unit of the decay interval is given by {@link #getCurrentTime()}.
+     * @param contenderCapacity The amount of players with the most presence that are tracked per chunk, at least 2
+     * @param contenderStorage The storage engine of the contenders (and thus the owners) of the chunks
+     */
+    public PresenceData(double tickNearbyChance, @NotNull ScoreDecay decay, int contenderCapacity, @NotNull ContenderTable.Storage contenderStorage) {
         recursiveTick = tickNearbyChance;
         if (this.recursiveTick >= 1.0D) {
             throw new IllegalArgumentException("The tickNearbyChance can only range from 0.0 to 1.0");
         }
+        if (contenderCapacity < 2) {
+            throw new IllegalArgumentException("At least two contenders need to be tracked per chunk");
+        }
+        this.contenderCapacity = contenderCapacity;
+        this.contenderStorage = contenderStorage;
+        this.decay = decay;
+        this.counts = new ChunkScoreMap(decay, this::getCurrentTime);
     }
 
     public boolean canAttack(@NotNull UUID player, @NotNull UUID world, int x, int y) {
-        WorldPosition pos = new WorldPosition(world, hashPositions(x, y));
-        PlayerAttachedScore record = leaders.get(world, x, y);
-        if (record == null) {
-            return true;
-        }
-        return chunkGroups.canAttack(record.getPlayer(), player, pos);
+        return canAttack(player, worldIds.getId(world), x, y);
+    }
+
+    public boolean canAttack(@NotNull UUID player, int world, int x, int y) {
+        refreshLeaders(world, x, y);
+        return chunkGroups.canAttack(playerIds.getId(player), world, x, y);
     }
 
     public boolean canAttackNamed(@NotNull UUID player, @NotNull UUID world, int x, int y) {
-        WorldPosition pos = new WorldPosition(world, hashPositions(x, y));
-        PlayerAttachedScore record = leaders.get(world, x, y);
-        if (record == null) {
-            return true;
-        }
-        return chunkGroups.canAttackNamedEntities(record.getPlayer(), player, pos);
+        return canAttackNamed(player, worldIds.getId(world), x, y);
+    }
+
+    public boolean canAttackNamed(@NotNull UUID player, int world, int x, int y) {
+        refreshLeaders(world, x, y);
+        return chunkGroups.canAttackNamedEntities(playerIds.getId(player), world, x, y);
     }
 
     public boolean canBreak(@NotNull UUID player, @NotNull UUID world, int x, int y) {
-        WorldPosition pos = new WorldPosition(world, hashPositions(x, y));
-        PlayerAttachedScore record = leaders.get(world, x, y);
-        if (record == null) {
-            return true;
-        }
-        return chunkGroups.canBreak(record.getPlayer(), player, pos);
+        return canBreak(player, worldIds.getId(world), x, y);
+    }
+
+    public boolean canBreak(@NotNull UUID player, int world, int x, int y) {
+        refreshLeaders(world, x, y);
+        return chunkGroups.canBreak(playerIds.getId(player), world, x, y);
     }
 
     public boolean canBuild(@NotNull UUID player, @NotNull UUID world, int x, int y) {
-        WorldPosition pos = new WorldPosition(world, hashPositions(x, y));
-        PlayerAttachedScore record = leaders.get(world, x, y);
-        if (record == null) {
-            return true;
-        }
-        return chunkGroups.canBuild(record.getPlayer(), player, pos);
+        return canBuild(player, worldIds.getId(world), x, y);
+    }
+
+    public boolean canBuild(@NotNull UUID player, int world, int x, int y) {
+        refreshLeaders(world, x, y);
+        return chunkGroups.canBuild(playerIds.getId(player), world, x, y);
     }
 
     public boolean canExplode(@NotNull UUID world, int x, int y) {
-        WorldPosition pos = new WorldPosition(world, hashPositions(x, y));
-        PlayerAttachedScore record = leaders.get(world, x, y);
-        if (record == null) {
-            return true;
-        }
-        return chunkGroups.canExplode(record.getPlayer(), pos);
+        return canExplode(worldIds.getId(world), x, y);
+    }
+
+    public boolean canExplode(int world, int x, int y) {
+        refreshLeaders(world, x, y);
+        return chunkGroups.canExplode(world, x, y);
     }
 
     public boolean canHarvest(@NotNull UUID player, @NotNull UUID world, int x, int y) {
-        WorldPosition pos = new WorldPosition(world, hashPositions(x, y));
-        PlayerAttachedScore record = leaders.get(world, x, y);
-        if (record == null) {
-            return true;
-        }
-        return chunkGroups.canHarvestCrops(record.getPlayer(), player, pos);
+        return canHarvest(player, worldIds.getId(world), x, y);
+    }
+
+    public boolean canHarvest(@NotNull UUID player, int world, int x, int y) {
+        refreshLeaders(world, x, y);
+        return chunkGroups.canHarvestCrops(playerIds.getId(player), world, x, y);
     }
 
     public boolean canInteractWithBlock(@NotNull UUID player, @NotNull UUID world, int x, int y) {
-        WorldPosition pos = new WorldPosition(world, hashPositions(x, y));
-        PlayerAttachedScore record = leaders.get(world, x, y);
-        if (record == null) {
-            return true;
-        }
-        return chunkGroups.canInteract(record.getPlayer(), player, pos);
+        return canInteractWithBlock(player, worldIds.getId(world), x, y);
+    }
+
+    public boolean canInteractWithBlock(@NotNull UUID player, int world, int x, int y) {
+        refreshLeaders(world, x, y);
+        return chunkGroups.canInteract(playerIds.getId(player), world, x, y);
     }
 
     public boolean canInteractWithEntities(@NotNull UUID player, @NotNull UUID world, int x, int y) {
-        WorldPosition pos = new WorldPosition(world, hashPositions(x, y));
-        PlayerAttachedScore record = leaders.get(world, x, y);
-        if (record == null) {
-            return true;
-        }
-        return chunkGroups.canInteractWithEntities(record.getPlayer(), player, pos);
+        return canInteractWithEntities(player, worldIds.getId(world), x, y);
+    }
+
+    public boolean canInteractWithEntities(@NotNull UUID player, int world, int x, int y) {
+        refreshLeaders(world, x, y);
+        return chunkGroups.canInteractWithEntities(playerIds.getId(player), world, x, y);
     }
 
     public boolean canTrample(@NotNull UUID player, @NotNull UUID world, int x, int y) {
-        WorldPosition pos = new WorldPosition(world, hashPositions(x, y));
-        PlayerAttachedScore record = leaders.get(world, x, y);
-        if (record == null) {
-            return true;
-        }
-        return chunkGroups.canTrampleCrops(record.getPlayer(), player, pos);
+        return canTrample(player, worldIds.getId(world), x, y);
+    }
+
+    public boolean canTrample(@NotNull UUID player, int world, int x, int y) {
+        refreshLeaders(world, x, y);
+        return chunkGroups.canTrampleCrops(playerIds.getId(player), world, x, y);
     }
 
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof PresenceData other) {
             return other.chunkGroups.equals(this.chunkGroups)
-                    && other.counts.equals(this.counts);
+                    && hasEqualCounts(other);
         }
         return false;
     }
@@ -155,188 +412,1269 @@ public class PresenceData {
         return chunkGroups;
     }
 
-    @Nullable
-    public PlayerAttachedScore getOwner(@NotNull UUID world, int x, int y) {
-        return leaders.get(world, x, y);
+    /**
+     * Obtains the point in time as used for the decay of presence scores.
+     * By default this is the amount of minutes that passed since the unix epoch.
+     * The returned value should never decrease.
+     *
+     * @return The current point in time
+     */
+    protected int getCurrentTime() {
+        return (int) (System.currentTimeMillis() / 60_000L);
     }
 
-    public int getPresence(@NotNull UUID player, @NotNull UUID world, int x, int y) {
-        PlayerAttachedScore record = counts.get(new PlayerAttachedPosition(player, new WorldPosition(world, hashPositions(x, y))));
-        if (record == null) {
-            return 0;
+    @Nullable
+    private ContenderTable getContenderTable(@NotNull UUID world) {
+        int worldId = worldIds.getId(world);
+        if (worldId == UUIDRegistry.UNKNOWN_ID) {
+            return null;
         }
-        return record.score().get();
+        return contenders.get(worldId);
     }
 
+    @NotNull
+    private ContenderTable getOrCreateContenderTable(int world) {
+        ContenderTable table = contenders.get(world);
+        if (table == null) {
+            table = contenderStorage.create(playerIds, contenderCapacity);
+            ContenderTable retain = contenders.putIfAbsent(world, table);
+            if (retain != null) { // Race condition
+                table = retain;
+            }
+        }
+        return table;
+    }
 
     @Nullable
-    public PlayerAttachedScore getSuccessor(UUID world, int x, int y) {
-        return successors.get(new WorldPosition(world, hashPositions(x, y)));
+    private PlayerAttachedScore getLeader(@NotNull UUID world, int x, int y) {
+        return getLeader(worldIds.getId(world), x, y);
     }
 
-    /**
-     * Obtains a {@link RegionatedIntIntToObjectMap} which represents the owners mapped to chunks.
-     * When using this method the developer should be aware of the implication of {@link RegionatedIntIntToObjectMap}
-     * and should NOT use it to mutate the state of the world.
-     * <p>This method should only really be used for bulk get operations, otherwise {@link #getOwner(UUID, int, int)}
-     * is more suited.
-     *
-     * @param world The world's unique identifier
-     * @return The internal map for a given world, or null if there is no internal ownership map for the world.
-     */
     @Nullable
-    public RegionatedIntIntToObjectMap<PlayerAttachedScore> getWorldOwnerMap(@NotNull UUID world) {
-        return leaders.getSubMap(world);
+    private PlayerAttachedScore getLeader(int world, int x, int y) {
+        ContenderTable table = contenders.get(world);
+        if (table == null) {
+            return null;
+        }
+        if (decay.isEnabled()) {
+            refreshLeaders(table, world, x, y);
+        }
+        return table.getLeader(x, y);
     }
 
     /**
-     * Checks whether fields that are not checked in the {@link PresenceData#equals(Object)} method are equal.
-     * This method is only meant to be used in unit tests as it does not care about the "main" fields that store
-     * the actual state of the object.
-     * <p> Side note: As the data structures used by these auxiliary fields do not support iteration
-     * of keys or values, this method is SLOW as it more or less computes the equality with brute force.
+     * Obtains the index of a world, which can be passed to the overloads of the permission checks
+     * (such as {@link #canBuild(UUID, int, int, int)}) that accept the index instead of the UUID of the world.
+     * Indices are small, dense and never change for the lifetime of this instance, so callers can resolve the
+     * index of a world once (e.g. when the world is loaded) and skip the lookup of the world on every check.
+     * Unlike most other methods, this method registers the world if it is not known yet.
      *
-     * @param other The object to check for auxiliary equality
-     * @param True if the leader and successor maps are equal
-     * @apiNote Not intended to be public api
+     * @param world The UUID of the world
+     * @return The index of the world
      */
-    @Contract(pure = true, value = "null -> fail; !null -> _")
-    protected boolean hasAuxiliaryEquality(@NotNull PresenceData other) {
-        return this.leaders.equals(other.leaders) && this.successors.equals(other.successors);
+    public int getWorldIndex(@NotNull UUID world) {
+        return worldIds.getOrCreateId(world);
     }
 
-    @Override
-    public int hashCode() {
-        return this.counts.hashCode() ^ this.chunkGroups.hashCode() ^ 0xA75176;
+    @Nullable
+    public PlayerAttachedScore getOwner(@NotNull UUID world, int x, int y) {
+        return getLeader(world, x, y);
     }
 
-    public synchronized void load(@NotNull File dataFolder) {
-        if (dataFolder.isFile()) {
-            throw new RuntimeException("Loading from folder attempts to load a file!");
-        }
-        dataFolder.mkdirs();
-
-        loadStates: {
-            File stateFile = new File(dataFolder, "statedb.dat");
-            if (!stateFile.exists()) {
-                break loadStates;
+    /**
+     * Obtains the owners of all chunks within a rectangular area. This is much cheaper than calling
+     * {@link #getOwner(UUID, int, int)} for every chunk of the area, as the world is only resolved once and the
+     * area is read region by region. The owner of the chunk (x, y) is stored at index
+     * {@code (y - fromY) * (toX - fromX + 1) + (x - fromX)}, chunks without an owner are set to null.
+     *
+     * @param world The UUID of the world
+     * @param fromX The smallest X-Coordinate of the area (inclusive, in chunks)
+     * @param fromY The smallest Y-Coordinate of the area (inclusive, in chunks)
+     * @param toX The largest X-Coordinate of the area (inclusive, in chunks)
+     * @param toY The largest Y-Coordinate of the area (inclusive, in chunks)
+     * @param out The array to store the owners in
+     * @throws IllegalArgumentException If the area is empty or the array is too small to hold the area
+     */
+    public void getOwners(@NotNull UUID world, int fromX, int fromY, int toX, int toY, @Nullable PlayerAttachedScore @NotNull[] out) {
+        ContenderTable table = getContenderTable(world);
+        if (table == null) {
+            if (fromX > toX || fromY > toY) {
+                throw new IllegalArgumentException("Empty area: " + fromX + "/" + fromY + " to " + toX + "/" + toY);
             }
-            try (FileInputStream fis = new FileInputStream(stateFile)) {
-                loadStateChecked(fis);
-            } catch (IOException e) {
-                throw new IllegalStateException("Unable to load state db.", e);
+            long area = ((long) toX - fromX + 1) * ((long) toY - fromY + 1);
+            if (area > out.length) {
+                throw new IllegalArgumentException("The array (length " + out.length + ") cannot hold the area " + fromX + "/" + fromY + " to " + toX + "/" + toY);
             }
+            Arrays.fill(out, 0, (int) area, null);
+            return;
         }
-
-        loadChunkGroups: {
-            File chunkGroupsFile = new File(dataFolder, "chunkgroups.dat");
-            if (!chunkGroupsFile.exists()) {
-                break loadChunkGroups;
-            }
-            try (FileInputStream fis = new FileInputStream(chunkGroupsFile)) {
-                chunkGroups.loadSafely(fis);
-            } catch (IOException e) {
-                throw new IllegalStateException("Unable to load chunk groups.", e);
+        table.getLeaders(fromX, fromY, toX, toY, out);
+        if (decay.isEnabled()) {
+            // Decay never creates an owner, so only owned chunks need to be refreshed
+            int width = toX - fromX + 1;
+            int height = toY - fromY + 1;
+            int worldId = worldIds.getId(world);
+            int now = getCurrentTime();
+            for (int row = 0; row < height; row++) {
+                for (int column = 0; column < width; column++) {
+                    int index = row * width + column;
+                    if (out[index] == null) {
+                        continue;
+                    }
+                    int x = fromX + column;
+                    int y = fromY + row;
+                    int flags = table.refresh(x, y, getPresenceFunction(worldId), now);
+                    if ((flags & ContenderTable.LEADER_CHANGED) != 0) {
+                        onLeaderChange(worldId, x, y, flags);
+                        out[index] = table.getLeader(x, y);
+                    }
+                }
             }
         }
     }
 
-    protected void loadState(@NotNull InputStream in) throws IOException {
-        DataInputStream dataIn = new DataInputStream(in);
-
-        while (dataIn.read() > 0) {
-            int value = dataIn.readInt();
-            UUID world = new UUID(dataIn.readLong(), dataIn.readLong());
-            UUID player = new UUID(dataIn.readLong(), dataIn.readLong());
-            int x = dataIn.readInt();
-            int z = dataIn.readInt();
-            long pos = hashPositions(x, z);
-
-            WorldPosition worldPos = new WorldPosition(world, pos);
-            PlayerAttachedPosition entry  = new PlayerAttachedPosition(player, worldPos);
-
-            PlayerAttachedScore oldLeader = leaders.get(world, x, z);
-            PlayerAttachedScore loadedPlayer = new PlayerAttachedScore(player, new AtomicInteger(value));
-            if (oldLeader == null || oldLeader.score().get() < value) {
-                PlayerAttachedScore old = leaders.set(world, x, z, loadedPlayer); // Set the leader to a more accurate value
-                if (old != null) {
-                    successors.put(worldPos, old); // The old leader must have more score than the current successor,
-                    // and thus we can just overwrite the old successor without looking at the old value
-                }
-            } else {
-                PlayerAttachedScore successor = successors.get(worldPos);
-                if (successor == null || successor.score().get() < value) {
-                    // Update successor
-                    successors.put(worldPos, loadedPlayer);
-                }
+    /**
+     * Assigns all chunks within a rectangular area to a chunk group. The area is only assigned if every chunk within it
+     * is owned by the owner of the group, which is validated against the leaders of the chunks for the whole area before
+     * any chunk is assigned. Chunks that are already within a chunk group are left untouched.
+     * Chunks whose leader changed while they were assigned are removed from the group again afterwards.
+     *
+     * @param group The chunk group to assign the chunks to
+     * @param world The UUID of the world
+     * @param fromX The smallest X-Coordinate of the area (inclusive, in chunks)
+     * @param fromY The smallest Y-Coordinate of the area (inclusive, in chunks)
+     * @param toX The largest X-Coordinate of the area (inclusive, in chunks)
+     * @param toY The largest Y-Coordinate of the area (inclusive, in chunks)
+     * @return The amount of chunks that were assigned to the group, or -1 if the owner of the group does not own the whole area
+     * @throws IllegalArgumentException If the area is empty or too large
+     */
+    public int assignChunks(@NotNull ChunkGroup group, @NotNull UUID world, int fromX, int fromY, int toX, int toY) {
+        int area = getArea(fromX, fromY, toX, toY);
+        PlayerAttachedScore[] owners = new PlayerAttachedScore[area];
+        getOwners(world, fromX, fromY, toX, toY, owners);
+        for (PlayerAttachedScore owner : owners) {
+            if (owner == null || !owner.getPlayer().equals(group.owner())) {
+                return -1;
             }
-            if (counts.putIfAbsent(entry, loadedPlayer) != null) {
-                throw new IllegalStateException("Input defined multiple entries for the same player and chunk (data curruption likely)");
+        }
+        int worldId = worldIds.getOrCreateId(world);
+        long[] chunks = getChunks(fromX, fromY, toX, area);
+        int assigned = chunkGroups.addChunks(group, worldId, chunks, area);
+
+        // The leader of a chunk may change between the validation and the assignment, in which case the chunk is
+        // not removed from the group by onLeaderChange
+        ContenderTable table = contenders.get(worldId);
+        int owner = playerIds.getId(group.owner());
+        for (int i = 0; i < assigned; i++) {
+            int x = (int) (chunks[i] >> 32);
+            int y = (int) chunks[i];
+            if (table == null || table.getLeaderId(x, y) != owner) {
+                chunkGroups.removeChunk(group, worldId, x, y);
             }
         }
+        return assigned;
     }
 
-    protected void loadStateChecked(InputStream in) throws IOException {
-        long checksum = ByteBuffer.wrap(in.readNBytes(8)).getLong();
-        Adler32 adler32Checksum = new Adler32();
-        CheckedInputStream checkedIn = new CheckedInputStream(in, adler32Checksum);
-        loadState(checkedIn);
-        if (adler32Checksum.getValue() != checksum) {
-            throw new IOException("State invalid as it breaks the checksum.");
+    /**
+     * Removes all chunks within a rectangular area from a chunk group. Chunks that are not within the group are left untouched.
+     *
+     * @param group The chunk group to remove the chunks from
+     * @param world The UUID of the world
+     * @param fromX The smallest X-Coordinate of the area (inclusive, in chunks)
+     * @param fromY The smallest Y-Coordinate of the area (inclusive, in chunks)
+     * @param toX The largest X-Coordinate of the area (inclusive, in chunks)
+     * @param toY The largest Y-Coordinate of the area (inclusive, in chunks)
+     * @return The amount of chunks that were removed from the group
+     * @throws IllegalArgumentException If the area is empty or too large
+     */
+    public int unassignChunks(@NotNull ChunkGroup group, @NotNull UUID world, int fromX, int fromY, int toX, int toY) {
+        int area = getArea(fromX, fromY, toX, toY);
+        int worldId = worldIds.getId(world);
+        if (worldId == UUIDRegistry.UNKNOWN_ID) {
+            return 0;
         }
+        return chunkGroups.removeChunks(group, worldId, getChunks(fromX, fromY, toX, area), area);
     }
 
-    public synchronized void save(File dataFolder) {
-        // BEWARE: This method is called async, thread safety should be done carefully!
-        if (dataFolder.isFile()) {
-            throw new RuntimeException("Saving to folder attempts to save in file!");
+    private static int getArea(int fromX, int fromY, int toX, int toY) {
+        if (fromX > toX || fromY > toY) {
+            throw new IllegalArgumentException("Empty area: " + fromX + "/" + fromY + " to " + toX + "/" + toY);
         }
-        dataFolder.mkdirs();
-
-        FastByteArrayOutputStream byteOut = new FastByteArrayOutputStream(counts.size() * 50);
-        Checksum checksum = new Adler32();
-        CheckedOutputStream checkedOut = new CheckedOutputStream(byteOut, checksum);
-
-        try {
-            saveStateToStream(checkedOut);
-        } catch (IOException e1) {
-            throw new IllegalStateException("Fatal exception while serializing state.", e1);
+        long area = ((long) toX - fromX + 1) * ((long) toY - fromY + 1);
+        if (area > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Area too large: " + fromX + "/" + fromY + " to " + toX + "/" + toY);
         }
+        return (int) area;
+    }
 
-        try (FileOutputStream fos = new FileOutputStream(new File(dataFolder, "statedb.dat"))) {
-            fos.write(ByteBuffer.allocate(8).putLong(checksum.getValue()).array());
-            fos.write(byteOut.array, 0, (int) byteOut.position());
-        } catch (IOException e) {
-            throw new IllegalStateException("Fatal exception while saving state.", e);
+    private static long @NotNull[] getChunks(int fromX, int fromY, int toX, int area) {
+        long[] chunks = new long[area];
+        int width = toX - fromX + 1;
+        for (int i = 0; i < area; i++) {
+            chunks[i] = hashPositions(fromX + i % width, fromY + i / width);
         }
+        return chunks;
+    }
 
-        try (FileOutputStream fos = new FileOutputStream(new File(dataFolder, "chunkgroups.dat"))) {
-            chunkGroups.saveSafely(fos);
-        } catch (IOException e) {
-            throw new IllegalStateException("Fatal exception while saving state.", e);
+    public int getPresence(@NotNull UUID player, @NotNull UUID world, int x, int y) {
+        int playerId = playerIds.getId(player);
+        int worldId = worldIds.getId(world);
+        if (playerId == UUIDRegistry.UNKNOWN_ID || worldId == UUIDRegistry.UNKNOWN_ID) {
+            return 0;
         }
+        return counts.get(playerId, worldId, x, y);
     }
 
-    protected void saveStateToStream(OutputStream out) throws IOException {
-        DataOutputStream dataOut = new DataOutputStream(out);
-        for (Map.Entry<PlayerAttachedPosition, PlayerAttachedScore> entry : counts.entrySet()) {
-            dataOut.write(1);
-            dataOut.writeInt(entry.getValue().score().get());
-            PlayerAttachedPosition de = entry.getKey();
-            dataOut.writeLong(de.pos().world().getMostSignificantBits());
-            dataOut.writeLong(de.pos().world().getLeastSignificantBits());
-            dataOut.writeLong(de.player().getMostSignificantBits());
-            dataOut.writeLong(de.player().getLeastSignificantBits());
-            dataOut.writeLong(de.pos().chunkPos());
+    /**
+     * Obtains all chunks within a world in which a player has presence.
+     * The runtime of this method is proportional to the amount of chunks the player has presence in.
+     *
+     * @param player The UUID of the player
+     * @param world The UUID of the world
+     * @return The positions of the chunks, as per {@link #hashPositions(int, int)}
+     */
+    @NotNull
+    public long[] getPresenceChunks(@NotNull UUID player, @NotNull UUID world) {
+        int playerId = playerIds.getId(player);
+        int worldId = worldIds.getId(world);
+        if (playerId == UUIDRegistry.UNKNOWN_ID || worldId == UUIDRegistry.UNKNOWN_ID) {
+            return new long[0];
+        }
+        long[] chunks = playerChunks.getChunks(playerId, worldId);
+        int size = 0;
+        for (long chunk : chunks) {
+            if (counts.get(playerId, worldId, (int) (chunk >> 32), (int) chunk) != 0) {
+                chunks[size++] = chunk;
+            } else {
+                // The presence decayed away
+                playerChunks.remove(playerId, worldId, chunk);
+            }
         }
+        return Arrays.copyOf(chunks, size);
     }
 
     /**
-     * Increases the presence of a given player by one.
-     * This method can be called concurrently, however other methods in this class may have not been
-     * built for this.
+     * Obtains all chunks within a world that are owned by a player, that is all chunks in which the player
+     * has the most presence. The runtime of this method is proportional to the amount of chunks the player
+     * has presence in.
      *
-     * @param id A unique identifier that identifies a user.
+     * @param player The UUID of the player
+     * @param world The UUID of the world
+     * @return The positions of the chunks, as per {@link #hashPositions(int, int)}
+     */
+    @NotNull
+    public long[] getOwnedChunks(@NotNull UUID player, @NotNull UUID world) {
+        long[] chunks = getPresenceChunks(player, world);
+        int size = 0;
+        for (long chunk : chunks) {
+            PlayerAttachedScore owner = getLeader(world, (int) (chunk >> 32), (int) chunk);
+            if (owner != null && owner.player().equals(player)) {
+                chunks[size++] = chunk;
+            }
+        }
+        return Arrays.copyOf(chunks, size);
+    }
+
+    /**
+     * Obtains the sum of the presence of a player in all chunks of all worlds.
+     * The runtime of this method is proportional to the amount of chunks the player has presence in.
+     *
+     * @param player The UUID of the player
+     * @return The total presence of the player
+     */
+    public long getTotalPresence(@NotNull UUID player) {
+        int playerId = playerIds.getId(player);
+        if (playerId == UUIDRegistry.UNKNOWN_ID) {
+            return 0;
+        }
+        long[][] worlds = playerChunks.getChunks(playerId);
+        long total = 0;
+        for (int world = 0; world < worlds.length; world++) {
+            if (worlds[world] == null) {
+                continue;
+            }
+            for (long chunk : worlds[world]) {
+                total += counts.get(playerId, world, (int) (chunk >> 32), (int) chunk);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Removes all presence of a player in all chunks of all worlds. Chunks that were owned by the player
+     * are passed on to their successors. The runtime of this method is proportional to the amount of chunks the
+     * player has presence in.
+     *
+     * <p>If other players had presence in a chunk but were not tracked as contenders of the chunk, they will only
+     * be considered again once they are ticked in the chunk.
+     *
+     * @param player The UUID of the player
+     * @return The amount of chunks the player had presence in
+     */
+    public int purgePlayer(@NotNull UUID player) {
+        int playerId = playerIds.getId(player);
+        if (playerId == UUIDRegistry.UNKNOWN_ID) {
+            return 0;
+        }
+        WriteAheadJournal journal = this.journal;
+        if (journal == null) {
+            return purgePlayer(playerId, null, 0);
+        }
+        Lock lock = journalLock.readLock();
+        lock.lock();
+        try {
+            journal.append(out -> {
+                journalId(out, JOURNAL_PLAYER, playerIds, journaledPlayers, playerId);
+                out.write(JOURNAL_PURGE);
+                VarInts.writeVarLong(out, journalSequence.getAndIncrement());
+                VarInts.writeVarInt(out, playerId);
+            });
+            return purgePlayer(playerId, null, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all presence of a player, see {@link #purgePlayer(UUID)}.
+     *
+     * @param playerId The id of the player
+     * @param replay The replay of the journal if the purge is replayed, in which case chunks of regions whose file
+     * was written after the purge are skipped, as the file already includes the purge and any later presence is legitimate
+     * @param sequence The sequence number of the replayed purge record
+     * @return The amount of chunks the player had presence in
+     */
+    private int purgePlayer(int playerId, @Nullable JournalReplay replay, long sequence) {
+        long[][] worlds = playerChunks.getChunks(playerId);
+        int purged = 0;
+        for (int world = 0; world < worlds.length; world++) {
+            if (worlds[world] == null) {
+                continue;
+            }
+            for (long chunk : worlds[world]) {
+                int x = (int) (chunk >> 32);
+                int z = (int) chunk;
+                if (replay != null && replay.getRegionSequence(world, x, z) > sequence) {
+                    continue;
+                }
+                if (counts.remove(playerId, world, x, z)) {
+                    purged++;
+                }
+                playerChunks.remove(playerId, world, chunk);
+                ContenderTable table = contenders.get(world);
+                if (table != null) {
+                    onLeaderChange(world, x, z, table.remove(x, z, playerId));
+                }
+            }
+        }
+        return purged;
+    }
+
+    @Nullable
+    public PlayerAttachedScore getSuccessor(UUID world, int x, int y) {
+        ContenderTable table = getContenderTable(world);
+        if (table == null) {
+            return null;
+        }
+        if (decay.isEnabled()) {
+            refreshLeaders(table, worldIds.getId(world), x, y);
+        }
+        return table.getSuccessor(x, y);
+    }
+
+    /**
+     * Obtains the players with the most presence in a chunk, sorted by their presence in descending order.
+     * The first element is the owner of the chunk, the second one the successor. At most as many
+     * players as defined by the contender capacity are returned.
+     *
+     * @param world The UUID of the world of the chunk
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param y The Y-Coordinate of the chunk (in chunks)
+     * @return The contenders of the chunk, an empty array if there are none
+     */
+    @NotNull
+    public PlayerAttachedScore[] getContenders(@NotNull UUID world, int x, int y) {
+        ContenderTable table = getContenderTable(world);
+        if (table == null) {
+            return new PlayerAttachedScore[0];
+        }
+        if (decay.isEnabled()) {
+            refreshLeaders(table, worldIds.getId(world), x, y);
+        }
+        return table.getContenders(x, y);
+    }
+
+    /**
+     * Obtains a {@link RegionatedIntIntToObjectMap} which represents the owners mapped to chunks.
+     * When using this method the developer should be aware of the implication of {@link RegionatedIntIntToObjectMap}
+     * and should NOT use it to mutate the state of the world.
+     * <p>This method should only really be used for bulk get operations or to enumerate all claims of a world
+     * via {@link RegionatedIntIntToObjectMap#forEach(RegionatedIntIntToObjectMap.IntIntObjConsumer)} or
+     * {@link RegionatedIntIntToObjectMap#spliterator()}, otherwise {@link #getOwner(UUID, int, int)}
+     * is more suited. If presence decays, the owners stored in the map may be outdated as they are only corrected
+     * when accessed through {@link #getOwner(UUID, int, int)} or ticked.
+     * <p>The map only exists if the contenders are stored on the heap, see {@link ContenderTable.Storage#HEAP}.
+     *
+     * @param world The world's unique identifier
+     * @return The internal map for a given world, or null if there is no internal ownership map for the world.
+     */
+    @Nullable
+    public RegionatedIntIntToObjectMap<PlayerAttachedScore> getWorldOwnerMap(@NotNull UUID world) {
+        if (getContenderTable(world) instanceof HeapContenderTable table) {
+            return table.getLeaderMap();
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether fields that are not checked in the {@link PresenceData#equals(Object)} method are equal.
+     * This method is only meant to be used in unit tests as it does not care about the "main" fields that store
+     * the actual state of the object.
+     * <p> Side note: As the data structures used by these auxiliary fields do not support iteration
+     * of keys or values, this method is SLOW as it more or less computes the equality with brute force.
+     *
+     * @param other The object to check for auxiliary equality
+     * @param True if the leader and contender maps are equal
+     * @apiNote Not intended to be public api
+     */
+    @Contract(pure = true, value = "null -> fail; !null -> _")
+    protected boolean hasAuxiliaryEquality(@NotNull PresenceData other) {
+        return this.hasEqualContenders(other) && other.hasEqualContenders(this);
+    }
+
+    /**
+     * Checks whether the contenders of every world of this instance are equal to the contenders of the same world
+     * within another instance. As both instances may have assigned different ids to the same world, the ids
+     * are translated on the fly.
+     *
+     * @param other The other instance
+     * @return True if the contenders are equal
+     */
+    private boolean hasEqualContenders(@NotNull PresenceData other) {
+        boolean[] equal = {true};
+        contenders.forEach((world, table) -> {
+            UUID worldUID = worldIds.getUUID(world);
+            if (equal[0] && (worldUID == null || !table.equals(other.getContenderTable(worldUID)))) {
+                equal[0] = false;
+            }
+        });
+        return equal[0];
+    }
+
+    /**
+     * Checks whether the presence of every player in every chunk is equal in both instances.
+     * As both instances may have assigned different ids to the same UUID, the ids are translated
+     * on the fly.
+     *
+     * @param other The other instance
+     * @return True if the presence counts are equal
+     */
+    private boolean hasEqualCounts(@NotNull PresenceData other) {
+        boolean[] equal = {true};
+        int[] size = {0};
+        counts.forEach((player, world, x, z, score) -> {
+            size[0]++;
+            if (equal[0]) {
+                UUID playerUID = playerIds.getUUID(player);
+                UUID worldUID = worldIds.getUUID(world);
+                if (playerUID == null || worldUID == null || other.getPresence(playerUID, worldUID, x, z) != score) {
+                    equal[0] = false;
+                }
+            }
+        });
+        if (!equal[0]) {
+            return false;
+        }
+        // Iteration removes entries that decayed away, so ChunkScoreMap#size may include stale entries
+        int[] otherSize = {0};
+        other.counts.forEach((player, world, x, z, score) -> otherSize[0]++);
+        return size[0] == otherSize[0];
+    }
+
+    @Override
+    public int hashCode() {
+        // ChunkScoreMap#hashCode depends on the ids, which is why we need to compute the hash on our own
+        int[] hash = {0xA75176};
+        counts.forEach((player, world, x, z, score) -> {
+            hash[0] += Objects.hashCode(playerIds.getUUID(player)) ^ Objects.hashCode(worldIds.getUUID(world))
+                    ^ Long.hashCode(hashPositions(x, z)) ^ score;
+        });
+        return hash[0] ^ this.chunkGroups.hashCode();
+    }
+
+    public synchronized void load(@NotNull File dataFolder) {
+        if (dataFolder.isFile()) {
+            throw new RuntimeException("Loading from folder attempts to load a file!");
+        }
+        dataFolder.mkdirs();
+
+        loadIds: {
+            File idsFile = new File(dataFolder, "uuids.dat");
+            if (!idsFile.exists()) {
+                break loadIds;
+            }
+            try (FileInputStream fis = new FileInputStream(idsFile)) {
+                loadIdsChecked(fis);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to load UUID registry.", e);
+            }
+        }
+
+        JournalReplay replay = new JournalReplay();
+        loadStates: {
+            File stateFile = new File(dataFolder, "statedb.dat");
+            if (!stateFile.exists()) {
+                try {
+                    loadRegions(dataFolder.toPath().resolve(REGIONS_FOLDER), replay);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to load state db regions.", e);
+                }
+                break loadStates;
+            }
+            // Legacy single-file state db. All regions stay dirty, so the next save migrates the state to region files.
+            // Region files that may exist from an interrupted migration are outdated by the state db.
+            try (FileInputStream fis = new FileInputStream(stateFile)) {
+                loadStateChecked(fis);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to load state db.", e);
+            }
+        }
+
+        loadChunkGroups: {
+            File chunkGroupsFile = new File(dataFolder, "chunkgroups.dat");
+            if (!chunkGroupsFile.exists()) {
+                break loadChunkGroups;
+            }
+            try (FileInputStream fis = new FileInputStream(chunkGroupsFile)) {
+                replay.chunkGroupSequence = chunkGroups.loadSafely(fis);
+                replay.nextSequence = Math.max(replay.nextSequence, replay.chunkGroupSequence);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to load chunk groups.", e);
+            }
+        }
+
+        try {
+            replayJournal(dataFolder.toPath(), replay);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to replay the journal.", e);
+        }
+    }
+
+    /**
+     * Loads the presence counts from the region files of the state db and marks all regions as clean,
+     * as their state is now equal to the persisted state. The region files are loaded in parallel, as they
+     * are independent of each other and usually too small to benefit from the parallel decompression of
+     * a {@link BlockCompression} container on their own.
+     *
+     * @param regionsFolder The folder containing a folder of region files for every world
+     * @param replay The replay of the journal, which the sequence numbers of the region files are recorded in
+     * @throws IOException If an I/O error occurs or a region file is corrupt
+     */
+    private void loadRegions(@NotNull Path regionsFolder, @NotNull JournalReplay replay) throws IOException {
+        if (!Files.isDirectory(regionsFolder)) {
+            return;
+        }
+        List<Path> regionFiles = new ArrayList<>();
+        try (DirectoryStream<Path> worldFolders = Files.newDirectoryStream(regionsFolder, Files::isDirectory)) {
+            for (Path worldFolder : worldFolders) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(worldFolder, "r.*.dat")) {
+                    files.forEach(regionFiles::add);
+                }
+            }
+        }
+        try {
+            regionFiles.parallelStream().forEach(regionFile -> {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(regionFile))) {
+                    String[] name = regionFile.getFileName().toString().split("\\.");
+                    int world = worldIds.getOrCreateId(UUID.fromString(regionFile.getParent().getFileName().toString()));
+                    long sequence = loadStateChecked(in);
+                    replay.setRegionSequence(world, Integer.parseInt(name[1]), Integer.parseInt(name[2]), sequence);
+                } catch (IOException | RuntimeException e) {
+                    throw new UncheckedIOException(new IOException("Unable to load region file " + regionFile, e));
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        counts.pollDirtyRegions();
+    }
+
+    /**
+     * Applies the modifications stored within the journal files of a data folder that are not yet covered by the
+     * saved state. Journal files that are covered by the saved state are deleted. Records of the remaining files are
+     * skipped if the file they modify was saved after the record was written, which is the case if a save was interrupted
+     * after writing some of its files.
+     *
+     * @param folder The data folder
+     * @param replay The sequence numbers of the loaded files
+     * @throws IOException If an I/O error occurs or the journal is malformed
+     */
+    private void replayJournal(@NotNull Path folder, @NotNull JournalReplay replay) throws IOException {
+        long base = 0;
+        Path baseFile = folder.resolve("journal-base.dat");
+        if (Files.exists(baseFile)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(baseFile))) {
+                long checksum = in.readLong();
+                Adler32 adler32Checksum = new Adler32();
+                base = new DataInputStream(new CheckedInputStream(in, adler32Checksum)).readLong();
+                if (adler32Checksum.getValue() != checksum) {
+                    throw new IOException("Journal base invalid as it breaks the checksum.");
+                }
+            }
+        }
+        long[] generations = getJournalGenerations(folder);
+        for (long generation : generations) {
+            if (generation < base) {
+                Files.delete(getJournalFile(folder, generation));
+            } else {
+                replay.startFile();
+                WriteAheadJournal.read(getJournalFile(folder, generation), in -> replayJournalBlock(in, replay));
+            }
+        }
+        journalGeneration = generations.length == 0 ? base : Math.max(base, generations[generations.length - 1] + 1);
+        journalSequence.set(Math.max(journalSequence.get(), replay.nextSequence));
+    }
+
+    private void replayJournalBlock(@NotNull DataInputStream in, @NotNull JournalReplay replay) throws IOException {
+        int type;
+        while ((type = in.read()) != -1) {
+            if (type == JOURNAL_PLAYER) {
+                int journalId = VarInts.readVarInt(in);
+                replay.players = JournalReplay.define(replay.players, journalId, playerIds.getOrCreateId(new UUID(in.readLong(), in.readLong())));
+                continue;
+            } else if (type == JOURNAL_WORLD) {
+                int journalId = VarInts.readVarInt(in);
+                replay.worlds = JournalReplay.define(replay.worlds, journalId, worldIds.getOrCreateId(new UUID(in.readLong(), in.readLong())));
+                continue;
+            }
+            long sequence = VarInts.readVarLong(in);
+            replay.nextSequence = Math.max(replay.nextSequence, sequence + 1);
+            if (type == JOURNAL_PRESENCE) {
+                int entries = VarInts.readVarInt(in);
+                for (int i = 0; i < entries; i++) {
+                    int world = JournalReplay.resolve(replay.worlds, VarInts.readVarInt(in));
+                    int player = JournalReplay.resolve(replay.players, VarInts.readVarInt(in));
+                    int x = VarInts.readZigZag(in);
+                    int y = VarInts.readZigZag(in);
+                    int delta = VarInts.readVarInt(in);
+                    if (sequence >= replay.getRegionSequence(world, x, y)) {
+                        addPresence(player, world, x, y, delta);
+                    }
+                }
+            } else if (type == JOURNAL_CHUNK_GROUPS) {
+                short version = in.readShort();
+                byte[] state = in.readNBytes(in.readInt());
+                if (sequence >= replay.chunkGroupSequence) {
+                    chunkGroups.load(new DataInputStream(new FastByteArrayInputStream(state)), version);
+                }
+            } else if (type == JOURNAL_PURGE) {
+                purgePlayer(JournalReplay.resolve(replay.players, VarInts.readVarInt(in)), replay, sequence);
+            } else {
+                throw new IOException("Unknown journal record type: " + type);
+            }
+        }
+    }
+
+    /**
+     * Writes a record that defines the UUID of a player or world id, unless the current journal file already defines the id.
+     * Needs to be called while appending to the journal, before the record that refers to the id.
+     *
+     * @param out The stream to write the record to
+     * @param type The type of the record, either {@link #JOURNAL_PLAYER} or {@link #JOURNAL_WORLD}
+     * @param registry The registry of the id
+     * @param journaled The ids that are defined by the current journal file
+     * @param id The id
+     * @throws IOException If an I/O error occurs
+     */
+    private static void journalId(@NotNull DataOutputStream out, int type, @NotNull UUIDRegistry registry, @NotNull BitSet journaled, int id) throws IOException {
+        if (journaled.get(id)) {
+            return;
+        }
+        UUID uuid = registry.getUUID(id);
+        if (uuid == null) {
+            throw new IllegalStateException("Unregistered id: " + id);
+        }
+        out.write(type);
+        VarInts.writeVarInt(out, id);
+        writeUUID(out, uuid);
+        journaled.set(id);
+    }
+
+    /**
+     * Writes an entry of a {@link #JOURNAL_PRESENCE} record. The record consists of the sequence number, the amount
+     * of entries and the entries.
+     *
+     * @param out The stream to write the entry to
+     * @param world The id of the world
+     * @param player The id of the player
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param y The Y-Coordinate of the chunk (in chunks)
+     * @param delta The amount of presence that was added
+     * @throws IOException If an I/O error occurs
+     */
+    private static void writePresenceEntry(@NotNull DataOutputStream out, int world, int player, int x, int y, int delta) throws IOException {
+        VarInts.writeVarInt(out, world);
+        VarInts.writeVarInt(out, player);
+        VarInts.writeZigZag(out, x);
+        VarInts.writeZigZag(out, y);
+        VarInts.writeVarInt(out, delta);
+    }
+
+    /**
+     * Writes the state of the chunk groups to the journal if it was modified since it was last written. Unlike
+     * presence deltas, the chunk groups are journaled as a whole, as they are small and rarely modified.
+     *
+     * @param journal The journal to write to
+     */
+    private void journalChunkGroups(@NotNull WriteAheadJournal journal) {
+        int modifications = chunkGroups.getModificationCount();
+        if (modifications == journaledGroupModifications) {
+            return;
+        }
+        // The state needs to be serialized under the lock, as otherwise a save could write a newer state with a
+        // sequence number that is not higher than the one of this record
+        Lock lock = journalLock.readLock();
+        lock.lock();
+        try {
+            FastByteArrayOutputStream state = new FastByteArrayOutputStream();
+            try {
+                chunkGroups.save(new DataOutputStream(state), ChunkGroupManager.CURRENT_VERSION);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to serialize the chunk groups.", e);
+            }
+            journal.append(out -> {
+                out.write(JOURNAL_CHUNK_GROUPS);
+                VarInts.writeVarLong(out, journalSequence.getAndIncrement());
+                out.writeShort(ChunkGroupManager.CURRENT_VERSION);
+                out.writeInt(state.length);
+                out.write(state.array, 0, state.length);
+            });
+        } finally {
+            lock.unlock();
+        }
+        journaledGroupModifications = modifications;
+    }
+
+    @NotNull
+    private static Path getJournalFile(@NotNull Path folder, long generation) {
+        return folder.resolve("journal-" + generation + ".dat");
+    }
+
+    private static long @NotNull[] getJournalGenerations(@NotNull Path folder) throws IOException {
+        LongArrayList generations = new LongArrayList();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "journal-*.dat")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring("journal-".length(), name.length() - ".dat".length())));
+                } catch (NumberFormatException e) {
+                    continue; // For example journal-base.dat
+                }
+            }
+        }
+        long[] sorted = generations.toLongArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Starts to journal the modifications of the presence and the chunk groups to the given data folder, which should be
+     * the folder the data was {@link #load(File) loaded} from. The journal is replayed the next time the data is loaded,
+     * so that a crash only loses the modifications that were not yet {@link #commitJournal() committed}
+     * instead of all modifications since the last save. The journal is truncated whenever the data is saved.
+     *
+     * @param dataFolder The data folder
+     * @throws IOException If the journal file cannot be opened
+     */
+    public synchronized void enableJournal(@NotNull File dataFolder) throws IOException {
+        if (journal != null) {
+            throw new IllegalStateException("The journal is already enabled.");
+        }
+        journaledGroupModifications = chunkGroups.getModificationCount();
+        journaledPlayers.clear();
+        journaledWorlds.clear();
+        journal = new WriteAheadJournal(getJournalFile(dataFolder.toPath(), journalGeneration++));
+    }
+
+    /**
+     * Writes the journaled modifications since the last commit to the disk. Does nothing if journaling is not enabled.
+     * This method is safe to call from any thread.
+     */
+    public void commitJournal() {
+        WriteAheadJournal journal = this.journal;
+        if (journal == null) {
+            return;
+        }
+        journalChunkGroups(journal);
+        try {
+            journal.commit();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to commit the journal.", e);
+        }
+    }
+
+    /**
+     * Commits and closes the journal. Modifications are no longer journaled afterwards.
+     * Does nothing if journaling is not enabled.
+     */
+    public synchronized void closeJournal() {
+        WriteAheadJournal journal = this.journal;
+        if (journal == null) {
+            return;
+        }
+        journalChunkGroups(journal);
+        this.journal = null;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to close the journal.", e);
+        }
+    }
+
+    /**
+     * Loads the player and world UUID registries, which must happen before any other data is loaded, as otherwise
+     * the ids would no longer match the ones used before the restart.
+     *
+     * @param in The input stream to read from, which starts with the checksum of the registries as written by {@link #saveIds(OutputStream)}
+     * @throws IOException If an I/O error occurs or the checksum does not match
+     */
+    protected void loadIdsChecked(@NotNull InputStream in) throws IOException {
+        long checksum = ByteBuffer.wrap(in.readNBytes(8)).getLong();
+        Adler32 adler32Checksum = new Adler32();
+        DataInputStream dataIn = new DataInputStream(new CheckedInputStream(in, adler32Checksum));
+        playerIds.load(dataIn);
+        worldIds.load(dataIn);
+        if (adler32Checksum.getValue() != checksum) {
+            throw new IOException("UUID registry invalid as it breaks the checksum.");
+        }
+    }
+
+    /**
+     * Loads presence counts that were written by {@link #saveStateToStream(OutputStream)}, either in the current
+     * or in the legacy format.
+     *
+     * @param in The input stream to read from, excluding the checksum
+     * @throws IOException If an I/O error occurs or the input is malformed
+     */
+    protected void loadState(@NotNull InputStream in) throws IOException {
+        loadSequencedState(in);
+    }
+
+    /**
+     * Loads presence counts, see {@link #loadState(InputStream)}.
+     *
+     * @param in The input stream to read from, excluding the checksum
+     * @return The {@link #journalSequence sequence number} of the first journal record the presence counts do not include,
+     * or 0 if the presence counts were written without one
+     * @throws IOException If an I/O error occurs or the input is malformed
+     */
+    private long loadSequencedState(@NotNull InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+
+        int now = getCurrentTime();
+        int marker = dataIn.read();
+        if (marker == STATE_SEQUENCED) {
+            long sequence = dataIn.readLong();
+            loadState(dataIn);
+            return sequence;
+        } else if (marker == STATE_V2) {
+            loadStateV2(dataIn);
+            return 0;
+        } else if (marker == STATE_COMPRESSED) {
+            loadState(BlockCompression.decompress(dataIn));
+            return 0;
+        }
+        // Legacy format: A marker per entry followed by the score, the full UUIDs and the position
+        for (; marker > 0; marker = dataIn.read()) {
+            int value = dataIn.readInt();
+            // Entries written while decay was disabled do not store the time of their last decay
+            int lastDecay = marker == 2 ? dataIn.readInt() : now;
+            int worldId = worldIds.getOrCreateId(new UUID(dataIn.readLong(), dataIn.readLong()));
+            int playerId = playerIds.getOrCreateId(new UUID(dataIn.readLong(), dataIn.readLong()));
+            int x = dataIn.readInt();
+            int z = dataIn.readInt();
+            loadEntry(playerId, worldId, x, z, value, lastDecay);
+        }
+        return 0;
+    }
+
+    private void loadStateV2(@NotNull DataInputStream in) throws IOException {
+        boolean hasDecay = in.readBoolean();
+        // Entries written while decay was disabled do not store the time of their last decay
+        int savedAt = hasDecay ? in.readInt() : getCurrentTime();
+        int[] players = new int[VarInts.readVarInt(in)];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = playerIds.getOrCreateId(new UUID(in.readLong(), in.readLong()));
+        }
+        int worldCount = VarInts.readVarInt(in);
+        int[] worlds = new int[worldCount];
+        int[] worldEntries = new int[worldCount];
+        for (int i = 0; i < worldCount; i++) {
+            worlds[i] = worldIds.getOrCreateId(new UUID(in.readLong(), in.readLong()));
+            worldEntries[i] = VarInts.readVarInt(in);
+        }
+        for (int i = 0; i < worldCount; i++) {
+            int x = 0;
+            int z = 0;
+            for (int j = 0; j < worldEntries[i]; j++) {
+                x += VarInts.readZigZag(in);
+                z += VarInts.readZigZag(in);
+                int player = VarInts.readVarInt(in);
+                if (player < 0 || player >= players.length) {
+                    throw new IOException("Player index " + player + " out of bounds for a dictionary of " + players.length + " players.");
+                }
+                int value = VarInts.readVarInt(in);
+                int lastDecay = hasDecay ? savedAt - VarInts.readZigZag(in) : savedAt;
+                loadEntry(players[player], worlds[i], x, z, value, lastDecay);
+            }
+        }
+    }
+
+    private void loadEntry(int playerId, int worldId, int x, int z, int value, int lastDecay) {
+        if (!counts.putIfAbsent(playerId, worldId, x, z, value, lastDecay)) {
+            throw new IllegalStateException("Input defined multiple entries for the same player and chunk (data curruption likely)");
+        }
+        playerChunks.add(playerId, worldId, hashPositions(x, z));
+        if (decay.isEnabled()) {
+            // Apply the decay that happened while the server was offline
+            value = counts.get(playerId, worldId, x, z);
+            if (value == 0) {
+                return;
+            }
+        }
+        updateContenders(worldId, x, z, playerId, value);
+    }
+
+    /**
+     * Loads presence counts that are preceded by their checksum, such as a region file.
+     *
+     * @param in The input stream to read from
+     * @return The journal sequence number stored with the presence counts, see {@link #loadSequencedState(InputStream)}
+     * @throws IOException If an I/O error occurs, the input is malformed or the checksum does not match
+     */
+    protected long loadStateChecked(InputStream in) throws IOException {
+        long checksum = ByteBuffer.wrap(in.readNBytes(8)).getLong();
+        Adler32 adler32Checksum = new Adler32();
+        CheckedInputStream checkedIn = new CheckedInputStream(in, adler32Checksum);
+        long sequence = loadSequencedState(checkedIn);
+        if (adler32Checksum.getValue() != checksum) {
+            throw new IOException("State invalid as it breaks the checksum.");
+        }
+        return sequence;
+    }
+
+    /**
+     * Sets whether and how strongly the region files of the presence counts and chunkgroups.dat are compressed when the data
+     * is saved. Compressed files are split into blocks that are compressed independently (see {@link BlockCompression}).
+     * Files are always loaded regardless of whether they are compressed, so the level can be changed at any time.
+     * Region files are only rewritten in the new format once they are modified.
+     *
+     * @param level The {@link java.util.zip.Deflater} level from 1 to 9, or 0 to disable compression
+     */
+    public void setCompressionLevel(int level) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("The compression level can only range from 0 to 9");
+        }
+        this.compressionLevel = level;
+    }
+
+    public synchronized void save(File dataFolder) {
+        // BEWARE: This method is called async, thread safety should be done carefully!
+        if (dataFolder.isFile()) {
+            throw new RuntimeException("Saving to folder attempts to save in file!");
+        }
+        dataFolder.mkdirs();
+
+        Path folder = dataFolder.toPath();
+        try {
+            // Modifications from now on go to a new journal file, the older files are covered by this save once it completes.
+            // Records of the new journal file that are also part of a saved file are skipped by their sequence number when replayed.
+            long covered = journalGeneration;
+            long chunkGroupSequence;
+            FastByteArrayOutputStream chunkGroupState = new FastByteArrayOutputStream();
+            long[][] dirtyRegions;
+            Lock lock = journalLock.writeLock();
+            lock.lock();
+            try {
+                WriteAheadJournal journal = this.journal;
+                if (journal != null) {
+                    journal.rotate(getJournalFile(folder, journalGeneration));
+                    covered = journalGeneration++;
+                    // The new file needs to define the ids again, as the old file is deleted once the save completes
+                    journaledPlayers.clear();
+                    journaledWorlds.clear();
+                }
+                chunkGroupSequence = journalSequence.get();
+                chunkGroups.save(new DataOutputStream(chunkGroupState), ChunkGroupManager.CURRENT_VERSION);
+                dirtyRegions = counts.pollDirtyRegions();
+            } finally {
+                lock.unlock();
+            }
+
+            // The ids need to be saved first, as the other files refer to them
+            CheckedFileWriter.write(folder.resolve("uuids.dat"), new byte[0], this::saveIds);
+            int level = compressionLevel;
+            short version = (short) (ChunkGroupManager.CURRENT_VERSION | ChunkGroupManager.SEQUENCED_FLAG
+                    | (level == 0 ? 0 : ChunkGroupManager.COMPRESSED_FLAG));
+            CheckedFileWriter.write(folder.resolve("chunkgroups.dat"), Shorts.toByteArray(version), out -> {
+                out.write(Longs.toByteArray(chunkGroupSequence));
+                if (level == 0) {
+                    out.write(chunkGroupState.array, 0, chunkGroupState.length);
+                    return;
+                }
+                try (OutputStream compressedOut = BlockCompression.compress(out, level)) {
+                    compressedOut.write(chunkGroupState.array, 0, chunkGroupState.length);
+                }
+            });
+            saveRegions(folder.resolve(REGIONS_FOLDER), dirtyRegions);
+            // The legacy state db was migrated to region files by the save above
+            Files.deleteIfExists(folder.resolve("statedb.dat"));
+
+            long base = covered;
+            CheckedFileWriter.write(folder.resolve("journal-base.dat"), new byte[0], out -> new DataOutputStream(out).writeLong(base));
+            for (long generation : getJournalGenerations(folder)) {
+                if (generation < covered) {
+                    Files.delete(getJournalFile(folder, generation));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Fatal exception while saving state.", e);
+        }
+    }
+
+    /**
+     * Writes the player and world UUID registries. The checksum that precedes the registries within uuids.dat
+     * is written by the caller.
+     *
+     * @param out The output stream to write to
+     * @throws IOException If an I/O error occurs
+     */
+    protected void saveIds(@NotNull OutputStream out) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        playerIds.save(dataOut);
+        worldIds.save(dataOut);
+        dataOut.flush();
+    }
+
+    /**
+     * Rewrites the region files of the regions whose presence counts were modified since the last save. Each region
+     * file uses the same format as the legacy statedb.dat file did, but only contains the entries of a single region
+     * of 256 by 256 chunks. This means that the cost of a save depends on the amount of regions in which players were
+     * active since the last save rather than the amount of chunks that were ever visited.
+     *
+     * <p>The regions are captured and written one after another, so only the entries of a single region are copied at a time
+     * and modifications are only blocked while a region is copied. Every region file stores the {@link #journalSequence sequence number}
+     * of the first journal record it does not include. Regions that no longer have any entries are thus written as empty
+     * files rather than being deleted, as the journal would otherwise be replayed onto them.
+     *
+     * @param regionsFolder The folder containing a folder of region files for every world
+     * @param regions The modified regions by world id, as returned by {@link ChunkScoreMap#pollDirtyRegions()}
+     * @throws IOException If an I/O error occurs, in which case all regions are written again during the next save
+     */
+    private void saveRegions(@NotNull Path regionsFolder, long @NotNull[] @Nullable[] regions) throws IOException {
+        IntArrayList entries = new IntArrayList();
+        try {
+            for (int world = 0; world < regions.length; world++) {
+                if (regions[world] == null) {
+                    continue;
+                }
+                UUID worldUID = worldIds.getUUID(world);
+                if (worldUID == null) {
+                    throw new IllegalStateException("Unregistered id in the presence counts");
+                }
+                Path worldFolder = Files.createDirectories(regionsFolder.resolve(worldUID.toString()));
+                for (long region : regions[world]) {
+                    int regionX = (int) (region >> 32);
+                    int regionZ = (int) region;
+                    long sequence;
+                    entries.clear();
+                    Lock lock = journalLock.writeLock();
+                    lock.lock();
+                    try {
+                        sequence = journalSequence.get();
+                        counts.forEachInRegion(world, regionX, regionZ, (player, w, x, z, score, lastDecay) -> {
+                            entries.add(player);
+                            entries.add(w);
+                            entries.add(x);
+                            entries.add(z);
+                            entries.add(score);
+                            entries.add(lastDecay);
+                        });
+                    } finally {
+                        lock.unlock();
+                    }
+                    CheckedFileWriter.write(worldFolder.resolve("r." + regionX + "." + regionZ + ".dat"), new byte[0], out -> {
+                        out.write(STATE_SEQUENCED);
+                        out.write(Longs.toByteArray(sequence));
+                        saveStateToStream(out, consumer -> {
+                            for (int i = 0; i < entries.size(); i += 6) {
+                                consumer.accept(entries.getInt(i), entries.getInt(i + 1), entries.getInt(i + 2), entries.getInt(i + 3),
+                                        entries.getInt(i + 4), entries.getInt(i + 5));
+                            }
+                        });
+                    });
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (int world = 0; world < regions.length; world++) {
+                if (regions[world] != null) {
+                    for (long region : regions[world]) {
+                        counts.markRegionDirty(world, (int) (region >> 32), (int) region);
+                    }
+                }
+            }
+            throw e;
+        }
+    }
+
+    protected void saveStateToStream(OutputStream out) throws IOException {
+        saveStateToStream(out, counts::forEach);
+    }
+
+    /**
+     * Writes presence counts in the format of the state db.
+     *
+     * @param out The output stream to write to
+     * @param entries The supplier of the entries to write, which passes every entry to the given consumer
+     * @throws IOException If an I/O error occurs
+     */
+    private void saveStateToStream(@NotNull OutputStream out, @NotNull Consumer<ChunkScoreMap.TimedScoreConsumer> entries) throws IOException {
+        int level = compressionLevel;
+        if (level == 0) {
+            saveStateV2(out, entries);
+            return;
+        }
+        out.write(STATE_COMPRESSED);
+        try (OutputStream compressedOut = BlockCompression.compress(out, level)) {
+            saveStateV2(compressedOut, entries);
+        }
+    }
+
+    private void saveStateV2(@NotNull OutputStream out, @NotNull Consumer<ChunkScoreMap.TimedScoreConsumer> entries) throws IOException {
+        boolean writeDecay = decay.isEnabled();
+        IntArrayList players = new IntArrayList();
+        IntArrayList worlds = new IntArrayList();
+        IntArrayList xs = new IntArrayList();
+        IntArrayList zs = new IntArrayList();
+        IntArrayList scores = new IntArrayList();
+        IntArrayList lastDecays = new IntArrayList();
+        entries.accept((player, world, x, z, score, lastDecay) -> {
+            players.add(player);
+            worlds.add(world);
+            xs.add(x);
+            zs.add(z);
+            scores.add(score);
+            if (writeDecay) {
+                lastDecays.add(lastDecay);
+            }
+        });
+
+        int size = players.size();
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // Sorting by region and position keeps the coordinate deltas small
+        IntArrays.quickSort(order, (a, b) -> {
+            int cmp = Integer.compare(worlds.getInt(a), worlds.getInt(b));
+            if (cmp == 0) {
+                cmp = Integer.compare(xs.getInt(a) >> 8, xs.getInt(b) >> 8);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(zs.getInt(a) >> 8, zs.getInt(b) >> 8);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(xs.getInt(a), xs.getInt(b));
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(zs.getInt(a), zs.getInt(b));
+            }
+            return cmp;
+        });
+
+        // Dictionaries of the referenced worlds and players, in the order of their first occurrence.
+        // As the entries are sorted by world, the entries of the n-th world of the dictionary form the n-th section.
+        IntArrayList worldDictionary = new IntArrayList();
+        IntArrayList worldEntries = new IntArrayList();
+        IntArrayList playerDictionary = new IntArrayList();
+        int[] playerIndices = new int[0]; // Player ids are dense, so they can index an array directly
+        for (int i = 0; i < size; i++) {
+            int world = worlds.getInt(order[i]);
+            if (worldDictionary.isEmpty() || worldDictionary.getInt(worldDictionary.size() - 1) != world) {
+                worldDictionary.add(world);
+                worldEntries.add(0);
+            }
+            worldEntries.set(worldEntries.size() - 1, worldEntries.getInt(worldEntries.size() - 1) + 1);
+            int player = players.getInt(order[i]);
+            if (player >= playerIndices.length) {
+                int oldLength = playerIndices.length;
+                playerIndices = Arrays.copyOf(playerIndices, Math.max(player + 1, oldLength << 1));
+                Arrays.fill(playerIndices, oldLength, playerIndices.length, -1);
+            }
+            if (playerIndices[player] == -1) {
+                playerIndices[player] = playerDictionary.size();
+                playerDictionary.add(player);
+            }
+        }
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        int now = writeDecay ? getCurrentTime() : 0;
+        dataOut.write(STATE_V2);
+        dataOut.writeBoolean(writeDecay);
+        if (writeDecay) {
+            dataOut.writeInt(now);
+        }
+        VarInts.writeVarInt(dataOut, playerDictionary.size());
+        for (int i = 0; i < playerDictionary.size(); i++) {
+            UUID uuid = playerIds.getUUID(playerDictionary.getInt(i));
+            if (uuid == null) {
+                throw new IllegalStateException("Unregistered id in the presence counts");
+            }
+            writeUUID(dataOut, uuid);
+        }
+        VarInts.writeVarInt(dataOut, worldDictionary.size());
+        for (int i = 0; i < worldDictionary.size(); i++) {
+            UUID uuid = worldIds.getUUID(worldDictionary.getInt(i));
+            if (uuid == null) {
+                throw new IllegalStateException("Unregistered id in the presence counts");
+            }
+            writeUUID(dataOut, uuid);
+            VarInts.writeVarInt(dataOut, worldEntries.getInt(i));
+        }
+        int lastX = 0;
+        int lastZ = 0;
+        for (int i = 0; i < size; i++) {
+            int idx = order[i];
+            if (i != 0 && worlds.getInt(order[i - 1]) != worlds.getInt(idx)) {
+                lastX = 0;
+                lastZ = 0;
+            }
+            int x = xs.getInt(idx);
+            int z = zs.getInt(idx);
+            VarInts.writeZigZag(dataOut, x - lastX);
+            VarInts.writeZigZag(dataOut, z - lastZ);
+            VarInts.writeVarInt(dataOut, playerIndices[players.getInt(idx)]);
+            VarInts.writeVarInt(dataOut, scores.getInt(idx));
+            if (writeDecay) {
+                VarInts.writeZigZag(dataOut, now - lastDecays.getInt(idx));
+            }
+            lastX = x;
+            lastZ = z;
+        }
+        dataOut.flush();
+    }
+
+    private static void writeUUID(@NotNull DataOutputStream out, @NotNull UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Increases the presence of a given player by one.
+     * This method can be called concurrently, however other methods in this class may have not been
+     * built for this.
+     *
+     * @param id A unique identifier that identifies a user.
      * @param world The UUID of the world of the chunk
      * @param x The X-Coordinate of the chunk (in chunks)
      * @param y The Y-Coordinate of the chunk (in chunks)
@@ -347,69 +1685,291 @@ public class PresenceData {
             int dy = ThreadLocalRandom.current().nextInt(-3, 4);
             tick(id, world, dx + x, dy + y);
         }
-        long hashedPosition = hashPositions(x, y);
-        WorldPosition worldPos = new WorldPosition(world, hashedPosition);
-        PlayerAttachedPosition entry = new PlayerAttachedPosition(id, worldPos);
-        PlayerAttachedScore tickedRecord = counts.get(entry);
-        if (tickedRecord == null) {
-            tickedRecord = new PlayerAttachedScore(id, new AtomicInteger(0));
-            PlayerAttachedScore retain = counts.putIfAbsent(entry, tickedRecord);
-            if (retain != null) { // Race condition
-                tickedRecord = retain;
+        WriteAheadJournal journal = this.journal;
+        if (journal == null) {
+            addPresence(playerIds.getOrCreateId(id), worldIds.getOrCreateId(world), x, y, 1);
+            return;
+        }
+        Lock lock = journalLock.readLock();
+        lock.lock();
+        try {
+            int playerId = playerIds.getOrCreateId(id);
+            int worldId = worldIds.getOrCreateId(world);
+            journal.append(out -> {
+                journalId(out, JOURNAL_PLAYER, playerIds, journaledPlayers, playerId);
+                journalId(out, JOURNAL_WORLD, worldIds, journaledWorlds, worldId);
+                out.write(JOURNAL_PRESENCE);
+                VarInts.writeVarLong(out, journalSequence.getAndIncrement());
+                VarInts.writeVarInt(out, 1);
+                writePresenceEntry(out, worldId, playerId, x, y, 1);
+            });
+            addPresence(playerId, worldId, x, y, 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void addPresence(int player, int world, int x, int y, int delta) {
+        int score = counts.addAndGet(player, world, x, y, delta);
+        playerChunks.add(player, world, hashPositions(x, y));
+        updateContenders(world, x, y, player, score);
+    }
+
+    /**
+     * Increases the presence of every player in the given snapshot by one, as if {@link #tick(UUID, UUID, int, int)}
+     * was called for every element of the array. However, this method sorts the ticks by world and region
+     * beforehand, which means that the region of the presence counts only need to be looked up and locked once per batch.
+     * Furthermore ticks that affect the same chunk are merged so the contenders of a chunk are only locked
+     * once per batch, even if hundreds of players are in the same chunk.
+     *
+     * <p>This method can be called concurrently, however other methods in this class may have not been
+     * built for this.
+     *
+     * @param positions The positions of the players that should be ticked. The array is not modified.
+     */
+    public void tickAll(@NotNull PlayerChunkPosition @NotNull[] positions) {
+        IntArrayList players = new IntArrayList(positions.length);
+        IntArrayList worlds = new IntArrayList(positions.length);
+        IntArrayList xs = new IntArrayList(positions.length);
+        IntArrayList zs = new IntArrayList(positions.length);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (PlayerChunkPosition position : positions) {
+            int player = playerIds.getOrCreateId(position.player());
+            int world = worldIds.getOrCreateId(position.world());
+            int x = position.x();
+            int z = position.z();
+            players.add(player);
+            worlds.add(world);
+            xs.add(x);
+            zs.add(z);
+            // Same as the recursion of #tick: every nearby tick may cause another nearby tick
+            while (recursiveTick > 0.0 && recursiveTick > random.nextDouble(1.0)) {
+                x += random.nextInt(-3, 4);
+                z += random.nextInt(-3, 4);
+                players.add(player);
+                worlds.add(world);
+                xs.add(x);
+                zs.add(z);
             }
         }
-        tickedRecord.score().getAndIncrement();
 
-        do {
-            PlayerAttachedScore oldLeader = leaders.get(world, x, y);
-            if (oldLeader == null) { // This is a previously untouched claim, set the leader
-                oldLeader = leaders.putIfAbsent(world, x, y, tickedRecord);
+        int size = players.size();
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        IntArrays.quickSort(order, (a, b) -> {
+            int cmp = Integer.compare(worlds.getInt(a), worlds.getInt(b));
+            if (cmp == 0) {
+                cmp = Integer.compare(xs.getInt(a) >> 8, xs.getInt(b) >> 8);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(zs.getInt(a) >> 8, zs.getInt(b) >> 8);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(xs.getInt(a), xs.getInt(b));
             }
+            if (cmp == 0) {
+                cmp = Integer.compare(zs.getInt(a), zs.getInt(b));
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(players.getInt(a), players.getInt(b));
+            }
+            return cmp;
+        });
 
-            if (oldLeader != null && tickedRecord != oldLeader) {
-                if (oldLeader.score().get() < tickedRecord.score().get()) {
-                    if (!leaders.replace(world, x, y, oldLeader, tickedRecord)) {
-                        continue; // The old value changed in the meantime: let's have another poke at it
-                    }
-                    ChunkGroup group = chunkGroups.getGroupAt(worldPos);
-                    if (group != null) {
-                        chunkGroups.removeChunk(group, worldPos);
-                    }
-                    do {
-                        PlayerAttachedScore oldSuccessor = successors.get(worldPos);
-                        if (oldSuccessor == null) { // There is no successor, so we can easily change it now
-                            oldSuccessor = successors.putIfAbsent(worldPos, oldLeader);
-                        }
-
-                        if (oldSuccessor == tickedRecord) { // Instance comparison intended
-                            if (!successors.replace(worldPos, tickedRecord, oldLeader)) {
-                                continue;
-                            }
-                        } else {
-                            if (oldSuccessor != null && oldLeader != oldSuccessor
-                                    && oldSuccessor.score().get() < oldLeader.score().get()
-                                    && !successors.replace(worldPos, oldSuccessor, oldLeader)) {
-                                continue; // The old value changed in the meantime: let's have another poke at it
-                            }
-                        }
-                        break;
-                    } while(true);
-                } else {
-                    do {
-                        PlayerAttachedScore oldSuccessor = successors.get(worldPos);
-                        if (oldSuccessor == null) { // There is no successor, so we can easily change it now
-                            oldSuccessor = successors.putIfAbsent(worldPos, tickedRecord);
-                        }
-                        if (oldSuccessor != null && tickedRecord != oldSuccessor
-                                && oldSuccessor.score().get() < tickedRecord.score().get()
-                                && !successors.replace(worldPos, oldSuccessor, tickedRecord)) {
-                            continue; // The old value changed in the meantime: let's have another poke at it
-                        }
-                        break;
-                    } while(true);
+        // Merge duplicate ticks so that every (player, chunk) pair occurs only once
+        int[] batchWorlds = new int[size];
+        int[] batchPlayers = new int[size];
+        int[] batchXs = new int[size];
+        int[] batchZs = new int[size];
+        int[] batchScores = new int[size];
+        int batchSize = 0;
+        for (int i = 0; i < size; i++) {
+            int idx = order[i];
+            int player = players.getInt(idx);
+            int world = worlds.getInt(idx);
+            int x = xs.getInt(idx);
+            int z = zs.getInt(idx);
+            if (batchSize != 0) {
+                int last = batchSize - 1;
+                if (batchPlayers[last] == player && batchWorlds[last] == world && batchXs[last] == x && batchZs[last] == z) {
+                    batchScores[last]++;
+                    continue;
+                }
+            }
+            batchWorlds[batchSize] = world;
+            batchPlayers[batchSize] = player;
+            batchXs[batchSize] = x;
+            batchZs[batchSize] = z;
+            batchScores[batchSize++] = 1;
+        }
+
+        WriteAheadJournal journal = this.journal;
+        if (journal == null) {
+            applyBatch(batchWorlds, batchPlayers, batchXs, batchZs, batchScores, batchSize);
+            return;
+        }
+        Lock lock = journalLock.readLock();
+        lock.lock();
+        try {
+            int entries = batchSize;
+            journal.append(out -> {
+                for (int i = 0; i < entries; i++) {
+                    journalId(out, JOURNAL_PLAYER, playerIds, journaledPlayers, batchPlayers[i]);
+                    journalId(out, JOURNAL_WORLD, worldIds, journaledWorlds, batchWorlds[i]);
+                }
+                // The whole batch is applied at once, so it is a single record with a single sequence number
+                out.write(JOURNAL_PRESENCE);
+                VarInts.writeVarLong(out, journalSequence.getAndIncrement());
+                VarInts.writeVarInt(out, entries);
+                for (int i = 0; i < entries; i++) {
+                    writePresenceEntry(out, batchWorlds[i], batchPlayers[i], batchXs[i], batchZs[i], batchScores[i]);
+                }
+            });
+            applyBatch(batchWorlds, batchPlayers, batchXs, batchZs, batchScores, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the merged ticks of {@link #tickAll(PlayerChunkPosition[])}, which are sorted by world, region and chunk.
+     *
+     * @param batchWorlds The world ids of the ticks
+     * @param batchPlayers The player ids of the ticks
+     * @param batchXs The X-Coordinates of the chunks (in chunks)
+     * @param batchZs The Z-Coordinates of the chunks (in chunks)
+     * @param batchScores The amount of ticks of the player within the chunk
+     * @param batchSize The amount of ticks
+     */
+    private void applyBatch(int @NotNull[] batchWorlds, int @NotNull[] batchPlayers, int @NotNull[] batchXs, int @NotNull[] batchZs,
+            int @NotNull[] batchScores, int batchSize) {
+        ContenderTable table = null;
+        int now = decay.isEnabled() ? getCurrentTime() : 0;
+        for (int regionStart = 0; regionStart < batchSize;) {
+            int world = batchWorlds[regionStart];
+            int regionX = batchXs[regionStart] >> 8;
+            int regionZ = batchZs[regionStart] >> 8;
+            int regionEnd = regionStart + 1;
+            while (regionEnd < batchSize && batchWorlds[regionEnd] == world
+                    && (batchXs[regionEnd] >> 8) == regionX && (batchZs[regionEnd] >> 8) == regionZ) {
+                regionEnd++;
+            }
+            counts.addAndGetAll(world, batchPlayers, batchXs, batchZs, batchScores, regionStart, regionEnd);
+            for (int i = regionStart; i < regionEnd; i++) {
+                playerChunks.add(batchPlayers[i], world, hashPositions(batchXs[i], batchZs[i]));
+            }
+            if (regionStart == 0 || batchWorlds[regionStart - 1] != world) {
+                table = getOrCreateContenderTable(world);
+            }
+
+            for (int chunkStart = regionStart; chunkStart < regionEnd;) {
+                int x = batchXs[chunkStart];
+                int z = batchZs[chunkStart];
+                int chunkEnd = chunkStart + 1;
+                while (chunkEnd < regionEnd && batchXs[chunkEnd] == x && batchZs[chunkEnd] == z) {
+                    chunkEnd++;
                 }
+                ContenderTable.ChunkPresence presence = decay.isEnabled() ? getPresenceFunction(world) : null;
+                int flags = Objects.requireNonNull(table).offer(x, z, presence, now, batchPlayers, batchScores, chunkStart, chunkEnd);
+                onLeaderChange(world, x, z, flags);
+                chunkStart = chunkEnd;
+            }
+            regionStart = regionEnd;
+        }
+    }
+
+    /**
+     * Obtains the presence of the players within the chunks of a world, as used to refresh the contenders of the world.
+     * The instances are cached per world, so that offering presence does not allocate a function for every chunk.
+     *
+     * @param world The id of the world
+     * @return The presence function
+     */
+    @NotNull
+    private ContenderTable.ChunkPresence getPresenceFunction(int world) {
+        ContenderTable.ChunkPresence presence = presenceFunctions.get(world);
+        if (presence == null) {
+            ContenderTable.ChunkPresence created = (player, x, z) -> counts.get(player, world, x, z);
+            presence = presenceFunctions.putIfAbsent(world, created);
+            if (presence == null) {
+                presence = created;
+            }
+        }
+        return presence;
+    }
+
+    /**
+     * Informs the chunk group manager about the new owner of a chunk and removes the chunk from its chunk group after
+     * its leader changed, which is reported by the flags that are returned by the modifications of a {@link ContenderTable}.
+     * Chunks that had no leader are not part of a group.
+     *
+     * @param world The id of the world of the chunk
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param y The Y-Coordinate of the chunk (in chunks)
+     * @param flags The flags describing the change of the leader
+     */
+    private void onLeaderChange(int world, int x, int y, int flags) {
+        if ((flags & ContenderTable.LEADER_CHANGED) == 0) {
+            return;
+        }
+        if ((flags & ContenderTable.HAD_LEADER) != 0) {
+            ChunkGroup group = chunkGroups.getGroupAt(world, x, y);
+            if (group != null) {
+                chunkGroups.removeChunk(group, world, x, y);
+            }
+        }
+        ContenderTable table = Objects.requireNonNull(contenders.get(world));
+        int leader;
+        do {
+            // Concurrent leader changes may report their owners out of order, so the last one to report needs to win
+            leader = table.getLeaderId(x, y);
+            chunkGroups.setOwner(world, x, y, leader);
+        } while (table.getLeaderId(x, y) != leader);
+    }
+
+    /**
+     * Brings the leader and the other contenders of a chunk up to date with the decayed presence scores.
+     * If another contender has overtaken the leader due to decay, the contender becomes the new leader.
+     * Contenders without any presence left are removed.
+     *
+     * @param table The contenders of the world of the chunk
+     * @param world The id of the world of the chunk
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param y The Y-Coordinate of the chunk (in chunks)
+     */
+    private void refreshLeaders(@NotNull ContenderTable table, int world, int x, int y) {
+        int flags = table.refresh(x, y, getPresenceFunction(world), getCurrentTime());
+        onLeaderChange(world, x, y, flags);
+    }
+
+    private void refreshLeaders(int world, int x, int y) {
+        if (decay.isEnabled()) {
+            ContenderTable table = contenders.get(world);
+            if (table != null) {
+                refreshLeaders(table, world, x, y);
             }
-            break;
-        } while(true);
+        }
+    }
+
+    /**
+     * Updates the contenders and the leader of a chunk after the presence of a player in the chunk was raised.
+     *
+     * @param worldId The id of the world of the chunk
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param y The Y-Coordinate of the chunk (in chunks)
+     * @param player The id of the player whose presence was raised
+     * @param score The new presence of the player within the chunk
+     */
+    private void updateContenders(int worldId, int x, int y, int player, int score) {
+        ContenderTable table = getOrCreateContenderTable(worldId);
+        int flags;
+        if (decay.isEnabled()) {
+            flags = table.offer(x, y, getPresenceFunction(worldId), getCurrentTime(), player, score);
+        } else {
+            flags = table.offer(x, y, null, 0, player, score);
+        }
+        onLeaderChange(worldId, x, y, flags);
     }
 }
@@ -0,0 +1,207 @@
+package de.geolykt.presence.common.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jetbrains.annotations.NotNull;
+
+import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
+
+/**
+ * A container format that splits data into blocks of up to {@link #BLOCK_SIZE} bytes, each of which is compressed
+ * with its own {@link Deflater}. Every block consists of its uncompressed length and its compressed length,
+ * both as big-endian ints, followed by the compressed bytes. The last block is followed by an uncompressed length of 0.
+ * As the blocks do not depend on each other, they are decompressed in parallel.
+ *
+ * @author Geolykt
+ */
+public final class BlockCompression {
+
+    private static final class BlockDeflaterOutputStream extends OutputStream {
+
+        @NotNull
+        private final DataOutputStream out;
+
+        @NotNull
+        private final Deflater deflater;
+
+        private final byte @NotNull[] block = new byte[BLOCK_SIZE];
+
+        private byte @NotNull[] compressed = new byte[BLOCK_SIZE];
+
+        private int length;
+
+        private boolean closed;
+
+        private BlockDeflaterOutputStream(@NotNull OutputStream out, int level) {
+            this.out = new DataOutputStream(out);
+            this.deflater = new Deflater(level);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == BLOCK_SIZE) {
+                writeBlock();
+            }
+            block[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte @NotNull[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == BLOCK_SIZE) {
+                    writeBlock();
+                }
+                int copied = Math.min(len, BLOCK_SIZE - length);
+                System.arraycopy(b, off, block, length, copied);
+                length += copied;
+                off += copied;
+                len -= copied;
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            deflater.reset();
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length << 1);
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            out.writeInt(length);
+            out.writeInt(compressedLength);
+            out.write(compressed, 0, compressedLength);
+            length = 0;
+        }
+
+        /**
+         * Writes the pending block and the end of the container. The underlying stream is flushed, but not closed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            try {
+                if (length != 0) {
+                    writeBlock();
+                }
+                out.writeInt(0);
+                out.flush();
+            } finally {
+                closed = true;
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * The maximum amount of uncompressed bytes per block.
+     */
+    public static final int BLOCK_SIZE = 1 << 18;
+
+    private BlockCompression() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Creates a stream that compresses the data written to it. The stream must be closed in order to write the last block
+     * and the end of the container, which does not close the underlying stream.
+     *
+     * @param out The stream to write the container to
+     * @param level The compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     * @return The compressing stream
+     */
+    @NotNull
+    public static OutputStream compress(@NotNull OutputStream out, int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        return new BlockDeflaterOutputStream(out, level);
+    }
+
+    /**
+     * Reads a container up to and including its end and decompresses its blocks. The blocks are decompressed
+     * in parallel, which requires the whole container to be held in memory.
+     *
+     * @param in The stream to read the container from. Bytes after the end of the container are not read.
+     * @return A stream of the decompressed data
+     * @throws IOException If an I/O error occurs or the container is malformed
+     */
+    @NotNull
+    public static InputStream decompress(@NotNull InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        byte[][] blocks = new byte[0][];
+        int[] offsets = new int[1];
+        int count = 0;
+        long total = 0;
+        int length;
+        while ((length = dataIn.readInt()) != 0) {
+            int compressedLength = dataIn.readInt();
+            if (length < 0 || length > BLOCK_SIZE || compressedLength < 0) {
+                throw new IOException("Malformed block: " + length + " bytes compressed to " + compressedLength + " bytes.");
+            }
+            if (count == blocks.length) {
+                blocks = Arrays.copyOf(blocks, Math.max(4, count << 1));
+                offsets = Arrays.copyOf(offsets, blocks.length + 1);
+            }
+            blocks[count] = dataIn.readNBytes(compressedLength);
+            if (blocks[count].length != compressedLength) {
+                throw new IOException("Unexpected end of the container.");
+            }
+            total += length;
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IOException("Container too large.");
+            }
+            offsets[++count] = (int) total;
+        }
+
+        byte[] data = new byte[(int) total];
+        byte[][] compressedBlocks = blocks;
+        int[] blockOffsets = offsets;
+        try {
+            IntStream.range(0, count).parallel().forEach(i -> {
+                Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(compressedBlocks[i]);
+                    int expected = blockOffsets[i + 1] - blockOffsets[i];
+                    int inflated = 0;
+                    while (inflated < expected && !inflater.finished()) {
+                        int n = inflater.inflate(data, blockOffsets[i] + inflated, expected - inflated);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        inflated += n;
+                    }
+                    if (inflated != expected || !inflater.finished()) {
+                        throw new IOException("Block " + i + " does not decompress to " + expected + " bytes.");
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (DataFormatException e) {
+                    throw new UncheckedIOException(new IOException("Block " + i + " is corrupt.", e));
+                } finally {
+                    inflater.end();
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new FastByteArrayInputStream(data);
+    }
+}
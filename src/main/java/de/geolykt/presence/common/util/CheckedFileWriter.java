@@ -0,0 +1,109 @@
+package de.geolykt.presence.common.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Adler32;
+import java.util.zip.CheckedOutputStream;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes files that consist of a fixed header, an Adler32 checksum stored as a big-endian long and the checksummed
+ * payload. The payload is streamed to a temporary file next to the target file, after which the checksum is patched into
+ * the space reserved for it. The temporary file is then forced to the disk and atomically moved to the target file,
+ * so a crash while saving leaves the previous version of the file intact and the memory used while saving does not
+ * depend on the size of the payload.
+ *
+ * @author Geolykt
+ */
+public final class CheckedFileWriter {
+
+    /**
+     * Writes the payload of a file.
+     *
+     * @author Geolykt
+     */
+    @FunctionalInterface
+    public static interface PayloadWriter {
+
+        /**
+         * Writes the payload to the given stream. The stream is buffered and must not be closed by the writer.
+         *
+         * @param out The stream to write to
+         * @throws IOException If an I/O error occurs
+         */
+        void write(@NotNull OutputStream out) throws IOException;
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private CheckedFileWriter() {
+        throw new UnsupportedOperationException();
+    }
+
+    private static void syncDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        // Makes the rename durable. Not all platforms allow to open directories, in which case this is skipped
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Ignored
+        }
+    }
+
+    /**
+     * Writes a file, replacing the target file only once the file was fully written.
+     *
+     * @param target The file to write
+     * @param header The bytes that precede the checksum, not covered by the checksum
+     * @param payload The writer of the payload that follows the checksum
+     * @throws IOException If an I/O error occurs, in which case the target file is left untouched
+     */
+    public static void write(@NotNull Path target, byte @NotNull[] header, @NotNull PayloadWriter payload) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                Adler32 checksum = new Adler32();
+                // The channel stream must not be closed before the checksum is patched in, as it would close the channel
+                OutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                buffered.write(header);
+                buffered.write(new byte[Long.BYTES]); // Placeholder for the checksum
+                CheckedOutputStream checkedOut = new CheckedOutputStream(buffered, checksum);
+                payload.write(checkedOut);
+                checkedOut.flush();
+
+                ByteBuffer checksumBytes = ByteBuffer.allocate(Long.BYTES).putLong(checksum.getValue());
+                checksumBytes.flip();
+                long position = header.length;
+                while (checksumBytes.hasRemaining()) {
+                    position += channel.write(checksumBytes, position);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(target.toAbsolutePath().getParent());
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package de.geolykt.presence.common.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The players with the most presence within a single chunk, sorted by their presence in descending order.
+ * Only a fixed amount of contenders are tracked, so the structure stays compact regardless of how many players
+ * have presence within the chunk. As presence only grows when a player is ticked (and decay affects all players
+ * equally), offering every updated score to this structure is enough to keep it exact.
+ *
+ * <p>Reads are lock-free as the contenders are stored in an array that is replaced whenever the order of the
+ * contenders changes. Modifications must be performed while holding the monitor of the instance. The score of a
+ * contender is updated in-place if this does not change the order of the contenders.
+ *
+ * @author Geolykt
+ */
+public final class ChunkContenders {
+
+    @NotNull
+    private static final PlayerAttachedScore[] EMPTY = new PlayerAttachedScore[0];
+
+    @NotNull
+    private static final Comparator<PlayerAttachedScore> DESCENDING_SCORE = (a, b) -> Integer.compare(b.score().get(), a.score().get());
+
+    private final int capacity;
+
+    @NotNull
+    private volatile PlayerAttachedScore[] contenders = EMPTY;
+
+    private int lastRefresh = Integer.MIN_VALUE; // Guarded by "this"
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The maximum amount of contenders that are tracked, at least 2
+     */
+    public ChunkContenders(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("At least two contenders need to be tracked, but the capacity is " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    @Override
+    @Contract(pure = true, value = "null -> false; !null -> _")
+    public boolean equals(Object obj) {
+        if (obj instanceof ChunkContenders other) {
+            return Arrays.equals(this.contenders, other.contenders);
+        }
+        return false;
+    }
+
+    @Contract(pure = true)
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Obtains a copy of the contenders, sorted by their presence in descending order.
+     *
+     * @return The contenders
+     */
+    @NotNull
+    @Contract(pure = true, value = "-> new")
+    public PlayerAttachedScore[] getContenders() {
+        return contenders.clone();
+    }
+
+    @Nullable
+    @Contract(pure = true)
+    public PlayerAttachedScore getLeader() {
+        PlayerAttachedScore[] contenders = this.contenders;
+        return contenders.length == 0 ? null : contenders[0];
+    }
+
+    @Nullable
+    @Contract(pure = true)
+    public PlayerAttachedScore getSuccessor() {
+        PlayerAttachedScore[] contenders = this.contenders;
+        return contenders.length < 2 ? null : contenders[1];
+    }
+
+    /**
+     * Checks whether {@link #refresh(ToIntFunction, int)} would have any effect at the given point in time,
+     * which allows callers to skip creating the presence function otherwise. Must be called while holding the
+     * monitor of this instance.
+     *
+     * @param now The current point in time
+     * @return False if the contenders were already refreshed at the given point in time
+     */
+    @Contract(pure = true)
+    public boolean isRefreshDue(int now) {
+        return now != lastRefresh;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(contenders);
+    }
+
+    /**
+     * Informs this structure that the presence of a player has risen. Ties are broken in favour of the
+     * player that reached the score first. Must be called while holding the monitor of this instance.
+     *
+     * @param player The UUID of the player
+     * @param score The new presence of the player in the chunk
+     * @return True if the leader of the chunk changed
+     */
+    public boolean offer(@NotNull UUID player, int score) {
+        PlayerAttachedScore[] contenders = this.contenders;
+        int index = 0;
+        while (index < contenders.length && !contenders[index].player().equals(player)) {
+            index++;
+        }
+
+        if (index != contenders.length) {
+            AtomicInteger current = contenders[index].score();
+            if (current.accumulateAndGet(score, Math::max) != score || index == 0 || contenders[index - 1].score().get() >= score) {
+                return false; // Order did not change
+            }
+            PlayerAttachedScore[] copy = contenders.clone();
+            PlayerAttachedScore moved = copy[index];
+            while (index != 0 && copy[index - 1].score().get() < score) {
+                copy[index] = copy[index - 1];
+                index--;
+            }
+            copy[index] = moved;
+            this.contenders = copy;
+            return index == 0;
+        }
+
+        PlayerAttachedScore[] copy;
+        if (contenders.length < capacity) {
+            copy = Arrays.copyOf(contenders, contenders.length + 1);
+        } else if (contenders[contenders.length - 1].score().get() < score) {
+            copy = contenders.clone(); // The last contender is dropped
+        } else {
+            return false;
+        }
+        index = copy.length - 1;
+        while (index != 0 && copy[index - 1].score().get() < score) {
+            copy[index] = copy[index - 1];
+            index--;
+        }
+        copy[index] = new PlayerAttachedScore(player, new AtomicInteger(score));
+        this.contenders = copy;
+        return index == 0;
+    }
+
+    /**
+     * Removes a player from the contenders. Must be called while holding the monitor of this instance.
+     * As players that are not tracked are not known to this structure, there may be fewer contenders
+     * than the capacity afterwards.
+     *
+     * @param player The UUID of the player
+     * @return True if the player was a contender
+     */
+    public boolean remove(@NotNull UUID player) {
+        PlayerAttachedScore[] contenders = this.contenders;
+        for (int i = 0; i < contenders.length; i++) {
+            if (contenders[i].player().equals(player)) {
+                PlayerAttachedScore[] copy = new PlayerAttachedScore[contenders.length - 1];
+                System.arraycopy(contenders, 0, copy, 0, i);
+                System.arraycopy(contenders, i + 1, copy, i, copy.length - i);
+                this.contenders = copy;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the scores of all contenders with their current presence, which is used to apply decay.
+     * Contenders without presence are removed. This is performed at most once per point in time, so
+     * repeated calls are cheap. Must be called while holding the monitor of this instance.
+     *
+     * @param presence A function that yields the current presence of a player within the chunk
+     * @param now The current point in time
+     * @return True if the leader of the chunk changed
+     */
+    public boolean refresh(@NotNull ToIntFunction<UUID> presence, int now) {
+        if (now == lastRefresh) {
+            return false;
+        }
+        lastRefresh = now;
+        PlayerAttachedScore[] contenders = this.contenders;
+        if (contenders.length == 0) {
+            return false;
+        }
+        PlayerAttachedScore[] copy = new PlayerAttachedScore[contenders.length];
+        int size = 0;
+        boolean changed = false;
+        for (PlayerAttachedScore contender : contenders) {
+            int score = presence.applyAsInt(contender.player());
+            if (score == 0) {
+                changed = true;
+                continue;
+            }
+            if (contender.score().get() != score) {
+                contender.score().set(score);
+                changed = true;
+            }
+            copy[size++] = contender;
+        }
+        if (!changed) {
+            return false;
+        }
+        copy = Arrays.copyOf(copy, size);
+        Arrays.sort(copy, DESCENDING_SCORE); // Stable, so ties remain in favour of the previous order
+        this.contenders = copy;
+        return size == 0 || copy[0] != contenders[0];
+    }
+}
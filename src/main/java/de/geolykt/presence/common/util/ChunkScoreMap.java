@@ -0,0 +1,660 @@
+package de.geolykt.presence.common.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntSupplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * A concurrent (player id, world id, chunk x, chunk z) -> int map that is used to store the presence
+ * of a player within a chunk. Unlike a {@link ConcurrentHashMap} with a composite key object this map stores
+ * the keys and values as primitives, which means that a single entry only costs 12 bytes (plus the overhead
+ * caused by the load factor) instead of the 150 or so bytes caused by the key, value and node objects.
+ *
+ * <p>The player and world ids are expected to be dense integers such as the ones supplied by a {@link UUIDRegistry}.
+ * Internally the chunks of a world are split into shards of 256 by 256 chunks, which is the same grid as the
+ * regions of a {@link RegionatedIntIntToObjectMap}. Each shard is an open-addressing hash table that uses itself
+ * as a lock, which means that threads only contend if they access the same shard at the same time.
+ *
+ * <p>Absent entries have a score of 0, however an entry with a score of 0 is not the same as an absent
+ * entry as far as {@link #putIfAbsent(int, int, int, int, int)} or {@link #forEach(ScoreConsumer)} are concerned.
+ *
+ * <p>Scores can optionally decay over time as described by a {@link ScoreDecay}. The decay is applied lazily whenever
+ * an entry is accessed, so no periodic pass over the map is required. Entries whose score decays to 0 are removed.
+ * For this purpose every entry stores the point in time it was last decayed, as supplied by the clock of the map.
+ *
+ * <p>Every shard keeps track of whether it was modified, so the regions that need to be persisted again
+ * can be obtained through {@link #pollDirtyRegions()} without iterating the entries of the map.
+ *
+ * @author Geolykt
+ */
+public class ChunkScoreMap {
+
+    /**
+     * A consumer that accepts a single entry of a {@link ChunkScoreMap}.
+     */
+    @FunctionalInterface
+    public static interface ScoreConsumer {
+        void accept(int player, int world, int x, int z, int score);
+    }
+
+    /**
+     * A consumer that accepts a single entry of a {@link ChunkScoreMap} alongside the point in time the
+     * entry was last decayed.
+     */
+    @FunctionalInterface
+    public static interface TimedScoreConsumer {
+        void accept(int player, int world, int x, int z, int score, int lastDecay);
+    }
+
+    private static final class ScoreShard {
+        private static final long EMPTY = -1L;
+
+        private final int regionX;
+        private final int regionZ;
+        @NotNull
+        private final ScoreDecay decay;
+        private long[] keys;
+        private int[] scores;
+        private int[] lastDecay; // null if decay is disabled
+        private int size;
+        private boolean dirty; // Whether entries were modified since the last call to #pollDirty
+
+        private ScoreShard(int regionX, int regionZ, @NotNull ScoreDecay decay) {
+            this.regionX = regionX;
+            this.regionZ = regionZ;
+            this.decay = decay;
+            this.keys = new long[16];
+            this.scores = new int[16];
+            if (decay.isEnabled()) {
+                this.lastDecay = new int[16];
+            }
+            Arrays.fill(keys, EMPTY);
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        private int slot(long key) {
+            long[] keys = this.keys;
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != EMPTY && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldScores = scores;
+            int[] oldLastDecay = lastDecay;
+            keys = new long[oldKeys.length << 1];
+            scores = new int[oldKeys.length << 1];
+            if (oldLastDecay != null) {
+                lastDecay = new int[oldKeys.length << 1];
+            }
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    scores[slot] = oldScores[i];
+                    if (oldLastDecay != null) {
+                        lastDecay[slot] = oldLastDecay[i];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Applies the decay that elapsed since the entry at the given slot was decayed the last time.
+         * If the score of the entry drops to 0, the entry is removed, which means that the slots
+         * of other entries may change.
+         *
+         * @return True if the entry still exists
+         */
+        private boolean decay(int slot, int now) {
+            if (lastDecay == null) {
+                return true;
+            }
+            int steps = decay.getElapsedSteps(lastDecay[slot], now);
+            if (steps == 0) {
+                return true;
+            }
+            int score = decay.apply(scores[slot], steps);
+            if (score == 0) {
+                removeSlot(slot);
+                return false;
+            }
+            scores[slot] = score;
+            // Only advance by full intervals so that the result does not depend on how often the entry is accessed
+            lastDecay[slot] += steps * decay.getInterval();
+            return true;
+        }
+
+        /**
+         * Inserts a new key at the given slot, which must be the slot returned by {@link #slot(long)}.
+         */
+        private int insert(int slot, long key, int score, int now) {
+            keys[slot] = key;
+            scores[slot] = score;
+            if (lastDecay != null) {
+                lastDecay[slot] = now;
+            }
+            if (++size * 4 >= keys.length * 3) {
+                grow();
+                return slot(key);
+            }
+            return slot;
+        }
+
+        private void removeSlot(int last) {
+            long[] keys = this.keys;
+            // Backwards-shift deletion, which removes the need of tombstones
+            int mask = keys.length - 1;
+            int i = last;
+            while (true) {
+                i = (i + 1) & mask;
+                if (keys[i] == EMPTY) {
+                    break;
+                }
+                int ideal = mix(keys[i]) & mask;
+                if (last <= i ? (last < ideal && ideal <= i) : (last < ideal || ideal <= i)) {
+                    continue; // The entry does not need to be moved
+                }
+                keys[last] = keys[i];
+                scores[last] = scores[i];
+                if (lastDecay != null) {
+                    lastDecay[last] = lastDecay[i];
+                }
+                last = i;
+            }
+            keys[last] = EMPTY;
+            scores[last] = 0;
+            size--;
+        }
+
+        synchronized int get(long key, int now) {
+            int slot = slot(key);
+            if (keys[slot] != key || !decay(slot, now)) {
+                return 0;
+            }
+            return scores[slot];
+        }
+
+        private int addAndGet0(long key, int delta, int now) {
+            dirty = true;
+            int slot = slot(key);
+            if (keys[slot] == key) {
+                if (decay(slot, now)) {
+                    return scores[slot] += delta;
+                }
+                slot = slot(key);
+            }
+            insert(slot, key, delta, now);
+            return delta;
+        }
+
+        synchronized int addAndGet(long key, int delta, int now) {
+            return addAndGet0(key, delta, now);
+        }
+
+        synchronized void addAndGetAll(long @NotNull[] keys, int @NotNull[] values, int from, int to, int now) {
+            for (int i = from; i < to; i++) {
+                values[i] = addAndGet0(keys[i], values[i], now);
+            }
+        }
+
+        synchronized int put(long key, int score, int lastDecay, int now) {
+            dirty = true;
+            int slot = slot(key);
+            if (keys[slot] == key) {
+                int old = decay(slot, now) ? scores[slot] : 0;
+                slot = slot(key);
+                if (keys[slot] == key) {
+                    scores[slot] = score;
+                    if (this.lastDecay != null) {
+                        this.lastDecay[slot] = lastDecay;
+                    }
+                    return old;
+                }
+                insert(slot, key, score, lastDecay);
+                return old;
+            }
+            insert(slot, key, score, lastDecay);
+            return 0;
+        }
+
+        synchronized boolean putIfAbsent(long key, int score, int lastDecay) {
+            int slot = slot(key);
+            if (keys[slot] == key) {
+                return false;
+            }
+            insert(slot, key, score, lastDecay);
+            dirty = true;
+            return true;
+        }
+
+        synchronized boolean remove(long key) {
+            int slot = slot(key);
+            if (keys[slot] != key) {
+                return false;
+            }
+            removeSlot(slot);
+            dirty = true;
+            return true;
+        }
+
+        synchronized boolean pollDirty() {
+            boolean dirty = this.dirty;
+            this.dirty = false;
+            return dirty;
+        }
+
+        synchronized void markDirty() {
+            dirty = true;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        void forEach(int world, @NotNull TimedScoreConsumer consumer, int now) {
+            long[] keys;
+            int[] scores;
+            int[] lastDecay;
+            synchronized (this) {
+                if (this.lastDecay != null) {
+                    // Bring all entries up to date, removing entries that decayed away in the process.
+                    // As removals shift entries backwards, the current slot needs to be visited again after a removal.
+                    for (int i = 0; i < this.keys.length;) {
+                        if (this.keys[i] == EMPTY || decay(i, now)) {
+                            i++;
+                        }
+                    }
+                }
+                // Copying is cheap compared to blocking ticks while the consumer does something expensive (e.g. I/O)
+                keys = this.keys.clone();
+                scores = this.scores.clone();
+                lastDecay = this.lastDecay == null ? null : this.lastDecay.clone();
+            }
+            int baseX = regionX << SHARD_SHIFT;
+            int baseZ = regionZ << SHARD_SHIFT;
+            for (int i = 0; i < keys.length; i++) {
+                long key = keys[i];
+                if (key != EMPTY) {
+                    int player = (int) (key >>> (SHARD_SHIFT << 1));
+                    int x = baseX | ((int) (key >>> SHARD_SHIFT) & CELL_MASK);
+                    int z = baseZ | ((int) key & CELL_MASK);
+                    consumer.accept(player, world, x, z, scores[i], lastDecay == null ? now : lastDecay[i]);
+                }
+            }
+        }
+    }
+
+    private static final int SHARD_SHIFT = 8;
+    private static final int CELL_MASK = ~(~0 << SHARD_SHIFT);
+
+    private static long getCellKey(int player, int x, int z) {
+        return ((long) player << (SHARD_SHIFT << 1)) | ((x & CELL_MASK) << SHARD_SHIFT) | (z & CELL_MASK);
+    }
+
+    private static long getShardKey(int x, int z) {
+        return (((long) (x >> SHARD_SHIFT)) << 32) | ((z >> SHARD_SHIFT) & 0xFFFFFFFFL);
+    }
+
+    @NotNull
+    private volatile AtomicReferenceArray<ConcurrentHashMap<Long, ScoreShard>> worlds = new AtomicReferenceArray<>(4);
+
+    @NotNull
+    private final ScoreDecay decay;
+
+    @NotNull
+    private final IntSupplier clock;
+
+    /**
+     * Creates a map whose scores do not decay.
+     */
+    public ChunkScoreMap() {
+        this(ScoreDecay.NONE, () -> 0);
+    }
+
+    /**
+     * Creates a map whose scores decay over time.
+     *
+     * @param decay The decay of the scores
+     * @param clock The clock that supplies the current point in time, in the same unit as {@link ScoreDecay#getInterval()}
+     */
+    public ChunkScoreMap(@NotNull ScoreDecay decay, @NotNull IntSupplier clock) {
+        this.decay = decay;
+        this.clock = clock;
+    }
+
+    private int now() {
+        return decay.isEnabled() ? clock.getAsInt() : 0;
+    }
+
+    /**
+     * Adds a value to the score of the given entry, inserting the entry if it does not exist yet.
+     * This operation is atomic.
+     *
+     * @param player The id of the player
+     * @param world The id of the world
+     * @param x The X-coordinate of the chunk
+     * @param z The Z-coordinate of the chunk
+     * @param delta The value to add to the score
+     * @return The new score
+     */
+    public int addAndGet(int player, int world, int x, int z, int delta) {
+        return getOrCreateShard(world, x, z).addAndGet(getCellKey(player, x, z), delta, now());
+    }
+
+    /**
+     * Adds values to the scores of several entries that all reside within the same world and the same
+     * 256 by 256 chunk region, inserting entries that do not exist yet. The shard of the region is only looked up
+     * and locked once, which makes this method considerably cheaper than repeated calls to
+     * {@link #addAndGet(int, int, int, int, int)} if the entries are close to each other.
+     * Each entry is updated atomically, however the batch as a whole is only atomic in regards to other
+     * operations on the same region.
+     *
+     * @param world The id of the world
+     * @param players The ids of the players
+     * @param xs The X-coordinates of the chunks
+     * @param zs The Z-coordinates of the chunks
+     * @param values The values to add to the scores. The new scores are written back into this array.
+     * @param from The index of the first entry (inclusive)
+     * @param to The index of the last entry (exclusive)
+     * @throws IllegalArgumentException If the entries are not located within the same region
+     */
+    public void addAndGetAll(int world, int @NotNull[] players, int @NotNull[] xs, int @NotNull[] zs, int @NotNull[] values, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        long shardKey = getShardKey(xs[from], zs[from]);
+        long[] keys = new long[to];
+        for (int i = from; i < to; i++) {
+            if (getShardKey(xs[i], zs[i]) != shardKey) {
+                throw new IllegalArgumentException("Chunk " + xs[i] + "/" + zs[i] + " is not in the same region as chunk " + xs[from] + "/" + zs[from]);
+            }
+            keys[i] = getCellKey(players[i], xs[i], zs[i]);
+        }
+        getOrCreateShard(world, xs[from], zs[from]).addAndGetAll(keys, values, from, to, now());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ChunkScoreMap other)) {
+            return false;
+        }
+        boolean[] equal = {true};
+        int[] size = {0};
+        forEach((player, world, x, z, score) -> {
+            size[0]++;
+            if (equal[0] && other.get(player, world, x, z) != score) {
+                equal[0] = false;
+            }
+        });
+        // Obtain the size after iterating as iteration removes entries that decayed away
+        return equal[0] && size[0] == other.size();
+    }
+
+    /**
+     * Iterates over all entries of this map. The iteration is weakly consistent, that is changes to the map
+     * that were made after the iteration started may or may not be reflected. The consumer is not invoked
+     * while holding any lock. The scores passed to the consumer are decayed.
+     *
+     * @param consumer The consumer to invoke for every entry
+     */
+    public void forEach(@NotNull ScoreConsumer consumer) {
+        forEach((player, world, x, z, score, lastDecay) -> consumer.accept(player, world, x, z, score));
+    }
+
+    /**
+     * Iterates over all entries of this map. The iteration is weakly consistent, that is changes to the map
+     * that were made after the iteration started may or may not be reflected. The consumer is not invoked
+     * while holding any lock. The scores passed to the consumer are decayed. If decay is disabled, the current
+     * time will be reported as the time of the last decay.
+     *
+     * @param consumer The consumer to invoke for every entry
+     */
+    public void forEach(@NotNull TimedScoreConsumer consumer) {
+        int now = now();
+        AtomicReferenceArray<ConcurrentHashMap<Long, ScoreShard>> worlds = this.worlds;
+        for (int world = 0; world < worlds.length(); world++) {
+            ConcurrentHashMap<Long, ScoreShard> shards = worlds.get(world);
+            if (shards == null) {
+                continue;
+            }
+            for (ScoreShard shard : shards.values()) {
+                shard.forEach(world, consumer, now);
+            }
+        }
+    }
+
+    /**
+     * Iterates over all entries of a single 256 by 256 chunk region. The iteration has the same guarantees
+     * as {@link #forEach(TimedScoreConsumer)}.
+     *
+     * @param world The id of the world
+     * @param regionX The X-coordinate of the region, that is the X-coordinate of its chunks shifted to the right by 8
+     * @param regionZ The Z-coordinate of the region, that is the Z-coordinate of its chunks shifted to the right by 8
+     * @param consumer The consumer to invoke for every entry
+     */
+    public void forEachInRegion(int world, int regionX, int regionZ, @NotNull TimedScoreConsumer consumer) {
+        ScoreShard shard = getShard(world, regionX << SHARD_SHIFT, regionZ << SHARD_SHIFT);
+        if (shard != null) {
+            shard.forEach(world, consumer, now());
+        }
+    }
+
+    /**
+     * Obtains the score of a given entry.
+     *
+     * @param player The id of the player
+     * @param world The id of the world
+     * @param x The X-coordinate of the chunk
+     * @param z The Z-coordinate of the chunk
+     * @return The current score, 0 if absent
+     */
+    public int get(int player, int world, int x, int z) {
+        ScoreShard shard = getShard(world, x, z);
+        if (shard == null) {
+            return 0;
+        }
+        return shard.get(getCellKey(player, x, z), now());
+    }
+
+    @NotNull
+    private ScoreShard getOrCreateShard(int world, int x, int z) {
+        ConcurrentHashMap<Long, ScoreShard> shards = getShards(world);
+        if (shards == null) {
+            synchronized (this) {
+                AtomicReferenceArray<ConcurrentHashMap<Long, ScoreShard>> worlds = this.worlds;
+                if (world >= worlds.length()) {
+                    AtomicReferenceArray<ConcurrentHashMap<Long, ScoreShard>> newWorlds = new AtomicReferenceArray<>(Math.max(world + 1, worlds.length() << 1));
+                    for (int i = 0; i < worlds.length(); i++) {
+                        newWorlds.set(i, worlds.get(i));
+                    }
+                    worlds = newWorlds;
+                }
+                shards = worlds.get(world);
+                if (shards == null) {
+                    shards = new ConcurrentHashMap<>();
+                    worlds.set(world, shards);
+                }
+                this.worlds = worlds;
+            }
+        }
+        Long shardKey = getShardKey(x, z);
+        ScoreShard shard = shards.get(shardKey);
+        if (shard == null) {
+            shard = new ScoreShard(x >> SHARD_SHIFT, z >> SHARD_SHIFT, decay);
+            ScoreShard retain = shards.putIfAbsent(shardKey, shard);
+            if (retain != null) { // Race condition
+                shard = retain;
+            }
+        }
+        return shard;
+    }
+
+    @Nullable
+    private ScoreShard getShard(int world, int x, int z) {
+        ConcurrentHashMap<Long, ScoreShard> shards = getShards(world);
+        if (shards == null) {
+            return null;
+        }
+        return shards.get(getShardKey(x, z));
+    }
+
+    @Nullable
+    private ConcurrentHashMap<Long, ScoreShard> getShards(int world) {
+        AtomicReferenceArray<ConcurrentHashMap<Long, ScoreShard>> worlds = this.worlds;
+        if (world < 0 || world >= worlds.length()) {
+            return null;
+        }
+        return worlds.get(world);
+    }
+
+    @Override
+    public int hashCode() {
+        int[] hash = {0x3E55A1};
+        forEach((player, world, x, z, score) -> {
+            hash[0] += (player * 31 + world) ^ (x * 0x1F1F1F1F) ^ z ^ score;
+        });
+        return hash[0];
+    }
+
+    /**
+     * Marks a region as modified, so that it is returned by the next call to {@link #pollDirtyRegions()}.
+     * This is used to retry persisting regions whose modifications could not be persisted.
+     *
+     * @param world The id of the world
+     * @param regionX The X-coordinate of the region
+     * @param regionZ The Z-coordinate of the region
+     */
+    public void markRegionDirty(int world, int regionX, int regionZ) {
+        getOrCreateShard(world, regionX << SHARD_SHIFT, regionZ << SHARD_SHIFT).markDirty();
+    }
+
+    /**
+     * Obtains all regions whose entries were inserted, modified or removed since the previous call of this method
+     * and marks them as clean. Entries that only decayed do not mark their region as dirty, as the decay
+     * is computed from the point in time the entry was last decayed, which does not change either.
+     * Regions that are modified while the regions are being polled may be returned by either this or the next call.
+     *
+     * @return The dirty regions, indexed by the world id. The regions are packed in the same way as
+     * {@link de.geolykt.presence.common.PresenceData#hashPositions(int, int)} packs chunks. May contain null elements.
+     */
+    @NotNull
+    public long[][] pollDirtyRegions() {
+        AtomicReferenceArray<ConcurrentHashMap<Long, ScoreShard>> worlds = this.worlds;
+        long[][] out = new long[worlds.length()][];
+        for (int world = 0; world < out.length; world++) {
+            ConcurrentHashMap<Long, ScoreShard> shards = worlds.get(world);
+            if (shards == null) {
+                continue;
+            }
+            LongArrayList dirty = new LongArrayList();
+            shards.forEach((key, shard) -> {
+                if (shard.pollDirty()) {
+                    dirty.add(key.longValue());
+                }
+            });
+            if (!dirty.isEmpty()) {
+                out[world] = dirty.toLongArray();
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Sets the score of a given entry. The entry will be treated as if it was just decayed.
+     *
+     * @param player The id of the player
+     * @param world The id of the world
+     * @param x The X-coordinate of the chunk
+     * @param z The Z-coordinate of the chunk
+     * @param score The new score
+     * @return The previous score, 0 if absent
+     */
+    public int put(int player, int world, int x, int z, int score) {
+        int now = now();
+        return getOrCreateShard(world, x, z).put(getCellKey(player, x, z), score, now, now);
+    }
+
+    /**
+     * Inserts an entry if it does not exist yet.
+     *
+     * @param player The id of the player
+     * @param world The id of the world
+     * @param x The X-coordinate of the chunk
+     * @param z The Z-coordinate of the chunk
+     * @param score The score to insert
+     * @return True if the entry was inserted, false if there already was an entry
+     */
+    public boolean putIfAbsent(int player, int world, int x, int z, int score) {
+        return putIfAbsent(player, world, x, z, score, now());
+    }
+
+    /**
+     * Inserts an entry if it does not exist yet, which is used to restore entries that were decayed
+     * at a given point in time.
+     *
+     * @param player The id of the player
+     * @param world The id of the world
+     * @param x The X-coordinate of the chunk
+     * @param z The Z-coordinate of the chunk
+     * @param score The score to insert
+     * @param lastDecay The point in time the score was last decayed
+     * @return True if the entry was inserted, false if there already was an entry
+     */
+    public boolean putIfAbsent(int player, int world, int x, int z, int score, int lastDecay) {
+        return getOrCreateShard(world, x, z).putIfAbsent(getCellKey(player, x, z), score, lastDecay);
+    }
+
+    /**
+     * Removes an entry from the map.
+     *
+     * @param player The id of the player
+     * @param world The id of the world
+     * @param x The X-coordinate of the chunk
+     * @param z The Z-coordinate of the chunk
+     * @return True if the entry existed
+     */
+    public boolean remove(int player, int world, int x, int z) {
+        ScoreShard shard = getShard(world, x, z);
+        if (shard == null) {
+            return false;
+        }
+        return shard.remove(getCellKey(player, x, z));
+    }
+
+    /**
+     * Obtains the amount of entries within this map. The result is only accurate if the map is not
+     * modified concurrently. Entries that have decayed away but were not accessed since are included.
+     *
+     * @return The amount of entries
+     */
+    public int size() {
+        int size = 0;
+        AtomicReferenceArray<ConcurrentHashMap<Long, ScoreShard>> worlds = this.worlds;
+        for (int world = 0; world < worlds.length(); world++) {
+            ConcurrentHashMap<Long, ScoreShard> shards = worlds.get(world);
+            if (shards == null) {
+                continue;
+            }
+            for (ScoreShard shard : shards.values()) {
+                size += shard.size();
+            }
+        }
+        return size;
+    }
+}
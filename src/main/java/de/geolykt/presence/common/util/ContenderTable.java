@@ -0,0 +1,199 @@
+package de.geolykt.presence.common.util;
+
+import java.util.Locale;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The players with the most presence in every chunk of a single world, as described by {@link ChunkContenders}.
+ * The first contender of a chunk is the owner of the chunk, the second one the successor. Players are referred to
+ * by their id within the player {@link UUIDRegistry}.
+ *
+ * <p>All modifications of the contenders of a chunk are atomic. Modifications return a combination of the
+ * {@link #LEADER_CHANGED} and {@link #HAD_LEADER} flags, which allows the caller to react to ownership changes.
+ *
+ * @author Geolykt
+ */
+public interface ContenderTable {
+
+    /**
+     * The presence of players within the chunks of a world, which is used to bring the contenders of a chunk up to date
+     * with decayed scores. As the chunk is passed alongside the player, a single instance can be shared by all chunks
+     * of a world, so no function needs to be created per chunk.
+     *
+     * @author Geolykt
+     */
+    @FunctionalInterface
+    public static interface ChunkPresence {
+
+        /**
+         * Obtains the current presence of a player within a chunk.
+         *
+         * @param player The id of the player
+         * @param x The X-Coordinate of the chunk (in chunks)
+         * @param z The Z-Coordinate of the chunk (in chunks)
+         * @return The current presence, 0 if absent
+         */
+        int getPresence(int player, int x, int z);
+    }
+
+    /**
+     * The storage engines that are available for the contenders of a world.
+     *
+     * @author Geolykt
+     */
+    public static enum Storage {
+
+        /**
+         * Stores the contenders as objects on the heap, see {@link HeapContenderTable}.
+         */
+        HEAP {
+            @Override
+            @NotNull
+            public ContenderTable create(@NotNull UUIDRegistry playerIds, int capacity) {
+                return new HeapContenderTable(playerIds, capacity);
+            }
+        },
+
+        /**
+         * Stores the contenders within direct memory, see {@link OffHeapContenderTable}.
+         */
+        OFF_HEAP {
+            @Override
+            @NotNull
+            public ContenderTable create(@NotNull UUIDRegistry playerIds, int capacity) {
+                return new OffHeapContenderTable(playerIds, capacity);
+            }
+        };
+
+        /**
+         * Obtains the storage engine that is referred to by a name, as used within the configuration.
+         * The name is case-insensitive and dashes may be used instead of underscores.
+         *
+         * @param name The name of the storage engine, e.g. "off-heap"
+         * @return The storage engine
+         * @throws IllegalArgumentException If there is no storage engine with the given name
+         */
+        @NotNull
+        public static Storage byName(@NotNull String name) {
+            return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+
+        /**
+         * Creates an empty table for the contenders of a world.
+         *
+         * @param playerIds The registry that provides the ids of the players
+         * @param capacity The amount of contenders that are tracked per chunk, at least 2
+         * @return The created table
+         */
+        @NotNull
+        public abstract ContenderTable create(@NotNull UUIDRegistry playerIds, int capacity);
+    }
+
+    /**
+     * Flag that is set if the chunk had a leader before the modification.
+     */
+    public static final int HAD_LEADER = 2;
+
+    /**
+     * Flag that is set if the leader of the chunk changed due to the modification.
+     */
+    public static final int LEADER_CHANGED = 1;
+
+    /**
+     * Obtains the players with the most presence in a chunk, sorted by their presence in descending order.
+     *
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @return The contenders of the chunk, an empty array if there are none
+     */
+    @NotNull
+    @Contract(pure = true, value = "_, _ -> new")
+    public PlayerAttachedScore[] getContenders(int x, int z);
+
+    @Nullable
+    @Contract(pure = true)
+    public PlayerAttachedScore getLeader(int x, int z);
+
+    /**
+     * Obtains the id of the player with the most presence in a chunk. Unlike {@link #getLeader(int, int)} this method
+     * does not allocate any objects, which makes it suitable for frequent lookups such as permission checks.
+     *
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @return The id of the leader within the player {@link UUIDRegistry}, or {@link UUIDRegistry#UNKNOWN_ID} if there is none
+     */
+    @Contract(pure = true)
+    public int getLeaderId(int x, int z);
+
+    /**
+     * Obtains the leaders of all chunks within a rectangular area, as per
+     * {@link RegionatedIntIntToObjectMap#getAll(int, int, int, int, Object[])}. The leader of the chunk (x, z) is
+     * stored at index {@code (z - fromZ) * (toX - fromX + 1) + (x - fromX)}, chunks without a leader are set to null.
+     *
+     * @param fromX The smallest X-Coordinate of the area (inclusive, in chunks)
+     * @param fromZ The smallest Z-Coordinate of the area (inclusive, in chunks)
+     * @param toX The largest X-Coordinate of the area (inclusive, in chunks)
+     * @param toZ The largest Z-Coordinate of the area (inclusive, in chunks)
+     * @param out The array to store the leaders in
+     * @throws IllegalArgumentException If the area is empty or the array is too small to hold the area
+     */
+    public void getLeaders(int fromX, int fromZ, int toX, int toZ, @Nullable PlayerAttachedScore @NotNull[] out);
+
+    @Nullable
+    @Contract(pure = true)
+    public PlayerAttachedScore getSuccessor(int x, int z);
+
+    /**
+     * Informs the table that the presence of players within a chunk has risen, as per {@link ChunkContenders#offer(java.util.UUID, int)}.
+     * If a presence function is given, the contenders are refreshed beforehand as per {@link #refresh(int, int, ChunkPresence, int)}.
+     *
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @param presence The presence of the players within the chunks of the world, or null to skip the refresh
+     * @param now The current point in time
+     * @param players The ids of the players
+     * @param scores The new presence of the players, in the same order as the ids
+     * @param from The index of the first player to offer (inclusive)
+     * @param to The index of the last player to offer (exclusive)
+     * @return The flags describing the change of the leader
+     */
+    public int offer(int x, int z, @Nullable ChunkPresence presence, int now, int @NotNull[] players, int @NotNull[] scores, int from, int to);
+
+    /**
+     * Informs the table that the presence of a single player within a chunk has risen. Behaves like
+     * {@link #offer(int, int, ChunkPresence, int, int[], int[], int, int)}, but does not require the caller to allocate arrays.
+     *
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @param presence The presence of the players within the chunks of the world, or null to skip the refresh
+     * @param now The current point in time
+     * @param player The id of the player
+     * @param score The new presence of the player
+     * @return The flags describing the change of the leader
+     */
+    public int offer(int x, int z, @Nullable ChunkPresence presence, int now, int player, int score);
+
+    /**
+     * Brings the contenders of a chunk up to date with the current presence, as per {@link ChunkContenders#refresh(java.util.function.ToIntFunction, int)}.
+     *
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @param presence The presence of the players within the chunks of the world
+     * @param now The current point in time
+     * @return The flags describing the change of the leader
+     */
+    public int refresh(int x, int z, @NotNull ChunkPresence presence, int now);
+
+    /**
+     * Removes a player from the contenders of a chunk.
+     *
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @param player The id of the player
+     * @return The flags describing the change of the leader
+     */
+    public int remove(int x, int z, int player);
+}
@@ -0,0 +1,131 @@
+package de.geolykt.presence.common.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A concurrent map whose keys are dense, non-negative ids such as the ones handed out by a {@link UUIDRegistry}.
+ * The values are stored in an array indexed by the id, so lookups are a plain array read and no key objects
+ * need to be kept in memory.
+ *
+ * <p>Reads are lock-free, writes are synchronised as the backing array may need to be grown. This class is therefore
+ * best suited for data that is read much more often than it is written, such as per-player settings.
+ *
+ * @param <V> The value type
+ * @author Geolykt
+ */
+public class DenseIdMap<V> {
+
+    @FunctionalInterface
+    public static interface IdConsumer<V> {
+        void accept(int id, @NotNull V value);
+    }
+
+    @NotNull
+    private volatile AtomicReferenceArray<V> values = new AtomicReferenceArray<>(16);
+
+    /**
+     * Removes all mappings.
+     */
+    public synchronized void clear() {
+        AtomicReferenceArray<V> values = this.values;
+        for (int i = 0; i < values.length(); i++) {
+            values.set(i, null);
+        }
+    }
+
+    /**
+     * Invokes the consumer for every mapping within the map. Mappings that are created or removed concurrently
+     * may or may not be visited.
+     *
+     * @param consumer The consumer to invoke
+     */
+    public void forEach(@NotNull IdConsumer<V> consumer) {
+        AtomicReferenceArray<V> values = this.values;
+        for (int i = 0; i < values.length(); i++) {
+            V value = values.get(i);
+            if (value != null) {
+                consumer.accept(i, value);
+            }
+        }
+    }
+
+    @Nullable
+    @Contract(pure = true)
+    public V get(int id) {
+        AtomicReferenceArray<V> values = this.values;
+        if (id < 0 || id >= values.length()) {
+            return null;
+        }
+        return values.get(id);
+    }
+
+    @NotNull
+    private AtomicReferenceArray<V> getArray(int id) { // Must be called while holding the monitor of "this"
+        if (id < 0) {
+            throw new IndexOutOfBoundsException("Negative id: " + id);
+        }
+        AtomicReferenceArray<V> values = this.values;
+        if (id >= values.length()) {
+            AtomicReferenceArray<V> newValues = new AtomicReferenceArray<>(Math.max(id + 1, values.length() << 1));
+            for (int i = 0; i < values.length(); i++) {
+                newValues.set(i, values.get(i));
+            }
+            this.values = values = newValues;
+        }
+        return values;
+    }
+
+    /**
+     * Sets the value associated with the id.
+     *
+     * @param id The id
+     * @param value The new value
+     * @return The previously associated value, or null
+     */
+    @Nullable
+    public synchronized V put(int id, @NotNull V value) {
+        return getArray(id).getAndSet(id, value);
+    }
+
+    /**
+     * Associates a value with the id if there is no value associated with it yet.
+     *
+     * @param id The id
+     * @param value The value to associate
+     * @return The value that was already associated with the id, or null if the value was associated
+     */
+    @Nullable
+    public V putIfAbsent(int id, @NotNull V value) {
+        V old = get(id);
+        if (old != null) {
+            return old;
+        }
+        synchronized (this) {
+            AtomicReferenceArray<V> values = getArray(id);
+            old = values.get(id);
+            if (old == null) {
+                values.set(id, value);
+            }
+            return old;
+        }
+    }
+
+    /**
+     * Removes the value associated with the id.
+     *
+     * @param id The id
+     * @return The previously associated value, or null
+     */
+    @Nullable
+    public synchronized V remove(int id) {
+        AtomicReferenceArray<V> values = this.values;
+        if (id < 0 || id >= values.length()) {
+            return null;
+        }
+        return values.getAndSet(id, null);
+    }
+}
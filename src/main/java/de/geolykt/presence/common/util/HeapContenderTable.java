@@ -0,0 +1,213 @@
+package de.geolykt.presence.common.util;
+
+import java.util.UUID;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link ContenderTable} that stores a {@link ChunkContenders} instance per chunk. Additionally the leaders of all
+ * chunks are stored in a separate map, so they can be read without going through the contenders.
+ *
+ * @author Geolykt
+ */
+public class HeapContenderTable implements ContenderTable {
+
+    private final int capacity;
+
+    /**
+     * The players with the most presence in every chunk. The leader of the {@link ChunkContenders} is always the same
+     * instance that is stored in {@link #leaders}.
+     */
+    @NotNull
+    private final RegionatedIntIntToObjectMap<ChunkContenders> contenders = new RegionatedIntIntToObjectMap<>();
+
+    @NotNull
+    private final RegionatedIntIntToObjectMap<PlayerAttachedScore> leaders = new RegionatedIntIntToObjectMap<>();
+
+    @NotNull
+    private final UUIDRegistry playerIds;
+
+    /**
+     * Constructor.
+     *
+     * @param playerIds The registry that provides the ids of the players
+     * @param capacity The amount of contenders that are tracked per chunk, at least 2
+     */
+    public HeapContenderTable(@NotNull UUIDRegistry playerIds, int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("At least two contenders need to be tracked, but the capacity is " + capacity);
+        }
+        this.playerIds = playerIds;
+        this.capacity = capacity;
+    }
+
+    @Override
+    @Contract(pure = true, value = "null -> false; !null -> _")
+    public boolean equals(Object obj) {
+        if (obj instanceof HeapContenderTable other) {
+            return this.leaders.equals(other.leaders) && this.contenders.equals(other.contenders);
+        }
+        return false;
+    }
+
+    @Override
+    @NotNull
+    public PlayerAttachedScore[] getContenders(int x, int z) {
+        ChunkContenders chunkContenders = contenders.get(x, z);
+        if (chunkContenders == null) {
+            return new PlayerAttachedScore[0];
+        }
+        return chunkContenders.getContenders();
+    }
+
+    @Override
+    @Nullable
+    public PlayerAttachedScore getLeader(int x, int z) {
+        return leaders.get(x, z);
+    }
+
+    @Override
+    public int getLeaderId(int x, int z) {
+        PlayerAttachedScore leader = leaders.get(x, z);
+        return leader == null ? UUIDRegistry.UNKNOWN_ID : playerIds.getId(leader.getPlayer());
+    }
+
+    @Override
+    public void getLeaders(int fromX, int fromZ, int toX, int toZ, @Nullable PlayerAttachedScore @NotNull[] out) {
+        leaders.getAll(fromX, fromZ, toX, toZ, out);
+    }
+
+    /**
+     * Obtains the map that stores the leaders of all chunks. The map should NOT be used to mutate the state of the world.
+     *
+     * @return The leaders of all chunks
+     */
+    @NotNull
+    public RegionatedIntIntToObjectMap<PlayerAttachedScore> getLeaderMap() {
+        return leaders;
+    }
+
+    @NotNull
+    private ChunkContenders getOrCreate(int x, int z) {
+        ChunkContenders chunkContenders = contenders.get(x, z);
+        if (chunkContenders == null) {
+            chunkContenders = new ChunkContenders(capacity);
+            ChunkContenders retain = contenders.putIfAbsent(x, z, chunkContenders);
+            if (retain != null) { // Race condition
+                chunkContenders = retain;
+            }
+        }
+        return chunkContenders;
+    }
+
+    @Override
+    @Nullable
+    public PlayerAttachedScore getSuccessor(int x, int z) {
+        ChunkContenders chunkContenders = contenders.get(x, z);
+        if (chunkContenders == null) {
+            return null;
+        }
+        return chunkContenders.getSuccessor();
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    @NotNull
+    private UUID getPlayer(int player) {
+        UUID uuid = playerIds.getUUID(player);
+        if (uuid == null) {
+            throw new IllegalArgumentException("Unregistered player id: " + player);
+        }
+        return uuid;
+    }
+
+    @Override
+    public int offer(int x, int z, @Nullable ChunkPresence presence, int now, int @NotNull[] players, int @NotNull[] scores, int from, int to) {
+        ChunkContenders chunkContenders = getOrCreate(x, z);
+        synchronized (chunkContenders) {
+            PlayerAttachedScore oldLeader = chunkContenders.getLeader();
+            if (presence != null) {
+                refresh(chunkContenders, x, z, presence, now);
+            }
+            for (int i = from; i < to; i++) {
+                chunkContenders.offer(getPlayer(players[i]), scores[i]);
+            }
+            return onLeaderChange(x, z, oldLeader, chunkContenders.getLeader());
+        }
+    }
+
+    @Override
+    public int offer(int x, int z, @Nullable ChunkPresence presence, int now, int player, int score) {
+        UUID playerUID = getPlayer(player);
+        ChunkContenders chunkContenders = getOrCreate(x, z);
+        synchronized (chunkContenders) {
+            PlayerAttachedScore oldLeader = chunkContenders.getLeader();
+            if (presence != null) {
+                refresh(chunkContenders, x, z, presence, now);
+            }
+            chunkContenders.offer(playerUID, score);
+            return onLeaderChange(x, z, oldLeader, chunkContenders.getLeader());
+        }
+    }
+
+    /**
+     * Updates the leader of a chunk after the leader of the {@link ChunkContenders} of the chunk may have changed.
+     * Must be called while holding the monitor of the {@link ChunkContenders} instance.
+     *
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @param oldLeader The leader before the contenders were modified
+     * @param newLeader The leader after the contenders were modified
+     * @return The flags describing the change of the leader
+     */
+    private int onLeaderChange(int x, int z, @Nullable PlayerAttachedScore oldLeader, @Nullable PlayerAttachedScore newLeader) {
+        int flags = oldLeader == null ? 0 : HAD_LEADER;
+        if (oldLeader == newLeader) {
+            return flags;
+        }
+        if (newLeader == null) {
+            leaders.compareAndRemove(x, z, oldLeader);
+        } else {
+            leaders.put(x, z, newLeader);
+        }
+        return flags | LEADER_CHANGED;
+    }
+
+    private void refresh(@NotNull ChunkContenders chunkContenders, int x, int z, @NotNull ChunkPresence presence, int now) {
+        if (chunkContenders.isRefreshDue(now)) {
+            chunkContenders.refresh(player -> presence.getPresence(playerIds.getId(player), x, z), now);
+        }
+    }
+
+    @Override
+    public int refresh(int x, int z, @NotNull ChunkPresence presence, int now) {
+        ChunkContenders chunkContenders = contenders.get(x, z);
+        if (chunkContenders == null) {
+            return 0;
+        }
+        synchronized (chunkContenders) {
+            PlayerAttachedScore oldLeader = chunkContenders.getLeader();
+            refresh(chunkContenders, x, z, presence, now);
+            return onLeaderChange(x, z, oldLeader, chunkContenders.getLeader());
+        }
+    }
+
+    @Override
+    public int remove(int x, int z, int player) {
+        ChunkContenders chunkContenders = contenders.get(x, z);
+        UUID playerUID = playerIds.getUUID(player);
+        if (chunkContenders == null || playerUID == null) {
+            return 0;
+        }
+        synchronized (chunkContenders) {
+            PlayerAttachedScore oldLeader = chunkContenders.getLeader();
+            chunkContenders.remove(playerUID);
+            return onLeaderChange(x, z, oldLeader, chunkContenders.getLeader());
+        }
+    }
+}
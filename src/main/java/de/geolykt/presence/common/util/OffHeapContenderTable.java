@@ -0,0 +1,568 @@
+package de.geolykt.presence.common.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link ContenderTable} that stores the contenders of every chunk within direct memory, using the same supercell,
+ * region and tile layout as the {@link RegionatedIntIntToObjectMap}. Every tile is backed by a single direct
+ * {@link ByteBuffer} which holds a fixed-size record per chunk, so the contenders of a world cost neither objects
+ * nor references on the heap and do not need to be traced by the garbage collector.
+ *
+ * <p>A record consists of a sequence number, the point in time of the last refresh and the id and score of every
+ * contender, sorted by the score in descending order. Player ids are stored with an offset of one, so an id of 0
+ * marks an unused slot. Writers modify a record while holding the monitor of the tile, incrementing the sequence number
+ * before and after the modification. Readers are lock-free: they retry if the sequence number is odd or has changed
+ * while the record was read, so they never observe a partially written record.
+ *
+ * <p>The order of contenders behaves exactly like the order of the {@link ChunkContenders}. Unlike the
+ * {@link HeapContenderTable}, the {@link PlayerAttachedScore} instances that are returned by this class are snapshots
+ * that do not reflect later changes to the scores.
+ *
+ * @author Geolykt
+ */
+public class OffHeapContenderTable extends RegionatedStorage<OffHeapContenderTable.RecordTile> implements ContenderTable {
+
+    /**
+     * 16 x 16 records of a region, stored within a direct buffer.
+     *
+     * @author Geolykt
+     */
+    @SuppressWarnings("serial")
+    static final class RecordTile extends Tile<RecordTile> {
+        @NotNull
+        private final OffHeapContenderTable table;
+
+        @NotNull
+        private final ByteBuffer records;
+
+        /**
+         * Scratch space for the ids of the contenders of a record, only used while holding the monitor of the tile.
+         */
+        private final int @NotNull[] players;
+
+        /**
+         * Scratch space for the scores of the contenders of a record, only used while holding the monitor of the tile.
+         */
+        private final int @NotNull[] scores;
+
+        private RecordTile(@NotNull Region<RecordTile> region, @NotNull OffHeapContenderTable table) {
+            super(region);
+            this.table = table;
+            records = ByteBuffer.allocateDirect(TILE_SIZE * table.recordSize);
+            players = new int[table.capacity];
+            scores = new int[table.capacity];
+        }
+    }
+
+    @NotNull
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    // Offsets within a record, in bytes
+    private static final int SEQUENCE = 0;
+    private static final int LAST_REFRESH = Integer.BYTES;
+    private static final int CONTENDERS = Integer.BYTES * 2;
+    private static final int CONTENDER_SIZE = Integer.BYTES * 2;
+
+    private static final int NO_PLAYER = -1;
+
+    private final int capacity;
+
+    @NotNull
+    private final UUIDRegistry playerIds;
+
+    private final int recordSize;
+
+    /**
+     * Constructor.
+     *
+     * @param playerIds The registry that provides the ids of the players
+     * @param capacity The amount of contenders that are tracked per chunk, at least 2
+     */
+    public OffHeapContenderTable(@NotNull UUIDRegistry playerIds, int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("At least two contenders need to be tracked, but the capacity is " + capacity);
+        }
+        this.playerIds = playerIds;
+        this.capacity = capacity;
+        this.recordSize = CONTENDERS + capacity * CONTENDER_SIZE;
+    }
+
+    private static int flags(int oldLeader, int newLeader) {
+        int flags = oldLeader == NO_PLAYER ? 0 : HAD_LEADER;
+        return oldLeader == newLeader ? flags : flags | LEADER_CHANGED;
+    }
+
+    private static int get(@NotNull ByteBuffer buffer, int offset) {
+        return (int) INT.getVolatile(buffer, offset);
+    }
+
+    private static void set(@NotNull ByteBuffer buffer, int offset, int value) {
+        INT.setVolatile(buffer, offset, value);
+    }
+
+    private static void swap(int @NotNull[] players, int @NotNull[] scores, int a, int b) {
+        int player = players[a];
+        players[a] = players[b];
+        players[b] = player;
+        int score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+    @Override
+    @NotNull
+    RecordTile createTile(@NotNull Region<RecordTile> region) {
+        return new RecordTile(region, this);
+    }
+
+    @Override
+    @Contract(pure = true, value = "null -> false; !null -> _")
+    public boolean equals(Object obj) {
+        if (!(obj instanceof OffHeapContenderTable other)) {
+            return false;
+        }
+        return equalStorage(other);
+    }
+
+    /**
+     * Compares the records of two tiles, which may belong to different tables. Player ids are not necessarily
+     * the same across tables, so the contenders are compared by their UUIDs.
+     */
+    @Override
+    boolean equalTiles(@Nullable RecordTile a, @Nullable RecordTile b) {
+        int[] playersA = new int[capacity];
+        int[] scoresA = new int[capacity];
+        int[] playersB = new int[b == null ? 0 : b.table.capacity];
+        int[] scoresB = new int[playersB.length];
+        for (int cell = 0; cell < TILE_SIZE; cell++) {
+            int sizeA = a == null ? 0 : read(a.records, cell * recordSize, playersA, scoresA, capacity);
+            int sizeB = b == null ? 0 : read(b.records, cell * b.table.recordSize, playersB, scoresB, playersB.length);
+            if (sizeA != sizeB) {
+                return false;
+            }
+            for (int i = 0; i < sizeA; i++) {
+                if (scoresA[i] != scoresB[i]
+                        || !Objects.equals(playerIds.getUUID(playersA[i]), b.table.playerIds.getUUID(playersB[i]))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    @NotNull
+    public PlayerAttachedScore[] getContenders(int x, int z) {
+        int[] players = new int[capacity];
+        int[] scores = new int[capacity];
+        int size = read(x, z, players, scores, capacity);
+        PlayerAttachedScore[] contenders = new PlayerAttachedScore[size];
+        for (int i = 0; i < size; i++) {
+            contenders[i] = toScore(players[i], scores[i]);
+        }
+        return contenders;
+    }
+
+    @Override
+    @Nullable
+    public PlayerAttachedScore getLeader(int x, int z) {
+        int[] player = new int[1];
+        int[] score = new int[1];
+        return read(x, z, player, score, 1) == 0 ? null : toScore(player[0], score[0]);
+    }
+
+    @Override
+    public int getLeaderId(int x, int z) {
+        int key1 = transform(x);
+        int key2 = transform(z);
+        RecordTile tile = getTile(key1, key2);
+        if (tile == null) {
+            return UUIDRegistry.UNKNOWN_ID;
+        }
+        ByteBuffer buffer = tile.records;
+        int record = getCellIndex(key1, key2) * recordSize;
+        while (true) {
+            int sequence = get(buffer, record + SEQUENCE);
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait(); // A write is in progress
+                continue;
+            }
+            int player = get(buffer, record + CONTENDERS) - 1;
+            if (get(buffer, record + SEQUENCE) == sequence) {
+                return player == NO_PLAYER ? UUIDRegistry.UNKNOWN_ID : player;
+            }
+        }
+    }
+
+    @Override
+    public void getLeaders(int fromX, int fromZ, int toX, int toZ, @Nullable PlayerAttachedScore @NotNull[] out) {
+        if (fromX > toX || fromZ > toZ) {
+            throw new IllegalArgumentException("Empty area: " + fromX + "/" + fromZ + " to " + toX + "/" + toZ);
+        }
+        long width = (long) toX - fromX + 1;
+        if (width * ((long) toZ - fromZ + 1) > out.length) {
+            throw new IllegalArgumentException("The array (length " + out.length + ") cannot hold the area " + fromX + "/" + fromZ + " to " + toX + "/" + toZ);
+        }
+        int[] player = new int[1];
+        int[] score = new int[1];
+        forEachTileWithin(fromX, fromZ, toX, toZ, (tile, tileFromX, tileFromZ, tileToX, tileToZ) -> {
+            for (int offsetZ = 0; offsetZ <= tileToZ - tileFromZ; offsetZ++) {
+                int z = tileFromZ + offsetZ;
+                int row = (int) ((z - fromZ) * width);
+                for (int offsetX = 0; offsetX <= tileToX - tileFromX; offsetX++) {
+                    int x = tileFromX + offsetX;
+                    if (tile == null) {
+                        out[row + (x - fromX)] = null;
+                        continue;
+                    }
+                    int record = getCellIndex(transform(x), transform(z)) * recordSize;
+                    boolean present = read(tile.records, record, player, score, 1) != 0;
+                    out[row + (x - fromX)] = present ? toScore(player[0], score[0]) : null;
+                }
+            }
+        });
+    }
+
+    @Override
+    @Nullable
+    public PlayerAttachedScore getSuccessor(int x, int z) {
+        int[] players = new int[2];
+        int[] scores = new int[2];
+        return read(x, z, players, scores, 2) < 2 ? null : toScore(players[1], scores[1]);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    /**
+     * Reads the record of a chunk into the given arrays. Must be called while holding the monitor of the tile.
+     *
+     * @param buffer The buffer of the tile
+     * @param record The offset of the record within the buffer
+     * @param players The array to store the player ids in
+     * @param scores The array to store the scores in
+     * @return The amount of contenders
+     */
+    private int load(@NotNull ByteBuffer buffer, int record, int @NotNull[] players, int @NotNull[] scores) {
+        int size = 0;
+        for (int offset = record + CONTENDERS; size < capacity; size++, offset += CONTENDER_SIZE) {
+            int player = get(buffer, offset) - 1;
+            if (player == NO_PLAYER) {
+                break;
+            }
+            players[size] = player;
+            scores[size] = get(buffer, offset + Integer.BYTES);
+        }
+        return size;
+    }
+
+    @Override
+    public int offer(int x, int z, @Nullable ChunkPresence presence, int now, int player, int score) {
+        int key1 = transform(x);
+        int key2 = transform(z);
+        RecordTile tile = reserve(key1, key2);
+        int record = getCellIndex(key1, key2) * recordSize;
+        int oldSize;
+        int size;
+        int oldLeader;
+        int newLeader;
+        synchronized (tile) {
+            ByteBuffer buffer = tile.records;
+            int[] contenders = tile.players;
+            int[] contenderScores = tile.scores;
+            size = oldSize = load(buffer, record, contenders, contenderScores);
+            oldLeader = size == 0 ? NO_PLAYER : contenders[0];
+            int lastRefresh = get(buffer, record + LAST_REFRESH) ^ Integer.MIN_VALUE;
+            if (presence != null && lastRefresh != now) {
+                lastRefresh = now;
+                size = refresh(contenders, contenderScores, size, presence, x, z);
+            }
+            size = offer(contenders, contenderScores, size, player, score);
+            store(buffer, record, contenders, contenderScores, size, lastRefresh);
+            newLeader = size == 0 ? NO_PLAYER : contenders[0];
+        }
+        release(tile, key1, key2, oldSize, size);
+        return flags(oldLeader, newLeader);
+    }
+
+    @Override
+    public int offer(int x, int z, @Nullable ChunkPresence presence, int now, int @NotNull[] players, int @NotNull[] scores, int from, int to) {
+        int key1 = transform(x);
+        int key2 = transform(z);
+        RecordTile tile = reserve(key1, key2);
+        int record = getCellIndex(key1, key2) * recordSize;
+        int oldSize;
+        int size;
+        int oldLeader;
+        int newLeader;
+        synchronized (tile) {
+            ByteBuffer buffer = tile.records;
+            int[] contenders = tile.players;
+            int[] contenderScores = tile.scores;
+            size = oldSize = load(buffer, record, contenders, contenderScores);
+            oldLeader = size == 0 ? NO_PLAYER : contenders[0];
+            int lastRefresh = get(buffer, record + LAST_REFRESH) ^ Integer.MIN_VALUE;
+            if (presence != null && lastRefresh != now) {
+                lastRefresh = now;
+                size = refresh(contenders, contenderScores, size, presence, x, z);
+            }
+            for (int i = from; i < to; i++) {
+                size = offer(contenders, contenderScores, size, players[i], scores[i]);
+            }
+            store(buffer, record, contenders, contenderScores, size, lastRefresh);
+            newLeader = size == 0 ? NO_PLAYER : contenders[0];
+        }
+        release(tile, key1, key2, oldSize, size);
+        return flags(oldLeader, newLeader);
+    }
+
+    /**
+     * Offers the score of a player to the contenders, as per {@link ChunkContenders#offer(UUID, int)}.
+     *
+     * @param players The ids of the contenders
+     * @param scores The scores of the contenders
+     * @param size The amount of contenders
+     * @param player The id of the player
+     * @param score The new presence of the player
+     * @return The new amount of contenders
+     */
+    private int offer(int @NotNull[] players, int @NotNull[] scores, int size, int player, int score) {
+        int index = 0;
+        while (index < size && players[index] != player) {
+            index++;
+        }
+        if (index == size) {
+            if (size < capacity) {
+                size++;
+            } else if (scores[size - 1] < score) {
+                index = size - 1; // The last contender is dropped
+            } else {
+                return size;
+            }
+            players[index] = player;
+        } else if (scores[index] >= score) {
+            return size;
+        }
+        scores[index] = score;
+        while (index != 0 && scores[index - 1] < score) {
+            swap(players, scores, index, index - 1);
+            index--;
+        }
+        return size;
+    }
+
+    /**
+     * Reads the contenders of a chunk without acquiring a lock.
+     *
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @param players The array to store the player ids in
+     * @param scores The array to store the scores in
+     * @param limit The maximum amount of contenders to read
+     * @return The amount of contenders that were read
+     */
+    private int read(int x, int z, int @NotNull[] players, int @NotNull[] scores, int limit) {
+        int key1 = transform(x);
+        int key2 = transform(z);
+        RecordTile tile = getTile(key1, key2);
+        if (tile == null) {
+            return 0;
+        }
+        return read(tile.records, getCellIndex(key1, key2) * recordSize, players, scores, limit);
+    }
+
+    /**
+     * Reads the record of a chunk without acquiring a lock, retrying if the record is modified concurrently.
+     *
+     * @param buffer The buffer of the tile
+     * @param record The offset of the record within the buffer
+     * @param players The array to store the player ids in
+     * @param scores The array to store the scores in
+     * @param limit The maximum amount of contenders to read
+     * @return The amount of contenders that were read
+     */
+    private static int read(@NotNull ByteBuffer buffer, int record, int @NotNull[] players, int @NotNull[] scores, int limit) {
+        while (true) {
+            int sequence = get(buffer, record + SEQUENCE);
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait(); // A write is in progress
+                continue;
+            }
+            int size = 0;
+            for (int offset = record + CONTENDERS; size < limit; size++, offset += CONTENDER_SIZE) {
+                int player = get(buffer, offset) - 1;
+                if (player == NO_PLAYER) {
+                    break;
+                }
+                players[size] = player;
+                scores[size] = get(buffer, offset + Integer.BYTES);
+            }
+            if (get(buffer, record + SEQUENCE) == sequence) {
+                return size;
+            }
+        }
+    }
+
+    @Override
+    public int refresh(int x, int z, @NotNull ChunkPresence presence, int now) {
+        int key1 = transform(x);
+        int key2 = transform(z);
+        RecordTile tile = reserveExisting(key1, key2);
+        if (tile == null) {
+            return 0;
+        }
+        int record = getCellIndex(key1, key2) * recordSize;
+        int oldSize;
+        int size;
+        int oldLeader;
+        int newLeader;
+        synchronized (tile) {
+            ByteBuffer buffer = tile.records;
+            int[] contenders = tile.players;
+            int[] scores = tile.scores;
+            size = oldSize = load(buffer, record, contenders, scores);
+            oldLeader = size == 0 ? NO_PLAYER : contenders[0];
+            if ((get(buffer, record + LAST_REFRESH) ^ Integer.MIN_VALUE) != now && size != 0) {
+                size = refresh(contenders, scores, size, presence, x, z);
+                store(buffer, record, contenders, scores, size, now);
+            }
+            newLeader = size == 0 ? NO_PLAYER : contenders[0];
+        }
+        release(tile, key1, key2, oldSize, size);
+        return flags(oldLeader, newLeader);
+    }
+
+    /**
+     * Replaces the scores of the contenders with their current presence, as per
+     * {@link ChunkContenders#refresh(java.util.function.ToIntFunction, int)}.
+     *
+     * @param players The ids of the contenders
+     * @param scores The scores of the contenders
+     * @param size The amount of contenders
+     * @param presence The presence of the players within the chunks of the world
+     * @param x The X-Coordinate of the chunk (in chunks)
+     * @param z The Z-Coordinate of the chunk (in chunks)
+     * @return The new amount of contenders
+     */
+    private int refresh(int @NotNull[] players, int @NotNull[] scores, int size, @NotNull ChunkPresence presence, int x, int z) {
+        int retained = 0;
+        for (int i = 0; i < size; i++) {
+            int score = presence.getPresence(players[i], x, z);
+            if (score == 0) {
+                continue;
+            }
+            // Insertion sort, which is stable so ties remain in favour of the previous order
+            int index = retained++;
+            while (index != 0 && scores[index - 1] < score) {
+                players[index] = players[index - 1];
+                scores[index] = scores[index - 1];
+                index--;
+            }
+            players[index] = players[i];
+            scores[index] = score;
+        }
+        return retained;
+    }
+
+    /**
+     * Releases the reservation of a tile after a record was modified, and the slot of the record if it
+     * no longer holds any contenders.
+     *
+     * @param tile The tile
+     * @param key1 The transformed X-Coordinate of the chunk
+     * @param key2 The transformed Z-Coordinate of the chunk
+     * @param oldSize The amount of contenders before the modification
+     * @param size The amount of contenders after the modification
+     */
+    private void release(@NotNull RecordTile tile, int key1, int key2, int oldSize, int size) {
+        if (oldSize != 0 || size == 0) {
+            release(tile, key1, key2); // The reservation is not needed to hold the record
+        }
+        if (oldSize != 0 && size == 0) {
+            release(tile, key1, key2); // The record is empty now
+        }
+    }
+
+    @Override
+    public int remove(int x, int z, int player) {
+        int key1 = transform(x);
+        int key2 = transform(z);
+        RecordTile tile = reserveExisting(key1, key2);
+        if (tile == null) {
+            return 0;
+        }
+        int record = getCellIndex(key1, key2) * recordSize;
+        int oldSize;
+        int size;
+        int oldLeader;
+        int newLeader;
+        synchronized (tile) {
+            ByteBuffer buffer = tile.records;
+            int[] contenders = tile.players;
+            int[] scores = tile.scores;
+            size = oldSize = load(buffer, record, contenders, scores);
+            oldLeader = size == 0 ? NO_PLAYER : contenders[0];
+            for (int i = 0; i < size; i++) {
+                if (contenders[i] == player) {
+                    size--;
+                    System.arraycopy(contenders, i + 1, contenders, i, size - i);
+                    System.arraycopy(scores, i + 1, scores, i, size - i);
+                    store(buffer, record, contenders, scores, size, get(buffer, record + LAST_REFRESH) ^ Integer.MIN_VALUE);
+                    break;
+                }
+            }
+            newLeader = size == 0 ? NO_PLAYER : contenders[0];
+        }
+        release(tile, key1, key2, oldSize, size);
+        return flags(oldLeader, newLeader);
+    }
+
+    /**
+     * Writes the record of a chunk. Must be called while holding the monitor of the tile.
+     *
+     * @param buffer The buffer of the tile
+     * @param record The offset of the record within the buffer
+     * @param players The ids of the contenders
+     * @param scores The scores of the contenders
+     * @param size The amount of contenders
+     * @param lastRefresh The point in time of the last refresh
+     */
+    private void store(@NotNull ByteBuffer buffer, int record, int @NotNull[] players, int @NotNull[] scores, int size, int lastRefresh) {
+        int sequence = get(buffer, record + SEQUENCE);
+        set(buffer, record + SEQUENCE, sequence + 1);
+        // The point in time is stored with a flipped sign bit, so zeroed memory yields Integer.MIN_VALUE (never refreshed)
+        set(buffer, record + LAST_REFRESH, lastRefresh ^ Integer.MIN_VALUE);
+        int offset = record + CONTENDERS;
+        for (int i = 0; i < capacity; i++, offset += CONTENDER_SIZE) {
+            if (i < size) {
+                set(buffer, offset, players[i] + 1);
+                set(buffer, offset + Integer.BYTES, scores[i]);
+            } else {
+                set(buffer, offset, 0);
+                set(buffer, offset + Integer.BYTES, 0);
+            }
+        }
+        set(buffer, record + SEQUENCE, sequence + 2);
+    }
+
+    @NotNull
+    private PlayerAttachedScore toScore(int player, int score) {
+        UUID uuid = playerIds.getUUID(player);
+        if (uuid == null) {
+            throw new IllegalStateException("Unregistered player id: " + player);
+        }
+        return new PlayerAttachedScore(uuid, new AtomicInteger(score));
+    }
+}
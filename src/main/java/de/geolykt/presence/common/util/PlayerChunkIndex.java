@@ -0,0 +1,143 @@
+package de.geolykt.presence.common.util;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import de.geolykt.presence.common.PresenceData;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+/**
+ * An index of the chunks a player has presence in, which is the inverse of the (player, chunk) -> presence
+ * mapping of a {@link ChunkScoreMap}. For every player id there is a set of chunk positions (as packed by
+ * {@link PresenceData#hashPositions(int, int)}) per world id.
+ *
+ * <p>The index may contain chunks in which the player no longer has any presence (for example because the presence
+ * decayed away), so callers need to verify the entries against the actual presence. It should however never miss
+ * a chunk the player has presence in.
+ *
+ * <p>All operations on the chunks of a single player are synchronised on an object that is unique to the player, so
+ * unrelated players never contend.
+ *
+ * @author Geolykt
+ */
+public class PlayerChunkIndex {
+
+    private static final class PlayerChunks {
+        @NotNull
+        private LongOpenHashSet[] worlds = new LongOpenHashSet[0];
+
+        @NotNull
+        private LongOpenHashSet getOrCreate(int world) {
+            if (world >= worlds.length) {
+                LongOpenHashSet[] copy = new LongOpenHashSet[world + 1];
+                System.arraycopy(worlds, 0, copy, 0, worlds.length);
+                worlds = copy;
+            }
+            LongOpenHashSet set = worlds[world];
+            if (set == null) {
+                set = worlds[world] = new LongOpenHashSet();
+            }
+            return set;
+        }
+    }
+
+    @NotNull
+    private final DenseIdMap<PlayerChunks> players = new DenseIdMap<>();
+
+    /**
+     * Adds a chunk to the chunks of a player.
+     *
+     * @param player The id of the player
+     * @param world The id of the world
+     * @param chunk The position of the chunk as per {@link PresenceData#hashPositions(int, int)}
+     * @return True if the chunk was not yet indexed
+     */
+    public boolean add(int player, int world, long chunk) {
+        PlayerChunks chunks = getOrCreate(player);
+        synchronized (chunks) {
+            return chunks.getOrCreate(world).add(chunk);
+        }
+    }
+
+    /**
+     * Obtains the chunks of a player within a world.
+     *
+     * @param player The id of the player
+     * @param world The id of the world
+     * @return A copy of the indexed chunk positions, as per {@link PresenceData#hashPositions(int, int)}
+     */
+    @NotNull
+    @Contract(pure = true, value = "_, _ -> new")
+    public long[] getChunks(int player, int world) {
+        PlayerChunks chunks = players.get(player);
+        if (chunks == null) {
+            return new long[0];
+        }
+        synchronized (chunks) {
+            if (world < 0 || world >= chunks.worlds.length || chunks.worlds[world] == null) {
+                return new long[0];
+            }
+            return chunks.worlds[world].toLongArray();
+        }
+    }
+
+    /**
+     * Obtains the chunks of a player in all worlds.
+     *
+     * @param player The id of the player
+     * @return A copy of the indexed chunk positions, indexed by the world id. May contain null elements.
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    public long[][] getChunks(int player) {
+        PlayerChunks chunks = players.get(player);
+        if (chunks == null) {
+            return new long[0][];
+        }
+        synchronized (chunks) {
+            long[][] out = new long[chunks.worlds.length][];
+            for (int i = 0; i < out.length; i++) {
+                LongOpenHashSet set = chunks.worlds[i];
+                if (set != null) {
+                    out[i] = set.toLongArray();
+                }
+            }
+            return out;
+        }
+    }
+
+    @NotNull
+    private PlayerChunks getOrCreate(int player) {
+        PlayerChunks chunks = players.get(player);
+        if (chunks == null) {
+            chunks = new PlayerChunks();
+            PlayerChunks retain = players.putIfAbsent(player, chunks);
+            if (retain != null) { // Race condition
+                chunks = retain;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Removes a chunk from the chunks of a player.
+     *
+     * @param player The id of the player
+     * @param world The id of the world
+     * @param chunk The position of the chunk as per {@link PresenceData#hashPositions(int, int)}
+     * @return True if the chunk was indexed
+     */
+    public boolean remove(int player, int world, long chunk) {
+        PlayerChunks chunks = players.get(player);
+        if (chunks == null) {
+            return false;
+        }
+        synchronized (chunks) {
+            if (world < 0 || world >= chunks.worlds.length || chunks.worlds[world] == null) {
+                return false;
+            }
+            return chunks.worlds[world].remove(chunk);
+        }
+    }
+}
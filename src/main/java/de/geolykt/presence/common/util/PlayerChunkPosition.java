@@ -0,0 +1,16 @@
+package de.geolykt.presence.common.util;
+
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The chunk a player is located in at a given point in time. Used to pass snapshots of player positions
+ * to {@link de.geolykt.presence.common.PresenceData#tickAll(PlayerChunkPosition[])}.
+ *
+ * @param player The UUID of the player
+ * @param world The UUID of the world the player is in
+ * @param x The X-Coordinate of the chunk (in chunks)
+ * @param z The Z-Coordinate of the chunk (in chunks)
+ */
+public record PlayerChunkPosition(@NotNull UUID player, @NotNull UUID world, int x, int z) {}
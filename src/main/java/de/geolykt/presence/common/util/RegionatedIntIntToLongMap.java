@@ -0,0 +1,315 @@
+package de.geolykt.presence.common.util;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.StreamSupport;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A (int, int) -> long map-like structure with the same supercell, region and tile layout as the
+ * {@link RegionatedIntIntToObjectMap}, see there for the characteristics of the layout. The values are stored
+ * in {@link AtomicLongArray AtomicLongArrays}, so neither boxed longs nor wrapper objects are needed
+ * for the values of the map.
+ *
+ * <p>As primitive cells cannot be null, every map has an empty value (0 unless specified otherwise) which marks
+ * a cell as unmapped. Storing the empty value removes the mapping, and reading an unmapped cell yields the empty
+ * value. Tiles and regions that no longer hold any values other than the empty value are released.
+ *
+ * <p>Similarly to the {@link RegionatedIntIntToObjectMap}, all operations on individual cells are atomic and lock-free.
+ *
+ * @author Geolykt
+ */
+public class RegionatedIntIntToLongMap extends RegionatedStorage<RegionatedIntIntToLongMap.LongTile> {
+
+    /**
+     * An entry of a {@link RegionatedIntIntToLongMap}, as yielded by {@link RegionatedIntIntToLongMap#spliterator()}.
+     * Entries are snapshots, they do not reflect later modifications of the map.
+     *
+     * @author Geolykt
+     */
+    public static record IntIntLongEntry(int key1, int key2, long value) { }
+
+    @FunctionalInterface
+    public static interface IntIntLongConsumer {
+        void accept(int key1, int key2, long value);
+    }
+
+    private final class EntrySpliterator extends TileSpliterator<IntIntLongEntry> {
+
+        private EntrySpliterator(int supercell, int supercellEnd, int region, int regionEnd) {
+            super(supercell, supercellEnd, region, regionEnd);
+        }
+
+        @Override
+        @Nullable
+        protected IntIntLongEntry getEntry(@NotNull LongTile tile, int supercell, int region, int tileIndex, int cell) {
+            long value = tile.cells.get(cell);
+            if (value == emptyValue) {
+                return null;
+            }
+            return new IntIntLongEntry(getKey1(supercell, region, tileIndex, cell), getKey2(supercell, region, tileIndex, cell), value);
+        }
+
+        @Override
+        @NotNull
+        protected EntrySpliterator split(int supercell, int supercellEnd, int region, int regionEnd) {
+            return new EntrySpliterator(supercell, supercellEnd, region, regionEnd);
+        }
+    }
+
+    /**
+     * 16 x 16 cells of a region, cells that hold the empty value of the map are empty.
+     *
+     * @author Geolykt
+     */
+    @SuppressWarnings("serial")
+    static final class LongTile extends Tile<LongTile> {
+        @NotNull
+        private final AtomicLongArray cells;
+
+        private LongTile(@NotNull Region<LongTile> region, long emptyValue) {
+            super(region);
+            if (emptyValue == 0) {
+                cells = new AtomicLongArray(TILE_SIZE);
+            } else {
+                long[] values = new long[TILE_SIZE];
+                Arrays.fill(values, emptyValue);
+                cells = new AtomicLongArray(values);
+            }
+        }
+    }
+
+    private final long emptyValue;
+
+    public RegionatedIntIntToLongMap() {
+        this(0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param emptyValue The value that marks a cell as unmapped
+     */
+    public RegionatedIntIntToLongMap(long emptyValue) {
+        super();
+        this.emptyValue = emptyValue;
+    }
+
+    /**
+     * Adds a value to the value that is mapped to the given keys, which is the empty value if no value is mapped.
+     * If the sum is the empty value, the mapping is removed. The method behaves in an atomic manner.
+     *
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     * @param delta The value to add
+     * @return The new value
+     */
+    public long addAndGet(int key1, int key2, long delta) {
+        return getAndAdd(key1, key2, delta) + delta;
+    }
+
+    /**
+     * Obtains the currently set value and compares it with the expected value.
+     * If they are equal the currently set value is replaced and the method returns true,
+     * if they are not equal the currently stored value is left unmodified and the method returns false.
+     * The method behaves in an atomic manner.
+     *
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     * @param expected The expected value. If this is the empty value the method only succeeds if no value is mapped.
+     * @param value The value to be set if the current value is the expected value. If this is the empty value, the mapping is removed.
+     * @return True if the current value was the expected value, false otherwise
+     */
+    public boolean compareAndSet(int key1, int key2, long expected, long value) {
+        return compareAndSetCell(transform(key1), transform(key2), expected, value);
+    }
+
+    private boolean compareAndSetCell(int key1, int key2, long expected, long value) { // Keys must be transformed
+        if (expected == value) {
+            return getCell(key1, key2) == expected;
+        }
+        if (expected == emptyValue) {
+            LongTile tile = reserve(key1, key2);
+            if (tile.cells.compareAndSet(getCellIndex(key1, key2), expected, value)) {
+                return true;
+            }
+            release(tile, key1, key2);
+            return false;
+        }
+        // Released tiles are empty, so the exchange can only succeed on tiles that are in use
+        LongTile tile = getTile(key1, key2);
+        if (tile == null || !tile.cells.compareAndSet(getCellIndex(key1, key2), expected, value)) {
+            return false;
+        }
+        if (value == emptyValue) {
+            release(tile, key1, key2);
+        }
+        return true;
+    }
+
+    @Override
+    @NotNull
+    LongTile createTile(@NotNull Region<LongTile> region) {
+        return new LongTile(region, emptyValue);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof RegionatedIntIntToLongMap other) {
+            return this.emptyValue == other.emptyValue && equalStorage(other);
+        }
+        return false;
+    }
+
+    @Override
+    boolean equalTiles(@Nullable LongTile a, @Nullable LongTile b) {
+        for (int cell = 0; cell < TILE_SIZE; cell++) {
+            if ((a == null ? emptyValue : a.cells.get(cell)) != (b == null ? emptyValue : b.cells.get(cell))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Invokes the consumer for every entry within the map. The same consistency guarantees as
+     * {@link RegionatedIntIntToObjectMap#forEach(RegionatedIntIntToObjectMap.IntIntObjConsumer)} apply.
+     *
+     * @param consumer The consumer to invoke
+     */
+    public void forEach(@NotNull IntIntLongConsumer consumer) {
+        forEachTile((supercell, region, tileIndex, tile) -> {
+            for (int cell = 0; cell < TILE_SIZE; cell++) {
+                long value = tile.cells.get(cell);
+                if (value != emptyValue) {
+                    consumer.accept(getKey1(supercell, region, tileIndex, cell), getKey2(supercell, region, tileIndex, cell), value);
+                }
+            }
+        });
+    }
+
+    @Contract(pure = true)
+    public long get(int key1, int key2) {
+        return getCell(transform(key1), transform(key2));
+    }
+
+    /**
+     * Adds a value to the value that is mapped to the given keys, which is the empty value if no value is mapped.
+     * If the sum is the empty value, the mapping is removed. The method behaves in an atomic manner.
+     *
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     * @param delta The value to add
+     * @return The previous value
+     */
+    public long getAndAdd(int key1, int key2, long delta) {
+        key1 = transform(key1);
+        key2 = transform(key2);
+        if (delta == 0) {
+            return getCell(key1, key2);
+        }
+        LongTile tile = getTile(key1, key2);
+        if (tile != null) {
+            // Fast path: The mapping already exists and continues to exist
+            int cell = getCellIndex(key1, key2);
+            while (true) {
+                long current = tile.cells.get(cell);
+                if (current == emptyValue || current + delta == emptyValue) {
+                    break;
+                }
+                if (tile.cells.compareAndSet(cell, current, current + delta)) {
+                    return current;
+                }
+            }
+        }
+        while (true) {
+            long current = getCell(key1, key2);
+            if (compareAndSetCell(key1, key2, current, current + delta)) {
+                return current;
+            }
+        }
+    }
+
+    private long getCell(int key1, int key2) { // Keys must be transformed
+        LongTile tile = getTile(key1, key2);
+        if (tile == null) {
+            return emptyValue;
+        }
+        return tile.cells.get(getCellIndex(key1, key2));
+    }
+
+    /**
+     * Obtains the value that marks a cell as unmapped.
+     *
+     * @return The empty value
+     */
+    @Contract(pure = true)
+    public long getEmptyValue() {
+        return emptyValue;
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode(); // Identity hash code, like RegionatedIntIntToObjectMap
+    }
+
+    /**
+     * Sets the value that is mapped to the given keys. Setting the empty value removes the mapping.
+     *
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     * @param value The new value
+     * @return The previous value, which is the empty value if no value was mapped
+     */
+    public long put(int key1, int key2, long value) {
+        if (value == emptyValue) {
+            return remove(key1, key2);
+        }
+        key1 = transform(key1);
+        key2 = transform(key2);
+        LongTile tile = reserve(key1, key2);
+        long old = tile.cells.getAndSet(getCellIndex(key1, key2), value);
+        if (old != emptyValue) {
+            release(tile, key1, key2); // The cell was occupied already
+        }
+        return old;
+    }
+
+    /**
+     * Removes the value mapped to the given keys. Regions (and parts of regions) that no longer hold any values
+     * are released.
+     *
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     * @return The value that was removed, which is the empty value if no value was mapped
+     */
+    public long remove(int key1, int key2) {
+        key1 = transform(key1);
+        key2 = transform(key2);
+        LongTile tile = getTile(key1, key2);
+        if (tile == null) {
+            return emptyValue;
+        }
+        long old = tile.cells.getAndSet(getCellIndex(key1, key2), emptyValue);
+        if (old != emptyValue) {
+            release(tile, key1, key2);
+        }
+        return old;
+    }
+
+    /**
+     * Creates a {@link Spliterator} over the entries of the map, which splits along the supercells and regions of the map
+     * so it can be used for parallel processing, for example via {@link StreamSupport#stream(Spliterator, boolean)}.
+     * The same consistency guarantees as {@link #forEach(IntIntLongConsumer)} apply.
+     *
+     * @return A spliterator over the entries of the map
+     */
+    @NotNull
+    public Spliterator<IntIntLongEntry> spliterator() {
+        return new EntrySpliterator(0, SUPERCELL_COUNT, 0, REGIONS_PER_SUPERCELL);
+    }
+}
@@ -2,8 +2,10 @@ package de.geolykt.presence.common.util;
 
 import java.util.Map;
 import java.util.Objects;
+import java.util.Spliterator;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.StreamSupport;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -13,40 +15,36 @@ import org.jetbrains.annotations.Nullable;
  * into two-dimensional "regions". This means that the data structure is most efficient if the integer
  * keys are near 0 and compact. However the data structure allows for negatively-sized without further impact
  * by implementing a supercell system and by applying a bit mask to negative values to make it more inline
- * with the 0-centric indexing. Each supercell can be resized independently so if the
- * supercells are to expand asymmetrically it would consume considerably less memory if all cells were resized.
- * The same cannot be said about the regions within the supercells. While as long as the supercells are uninitalized
- * they are nonexistent, as soon as they (the array or regions) need to be resized they will grow in a square fashion.
- * It is fully incapable of doing rectangular resizing and if resized it will resize by a power of two,
- * where as by default it is capable of storing 16 elements. Regions are (as soon as used) initialized to their full size,
- * which would be 65536 elements.
+ * with the 0-centric indexing. Supercells are only created once a value is stored within them, so
+ * supercells that are never written to do not consume any memory. Within a supercell, regions are located via a
+ * directory of fixed-size page tables and pages (1024 entries each) that are created on first use, so the directory
+ * never needs to be resized. Regions (65536 elements each) are split into tiles of 256 elements,
+ * which are allocated once a value is stored in them. Each region and tile counts the values it holds, and is released
+ * as soon as the last value is removed, so the memory footprint follows the values that are actually stored.
  *
  * <p> The key features of this map are the follows:
  * <ul>
  *   <li>Guaranteed constant runtime complexity for get and put operations</li>
  *   <li>No memory impact caused by (auto-)boxing integers</li>
- *   <li>Mostly Concurrent (see later paragraphs on the limitations)</li>
+ *   <li>Lock-free</li>
  * </ul>
  *
  * <p> The key disadvantages of this map are:
  * <ul>
- *   <li>No iteration over keys nor values</li>
+ *   <li>Iteration needs to visit every allocated tile, is weakly consistent and does not follow any particular order</li>
  *   <li>This map does not extend the map interface</li>
- *   <li>High idle memory footprint</li>
+ *   <li>Large allocations on first write</li>
  *   <li>Reduced throughput compared to structures such {@link ConcurrentHashMap}</li>
  * </ul>
  *
- * <p> By saying it has a high idle memory footprint I mean it. An empty {@link RegionatedIntIntToObjectMap} will
- * have an array with the size of 65k allocated which holds the supercells of the map. These supercells
- * will all be constructed, though will be uninitialised until used. A supercell with a single value stored will
- * create an array with the size of 65k elements, which also is pretty hefty.
+ * <p> An empty {@link RegionatedIntIntToObjectMap} only holds an array of 512 rows of supercells. However a
+ * single stored value will create a row of 512 supercells, the supercell with its directory of 1024 page tables, a page table,
+ * a page of 1024 regions, a region with an array of 256 tiles and a tile of 256 elements.
  *
- * <p> As said before, this class is mostly concurrent. More specifically, while this class should be fully thread-safe,
- * some operations may results in locks being used. Each supercell uses itself as a lock in case it's internal list
- * of regions needs to be created or expanded. This means that {@link #get(int, int)} and {@link #compareAndSet(int, int, Object, Object)}
- * can block for a bit longer than usual if the value is previously unmapped and there isn't a value in the current
- * region set. Additionally the {@link #equals(Object)} method is blocking write requests to the regions.
- * Usage fo that method is not recommended. Similarly {@link #hashCode()} does only yield an identity hashcode.
+ * <p> All structures of the map are installed and unlinked via compare-and-set operations, so no operation of this map
+ * acquires a lock. If two threads race to create the same structure, one of the created structures is discarded.
+ * The {@link #equals(Object)} method needs to visit every allocated tile of both maps, so usage of that method is
+ * not recommended. Similarly {@link #hashCode()} does only yield an identity hashcode.
  *
  * JMH Benchmarks for the #set operation:
  * <pre>
@@ -111,278 +109,201 @@ import org.jetbrains.annotations.Nullable;
  * than the other, then the generally lesser key should be the first argument.
  */
 @SuppressWarnings("javadoc")
-public class RegionatedIntIntToObjectMap<V extends Object> {
+public class RegionatedIntIntToObjectMap<V extends Object> extends RegionatedStorage<RegionatedIntIntToObjectMap.ObjectTile<V>> {
 
     /**
-     * A supercell, the largest component of the map.
-     * As of writing the javadocs the 8 most significant bits of the two keys are used to obtain the supercell
-     * the value resides in. The actual current value is dictated by {@link RegionatedIntIntToObjectMap#SUPERCELL_SHIFT}.
-     * This means that with 16 bits total, there are a total of around 65k Supercells in a single
-     * regionated int int to object map.
+     * An entry of a {@link RegionatedIntIntToObjectMap}, as yielded by {@link RegionatedIntIntToObjectMap#spliterator()}.
+     * Entries are snapshots, they do not reflect later modifications of the map.
      *
+     * @param <V> The type of the value
      * @author Geolykt
      */
-    private static class Supercell<V> {
-        // AtomicReferenceArray sadly does not support expansion at adequate terms
-        private volatile AtomicReferenceArray<V>[] regions;
-        // Used to reduce the performance required to call #equals()
-        private volatile boolean modified = false;
+    public static record IntIntEntry<V>(int key1, int key2, @NotNull V value) { }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof Supercell<?> other) {
-                if (this.modified != other.modified) {
-                    return false;
-                }
-                if (!this.modified && !other.modified) {
-                    return true;
-                }
-                AtomicReferenceArray<?>[] otherRefArray = other.regions;
-                AtomicReferenceArray<?>[] thisRefArray = this.regions;
-                if (otherRefArray.length != thisRefArray.length) {
-                    return false;
-                }
-                for (int i = 0; i < thisRefArray.length; i++) {
-                    AtomicReferenceArray<?> a = otherRefArray[i];
-                    AtomicReferenceArray<?> b = thisRefArray[i];
-                    if (a == null) {
-                        if (b == null) {
-                            continue;
-                        }
-                        return false;
-                    } else if (b == null) {
-                        return false;
-                    }
-                    for (int j = 0; j < REGION_SIZE; j++) {
-                        if (!Objects.equals(a.get(j), b.get(j))) {
-                            return false;
-                        }
-                    }
-                }
-                return true;
-            }
-            return false;
-        }
-
-        /**
-         * Obtains the currently set value and compares it with the expected value.
-         * If they are equal (as per {@code ==}) the currently set value is
-         * replaced and the method returns true, if they are not equal the currently stored value
-         * is left unmodified and the method returns false.
-         * The method behaves in an atomic manner.
-         * 
-         * @param key1 The first integer key
-         * @param key2 The second integer key
-         * @param expected The expected value. If this value is null the method acts similar to a {@link Map#putIfAbsent(Object, Object)}, as this map does not allow null values.
-         * @param value The value to be set if the current value is the expected value.
-         * @return True if the cell was modified, false otherwise
-         */
-        public boolean compareAndSet(int key1, int key2, @Nullable V expected, @NotNull V value) {
-            this.modified = true;
-            int position = (key1 & REGION_BITMASK) | ((key2 & REGION_BITMASK) >> CELL_BIT_SHIFT);
-
-            if (regions == null || regions.length <= position) {
-                synchronized (this) {
-                    if (regions == null) {
-                        int length = 16;
-                        while (length <= position) {
-                            length = length << 1;
-                        }
-                        @SuppressWarnings("unchecked") // Why, java, why??? (I really hope valhalla remedies this issue)
-                        AtomicReferenceArray<V>[] var10001 = new AtomicReferenceArray[length];
-                        this.regions = var10001;
-                    } else if (regions.length <= position) {
-                        AtomicReferenceArray<V>[] oldRegions = this.regions;
-                        int newLength = oldRegions.length << 1;
-                        while (newLength <= position) {
-                            newLength = newLength << 1;
-                        }
-                        @SuppressWarnings("unchecked")
-                        AtomicReferenceArray<V>[] newRegions = this.regions = new AtomicReferenceArray[newLength];
-                        System.arraycopy(oldRegions, 0, newRegions, 0, oldRegions.length);
-                    }
-                }
-            }
-            AtomicReferenceArray<V> region = regions[position];
-            if (region == null) {
-                synchronized (this) {
-                    if (regions[position] == null) {
-                        regions[position] = new AtomicReferenceArray<>(REGION_SIZE);
-                    }
-                    region = regions[position];
-                }
-            }
-            @SuppressWarnings("null")
-            boolean ret = region.compareAndSet((key1 & CELL_BITMASK) << CELL_BIT_SHIFT | (key2 & CELL_BITMASK), expected, value);
-            return ret;
-        }
-
-        @Nullable
-        public V put(int key1, int key2, @NotNull V value) {
-            this.modified = true;
-            int position = (key1 & REGION_BITMASK) | ((key2 & REGION_BITMASK) >> CELL_BIT_SHIFT);
+    @FunctionalInterface
+    public static interface IntIntObjConsumer<V> {
+        void accept(int key1, int key2, @NotNull V value);
+    }
 
-            if (regions == null || regions.length <= position) {
-                synchronized (this) {
-                    if (regions == null) {
-                        int length = 16;
-                        while (length <= position) {
-                            length = length << 1;
-                        }
-                        @SuppressWarnings("unchecked") // Why, java, why??? (I really hope valhalla remedies this issue)
-                        AtomicReferenceArray<V>[] var10001 = new AtomicReferenceArray[length];
-                        this.regions = var10001;
-                    } else if (regions.length <= position) {
-                        AtomicReferenceArray<V>[] oldRegions = this.regions;
-                        int newLength = oldRegions.length << 1;
-                        while (newLength <= position) {
-                            newLength = newLength << 1;
-                        }
-                        @SuppressWarnings("unchecked")
-                        AtomicReferenceArray<V>[] newRegions = this.regions = new AtomicReferenceArray[newLength];
-                        System.arraycopy(oldRegions, 0, newRegions, 0, oldRegions.length);
-                    }
-                }
-            }
-            AtomicReferenceArray<V> region = regions[position];
-            if (region == null) {
-                synchronized (this) {
-                    if (regions[position] == null) {
-                        regions[position] = new AtomicReferenceArray<>(REGION_SIZE);
-                    }
-                    region = regions[position];
-                }
-            }
+    private final class EntrySpliterator extends TileSpliterator<IntIntEntry<V>> {
 
-            return region.getAndSet((key1 & CELL_BITMASK) << CELL_BIT_SHIFT | (key2 & CELL_BITMASK), value);
+        private EntrySpliterator(int supercell, int supercellEnd, int region, int regionEnd) {
+            super(supercell, supercellEnd, region, regionEnd);
         }
 
+        @Override
         @Nullable
-        public V get(int key1, int key2) {
-            int position = (key1 & REGION_BITMASK) | ((key2 & REGION_BITMASK) >> CELL_BIT_SHIFT);
-
-            if (regions == null || regions.length <= position) {
-                return null;
-            }
-            AtomicReferenceArray<V> region = regions[position];
-            if (region == null) {
+        protected IntIntEntry<V> getEntry(@NotNull ObjectTile<V> tile, int supercell, int region, int tileIndex, int cell) {
+            V value = tile.cells.get(cell);
+            if (value == null) {
                 return null;
             }
-            return region.get((key1 & CELL_BITMASK) << CELL_BIT_SHIFT | (key2 & CELL_BITMASK));
+            return new IntIntEntry<>(getKey1(supercell, region, tileIndex, cell), getKey2(supercell, region, tileIndex, cell), value);
         }
 
         @Override
-        public int hashCode() {
-            // TODO Auto-generated method stub
-            return super.hashCode();
+        @NotNull
+        protected EntrySpliterator split(int supercell, int supercellEnd, int region, int regionEnd) {
+            return new EntrySpliterator(supercell, supercellEnd, region, regionEnd);
         }
+    }
 
-        /**
-         * Obtains the currently set value and checks whether it exists.
-         * If it exists, it returns the value, otherwise it sets the value of the cell to the specified value.
-         * The method behaves in an atomic manner.
-         * 
-         * @param key1 The first integer key
-         * @param key2 The second integer key
-         * @param value The value to be set if the current value is the expected value.
-         * @return The old value, if it does not exist, null.
-         */
-        @Nullable
-        public V putIfAbsent(int key1, int key2, @NotNull V value) {
-            this.modified = true;
-            int position = (key1 & REGION_BITMASK) | ((key2 & REGION_BITMASK) >> CELL_BIT_SHIFT);
-
-            if (regions == null || regions.length <= position) {
-                synchronized (this) {
-                    if (regions == null) {
-                        int length = 16;
-                        while (length <= position) {
-                            length = length << 1;
-                        }
-                        @SuppressWarnings("unchecked") // Why, java, why??? (I really hope valhalla remedies this issue)
-                        AtomicReferenceArray<V>[] var10001 = new AtomicReferenceArray[length];
-                        this.regions = var10001;
-                    } else if (regions.length <= position) {
-                        AtomicReferenceArray<V>[] oldRegions = this.regions;
-                        int newLength = oldRegions.length << 1;
-                        while (newLength <= position) {
-                            newLength = newLength << 1;
-                        }
-                        @SuppressWarnings("unchecked")
-                        AtomicReferenceArray<V>[] newRegions = this.regions = new AtomicReferenceArray[newLength];
-                        System.arraycopy(oldRegions, 0, newRegions, 0, oldRegions.length);
-                    }
-                }
-            }
-            AtomicReferenceArray<V> region = regions[position];
-            if (region == null) {
-                synchronized (this) {
-                    if (regions[position] == null) {
-                        regions[position] = new AtomicReferenceArray<>(REGION_SIZE);
-                    }
-                    region = regions[position];
-                }
-            }
+    /**
+     * 16 x 16 cells of a region, null cells are empty.
+     *
+     * @param <V> The type of the value
+     * @author Geolykt
+     */
+    @SuppressWarnings("serial")
+    static final class ObjectTile<V> extends Tile<ObjectTile<V>> {
+        @NotNull
+        private final AtomicReferenceArray<V> cells = new AtomicReferenceArray<>(TILE_SIZE);
 
-            @SuppressWarnings("null") // God damn it my IDE
-            V ret = region.compareAndExchange((key1 & CELL_BITMASK) << CELL_BIT_SHIFT | (key2 & CELL_BITMASK), null, value);
-            return ret;
+        private ObjectTile(@NotNull Region<ObjectTile<V>> region) {
+            super(region);
         }
     }
 
-    private static final int CELL_BIT_SHIFT = 8; // Find the correct balance between empty size and region size. 8 yields more sane numbers, but 9 would result in much less supercells. 10 would explode the size of regions
-    private static final int MSB_BITMASK = ~0 << CELL_BIT_SHIFT;
-    private static final int CELL_BITMASK = ~0 ^ MSB_BITMASK;
-    private static final int REGION_SIZE = (CELL_BITMASK << CELL_BIT_SHIFT) + CELL_BITMASK + 1; // Considering 32 bytes per object (which will not happen), it is 2 Mib in size, which is decently small
-    private static final int SUPERCELL_SHIFT = Integer.SIZE / 2 - CELL_BIT_SHIFT;
-    private static final int KEY_TO_SUPERCELL_SHIFT = Integer.SIZE - SUPERCELL_SHIFT;
-    private static final int SUPERCELL_BIT_MASK = ~0 << (Integer.SIZE - SUPERCELL_SHIFT);
-    private static final int REGION_BITMASK = MSB_BITMASK & ~SUPERCELL_BIT_MASK;
+    public RegionatedIntIntToObjectMap() {
+        super();
+    }
 
-    @SuppressWarnings("unchecked")
-    private final Supercell<V>[] supercells = new Supercell[1 << (SUPERCELL_SHIFT << 1)];
+    /**
+     * Obtains the currently set value and compares it with the expected value.
+     * If they are equal (as per {@code ==}) the currently set value is
+     * replaced and the method returns true, if they are not equal the currently stored value
+     * is left unmodified and the method returns false.
+     * The method behaves in an atomic manner.
+     * 
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     * @param expected The expected value. If this value is null the method acts similar to a {@link Map#putIfAbsent(Object, Object)}, as this map does not allow null values.
+     * @param value The value to be set if the current value is the expected value.
+     * @return True if the cell was modified, false otherwise
+     */
+    public boolean compareAndSet(int key1, int key2, @Nullable V expected, @NotNull V value) {
+        if (expected == null) {
+            return putIfAbsent(key1, key2, value) == null;
+        }
+        key1 = transform(key1);
+        key2 = transform(key2);
+        // Released tiles are empty, so the exchange can only succeed on tiles that are in use
+        ObjectTile<V> tile = getTile(key1, key2);
+        return tile != null && tile.cells.compareAndSet(getCellIndex(key1, key2), expected, value);
+    }
 
-    public RegionatedIntIntToObjectMap() {
-        for (int i = 0; i < supercells.length; i++) {
-            supercells[i] = new Supercell<>();
+    /**
+     * Removes the value mapped to the given keys if the currently set value is the expected value (as per {@code ==}).
+     * The method behaves in an atomic manner.
+     *
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     * @param expected The value that is expected to be mapped to the keys
+     * @return True if the value was removed, false otherwise
+     */
+    public boolean compareAndRemove(int key1, int key2, @NotNull V expected) {
+        key1 = transform(key1);
+        key2 = transform(key2);
+        ObjectTile<V> tile = getTile(key1, key2);
+        if (tile == null || !tile.cells.compareAndSet(getCellIndex(key1, key2), expected, null)) {
+            return false;
         }
+        release(tile, key1, key2);
+        return true;
+    }
+
+    @Override
+    @NotNull
+    ObjectTile<V> createTile(@NotNull Region<ObjectTile<V>> region) {
+        return new ObjectTile<>(region);
     }
 
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof RegionatedIntIntToObjectMap<?> other) {
-            for (int i = 0; i < supercells.length; i++) {
-                if (!this.supercells[i].equals(other.supercells[i])) {
-                    return false;
-                }
-            }
-            return true;
+            @SuppressWarnings("unchecked") // Values are only compared via Object#equals
+            RegionatedIntIntToObjectMap<V> map = (RegionatedIntIntToObjectMap<V>) other;
+            return equalStorage(map);
         }
         return false;
     }
 
-    @Nullable
-    public V put(int key1, int key2, @NotNull V value) {
-        if (key1 < 0) {
-            key1 = key1 ^ ~SUPERCELL_BIT_MASK;
-        }
-        if (key2 < 0) {
-            key2 = key2 ^ ~SUPERCELL_BIT_MASK;
+    @Override
+    boolean equalTiles(@Nullable ObjectTile<V> a, @Nullable ObjectTile<V> b) {
+        for (int cell = 0; cell < TILE_SIZE; cell++) {
+            if (!Objects.equals(a == null ? null : a.cells.get(cell), b == null ? null : b.cells.get(cell))) {
+                return false;
+            }
         }
-        int supercell = (key1 >>> KEY_TO_SUPERCELL_SHIFT) << SUPERCELL_SHIFT | key2 >>> KEY_TO_SUPERCELL_SHIFT;
-        return supercells[supercell].put(key1, key2, value);
+        return true;
+    }
+
+    /**
+     * Invokes the consumer for every entry within the map. The iteration is weakly consistent: Entries
+     * that are inserted, modified or removed concurrently may or may not be visited, but no entry is
+     * visited more than once. The order of the iteration is not specified, but entries that are near to
+     * each other tend to be visited after each other.
+     *
+     * @param consumer The consumer to invoke
+     */
+    public void forEach(@NotNull IntIntObjConsumer<? super V> consumer) {
+        forEachTile((supercell, region, tileIndex, tile) -> {
+            for (int cell = 0; cell < TILE_SIZE; cell++) {
+                V value = tile.cells.get(cell);
+                if (value != null) {
+                    consumer.accept(getKey1(supercell, region, tileIndex, cell), getKey2(supercell, region, tileIndex, cell), value);
+                }
+            }
+        });
     }
 
     @Nullable
     public V get(int key1, int key2) {
-        if (key1 < 0) {
-            key1 = key1 ^ ~SUPERCELL_BIT_MASK;
+        key1 = transform(key1);
+        key2 = transform(key2);
+        ObjectTile<V> tile = getTile(key1, key2);
+        if (tile == null) {
+            return null;
+        }
+        return tile.cells.get(getCellIndex(key1, key2));
+    }
+
+    /**
+     * Obtains the values of all keys within a rectangular area. Instead of looking up every key on its own,
+     * the area is walked region by region and tile by tile, so large areas only need a single lookup
+     * per tile. The values are stored in row-major order, with the second key selecting the row:
+     * The value of (key1, key2) is stored at index {@code (key2 - from2) * (to1 - from1 + 1) + (key1 - from1)}.
+     * Keys without a value are set to null.
+     *
+     * <p>The values are read one after another, so the same consistency guarantees as
+     * {@link #forEach(IntIntObjConsumer)} apply.
+     *
+     * @param from1 The smallest first key of the area (inclusive)
+     * @param from2 The smallest second key of the area (inclusive)
+     * @param to1 The largest first key of the area (inclusive)
+     * @param to2 The largest second key of the area (inclusive)
+     * @param out The array to store the values in
+     * @throws IllegalArgumentException If the area is empty or the array is too small to hold the area
+     */
+    public void getAll(int from1, int from2, int to1, int to2, @Nullable V @NotNull[] out) {
+        if (from1 > to1 || from2 > to2) {
+            throw new IllegalArgumentException("Empty area: " + from1 + "/" + from2 + " to " + to1 + "/" + to2);
         }
-        if (key2 < 0) {
-            key2 = key2 ^ ~SUPERCELL_BIT_MASK;
+        long width = (long) to1 - from1 + 1;
+        if (width * ((long) to2 - from2 + 1) > out.length) {
+            throw new IllegalArgumentException("The array (length " + out.length + ") cannot hold the area " + from1 + "/" + from2 + " to " + to1 + "/" + to2);
         }
-        int supercell = (key1 >>> KEY_TO_SUPERCELL_SHIFT) << SUPERCELL_SHIFT | key2 >>> KEY_TO_SUPERCELL_SHIFT;
-        return supercells[supercell].get(key1, key2);
+        forEachTileWithin(from1, from2, to1, to2, (tile, tileFrom1, tileFrom2, tileTo1, tileTo2) -> {
+            // Iterate by offset, as the largest key of a tile may be Integer.MAX_VALUE
+            for (int offset2 = 0; offset2 <= tileTo2 - tileFrom2; offset2++) {
+                int key2 = tileFrom2 + offset2;
+                int row = (int) ((key2 - from2) * width);
+                for (int offset1 = 0; offset1 <= tileTo1 - tileFrom1; offset1++) {
+                    int key1 = tileFrom1 + offset1;
+                    out[row + (key1 - from1)] = tile == null ? null : tile.cells.get(getCellIndex(transform(key1), transform(key2)));
+                }
+            }
+        });
     }
 
     @Override
@@ -391,49 +312,77 @@ public class RegionatedIntIntToObjectMap<V extends Object> {
         return super.hashCode();
     }
 
+    @Nullable
+    public V put(int key1, int key2, @NotNull V value) {
+        key1 = transform(key1);
+        key2 = transform(key2);
+        ObjectTile<V> tile = reserve(key1, key2);
+        V old = tile.cells.getAndSet(getCellIndex(key1, key2), value);
+        if (old != null) {
+            release(tile, key1, key2); // The cell was occupied already
+        }
+        return old;
+    }
+
     /**
-     * Obtains the currently set value and compares it with the expected value.
-     * If they are equal (as per {@link Objects#equals(Object, Object)}) the currently set value is
-     * replaced and the method returns true, if they are not equal the currently stored value
-     * is left unmodified and the method returns false.
+     * Obtains the currently set value and checks whether it exists.
+     * If it exists, it returns the value, otherwise it sets the value of the cell to the specified value.
      * The method behaves in an atomic manner.
      * 
      * @param key1 The first integer key
      * @param key2 The second integer key
-     * @param expected The expected value. If this value is null the method acts similar to a {@link Map#putIfAbsent(Object, Object)}, as this map does not allow null values.
      * @param value The value to be set if the current value is the expected value.
-     * @return True if the cell was modified, false otherwise
+     * @return The old value, if it does not exist, null.
      */
-    public boolean compareAndSet(int key1, int key2, @Nullable V expected, @NotNull V value) {
-        if (key1 < 0) {
-            key1 = key1 ^ ~SUPERCELL_BIT_MASK;
+    @Nullable
+    public V putIfAbsent(int key1, int key2, @NotNull V value) {
+        V old = get(key1, key2);
+        if (old != null) {
+            return old;
         }
-        if (key2 < 0) {
-            key2 = key2 ^ ~SUPERCELL_BIT_MASK;
+        key1 = transform(key1);
+        key2 = transform(key2);
+        ObjectTile<V> tile = reserve(key1, key2);
+        @SuppressWarnings("null") // God damn it my IDE
+        V ret = tile.cells.compareAndExchange(getCellIndex(key1, key2), null, value);
+        if (ret != null) {
+            release(tile, key1, key2);
         }
-        int supercell = (key1 >>> KEY_TO_SUPERCELL_SHIFT) << SUPERCELL_SHIFT | key2 >>> KEY_TO_SUPERCELL_SHIFT;
-        return supercells[supercell].compareAndSet(key1, key2, expected, value);
+        return ret;
     }
 
     /**
-     * Obtains the currently set value and checks whether it exists.
-     * If it exists, it returns the value, otherwise it sets the value of the cell to the specified value.
-     * The method behaves in an atomic manner.
-     * 
+     * Removes the value mapped to the given keys. Regions (and parts of regions) that no longer hold any values
+     * are released.
+     *
      * @param key1 The first integer key
      * @param key2 The second integer key
-     * @param value The value to be set if the current value is the expected value.
-     * @return The old value, if it does not exist, null.
+     * @return The value that was removed, or null if no value was mapped to the keys
      */
     @Nullable
-    public V putIfAbsent(int key1, int key2, @NotNull V value) {
-        if (key1 < 0) {
-            key1 = key1 ^ ~SUPERCELL_BIT_MASK;
+    public V remove(int key1, int key2) {
+        key1 = transform(key1);
+        key2 = transform(key2);
+        ObjectTile<V> tile = getTile(key1, key2);
+        if (tile == null) {
+            return null;
         }
-        if (key2 < 0) {
-            key2 = key2 ^ ~SUPERCELL_BIT_MASK;
+        V old = tile.cells.getAndSet(getCellIndex(key1, key2), null);
+        if (old != null) {
+            release(tile, key1, key2);
         }
-        int supercell = (key1 >>> KEY_TO_SUPERCELL_SHIFT) << SUPERCELL_SHIFT | key2 >>> KEY_TO_SUPERCELL_SHIFT;
-        return supercells[supercell].putIfAbsent(key1, key2, value);
+        return old;
+    }
+
+    /**
+     * Creates a {@link Spliterator} over the entries of the map, which splits along the supercells and regions of the map
+     * so it can be used for parallel processing, for example via {@link StreamSupport#stream(Spliterator, boolean)}.
+     * The same consistency guarantees as {@link #forEach(IntIntObjConsumer)} apply.
+     *
+     * @return A spliterator over the entries of the map
+     */
+    @NotNull
+    public Spliterator<IntIntEntry<V>> spliterator() {
+        return new EntrySpliterator(0, SUPERCELL_COUNT, 0, REGIONS_PER_SUPERCELL);
     }
 }
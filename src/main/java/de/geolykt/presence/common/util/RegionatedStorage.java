@@ -0,0 +1,791 @@
+package de.geolykt.presence.common.util;
+
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The supercell, region and tile layout that is shared by {@link RegionatedIntIntToObjectMap},
+ * {@link RegionatedIntIntToIntMap} and {@link RegionatedIntIntToLongMap}. See {@link RegionatedIntIntToObjectMap}
+ * for a description of the layout. This class manages the allocation and release of the supercells, regions and tiles,
+ * while the subclasses define how the cells of a tile are stored and what an empty cell is.
+ *
+ * <p>All methods of this class that accept keys expect the keys to be transformed via {@link #transform(int)} first.
+ *
+ * @param <T> The type of the tiles
+ * @author Geolykt
+ */
+abstract class RegionatedStorage<T extends RegionatedStorage.Tile<T>> {
+
+    /**
+     * A counter of the entries within a {@link Region} or {@link Tile}. Writers reserve a slot in the counter before
+     * inserting a value, so the counter only drops to 0 if there are neither entries nor pending insertions.
+     * Once that happens the structure is released, which is indicated by a negative counter. Released structures
+     * cannot be reserved again, writers need to create a new instance instead.
+     *
+     * @author Geolykt
+     */
+    @SuppressWarnings("serial")
+    static class Occupancy extends AtomicInteger {
+
+        protected Occupancy(int initialValue) {
+            super(initialValue);
+        }
+
+        /**
+         * Decrements the counter, releasing the structure if it was the last entry or pending insertion.
+         *
+         * @return True if the structure was released and should be unlinked by the caller
+         */
+        public boolean release() {
+            return decrementAndGet() == 0 && compareAndSet(0, -1);
+        }
+
+        /**
+         * Increments the counter unless the structure was already released.
+         *
+         * @return True if the counter was incremented, false if the structure was released
+         */
+        public boolean reserve() {
+            int occupancy;
+            do {
+                occupancy = get();
+                if (occupancy < 0) {
+                    return false;
+                }
+            } while (!compareAndSet(occupancy, occupancy + 1));
+            return true;
+        }
+    }
+
+    /**
+     * A region of the map, which covers 256 x 256 keys. Instead of allocating all cells at once, a region is split into
+     * 16 x 16 key large tiles that are allocated on first write and released once empty, so sparse regions only cost
+     * memory for the tiles that are actually in use.
+     *
+     * @param <T> The type of the tiles
+     * @author Geolykt
+     */
+    @SuppressWarnings("serial")
+    static final class Region<T extends Tile<T>> extends Occupancy {
+        @NotNull
+        final AtomicReferenceArray<T> tiles = new AtomicReferenceArray<>(TILES_PER_REGION);
+
+        private Region() {
+            super(0);
+        }
+    }
+
+    /**
+     * 16 x 16 cells of a {@link Region}. How the cells are stored is up to the implementation.
+     *
+     * @param <T> The type of the tiles
+     * @author Geolykt
+     */
+    @SuppressWarnings("serial")
+    abstract static class Tile<T extends Tile<T>> extends Occupancy {
+        @NotNull
+        final Region<T> region;
+
+        protected Tile(@NotNull Region<T> region) {
+            super(1); // Tiles are created for an insertion, so they are reserved right away
+            this.region = region;
+        }
+    }
+
+    /**
+     * A page of 1024 regions within a {@link Supercell}. Pages are created on demand and are never released, while
+     * the regions of a page are installed and unlinked via compare-and-set.
+     *
+     * @param <T> The type of the tiles
+     * @author Geolykt
+     */
+    @SuppressWarnings("serial")
+    static final class Page<T extends Tile<T>> extends AtomicReferenceArray<Region<T>> {
+        private Page() {
+            super(PAGE_SIZE);
+        }
+    }
+
+    /**
+     * A supercell, the largest component of the map.
+     * As of writing the javadocs the 9 most significant bits of the two keys are used to obtain the supercell
+     * the value resides in. The actual current value is dictated by {@link RegionatedStorage#SUPERCELL_SHIFT}.
+     * This means that with 18 bits total, there are a total of around 262k Supercells in a single
+     * regionated map. Supercells are only created once a value is inserted into them.
+     *
+     * @param <T> The type of the tiles
+     * @author Geolykt
+     */
+    static final class Supercell<T extends Tile<T>> {
+        /**
+         * The regions of the supercell. The region index (see {@link RegionatedStorage#getRegionIndex(int, int)})
+         * is split into the index of a page table, the index of the page within the table and the index within the
+         * page. All levels have a fixed size and are created on first use, so that a single region that is far away
+         * from the origin of the supercell does not require the allocation of a huge array and no array ever needs
+         * to be grown.
+         */
+        @NotNull
+        final AtomicReferenceArray<AtomicReferenceArray<Page<T>>> directory = new AtomicReferenceArray<>(PAGE_SIZE);
+
+        @NotNull
+        private Page<T> getOrCreatePage(int position) {
+            int tableIndex = position >>> PAGE_TABLE_SHIFT;
+            AtomicReferenceArray<Page<T>> table = directory.get(tableIndex);
+            if (table == null) {
+                table = new AtomicReferenceArray<>(PAGE_SIZE);
+                if (!directory.compareAndSet(tableIndex, null, table)) {
+                    table = directory.get(tableIndex); // Race condition
+                }
+            }
+            int pageIndex = (position >>> PAGE_SHIFT) & PAGE_BITMASK;
+            Page<T> page = table.get(pageIndex);
+            if (page == null) {
+                page = new Page<>();
+                if (!table.compareAndSet(pageIndex, null, page)) {
+                    page = table.get(pageIndex); // Race condition
+                }
+            }
+            return page;
+        }
+
+        @NotNull
+        private Region<T> getOrCreateRegion(int position) {
+            Page<T> page = getOrCreatePage(position);
+            int index = position & PAGE_BITMASK;
+            while (true) {
+                Region<T> region = page.get(index);
+                if (region != null && region.get() >= 0) {
+                    return region;
+                }
+                // Released regions are replaced, they will not accept any further reservations
+                Region<T> created = new Region<>();
+                if (page.compareAndSet(index, region, created)) {
+                    return created;
+                }
+            }
+        }
+
+        @Nullable
+        Page<T> getPage(int position) {
+            AtomicReferenceArray<Page<T>> table = directory.get(position >>> PAGE_TABLE_SHIFT);
+            if (table == null) {
+                return null;
+            }
+            return table.get((position >>> PAGE_SHIFT) & PAGE_BITMASK);
+        }
+
+        @Nullable
+        Region<T> getRegion(int position) {
+            Page<T> page = getPage(position);
+            return page == null ? null : page.get(position & PAGE_BITMASK);
+        }
+
+        /**
+         * Obtains the index of the first region at or after the given index that resides within an allocated page.
+         *
+         * @param position The index of the region to start with
+         * @param end The exclusive upper bound of the search
+         * @return The index of the region, at least end if there is no such region
+         */
+        int skipUnallocated(int position, int end) {
+            while (position < end) {
+                AtomicReferenceArray<Page<T>> table = directory.get(position >>> PAGE_TABLE_SHIFT);
+                if (table == null) {
+                    position = ((position >>> PAGE_TABLE_SHIFT) + 1) << PAGE_TABLE_SHIFT;
+                } else if (table.get((position >>> PAGE_SHIFT) & PAGE_BITMASK) == null) {
+                    position = ((position >>> PAGE_SHIFT) + 1) << PAGE_SHIFT;
+                } else {
+                    break;
+                }
+            }
+            return position;
+        }
+
+        /**
+         * Lowers the exclusive upper bound of a range of regions so that the last region within the range
+         * resides within an allocated page.
+         *
+         * @param start The inclusive lower bound of the range
+         * @param end The exclusive upper bound of the range
+         * @return The new upper bound, at most start if no page is allocated within the range
+         */
+        int trimUnallocated(int start, int end) {
+            while (end > start) {
+                int last = end - 1;
+                AtomicReferenceArray<Page<T>> table = directory.get(last >>> PAGE_TABLE_SHIFT);
+                if (table == null) {
+                    end = last & ~PAGE_TABLE_BITMASK;
+                } else if (table.get((last >>> PAGE_SHIFT) & PAGE_BITMASK) == null) {
+                    end = last & ~PAGE_BITMASK;
+                } else {
+                    break;
+                }
+            }
+            return end;
+        }
+    }
+
+    @FunctionalInterface
+    static interface TileConsumer<T> {
+        void accept(int supercell, int region, int tileIndex, @NotNull T tile);
+    }
+
+    /**
+     * Consumer for the tiles that intersect a rectangular area, see {@link RegionatedStorage#forEachTileWithin(int, int, int, int, TileAreaConsumer)}.
+     *
+     * @param <T> The type of the tiles
+     */
+    @FunctionalInterface
+    static interface TileAreaConsumer<T> {
+        /**
+         * Accepts the part of a tile that lies within the area. The keys are not transformed.
+         *
+         * @param tile The tile, or null if the tile is not allocated
+         * @param from1 The smallest first key within the tile and the area (inclusive)
+         * @param from2 The smallest second key within the tile and the area (inclusive)
+         * @param to1 The largest first key within the tile and the area (inclusive)
+         * @param to2 The largest second key within the tile and the area (inclusive)
+         */
+        void accept(@Nullable T tile, int from1, int from2, int to1, int to2);
+    }
+
+    /**
+     * A {@link Spliterator} over the entries of a regionated map. Splitting happens along supercells
+     * first, and once only a single supercell is left, along the regions of the supercell. Empty supercells at the
+     * borders of the range are skipped before splitting, so splits are rarely empty.
+     *
+     * @param <E> The type of the entries
+     * @author Geolykt
+     */
+    abstract class TileSpliterator<E> implements Spliterator<E> {
+        // Splitting regions any further is not worth it, as a single region may contain up to 65536 entries already
+        private static final int MIN_SPLIT_REGIONS = 4;
+
+        private int supercell;
+        private int supercellEnd;
+        private int region;
+        private int regionEnd;
+        private int tile;
+        private int cell;
+
+        protected TileSpliterator(int supercell, int supercellEnd, int region, int regionEnd) {
+            this.supercell = supercell;
+            this.supercellEnd = supercellEnd;
+            this.region = region;
+            this.regionEnd = regionEnd;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.CONCURRENT | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * Obtains the entry that is stored within a cell.
+         *
+         * @param tile The tile
+         * @param supercell The index of the supercell
+         * @param region The index of the region within the supercell
+         * @param tileIndex The index of the tile within the region
+         * @param cell The index of the cell within the tile
+         * @return The entry, or null if the cell is empty
+         */
+        @Nullable
+        protected abstract E getEntry(@NotNull T tile, int supercell, int region, int tileIndex, int cell);
+
+        @NotNull
+        protected abstract TileSpliterator<E> split(int supercell, int supercellEnd, int region, int regionEnd);
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            for (; supercell < supercellEnd; supercell++, region = 0, regionEnd = REGIONS_PER_SUPERCELL) {
+                AtomicReferenceArray<Supercell<T>> row = supercells.get(supercell >>> SUPERCELL_SHIFT);
+                if (row == null) {
+                    supercell |= SUPERCELL_ROW_BITMASK; // Skip the rest of the row
+                    continue;
+                }
+                Supercell<T> sc = row.get(supercell & SUPERCELL_ROW_BITMASK);
+                if (sc == null) {
+                    continue;
+                }
+                for (; region < regionEnd; region++, tile = 0) {
+                    AtomicReferenceArray<Page<T>> table = sc.directory.get(region >>> PAGE_TABLE_SHIFT);
+                    if (table == null) {
+                        region |= PAGE_TABLE_BITMASK; // Skip the rest of the page table
+                        continue;
+                    }
+                    Page<T> page = table.get((region >>> PAGE_SHIFT) & PAGE_BITMASK);
+                    if (page == null) {
+                        region |= PAGE_BITMASK; // Skip the rest of the page
+                        continue;
+                    }
+                    Region<T> r = page.get(region & PAGE_BITMASK);
+                    if (r == null) {
+                        continue;
+                    }
+                    for (; tile < TILES_PER_REGION; tile++, cell = 0) {
+                        T t = r.tiles.get(tile);
+                        if (t == null) {
+                            continue;
+                        }
+                        while (cell < TILE_SIZE) {
+                            E entry = getEntry(t, supercell, region, tile, cell++);
+                            if (entry != null) {
+                                action.accept(entry);
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        @Nullable
+        public Spliterator<E> trySplit() {
+            boolean started = region != 0 || tile != 0 || cell != 0;
+            if (!started) {
+                while (supercell < supercellEnd && getSupercell(supercell) == null) {
+                    supercell++;
+                }
+            }
+            while (supercellEnd > supercell + 1 && getSupercell(supercellEnd - 1) == null) {
+                supercellEnd--;
+            }
+            if (supercellEnd - supercell > 1) {
+                int mid = supercell + ((supercellEnd - supercell) >>> 1);
+                TileSpliterator<E> split = split(mid, supercellEnd, 0, REGIONS_PER_SUPERCELL);
+                supercellEnd = mid;
+                return split;
+            }
+            Supercell<T> sc;
+            if (supercellEnd - supercell != 1 || (sc = getSupercell(supercell)) == null) {
+                return null;
+            }
+            // Trim pages that are not allocated
+            if (tile == 0 && cell == 0) {
+                region = sc.skipUnallocated(region, regionEnd);
+            }
+            regionEnd = sc.trimUnallocated(region, regionEnd);
+            if (region >= regionEnd) {
+                return null;
+            }
+            int last = regionEnd - 1;
+            int mid;
+            if ((region >>> PAGE_TABLE_SHIFT) != (last >>> PAGE_TABLE_SHIFT)) {
+                // Split along page tables
+                mid = (((region >>> PAGE_TABLE_SHIFT) + (last >>> PAGE_TABLE_SHIFT) + 1) >>> 1) << PAGE_TABLE_SHIFT;
+            } else if ((region >>> PAGE_SHIFT) != (last >>> PAGE_SHIFT)) {
+                // Split along pages
+                mid = (((region >>> PAGE_SHIFT) + (last >>> PAGE_SHIFT) + 1) >>> 1) << PAGE_SHIFT;
+            } else if (regionEnd - region >= MIN_SPLIT_REGIONS << 1) {
+                mid = region + ((regionEnd - region) >>> 1);
+            } else {
+                return null;
+            }
+            TileSpliterator<E> split = split(supercell, supercell + 1, mid, regionEnd);
+            regionEnd = mid;
+            return split;
+        }
+    }
+
+    static final int CELL_BIT_SHIFT = 8; // Find the correct balance between empty size and region size. 8 yields more sane numbers, but 9 would result in much less supercells. 10 would explode the size of regions
+    private static final int MSB_BITMASK = ~0 << CELL_BIT_SHIFT;
+    private static final int CELL_BITMASK = ~0 ^ MSB_BITMASK;
+    private static final int REGION_SIZE = (CELL_BITMASK << CELL_BIT_SHIFT) + CELL_BITMASK + 1; // Considering 32 bytes per object (which will not happen), it is 2 Mib in size, which is decently small
+    // 9 bits per key leave 15 bits per key for the region index, so the interleaved region index is never negative
+    static final int SUPERCELL_SHIFT = 9;
+    private static final int KEY_TO_SUPERCELL_SHIFT = Integer.SIZE - SUPERCELL_SHIFT;
+    private static final int SUPERCELL_BIT_MASK = ~0 << (Integer.SIZE - SUPERCELL_SHIFT);
+    private static final int REGION_BITMASK = MSB_BITMASK & ~SUPERCELL_BIT_MASK;
+    private static final int SUPERCELL_ROW_BITMASK = ~(~0 << SUPERCELL_SHIFT);
+    static final int SUPERCELL_COUNT = 1 << (SUPERCELL_SHIFT << 1);
+    static final int REGIONS_PER_SUPERCELL = 1 << ((Integer.SIZE - SUPERCELL_SHIFT - CELL_BIT_SHIFT) << 1);
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_BITMASK = ~(~0 << PAGE_SHIFT);
+    // A page table holds 1024 pages, and the directory of a supercell holds 1024 page tables
+    private static final int PAGE_TABLE_SHIFT = PAGE_SHIFT << 1;
+    private static final int PAGE_TABLE_BITMASK = ~(~0 << PAGE_TABLE_SHIFT);
+    static final int TILE_BIT_SHIFT = 4;
+    private static final int TILE_BITMASK = ~0 ^ (~0 << TILE_BIT_SHIFT);
+    static final int TILE_SIZE = 1 << (TILE_BIT_SHIFT << 1);
+    static final int TILES_PER_REGION = REGION_SIZE / TILE_SIZE;
+
+    static int getCellIndex(int key1, int key2) {
+        return (key1 & TILE_BITMASK) << TILE_BIT_SHIFT | (key2 & TILE_BITMASK);
+    }
+
+    /**
+     * Obtains the index of the region within the region array of the supercell. The bits of both keys are
+     * interleaved (Z-order), so that the index is unique while staying small for keys that are close to the
+     * origin of the supercell.
+     *
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     * @return The index of the region
+     */
+    private static int getRegionIndex(int key1, int key2) {
+        return interleave((key1 & REGION_BITMASK) >>> CELL_BIT_SHIFT) << 1 | interleave((key2 & REGION_BITMASK) >>> CELL_BIT_SHIFT);
+    }
+
+    private static int getSupercellIndex(int key1, int key2) {
+        return (key1 >>> KEY_TO_SUPERCELL_SHIFT) << SUPERCELL_SHIFT | key2 >>> KEY_TO_SUPERCELL_SHIFT;
+    }
+
+    private static int interleave(int bits) {
+        bits = (bits | (bits << 8)) & 0x00FF00FF;
+        bits = (bits | (bits << 4)) & 0x0F0F0F0F;
+        bits = (bits | (bits << 2)) & 0x33333333;
+        return (bits | (bits << 1)) & 0x55555555;
+    }
+
+    private static int deinterleave(int bits) {
+        bits &= 0x55555555;
+        bits = (bits | (bits >>> 1)) & 0x33333333;
+        bits = (bits | (bits >>> 2)) & 0x0F0F0F0F;
+        bits = (bits | (bits >>> 4)) & 0x00FF00FF;
+        return (bits | (bits >>> 8)) & 0x0000FFFF;
+    }
+
+    /**
+     * Reverts the transformations that are applied to obtain the location of a value, which yields the first key
+     * of the value.
+     *
+     * @param supercell The index of the supercell
+     * @param region The index of the region within the supercell
+     * @param tile The index of the tile within the region
+     * @param cell The index of the cell within the tile
+     * @return The first key
+     */
+    static int getKey1(int supercell, int region, int tile, int cell) {
+        int key = (supercell >>> SUPERCELL_SHIFT) << KEY_TO_SUPERCELL_SHIFT
+                | deinterleave(region >>> 1) << CELL_BIT_SHIFT
+                | (tile >>> (CELL_BIT_SHIFT - TILE_BIT_SHIFT)) << TILE_BIT_SHIFT
+                | cell >>> TILE_BIT_SHIFT;
+        return transform(key);
+    }
+
+    /**
+     * Reverts the transformations that are applied to obtain the location of a value, which yields the second key
+     * of the value.
+     *
+     * @param supercell The index of the supercell
+     * @param region The index of the region within the supercell
+     * @param tile The index of the tile within the region
+     * @param cell The index of the cell within the tile
+     * @return The second key
+     */
+    static int getKey2(int supercell, int region, int tile, int cell) {
+        int key = (supercell & ~(~0 << SUPERCELL_SHIFT)) << KEY_TO_SUPERCELL_SHIFT
+                | deinterleave(region) << CELL_BIT_SHIFT
+                | (tile & ~(~0 << (CELL_BIT_SHIFT - TILE_BIT_SHIFT))) << TILE_BIT_SHIFT
+                | cell & TILE_BITMASK;
+        return transform(key);
+    }
+
+    private static int getTileIndex(int key1, int key2) {
+        return ((key1 & CELL_BITMASK) >> TILE_BIT_SHIFT) << (CELL_BIT_SHIFT - TILE_BIT_SHIFT) | (key2 & CELL_BITMASK) >> TILE_BIT_SHIFT;
+    }
+
+    /**
+     * Applies a bit mask to negative keys to make them more inline with the 0-centric indexing. The transformation
+     * is its own inverse.
+     *
+     * @param key The key
+     * @return The transformed key
+     */
+    static int transform(int key) {
+        return key < 0 ? key ^ ~SUPERCELL_BIT_MASK : key;
+    }
+
+    /**
+     * The supercells of the map, indexed by the supercell bits of the first key and then by the supercell bits
+     * of the second key. Both the rows and the supercells are created on first write, so a map only allocates
+     * the supercells that are in use.
+     */
+    @NotNull
+    private final AtomicReferenceArray<AtomicReferenceArray<Supercell<T>>> supercells = new AtomicReferenceArray<>(1 << SUPERCELL_SHIFT);
+
+    /**
+     * Creates a new, empty tile.
+     *
+     * @param region The region the tile belongs to
+     * @return The created tile
+     */
+    @NotNull
+    abstract T createTile(@NotNull Region<T> region);
+
+    /**
+     * Compares the cells of two tiles. A null tile is equal to a tile of empty cells.
+     * At least one of the tiles is not null.
+     *
+     * @param a The first tile
+     * @param b The second tile
+     * @return True if all cells are equal
+     */
+    abstract boolean equalTiles(@Nullable T a, @Nullable T b);
+
+    /**
+     * Compares the values stored in this map with the values stored in another map of the same type.
+     *
+     * @param other The other map
+     * @return True if both maps hold the same values
+     */
+    final boolean equalStorage(@NotNull RegionatedStorage<T> other) {
+        for (int i = 0; i < SUPERCELL_COUNT; i++) {
+            Supercell<T> a = this.getSupercell(i);
+            Supercell<T> b = other.getSupercell(i);
+            if (a == null && b == null) {
+                continue;
+            }
+            for (int table = 0; table < PAGE_SIZE; table++) {
+                AtomicReferenceArray<Page<T>> ta = a == null ? null : a.directory.get(table);
+                AtomicReferenceArray<Page<T>> tb = b == null ? null : b.directory.get(table);
+                if (ta == null && tb == null) {
+                    continue;
+                }
+                for (int page = 0; page < PAGE_SIZE; page++) {
+                    Page<T> pa = ta == null ? null : ta.get(page);
+                    Page<T> pb = tb == null ? null : tb.get(page);
+                    if (pa == null && pb == null) {
+                        continue;
+                    }
+                    for (int region = 0; region < PAGE_SIZE; region++) {
+                        Region<T> ra = pa == null ? null : pa.get(region);
+                        Region<T> rb = pb == null ? null : pb.get(region);
+                        if (ra == null && rb == null) {
+                            continue;
+                        }
+                        for (int tile = 0; tile < TILES_PER_REGION; tile++) {
+                            T tileA = ra == null ? null : ra.tiles.get(tile);
+                            T tileB = rb == null ? null : rb.tiles.get(tile);
+                            if ((tileA != null || tileB != null) && !equalTiles(tileA, tileB)) {
+                                return false;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Invokes the consumer for every tile that is currently allocated, see {@link RegionatedIntIntToObjectMap#forEach(RegionatedIntIntToObjectMap.IntIntObjConsumer)}
+     * for the consistency guarantees.
+     *
+     * @param consumer The consumer to invoke
+     */
+    final void forEachTile(@NotNull TileConsumer<T> consumer) {
+        for (int supercell = 0; supercell < SUPERCELL_COUNT; supercell++) {
+            AtomicReferenceArray<Supercell<T>> row = supercells.get(supercell >>> SUPERCELL_SHIFT);
+            if (row == null) {
+                supercell |= SUPERCELL_ROW_BITMASK; // Skip the rest of the row
+                continue;
+            }
+            Supercell<T> sc = row.get(supercell & SUPERCELL_ROW_BITMASK);
+            if (sc == null) {
+                continue;
+            }
+            for (int table = 0; table < PAGE_SIZE; table++) {
+                AtomicReferenceArray<Page<T>> t = sc.directory.get(table);
+                if (t == null) {
+                    continue;
+                }
+                for (int page = 0; page < PAGE_SIZE; page++) {
+                    Page<T> p = t.get(page);
+                    if (p == null) {
+                        continue;
+                    }
+                    for (int region = 0; region < PAGE_SIZE; region++) {
+                        Region<T> r = p.get(region);
+                        if (r == null) {
+                            continue;
+                        }
+                        int regionIndex = table << PAGE_TABLE_SHIFT | page << PAGE_SHIFT | region;
+                        for (int tile = 0; tile < TILES_PER_REGION; tile++) {
+                            T tileInstance = r.tiles.get(tile);
+                            if (tileInstance != null) {
+                                consumer.accept(supercell, regionIndex, tile, tileInstance);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private Supercell<T> getSupercell(int index) {
+        AtomicReferenceArray<Supercell<T>> row = supercells.get(index >>> SUPERCELL_SHIFT);
+        return row == null ? null : row.get(index & SUPERCELL_ROW_BITMASK);
+    }
+
+    @NotNull
+    private Supercell<T> getOrCreateSupercell(int index) {
+        int rowIndex = index >>> SUPERCELL_SHIFT;
+        AtomicReferenceArray<Supercell<T>> row = supercells.get(rowIndex);
+        if (row == null) {
+            row = new AtomicReferenceArray<>(1 << SUPERCELL_SHIFT);
+            if (!supercells.compareAndSet(rowIndex, null, row)) {
+                row = supercells.get(rowIndex); // Race condition
+            }
+        }
+        int column = index & SUPERCELL_ROW_BITMASK;
+        Supercell<T> supercell = row.get(column);
+        if (supercell == null) {
+            supercell = new Supercell<>();
+            if (!row.compareAndSet(column, null, supercell)) {
+                supercell = row.get(column); // Race condition
+            }
+        }
+        return supercell;
+    }
+
+    @Nullable
+    final T getTile(int key1, int key2) {
+        Region<T> region = getRegion(key1, key2);
+        if (region == null) {
+            return null;
+        }
+        return region.tiles.get(getTileIndex(key1, key2));
+    }
+
+    /**
+     * Invokes the consumer for every tile that intersects a rectangular area, including the tiles that are not
+     * allocated. Unlike the keys of most methods of this class, the bounds must not be transformed. The area is walked
+     * region by region, so the supercell and region of a tile are only looked up once per region instead of once
+     * per key. Concurrent modifications may or may not be visible to the consumer.
+     *
+     * @param from1 The smallest first key of the area (inclusive)
+     * @param from2 The smallest second key of the area (inclusive)
+     * @param to1 The largest first key of the area (inclusive)
+     * @param to2 The largest second key of the area (inclusive)
+     * @param consumer The consumer to invoke
+     */
+    final void forEachTileWithin(int from1, int from2, int to1, int to2, @NotNull TileAreaConsumer<T> consumer) {
+        if (from1 > to1 || from2 > to2) {
+            throw new IllegalArgumentException("Empty area: " + from1 + "/" + from2 + " to " + to1 + "/" + to2);
+        }
+        // Blocks of keys that are aligned to the size of a region (or tile) remain aligned blocks after being transformed
+        for (int region1 = from1;; region1 = (region1 | CELL_BITMASK) + 1) {
+            int regionEnd1 = Math.min(to1, region1 | CELL_BITMASK);
+            for (int region2 = from2;; region2 = (region2 | CELL_BITMASK) + 1) {
+                int regionEnd2 = Math.min(to2, region2 | CELL_BITMASK);
+                Region<T> region = getRegion(transform(region1), transform(region2));
+                for (int tile1 = region1;; tile1 = (tile1 | TILE_BITMASK) + 1) {
+                    int tileEnd1 = Math.min(regionEnd1, tile1 | TILE_BITMASK);
+                    for (int tile2 = region2;; tile2 = (tile2 | TILE_BITMASK) + 1) {
+                        int tileEnd2 = Math.min(regionEnd2, tile2 | TILE_BITMASK);
+                        T tile = region == null ? null : region.tiles.get(getTileIndex(transform(tile1), transform(tile2)));
+                        consumer.accept(tile, tile1, tile2, tileEnd1, tileEnd2);
+                        if (tileEnd2 == regionEnd2) {
+                            break;
+                        }
+                    }
+                    if (tileEnd1 == regionEnd1) {
+                        break;
+                    }
+                }
+                if (regionEnd2 == to2) {
+                    break;
+                }
+            }
+            if (regionEnd1 == to1) {
+                break;
+            }
+        }
+    }
+
+    @Nullable
+    private Region<T> getRegion(int key1, int key2) {
+        Supercell<T> supercell = getSupercell(getSupercellIndex(key1, key2));
+        if (supercell == null) {
+            return null;
+        }
+        return supercell.getRegion(getRegionIndex(key1, key2));
+    }
+
+    /**
+     * Releases a slot of a tile that was obtained via {@link #reserve(int, int)}, or that was occupied by a
+     * value that was removed. Tiles and regions that become empty are unlinked.
+     *
+     * @param tile The tile
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     */
+    final void release(@NotNull T tile, int key1, int key2) {
+        Region<T> region = tile.region;
+        if (tile.release()) {
+            region.tiles.compareAndSet(getTileIndex(key1, key2), tile, null);
+        }
+        if (region.release()) {
+            int position = getRegionIndex(key1, key2);
+            @SuppressWarnings("null") // The supercell and page exist as they hold the region
+            Page<T> page = getSupercell(getSupercellIndex(key1, key2)).getPage(position);
+            page.compareAndSet(position & PAGE_BITMASK, region, null);
+        }
+    }
+
+    /**
+     * Reserves a slot for an insertion in the tile that the keys are mapped to. The slot is
+     * counted as occupied until it is released via {@link #release(Tile, int, int)}, unless
+     * a value is inserted into the tile.
+     *
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     * @return The reserved tile
+     */
+    @NotNull
+    final T reserve(int key1, int key2) {
+        Supercell<T> supercell = getOrCreateSupercell(getSupercellIndex(key1, key2));
+        int position = getRegionIndex(key1, key2);
+        int tileIndex = getTileIndex(key1, key2);
+        while (true) {
+            Region<T> region = supercell.getOrCreateRegion(position);
+            if (!region.reserve()) {
+                continue;
+            }
+            while (true) {
+                T tile = region.tiles.get(tileIndex);
+                if (tile != null && tile.reserve()) {
+                    return tile;
+                }
+                T created = createTile(region);
+                if (region.tiles.compareAndSet(tileIndex, tile, created)) {
+                    return created;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserves a slot in the tile that the keys are mapped to, without creating the tile if it does not exist.
+     * This keeps the tile from being released while existing values are modified.
+     *
+     * @param key1 The first integer key
+     * @param key2 The second integer key
+     * @return The reserved tile, or null if there is no tile
+     */
+    @Nullable
+    final T reserveExisting(int key1, int key2) {
+        T tile = getTile(key1, key2);
+        if (tile == null || !tile.reserve()) {
+            return null;
+        }
+        tile.region.reserve(); // Cannot fail as the tile keeps the region alive
+        return tile;
+    }
+}
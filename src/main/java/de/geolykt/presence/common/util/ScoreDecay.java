@@ -0,0 +1,90 @@
+package de.geolykt.presence.common.util;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Describes how presence scores decay over time. Every full interval that passed since an entry was
+ * last decayed multiplies the score of the entry by the decay factor (rounding down), which means that
+ * abandoned claims lose their owner eventually.
+ *
+ * <p>Decay is evaluated lazily by the structures that make use of this class, that is scores are only decayed
+ * when they are accessed. As the point in time an entry was last decayed only ever advances by full intervals,
+ * the resulting score does not depend on how often the entry was accessed.
+ *
+ * @author Geolykt
+ */
+public final class ScoreDecay {
+
+    /**
+     * An instance that never decays any score.
+     */
+    @NotNull
+    public static final ScoreDecay NONE = new ScoreDecay(0, 1.0D);
+
+    private final int interval;
+    private final double factor;
+
+    /**
+     * Constructor.
+     *
+     * @param interval The amount of time units between two decay steps. 0 disables decay
+     * @param factor The factor the score is multiplied with on every decay step, ranging from 0.0 (inclusive) to 1.0 (inclusive)
+     */
+    public ScoreDecay(int interval, double factor) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("The decay interval may not be negative");
+        }
+        if (!(factor >= 0.0D && factor <= 1.0D)) {
+            throw new IllegalArgumentException("The decay factor can only range from 0.0 to 1.0");
+        }
+        this.interval = interval;
+        this.factor = factor;
+    }
+
+    /**
+     * Obtains the decayed score after a given amount of decay steps.
+     *
+     * @param score The score before decaying it
+     * @param steps The amount of decay steps, as returned by {@link #getElapsedSteps(int, int)}
+     * @return The decayed score
+     */
+    @Contract(pure = true)
+    public int apply(int score, int steps) {
+        if (steps <= 0) {
+            return score;
+        }
+        return (int) (score * Math.pow(factor, steps));
+    }
+
+    /**
+     * Obtains the amount of full decay steps that passed between two points in time.
+     *
+     * @param lastDecay The point in time the score was decayed the last time
+     * @param now The current point in time
+     * @return The amount of decay steps, 0 if decay is disabled
+     */
+    @Contract(pure = true)
+    public int getElapsedSteps(int lastDecay, int now) {
+        if (!isEnabled() || now <= lastDecay) {
+            return 0;
+        }
+        return (now - lastDecay) / interval;
+    }
+
+    @Contract(pure = true)
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Checks whether scores actually decay. If this method returns false, callers can skip any
+     * decay-related bookkeeping.
+     *
+     * @return True if scores decay
+     */
+    @Contract(pure = true)
+    public boolean isEnabled() {
+        return interval > 0 && factor < 1.0D;
+    }
+}
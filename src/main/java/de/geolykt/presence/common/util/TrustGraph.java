@@ -0,0 +1,173 @@
+package de.geolykt.presence.common.util;
+
+import java.util.Arrays;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The trust relations between players, keyed by dense player ids such as the ones handed out by a {@link UUIDRegistry}.
+ * For every player the graph stores a sorted array of the players they trust and a sorted array of the players that
+ * trust them, which allows to answer both "does A trust B" and "who trusts B" with a binary search or a plain read.
+ *
+ * <p>The arrays are never modified once they were published, modifications replace the arrays of both players while
+ * holding the monitor of the graph. Reads are therefore wait-free and do not allocate, however they may not observe
+ * modifications that happen concurrently.
+ *
+ * @author Geolykt
+ */
+public class TrustGraph {
+
+    private static final int @NotNull[] NONE = new int[0];
+
+    /**
+     * The players trusted by every player, keyed by the id of the trusting player.
+     */
+    @NotNull
+    private final DenseIdMap<int[]> trusted = new DenseIdMap<>();
+
+    /**
+     * The players that trust every player, keyed by the id of the trusted player.
+     */
+    @NotNull
+    private final DenseIdMap<int[]> trusters = new DenseIdMap<>();
+
+    private static int @NotNull[] insert(int @NotNull[] ids, int id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return ids;
+        }
+        index = -index - 1;
+        int[] inserted = new int[ids.length + 1];
+        System.arraycopy(ids, 0, inserted, 0, index);
+        inserted[index] = id;
+        System.arraycopy(ids, index, inserted, index + 1, ids.length - index);
+        return inserted;
+    }
+
+    private static int @NotNull[] remove(int @NotNull[] ids, int id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return ids;
+        }
+        int[] removed = new int[ids.length - 1];
+        System.arraycopy(ids, 0, removed, 0, index);
+        System.arraycopy(ids, index + 1, removed, index, removed.length - index);
+        return removed;
+    }
+
+    private static void set(@NotNull DenseIdMap<int[]> map, int id, int @NotNull[] ids) {
+        if (ids.length == 0) {
+            map.remove(id);
+        } else {
+            map.put(id, ids);
+        }
+    }
+
+    /**
+     * Adds a trust relation.
+     *
+     * @param truster The id of the trusting player
+     * @param trusted The id of the trusted player
+     * @return True if the trusting player did not already trust the trusted player
+     */
+    public synchronized boolean add(int truster, int trusted) {
+        int[] old = getSorted(this.trusted, truster);
+        int[] updated = insert(old, trusted);
+        if (old == updated) {
+            return false;
+        }
+        set(this.trusted, truster, updated);
+        set(this.trusters, trusted, insert(getSorted(this.trusters, trusted), truster));
+        return true;
+    }
+
+    /**
+     * Removes all trust relations.
+     */
+    public synchronized void clear() {
+        trusted.clear();
+        trusters.clear();
+    }
+
+    /**
+     * Invokes the consumer for every player that trusts at least one player. The array passed to the consumer
+     * contains the ids of the trusted players in ascending order and must not be modified.
+     *
+     * @param consumer The consumer to invoke
+     */
+    public void forEach(@NotNull DenseIdMap.IdConsumer<int[]> consumer) {
+        trusted.forEach(consumer);
+    }
+
+    private static int @NotNull[] getSorted(@NotNull DenseIdMap<int[]> map, int id) {
+        int[] ids = map.get(id);
+        return ids == null ? NONE : ids;
+    }
+
+    /**
+     * Obtains the players trusted by a player.
+     *
+     * @param truster The id of the trusting player
+     * @return The ids of the trusted players in ascending order
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    public int[] getTrusted(int truster) {
+        return getSorted(trusted, truster).clone();
+    }
+
+    /**
+     * Obtains the players that trust a player.
+     *
+     * @param trusted The id of the trusted player
+     * @return The ids of the trusting players in ascending order
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    public int[] getTrusters(int trusted) {
+        return getSorted(trusters, trusted).clone();
+    }
+
+    /**
+     * Checks whether a player trusts another player.
+     *
+     * @param truster The id of the trusting player
+     * @param trusted The id of the potentially trusted player
+     * @return True if the trusting player trusts the other player
+     */
+    @Contract(pure = true)
+    public boolean isTrusted(int truster, int trusted) {
+        int[] ids = this.trusted.get(truster);
+        return ids != null && Arrays.binarySearch(ids, trusted) >= 0;
+    }
+
+    /**
+     * Checks whether a player trusts any other player.
+     *
+     * @param truster The id of the player
+     * @return True if the player trusts at least one player
+     */
+    @Contract(pure = true)
+    public boolean trustsAnyone(int truster) {
+        return this.trusted.get(truster) != null;
+    }
+
+    /**
+     * Removes a trust relation.
+     *
+     * @param truster The id of the trusting player
+     * @param trusted The id of the trusted player
+     * @return True if the trusting player trusted the trusted player
+     */
+    public synchronized boolean remove(int truster, int trusted) {
+        int[] old = getSorted(this.trusted, truster);
+        int[] updated = remove(old, trusted);
+        if (old == updated) {
+            return false;
+        }
+        set(this.trusted, truster, updated);
+        set(this.trusters, trusted, remove(getSorted(this.trusters, trusted), truster));
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+package de.geolykt.presence.common.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A concurrent registry that assigns dense integer identifiers to {@link UUID UUIDs}.
+ * Identifiers start at 0 and are never recycled, which means that they can be used as indices
+ * of arrays or be stored within primitive collections instead of the 32 (or more) bytes a {@link UUID}
+ * would cost.
+ *
+ * <p>Lookups by UUID go through a {@link ConcurrentHashMap}, lookups by id are a plain array read.
+ * Registering a new UUID is synchronised, however as this should only happen once per UUID, this
+ * should not be an issue.
+ *
+ * <p>The registry can be persisted via {@link #save(DataOutput)} and {@link #load(DataInput)} so that ids
+ * remain stable across restarts.
+ *
+ * @author Geolykt
+ */
+public class UUIDRegistry {
+
+    /**
+     * The id returned by {@link #getId(UUID)} if the UUID has not been registered yet.
+     */
+    public static final int UNKNOWN_ID = -1;
+
+    @NotNull
+    private final ConcurrentHashMap<UUID, Integer> ids = new ConcurrentHashMap<>();
+
+    private int size; // Guarded by "this"
+
+    @NotNull
+    private volatile UUID[] uuids = new UUID[16];
+
+    /**
+     * Obtains the id of a given UUID. If the UUID was not registered yet, {@link #UNKNOWN_ID} is returned
+     * and the UUID is NOT registered.
+     *
+     * @param uuid The UUID to look up
+     * @return The id of the UUID or {@link #UNKNOWN_ID}
+     */
+    @Contract(pure = true)
+    public int getId(@NotNull UUID uuid) {
+        Integer id = ids.get(uuid);
+        if (id == null) {
+            return UNKNOWN_ID;
+        }
+        return id.intValue();
+    }
+
+    /**
+     * Obtains the id of a given UUID, registering the UUID if it was not yet known to this registry.
+     *
+     * @param uuid The UUID to look up
+     * @return The id of the UUID, never {@link #UNKNOWN_ID}.
+     */
+    public int getOrCreateId(@NotNull UUID uuid) {
+        Integer id = ids.get(uuid);
+        if (id != null) {
+            return id.intValue();
+        }
+        synchronized (this) {
+            id = ids.get(uuid);
+            if (id != null) {
+                return id.intValue();
+            }
+            int newId = size++;
+            UUID[] array = uuids;
+            if (newId == array.length) {
+                array = Arrays.copyOf(array, array.length << 1);
+            }
+            array[newId] = uuid;
+            uuids = array; // Publish the array before the id can be obtained by other threads
+            ids.put(uuid, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Obtains the UUID that is registered under the given id. The returned UUID is always the same instance,
+     * which means that this method can also be used to deduplicate UUIDs.
+     *
+     * @param id The id of the UUID
+     * @return The registered UUID, or null if no UUID is registered under the id
+     */
+    @Nullable
+    @Contract(pure = true)
+    public UUID getUUID(int id) {
+        UUID[] array = uuids;
+        if (id < 0 || id >= array.length) {
+            return null;
+        }
+        return array[id];
+    }
+
+    /**
+     * Registers the UUIDs written by {@link #save(DataOutput)}, so that every UUID is assigned the same id it had
+     * when it was saved. The registry must be empty when calling this method.
+     *
+     * @param in The input to read the UUIDs from
+     * @throws IOException If an I/O error occurs or the input contains a UUID multiple times
+     */
+    public synchronized void load(@NotNull DataInput in) throws IOException {
+        if (size != 0) {
+            throw new IllegalStateException("The registry already contains " + size + " UUIDs.");
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Negative amount of UUIDs: " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            if (getOrCreateId(new UUID(in.readLong(), in.readLong())) != i) {
+                throw new IOException("UUID at id " + i + " is defined multiple times (data corruption likely)");
+            }
+        }
+    }
+
+    /**
+     * Writes all registered UUIDs ordered by their id. UUIDs that are registered concurrently may or may not be
+     * written.
+     *
+     * @param out The output to write the UUIDs to
+     * @throws IOException If an I/O error occurs
+     */
+    public void save(@NotNull DataOutput out) throws IOException {
+        UUID[] array;
+        int count;
+        synchronized (this) {
+            array = uuids;
+            count = size;
+        }
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(array[i].getMostSignificantBits());
+            out.writeLong(array[i].getLeastSignificantBits());
+        }
+    }
+
+    /**
+     * Obtains the amount of UUIDs that were registered so far. As ids are dense, all ids from 0 (inclusive)
+     * to the returned value (exclusive) are valid.
+     *
+     * @return The amount of registered UUIDs
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,113 @@
+package de.geolykt.presence.common.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads and writes variable-length integers. Every byte stores 7 bits of the value, least significant group first,
+ * with the highest bit of the byte being set if more bytes follow. Small non-negative values thus only take
+ * a single byte, while negative values always take 5 bytes. Values that may be negative but are usually close to 0,
+ * such as deltas, should therefore be zig-zag encoded beforehand, which maps 0, -1, 1, -2, 2, ... to 0, 1, 2, 3, 4, ...
+ *
+ * @author Geolykt
+ */
+public final class VarInts {
+
+    private VarInts() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Reads a variable-length integer.
+     *
+     * @param in The input to read from
+     * @return The value
+     * @throws IOException If an I/O error occurs or the integer is longer than 5 bytes
+     */
+    public static int readVarInt(@NotNull DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable-length integer is too long.");
+    }
+
+    /**
+     * Reads a variable-length long.
+     *
+     * @param in The input to read from
+     * @return The value
+     * @throws IOException If an I/O error occurs or the long is longer than 10 bytes
+     */
+    public static long readVarLong(@NotNull DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7FL) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable-length long is too long.");
+    }
+
+    /**
+     * Reads a zig-zag encoded variable-length integer.
+     *
+     * @param in The input to read from
+     * @return The value
+     * @throws IOException If an I/O error occurs or the integer is longer than 5 bytes
+     */
+    public static int readZigZag(@NotNull DataInput in) throws IOException {
+        int value = readVarInt(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes a variable-length integer.
+     *
+     * @param out The output to write to
+     * @param value The value
+     * @throws IOException If an I/O error occurs
+     */
+    public static void writeVarInt(@NotNull DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Writes a variable-length long.
+     *
+     * @param out The output to write to
+     * @param value The value
+     * @throws IOException If an I/O error occurs
+     */
+    public static void writeVarLong(@NotNull DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Writes a zig-zag encoded variable-length integer.
+     *
+     * @param out The output to write to
+     * @param value The value
+     * @throws IOException If an I/O error occurs
+     */
+    public static void writeZigZag(@NotNull DataOutput out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+}
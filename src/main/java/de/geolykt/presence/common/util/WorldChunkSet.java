@@ -0,0 +1,149 @@
+package de.geolykt.presence.common.util;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import de.geolykt.presence.common.PresenceData;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+/**
+ * A set of chunks that may span multiple worlds. The chunks of every world are stored within a primitive
+ * long set of positions as packed by {@link PresenceData#hashPositions(int, int)}, keyed by the world id
+ * as handed out by a {@link UUIDRegistry}. Unlike a set of {@link WorldPosition WorldPositions} no objects
+ * are kept in memory for the individual chunks.
+ *
+ * <p>All operations are synchronised on the set itself.
+ *
+ * @author Geolykt
+ */
+public class WorldChunkSet {
+
+    @NotNull
+    private LongOpenHashSet[] worlds = new LongOpenHashSet[0];
+
+    private int size;
+
+    /**
+     * Adds a chunk to the set.
+     *
+     * @param world The id of the world
+     * @param chunk The position of the chunk as per {@link PresenceData#hashPositions(int, int)}
+     * @return True if the chunk was not yet within the set
+     */
+    public synchronized boolean add(int world, long chunk) {
+        if (world < 0) {
+            throw new IndexOutOfBoundsException("Negative world id: " + world);
+        }
+        if (world >= worlds.length) {
+            LongOpenHashSet[] copy = new LongOpenHashSet[world + 1];
+            System.arraycopy(worlds, 0, copy, 0, worlds.length);
+            worlds = copy;
+        }
+        LongOpenHashSet set = worlds[world];
+        if (set == null) {
+            set = worlds[world] = new LongOpenHashSet();
+        }
+        if (set.add(chunk)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds multiple chunks of a world to the set while holding the monitor of the set only once.
+     *
+     * @param world The id of the world
+     * @param chunks The positions of the chunks as per {@link PresenceData#hashPositions(int, int)}
+     * @param count The amount of chunks to add, starting from the first element of the array
+     * @return The amount of chunks that were not yet within the set
+     */
+    public synchronized int addAll(int world, long @NotNull[] chunks, int count) {
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            if (add(world, chunks[i])) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Checks whether a chunk is within the set.
+     *
+     * @param world The id of the world
+     * @param chunk The position of the chunk as per {@link PresenceData#hashPositions(int, int)}
+     * @return True if the chunk is within the set
+     */
+    @Contract(pure = true)
+    public synchronized boolean contains(int world, long chunk) {
+        return world >= 0 && world < worlds.length && worlds[world] != null && worlds[world].contains(chunk);
+    }
+
+    /**
+     * Obtains all chunks of the set.
+     *
+     * @return A copy of the chunk positions, as per {@link PresenceData#hashPositions(int, int)}, indexed by the world id.
+     * May contain null elements.
+     */
+    @NotNull
+    @Contract(pure = true, value = "-> new")
+    public synchronized long[][] getChunks() {
+        long[][] out = new long[worlds.length][];
+        for (int i = 0; i < out.length; i++) {
+            LongOpenHashSet set = worlds[i];
+            if (set != null && !set.isEmpty()) {
+                out[i] = set.toLongArray();
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Removes a chunk from the set.
+     *
+     * @param world The id of the world
+     * @param chunk The position of the chunk as per {@link PresenceData#hashPositions(int, int)}
+     * @return True if the chunk was within the set
+     */
+    public synchronized boolean remove(int world, long chunk) {
+        if (world < 0 || world >= worlds.length || worlds[world] == null) {
+            return false;
+        }
+        if (worlds[world].remove(chunk)) {
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes multiple chunks of a world from the set while holding the monitor of the set only once.
+     * The chunks that were within the set are moved to the start of the array, in their original order.
+     *
+     * @param world The id of the world
+     * @param chunks The positions of the chunks as per {@link PresenceData#hashPositions(int, int)}
+     * @param count The amount of chunks to remove, starting from the first element of the array
+     * @return The amount of chunks that were within the set
+     */
+    public synchronized int removeAll(int world, long @NotNull[] chunks, int count) {
+        int removed = 0;
+        for (int i = 0; i < count; i++) {
+            if (remove(world, chunks[i])) {
+                chunks[removed++] = chunks[i];
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Obtains the amount of chunks within the set, across all worlds.
+     *
+     * @return The amount of chunks
+     */
+    @Contract(pure = true)
+    public synchronized int size() {
+        return size;
+    }
+}
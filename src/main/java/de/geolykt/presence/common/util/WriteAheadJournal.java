@@ -0,0 +1,200 @@
+package de.geolykt.presence.common.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Adler32;
+
+import org.jetbrains.annotations.NotNull;
+
+import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+
+/**
+ * An append-only journal file. Records are appended to an in-memory buffer and written to the file as a single block
+ * once {@link #commit()} is called, which allows any amount of records to share the cost of a single write and
+ * fsync (group commit). Every block consists of the length of the block, the Adler32 checksum of the block and the
+ * records of the block, so a block that was only partially written due to a crash is detected and discarded
+ * when the journal is {@link #read(Path, BlockReader) read}.
+ *
+ * <p>Appending records and committing them is thread-safe. Records appended by a single thread are committed
+ * in the order they were appended.
+ *
+ * @author Geolykt
+ */
+public class WriteAheadJournal implements Closeable {
+
+    /**
+     * Writes records to the journal.
+     *
+     * @author Geolykt
+     */
+    @FunctionalInterface
+    public static interface RecordWriter {
+
+        /**
+         * Writes one or more records.
+         *
+         * @param out The stream to write the records to
+         * @throws IOException If an I/O error occurs
+         */
+        void write(@NotNull DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads the records of a block of a journal.
+     *
+     * @author Geolykt
+     */
+    @FunctionalInterface
+    public static interface BlockReader {
+
+        /**
+         * Reads the records of a block. The stream ends at the end of the block.
+         *
+         * @param in The stream containing the records of the block
+         * @throws IOException If an I/O error occurs or the records are malformed
+         */
+        void read(@NotNull DataInputStream in) throws IOException;
+    }
+
+    private static final int BLOCK_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    @NotNull
+    private FileChannel channel;
+
+    @NotNull
+    private FastByteArrayOutputStream pending = new FastByteArrayOutputStream(); // Guarded by "this"
+
+    @NotNull
+    private DataOutputStream pendingOut = new DataOutputStream(pending); // Guarded by "this"
+
+    /**
+     * Guards the channel. Always acquired before the monitor of the journal.
+     */
+    @NotNull
+    private final Object commitLock = new Object();
+
+    /**
+     * Constructor. Opens the journal file for appending, creating it if it does not exist.
+     *
+     * @param file The journal file
+     * @throws IOException If the file cannot be opened
+     */
+    public WriteAheadJournal(@NotNull Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Appends records to the journal. The records are only written to the file once the journal is committed.
+     *
+     * @param writer The writer of the records
+     */
+    public synchronized void append(@NotNull RecordWriter writer) {
+        try {
+            writer.write(pendingOut);
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the records appended since the last commit to the journal file as a single block and forces
+     * the block to the disk. Does nothing if no records were appended.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void commit() throws IOException {
+        synchronized (commitLock) {
+            FastByteArrayOutputStream block;
+            synchronized (this) {
+                if (pending.length == 0) {
+                    return;
+                }
+                block = pending;
+                pending = new FastByteArrayOutputStream();
+                pendingOut = new DataOutputStream(pending);
+            }
+            Adler32 checksum = new Adler32();
+            checksum.update(block.array, 0, block.length);
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE).putInt(block.length).putLong(checksum.getValue());
+            header.flip();
+            ByteBuffer[] buffers = {header, ByteBuffer.wrap(block.array, 0, block.length)};
+            while (buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Commits the pending records and continues the journal within another file. The current file is closed afterwards.
+     *
+     * @param file The file to continue the journal in
+     * @throws IOException If an I/O error occurs
+     */
+    public void rotate(@NotNull Path file) throws IOException {
+        synchronized (commitLock) {
+            commit();
+            FileChannel old = channel;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            old.close();
+        }
+    }
+
+    /**
+     * Commits the pending records and closes the journal file.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (commitLock) {
+            commit();
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the blocks of a journal file in the order they were committed. Reading stops at the first block that is
+     * incomplete or whose checksum does not match, as such blocks are the result of a crash while committing.
+     *
+     * @param file The journal file
+     * @param reader The reader that is invoked for every intact block
+     * @return The amount of blocks that were read
+     * @throws IOException If an I/O error occurs or the reader fails
+     */
+    public static int read(@NotNull Path file, @NotNull BlockReader reader) throws IOException {
+        int blocks = 0;
+        long remaining = Files.size(file);
+        try (InputStream rawIn = Files.newInputStream(file); DataInputStream in = new DataInputStream(new BufferedInputStream(rawIn))) {
+            while (remaining >= BLOCK_HEADER_SIZE) {
+                int length = in.readInt();
+                long expectedChecksum = in.readLong();
+                remaining -= BLOCK_HEADER_SIZE;
+                if (length < 0 || length > remaining) {
+                    break;
+                }
+                byte[] block = in.readNBytes(length);
+                remaining -= length;
+                Adler32 checksum = new Adler32();
+                checksum.update(block);
+                if (checksum.getValue() != expectedChecksum) {
+                    break;
+                }
+                reader.read(new DataInputStream(new FastByteArrayInputStream(block)));
+                blocks++;
+            }
+        }
+        return blocks;
+    }
+}
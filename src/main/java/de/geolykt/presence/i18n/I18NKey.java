@@ -28,6 +28,12 @@ public enum I18NKey {
     UNTRUST_NOT_TRUSTED,
 
     CLAIMS_UNKNOWN_CMD,
+    CLAIMS_NO_PERMISSION,
+
+    INFO_CLAIMS_STATS,
+    INFO_CLAIMS_PURGE,
+    STATS_RESULT,
+    PURGE_SUCCESS,
 
     CLAIMFLY_NOT_ENABLED,
     CLAIMFLY_NOT_IN_CLAIM,
@@ -48,6 +54,10 @@ public enum I18NKey {
     CHUNKGROUPS_ALREADY_ASSIGNED_ITSELF,
     CHUNKGROUPS_ALREADY_ASSIGNED_OTHER,
     CHUNKGROUPS_ASSIGN_SUCCESS,
+    CHUNKGROUPS_NOT_THE_OWNER_AREA,
+    CHUNKGROUPS_AREA_TOO_LARGE,
+    CHUNKGROUPS_AREA_ASSIGNED,
+    CHUNKGROUPS_AREA_UNASSIGNED,
 
     CHUNKGROUPS_NOT_IN_GROUP,
     CHUNKGROUPS_SUGGEST_CREATION,
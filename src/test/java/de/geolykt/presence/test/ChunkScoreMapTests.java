@@ -0,0 +1,58 @@
+package de.geolykt.presence.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+
+import de.geolykt.presence.common.util.ChunkScoreMap;
+
+public class ChunkScoreMapTests {
+
+    private static record ScoreKey(int player, int world, int x, int z) {}
+
+    /**
+     * Checks whether random insertions and removals result in the same state as a {@link HashMap}.
+     * Removals are especially interesting as the map does not make use of tombstones.
+     */
+    @Test
+    public void testRandomInsertionAndRemoval() {
+        ChunkScoreMap map = new ChunkScoreMap();
+        Map<ScoreKey, Integer> expected = new HashMap<>();
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        for (int i = 0; i < 500_000; i++) {
+            ScoreKey key = new ScoreKey(rand.nextInt(20), rand.nextInt(3), rand.nextInt(-600, 600), rand.nextInt(-600, 600));
+            if (rand.nextInt(4) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key.player, key.world, key.x, key.z));
+            } else {
+                int value = rand.nextInt(1, 100);
+                assertEquals(expected.merge(key, value, Integer::sum).intValue(), map.addAndGet(key.player, key.world, key.x, key.z, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> {
+            assertEquals(value.intValue(), map.get(key.player, key.world, key.x, key.z));
+        });
+        map.forEach((player, world, x, z, score) -> {
+            assertEquals(expected.get(new ScoreKey(player, world, x, z)).intValue(), score);
+        });
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        ChunkScoreMap map = new ChunkScoreMap();
+        assertTrue(map.putIfAbsent(0, 0, -1, -1, 0));
+        assertFalse(map.putIfAbsent(0, 0, -1, -1, 5));
+        assertEquals(0, map.get(0, 0, -1, -1));
+        assertEquals(0, map.put(0, 0, -1, -1, 5));
+        assertEquals(5, map.get(0, 0, -1, -1));
+        assertEquals(0, map.get(1, 0, -1, -1));
+        assertEquals(0, map.get(0, 1, -1, -1));
+        assertEquals(1, map.size());
+    }
+}
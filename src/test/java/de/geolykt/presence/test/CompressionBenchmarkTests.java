@@ -0,0 +1,81 @@
+package de.geolykt.presence.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import de.geolykt.presence.common.PresenceData;
+import de.geolykt.presence.common.util.PlayerChunkPosition;
+
+/**
+ * Compares the time spent saving and loading and the size of the saved data across compression levels.
+ * Not part of the default test run, use the benchmark profile to run it. The resulting table is published as a
+ * report entry and written to target/compression-benchmark.txt.
+ */
+@Tag("benchmark")
+public class CompressionBenchmarkTests {
+
+    @Test
+    public void testCompressionLevels(TestReporter reporter) throws Exception {
+        UUID world = UUID.randomUUID();
+        UUID[] players = new UUID[50];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+        }
+        Random random = new Random(0xB3C4);
+        PlayerChunkPosition[][] rounds = new PlayerChunkPosition[20][10_000];
+        for (PlayerChunkPosition[] positions : rounds) {
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = new PlayerChunkPosition(players[random.nextInt(players.length)], world, random.nextInt(-600, 600), random.nextInt(-600, 600));
+            }
+        }
+
+        StringBuilder report = new StringBuilder("Level | Save (ms) | Load (ms) | Size (bytes)");
+        long uncompressedSize = 0;
+        for (int level : new int[] {0, 1, 6, 9}) {
+            Path folder = Files.createTempDirectory("presence");
+            try {
+                // A new instance for every level, as only modified regions would be written otherwise
+                PresenceData data = new PresenceData(0.0D);
+                for (PlayerChunkPosition[] positions : rounds) {
+                    data.tickAll(positions);
+                }
+                data.setCompressionLevel(level);
+                PresenceData copy = new PresenceData(0.0D);
+                long start = System.nanoTime();
+                data.save(folder.toFile());
+                long saved = System.nanoTime();
+                copy.load(folder.toFile());
+                long loaded = System.nanoTime();
+                long size;
+                try (Stream<Path> files = Files.walk(folder)) {
+                    size = files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+                }
+                report.append(String.format("%n%5d | %9d | %9d | %12d", level, (saved - start) / 1_000_000, (loaded - saved) / 1_000_000, size));
+                assertEquals(data, copy, report.toString());
+                if (level == 0) {
+                    uncompressedSize = size;
+                } else {
+                    assertTrue(size < uncompressedSize, report.toString());
+                }
+            } finally {
+                SerialisationTests.deleteRecursively(folder);
+            }
+        }
+        reporter.publishEntry("compression", report.toString());
+        Path target = Paths.get("target");
+        Files.createDirectories(target);
+        Files.write(target.resolve("compression-benchmark.txt"), report.append(System.lineSeparator()).toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,164 @@
+package de.geolykt.presence.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import de.geolykt.presence.common.PresenceData;
+import de.geolykt.presence.common.util.ChunkScoreMap;
+import de.geolykt.presence.common.util.PlayerAttachedScore;
+import de.geolykt.presence.common.util.ScoreDecay;
+
+import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+
+public class DecayTests {
+
+    private static class ClockedPresenceData extends PresenceData {
+        private int time;
+
+        public ClockedPresenceData() {
+            super(0.0D, new ScoreDecay(10, 0.5D));
+        }
+
+        @Override
+        protected int getCurrentTime() {
+            return time;
+        }
+
+        public byte[] saveToArray() throws IOException {
+            try (FastByteArrayOutputStream out = new FastByteArrayOutputStream()) {
+                saveStateToStream(out);
+                out.trim();
+                return out.array;
+            }
+        }
+
+        public void loadFromArray(byte[] data) throws IOException {
+            loadState(new FastByteArrayInputStream(data));
+        }
+    }
+
+    @Test
+    public void testLeaderDecay() {
+        ClockedPresenceData presence = new ClockedPresenceData();
+        UUID world = UUID.randomUUID();
+        UUID player1 = UUID.randomUUID();
+        UUID player2 = UUID.randomUUID();
+        for (int i = 0; i < 8; i++) {
+            presence.tick(player1, world, 0, 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            presence.tick(player2, world, 0, 0);
+        }
+
+        presence.time = 9;
+        assertEquals(8, presence.getPresence(player1, world, 0, 0));
+
+        presence.time = 10;
+        PlayerAttachedScore owner = presence.getOwner(world, 0, 0);
+        assertNotNull(owner);
+        assertEquals(player1, owner.getPlayer());
+        assertEquals(4, owner.score().get());
+        PlayerAttachedScore successor = presence.getSuccessor(world, 0, 0);
+        assertNotNull(successor);
+        assertEquals(1, successor.score().get());
+
+        presence.time = 20;
+        assertEquals(2, presence.getPresence(player1, world, 0, 0));
+        assertNull(presence.getSuccessor(world, 0, 0));
+
+        // Ticking must not reset the decay interval
+        presence.time = 29;
+        presence.tick(player2, world, 0, 0);
+        presence.time = 30;
+        owner = presence.getOwner(world, 0, 0);
+        assertNotNull(owner);
+        assertEquals(1, owner.score().get());
+        assertEquals(player1, owner.getPlayer());
+
+        presence.time = 40;
+        assertNull(presence.getOwner(world, 0, 0));
+        assertEquals(0, presence.getPresence(player2, world, 0, 0));
+    }
+
+    @Test
+    public void testSuccessorTakeover() {
+        ClockedPresenceData presence = new ClockedPresenceData();
+        UUID world = UUID.randomUUID();
+        UUID player1 = UUID.randomUUID();
+        UUID player2 = UUID.randomUUID();
+        for (int i = 0; i < 4; i++) {
+            presence.tick(player1, world, 5, -5);
+        }
+        presence.time = 5;
+        for (int i = 0; i < 3; i++) {
+            presence.tick(player2, world, 5, -5);
+        }
+        // Player 1 decays at time 10, player 2 only at time 15
+        presence.time = 10;
+        PlayerAttachedScore owner = presence.getOwner(world, 5, -5);
+        assertNotNull(owner);
+        assertEquals(player2, owner.getPlayer());
+        assertEquals(3, owner.score().get());
+        PlayerAttachedScore successor = presence.getSuccessor(world, 5, -5);
+        assertNotNull(successor);
+        assertEquals(player1, successor.getPlayer());
+        assertEquals(2, successor.score().get());
+    }
+
+    @Test
+    public void testDecaySerialisation() throws IOException {
+        ClockedPresenceData presence = new ClockedPresenceData();
+        UUID world = UUID.randomUUID();
+        UUID player = UUID.randomUUID();
+        for (int i = 0; i < 16; i++) {
+            presence.tick(player, world, -1, 1);
+        }
+        presence.time = 15;
+        byte[] data = presence.saveToArray();
+
+        ClockedPresenceData loaded = new ClockedPresenceData();
+        loaded.time = 15;
+        loaded.loadFromArray(data);
+        assertEquals(presence, loaded);
+        assertEquals(8, loaded.getPresence(player, world, -1, 1));
+        // The time of the last decay must survive a restart
+        loaded.time = 20;
+        assertEquals(4, loaded.getPresence(player, world, -1, 1));
+
+        ClockedPresenceData offline = new ClockedPresenceData();
+        offline.time = 70;
+        offline.loadFromArray(data);
+        assertEquals(0, offline.getPresence(player, world, -1, 1));
+        assertNull(offline.getOwner(world, -1, 1));
+    }
+
+    @Test
+    public void testScoreMapDecay() {
+        int[] time = {0};
+        ChunkScoreMap map = new ChunkScoreMap(new ScoreDecay(10, 0.5D), () -> time[0]);
+        for (int i = 0; i < 1000; i++) {
+            map.addAndGet(0, 0, i, i, 1 << 10);
+        }
+        time[0] = 25;
+        assertEquals(1 << 8, map.get(0, 0, 3, 3));
+        int[] count = {0};
+        map.forEach((player, world, x, z, score, lastDecay) -> {
+            count[0]++;
+            assertEquals(1 << 8, score);
+            assertEquals(20, lastDecay);
+        });
+        assertEquals(1000, count[0]);
+        time[0] = 200;
+        map.forEach((player, world, x, z, score) -> {
+            throw new AssertionError("All entries should have decayed");
+        });
+        assertEquals(0, map.size());
+    }
+}
@@ -0,0 +1,195 @@
+package de.geolykt.presence.test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+
+import de.geolykt.presence.common.util.RegionatedIntIntToIntMap;
+
+public class IntIntToIntMapTests {
+
+    private static record IntIntEntry(int key1, int key2) {}
+
+    @Test
+    public void testSimpleInsertion() {
+        RegionatedIntIntToIntMap map = new RegionatedIntIntToIntMap();
+        Map<IntIntEntry, Integer> expected = new HashMap<>();
+        for (long i = -100_000; i < 100_000; i++) {
+            int value = (int) (i ^ ~(i >>> 32));
+            int key1 = (int) i >>> 32;
+            int key2 = (int) i & 0x0000_FFFF;
+            map.put(key1, key2, value);
+            expected.put(new IntIntEntry(key1, key2), value);
+        }
+        expected.entrySet().stream().forEach(entry -> {
+            assertEquals(entry.getValue().intValue(), map.get(entry.getKey().key1, entry.getKey().key2));
+        });
+        assertEquals(0, map.get(1_000_000, -1_000_000));
+    }
+
+    @Test
+    public void testConcurrentAddition() {
+        RegionatedIntIntToIntMap map = new RegionatedIntIntToIntMap();
+        Map<IntIntEntry, AtomicInteger> expected = new ConcurrentHashMap<>();
+        AtomicInteger completedTasks = new AtomicInteger(0);
+        for (int i = 0; i < 10; i++) {
+            ForkJoinPool.commonPool().execute(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                for (int x = 0; x < 1_000_000; x++) {
+                    int int1 = rand.nextInt(-50, 50);
+                    int int2 = rand.nextInt(-50, 50);
+                    // Small deltas, so that cells frequently drop back to the empty value
+                    int delta = rand.nextInt(-2, 3);
+                    map.getAndAdd(int1, int2, delta);
+                    expected.computeIfAbsent(new IntIntEntry(int1, int2), key -> new AtomicInteger()).addAndGet(delta);
+                }
+                completedTasks.incrementAndGet();
+            });
+        }
+        while (completedTasks.get() != 10) {
+            assertDoesNotThrow(() -> {
+                Thread.sleep(50);
+            });
+        }
+        expected.entrySet().parallelStream().forEach(fullEntry -> {
+            IntIntEntry key = fullEntry.getKey();
+            assertEquals(fullEntry.getValue().get(), map.get(key.key1, key.key2));
+        });
+        expected.forEach((key, value) -> {
+            assertEquals(0, map.addAndGet(key.key1, key.key2, -value.get()));
+        });
+        assertEquals(new RegionatedIntIntToIntMap(), map);
+    }
+
+    @Test
+    public void testCompareAndSet() {
+        RegionatedIntIntToIntMap map = new RegionatedIntIntToIntMap(-1);
+        assertEquals(-1, map.get(3, 4));
+        assertFalse(map.compareAndSet(3, 4, 0, 5));
+        assertTrue(map.compareAndSet(3, 4, -1, 0));
+        assertEquals(0, map.get(3, 4));
+        assertTrue(map.compareAndSet(3, 4, 0, 7));
+        assertFalse(map.compareAndSet(3, 4, 0, 8));
+        assertEquals(7, map.getAndAdd(3, 4, -8));
+        assertEquals(new RegionatedIntIntToIntMap(-1), map);
+        assertFalse(map.equals(new RegionatedIntIntToIntMap()));
+        assertEquals(-1, map.put(-3, -4, 2));
+        assertTrue(map.compareAndSet(-3, -4, 2, -1));
+        assertEquals(new RegionatedIntIntToIntMap(-1), map);
+    }
+
+    @Test
+    public void testRemoval() {
+        RegionatedIntIntToIntMap map = new RegionatedIntIntToIntMap();
+        for (int i = -50_000; i < 50_000; i++) {
+            map.put(i, i >> 4, i);
+        }
+        for (int i = -50_000; i < 50_000; i += 2) {
+            assertEquals(i, map.remove(i, i >> 4));
+        }
+        for (int i = -50_000; i < 50_000; i++) {
+            if ((i & 1) == 0) {
+                assertEquals(0, map.get(i, i >> 4));
+                assertEquals(0, map.remove(i, i >> 4));
+            } else {
+                int value = map.get(i, i >> 4);
+                assertEquals(i, value);
+                assertFalse(map.compareAndSet(i, i >> 4, i + 1, 0));
+                assertTrue(map.compareAndSet(i, i >> 4, value, 0));
+            }
+        }
+        assertEquals(new RegionatedIntIntToIntMap(), map);
+        // Released regions must be usable again
+        map.put(-5, 7, 1);
+        assertEquals(1, map.get(-5, 7));
+        assertEquals(2, map.addAndGet(1000, 1000, 2));
+        assertEquals(2, map.put(1000, 1000, 0));
+        assertEquals(1, map.put(-5, 7, 0));
+        assertEquals(new RegionatedIntIntToIntMap(), map);
+    }
+
+    @Test
+    public void testConcurrentRemoval() {
+        RegionatedIntIntToIntMap map = new RegionatedIntIntToIntMap();
+        AtomicInteger completedTasks = new AtomicInteger(0);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < 10; i++) {
+            int thread = i;
+            ForkJoinPool.commonPool().execute(() -> {
+                try {
+                    // Every thread owns its own keys, but they share tiles and regions with the keys of other threads
+                    ThreadLocalRandom rand = ThreadLocalRandom.current();
+                    Map<IntIntEntry, Integer> expected = new HashMap<>();
+                    for (int x = 1; x <= 1_000_000; x++) {
+                        int key1 = rand.nextInt(-40, 40);
+                        int key2 = rand.nextInt(-4, 4) * 10 + thread;
+                        IntIntEntry entry = new IntIntEntry(key1, key2);
+                        if (rand.nextBoolean()) {
+                            Integer old = expected.put(entry, x);
+                            assertEquals(old == null ? 0 : old.intValue(), map.put(key1, key2, x));
+                        } else {
+                            Integer old = expected.remove(entry);
+                            assertEquals(old == null ? 0 : old.intValue(), map.remove(key1, key2));
+                        }
+                    }
+                    for (Map.Entry<IntIntEntry, Integer> e : expected.entrySet()) {
+                        assertEquals(e.getValue().intValue(), map.get(e.getKey().key1, e.getKey().key2));
+                        assertTrue(map.compareAndSet(e.getKey().key1, e.getKey().key2, e.getValue(), 0));
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+                completedTasks.incrementAndGet();
+            });
+        }
+        while (completedTasks.get() != 10) {
+            assertDoesNotThrow(() -> {
+                Thread.sleep(50);
+            });
+        }
+        assertNull(failure.get());
+        assertEquals(new RegionatedIntIntToIntMap(), map);
+    }
+
+    @Test
+    public void testIteration() {
+        RegionatedIntIntToIntMap map = new RegionatedIntIntToIntMap();
+        Map<IntIntEntry, Integer> expected = new HashMap<>();
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        for (int i = 1; i <= 100_000; i++) {
+            int key1 = rand.nextInt(-2_000, 2_000);
+            int key2 = rand.nextInt(-2_000, 2_000);
+            map.put(key1, key2, i);
+            expected.put(new IntIntEntry(key1, key2), i);
+        }
+        int[][] edgeCases = {{256, 0}, {0, 65_536}, {Integer.MIN_VALUE, Integer.MAX_VALUE}, {-1, -1}, {8_388_608, -8_388_609}, {1_875_000, -1_875_000}};
+        for (int[] keys : edgeCases) {
+            map.put(keys[0], keys[1], keys[0] ^ keys[1] ^ 1);
+            expected.put(new IntIntEntry(keys[0], keys[1]), keys[0] ^ keys[1] ^ 1);
+        }
+
+        Map<IntIntEntry, Integer> iterated = new HashMap<>();
+        map.forEach((key1, key2, value) -> {
+            assertNull(iterated.put(new IntIntEntry(key1, key2), value));
+        });
+        assertEquals(expected, iterated);
+
+        Map<IntIntEntry, Integer> streamed = StreamSupport.stream(map.spliterator(), true)
+                .collect(Collectors.toConcurrentMap(e -> new IntIntEntry(e.key1(), e.key2()), e -> e.value()));
+        assertEquals(expected, streamed);
+    }
+}
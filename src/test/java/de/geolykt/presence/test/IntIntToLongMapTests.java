@@ -0,0 +1,103 @@
+package de.geolykt.presence.test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+
+import de.geolykt.presence.common.util.RegionatedIntIntToLongMap;
+
+public class IntIntToLongMapTests {
+
+    private static record IntIntEntry(int key1, int key2) {}
+
+    @Test
+    public void testSimpleInsertion() {
+        RegionatedIntIntToLongMap map = new RegionatedIntIntToLongMap(Long.MIN_VALUE);
+        Map<IntIntEntry, Long> expected = new HashMap<>();
+        for (long i = -100_000; i < 100_000; i++) {
+            long value = i * 0x1_0000_0001L;
+            int key1 = (int) i >>> 32;
+            int key2 = (int) i & 0x0000_FFFF;
+            map.put(key1, key2, value);
+            expected.put(new IntIntEntry(key1, key2), value);
+        }
+        expected.entrySet().stream().forEach(entry -> {
+            assertEquals(entry.getValue().longValue(), map.get(entry.getKey().key1, entry.getKey().key2));
+        });
+        assertEquals(Long.MIN_VALUE, map.get(1_000_000, -1_000_000));
+    }
+
+    @Test
+    public void testConcurrentAddition() {
+        RegionatedIntIntToLongMap map = new RegionatedIntIntToLongMap();
+        Map<IntIntEntry, AtomicLong> expected = new ConcurrentHashMap<>();
+        AtomicInteger completedTasks = new AtomicInteger(0);
+        for (int i = 0; i < 10; i++) {
+            ForkJoinPool.commonPool().execute(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                for (int x = 0; x < 1_000_000; x++) {
+                    int int1 = rand.nextInt(-50, 50);
+                    int int2 = rand.nextInt(-50, 50);
+                    long delta = rand.nextLong(-2, 3) << 33;
+                    map.getAndAdd(int1, int2, delta);
+                    expected.computeIfAbsent(new IntIntEntry(int1, int2), key -> new AtomicLong()).addAndGet(delta);
+                }
+                completedTasks.incrementAndGet();
+            });
+        }
+        while (completedTasks.get() != 10) {
+            assertDoesNotThrow(() -> {
+                Thread.sleep(50);
+            });
+        }
+        expected.forEach((key, value) -> {
+            assertEquals(value.get(), map.get(key.key1, key.key2));
+            assertEquals(0L, map.addAndGet(key.key1, key.key2, -value.get()));
+        });
+        assertEquals(new RegionatedIntIntToLongMap(), map);
+    }
+
+    @Test
+    public void testRemovalAndIteration() {
+        RegionatedIntIntToLongMap map = new RegionatedIntIntToLongMap();
+        for (int i = -50_000; i < 50_000; i++) {
+            map.put(i, i >> 4, ((long) i) << 32);
+        }
+        for (int i = -50_000; i < 50_000; i += 2) {
+            assertEquals(((long) i) << 32, map.remove(i, i >> 4));
+        }
+        Map<IntIntEntry, Long> iterated = new HashMap<>();
+        map.forEach((key1, key2, value) -> {
+            assertNull(iterated.put(new IntIntEntry(key1, key2), value));
+        });
+        Map<IntIntEntry, Long> streamed = StreamSupport.stream(map.spliterator(), true)
+                .collect(Collectors.toConcurrentMap(e -> new IntIntEntry(e.key1(), e.key2()), e -> e.value()));
+        assertEquals(iterated, streamed);
+        assertEquals(50_000, iterated.size());
+        for (int i = -50_000; i < 50_000; i++) {
+            long value = ((long) i) << 32;
+            if ((i & 1) == 0) {
+                assertEquals(0L, map.get(i, i >> 4));
+            } else {
+                assertEquals(Long.valueOf(value), iterated.get(new IntIntEntry(i, i >> 4)));
+                assertFalse(map.compareAndSet(i, i >> 4, value + 1, 0));
+                assertTrue(map.compareAndSet(i, i >> 4, value, 0));
+            }
+        }
+        assertEquals(new RegionatedIntIntToLongMap(), map);
+    }
+}
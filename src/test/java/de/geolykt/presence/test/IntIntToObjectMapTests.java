@@ -2,13 +2,22 @@ package de.geolykt.presence.test;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import org.junit.jupiter.api.Test;
 
@@ -95,4 +104,151 @@ public class IntIntToObjectMapTests {
             assertEquals(expectedValue, map.get(key.key1, key.key2));
         });
     }
+
+    @Test
+    public void testRemoval() {
+        RegionatedIntIntToObjectMap<Integer> map = new RegionatedIntIntToObjectMap<>();
+        for (int i = -50_000; i < 50_000; i++) {
+            map.put(i, i >> 4, i);
+        }
+        for (int i = -50_000; i < 50_000; i += 2) {
+            assertEquals(Integer.valueOf(i), map.remove(i, i >> 4));
+        }
+        for (int i = -50_000; i < 50_000; i++) {
+            if ((i & 1) == 0) {
+                assertNull(map.get(i, i >> 4));
+                assertNull(map.remove(i, i >> 4));
+            } else {
+                Integer value = map.get(i, i >> 4);
+                assertEquals(Integer.valueOf(i), value);
+                assertFalse(map.compareAndRemove(i, i >> 4, Integer.valueOf(i + 1)));
+                assertTrue(map.compareAndRemove(i, i >> 4, value));
+            }
+        }
+        assertEquals(new RegionatedIntIntToObjectMap<>(), map);
+        // Released regions must be usable again
+        map.put(-5, 7, 1);
+        assertEquals(Integer.valueOf(1), map.get(-5, 7));
+        assertNull(map.putIfAbsent(1000, 1000, 2));
+        assertEquals(Integer.valueOf(2), map.putIfAbsent(1000, 1000, 3));
+    }
+
+    @Test
+    public void testConcurrentRemoval() {
+        RegionatedIntIntToObjectMap<Integer> map = new RegionatedIntIntToObjectMap<>();
+        AtomicInteger completedTasks = new AtomicInteger(0);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < 10; i++) {
+            int thread = i;
+            ForkJoinPool.commonPool().execute(() -> {
+                try {
+                    // Every thread owns its own keys, but they share tiles and regions with the keys of other threads
+                    ThreadLocalRandom rand = ThreadLocalRandom.current();
+                    Map<IntIntEntry, Integer> expected = new HashMap<>();
+                    for (int x = 0; x < 1_000_000; x++) {
+                        int key1 = rand.nextInt(-40, 40);
+                        int key2 = rand.nextInt(-4, 4) * 10 + thread;
+                        IntIntEntry entry = new IntIntEntry(key1, key2);
+                        if (rand.nextBoolean()) {
+                            Integer value = x;
+                            assertEquals(expected.put(entry, value), map.put(key1, key2, value));
+                        } else {
+                            assertEquals(expected.remove(entry), map.remove(key1, key2));
+                        }
+                    }
+                    for (Map.Entry<IntIntEntry, Integer> e : expected.entrySet()) {
+                        assertEquals(e.getValue(), map.get(e.getKey().key1, e.getKey().key2));
+                        assertTrue(map.compareAndRemove(e.getKey().key1, e.getKey().key2, e.getValue()));
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+                completedTasks.incrementAndGet();
+            });
+        }
+        while (completedTasks.get() != 10) {
+            assertDoesNotThrow(() -> {
+                Thread.sleep(50);
+            });
+        }
+        assertNull(failure.get());
+        assertEquals(new RegionatedIntIntToObjectMap<>(), map);
+    }
+
+    @Test
+    public void testIteration() {
+        RegionatedIntIntToObjectMap<Integer> map = new RegionatedIntIntToObjectMap<>();
+        Map<IntIntEntry, Integer> expected = new HashMap<>();
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        for (int i = 0; i < 100_000; i++) {
+            int key1 = rand.nextInt(-2_000, 2_000);
+            int key2 = rand.nextInt(-2_000, 2_000);
+            map.put(key1, key2, i);
+            expected.put(new IntIntEntry(key1, key2), i);
+        }
+        int[][] edgeCases = {{256, 0}, {0, 65_536}, {Integer.MIN_VALUE, Integer.MAX_VALUE}, {-1, -1}, {8_388_608, -8_388_609}, {1_875_000, -1_875_000}};
+        for (int[] keys : edgeCases) {
+            map.put(keys[0], keys[1], keys[0] ^ keys[1]);
+            expected.put(new IntIntEntry(keys[0], keys[1]), keys[0] ^ keys[1]);
+        }
+        for (int[] keys : edgeCases) {
+            assertEquals(Integer.valueOf(keys[0] ^ keys[1]), map.get(keys[0], keys[1]));
+        }
+
+        Map<IntIntEntry, Integer> iterated = new HashMap<>();
+        map.forEach((key1, key2, value) -> {
+            assertNull(iterated.put(new IntIntEntry(key1, key2), value));
+        });
+        assertEquals(expected, iterated);
+
+        Map<IntIntEntry, Integer> streamed = StreamSupport.stream(map.spliterator(), true)
+                .collect(Collectors.toConcurrentMap(e -> new IntIntEntry(e.key1(), e.key2()), e -> e.value()));
+        assertEquals(expected, streamed);
+
+        // Splitting must not lose entries that are close to each other either
+        RegionatedIntIntToObjectMap<Integer> dense = new RegionatedIntIntToObjectMap<>();
+        for (int i = 0; i < 1_000; i++) {
+            dense.put(i, -i, i);
+        }
+        assertEquals(1_000L, StreamSupport.stream(dense.spliterator(), true).count());
+    }
+
+    @Test
+    public void testLazyAllocation() {
+        // Supercells are created on demand, so empty maps are cheap enough to be created in bulk
+        List<RegionatedIntIntToObjectMap<Integer>> maps = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            RegionatedIntIntToObjectMap<Integer> map = new RegionatedIntIntToObjectMap<>();
+            map.put(-i, i, i);
+            maps.add(map);
+        }
+        for (int i = 0; i < maps.size(); i++) {
+            assertEquals(Integer.valueOf(i), maps.get(i).get(-i, i));
+            assertNull(maps.get(i).get(i, -i - 1));
+        }
+    }
+
+    @Test
+    public void testAreaLookup() {
+        RegionatedIntIntToObjectMap<Integer> map = new RegionatedIntIntToObjectMap<>();
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        for (int i = 0; i < 5_000; i++) {
+            map.put(rand.nextInt(-300, 300), rand.nextInt(-300, 300), i);
+        }
+        // The area spans multiple regions and supercells, including the border between negative and positive keys
+        int[][] areas = {{-300, -300, 299, 299}, {-17, 5, 16, 5}, {0, 0, 0, 0}, {-257, -1, -255, 257}, {10, 10, 40, 11},
+                {Integer.MAX_VALUE - 3, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE + 2}};
+        for (int[] area : areas) {
+            int width = area[2] - area[0] + 1;
+            Integer[] values = new Integer[width * (area[3] - area[1] + 1)];
+            map.getAll(area[0], area[1], area[2], area[3], values);
+            for (int key2 = area[1]; key2 <= area[3] && key2 >= area[1]; key2++) {
+                for (int key1 = area[0]; key1 <= area[2] && key1 >= area[0]; key1++) {
+                    assertEquals(map.get(key1, key2), values[(key2 - area[1]) * width + (key1 - area[0])]);
+                }
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> map.getAll(0, 0, 1, 1, new Integer[3]));
+        assertThrows(IllegalArgumentException.class, () -> map.getAll(1, 0, 0, 1, new Integer[4]));
+    }
 }
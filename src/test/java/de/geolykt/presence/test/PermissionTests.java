@@ -0,0 +1,219 @@
+package de.geolykt.presence.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import de.geolykt.presence.common.ChunkGroup;
+import de.geolykt.presence.common.ChunkGroupManager;
+import de.geolykt.presence.common.PermissionMatrix;
+import de.geolykt.presence.common.PresenceData;
+import de.geolykt.presence.common.util.ContenderTable;
+import de.geolykt.presence.common.util.ScoreDecay;
+import de.geolykt.presence.common.util.WorldPosition;
+
+public class PermissionTests {
+
+    private static final int ALLOCATION_ITERATIONS = 100_000;
+
+    @Test
+    public void testAllocationFreeChecks() throws Exception {
+        for (ContenderTable.Storage storage : ContenderTable.Storage.values()) {
+            testAllocationFreeChecks(new PresenceData(0.0D, ScoreDecay.NONE, 4, storage));
+        }
+    }
+
+    private void testAllocationFreeChecks(PresenceData data) throws Exception {
+        UUID world = UUID.randomUUID();
+        // Register plenty of players so that the ids of the players below are not within the Integer cache
+        for (int i = 0; i < 200; i++) {
+            data.tick(UUID.randomUUID(), world, 1000, i);
+        }
+        UUID owner = UUID.randomUUID();
+        UUID friend = UUID.randomUUID();
+        UUID stranger = UUID.randomUUID();
+        data.tick(owner, world, 0, 0);
+        data.tick(owner, world, 1, 0);
+        data.tick(stranger, world, 2, 2);
+
+        ChunkGroupManager groups = data.getChunkGroupManager();
+        groups.addTrustedPlayer(owner, friend);
+        ChunkGroup group = groups.createChunkGroup(owner, "farm");
+        group.permissionRef().set(group.permissions().alterBuild(PermissionMatrix.PERSON_TRUSTED, false));
+        assertTrue(groups.addChunk(group, new WorldPosition(world, PresenceData.hashPositions(1, 0))));
+
+        int worldIndex = data.getWorldIndex(world);
+        assertTrue(data.canBuild(owner, worldIndex, 0, 0));
+        assertTrue(data.canBuild(friend, worldIndex, 0, 0));
+        assertFalse(data.canBuild(stranger, worldIndex, 0, 0));
+        assertTrue(data.canBuild(owner, worldIndex, 1, 0));
+        assertFalse(data.canBuild(friend, worldIndex, 1, 0));
+        assertTrue(data.canBreak(friend, worldIndex, 1, 0));
+        assertTrue(data.canBuild(friend, worldIndex, 5, 5));
+        assertTrue(data.canExplode(worldIndex, 5, 5));
+        assertFalse(data.canExplode(worldIndex, 0, 0));
+
+        // Querying the defaults of a player must not create them
+        int hash = groups.hashCode();
+        groups.getPermissionMatrix(stranger, null);
+        assertEquals(hash, groups.hashCode());
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        UUID[] players = new UUID[] {owner, friend, stranger};
+        int allowed = 0;
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) { // Warmup
+            allowed += evaluate(data, players[i % 3], worldIndex, i & 3);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+            allowed += evaluate(data, players[i % 3], worldIndex, i & 3);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(allowed > 0);
+        assertTrue(allocated < ALLOCATION_ITERATIONS, "Permission checks allocated " + allocated + " bytes");
+    }
+
+    @Test
+    public void testPermissionUpdates() throws Exception {
+        PresenceData data = new PresenceData(0.0D);
+        ChunkGroupManager groups = data.getChunkGroupManager();
+        UUID world = UUID.randomUUID();
+        UUID owner = UUID.randomUUID();
+        UUID friend = UUID.randomUUID();
+        UUID stranger = UUID.randomUUID();
+        data.tick(owner, world, 0, 0);
+        data.tick(owner, world, 1, 0);
+        int worldIndex = data.getWorldIndex(world);
+
+        assertFalse(data.canBuild(friend, worldIndex, 0, 0));
+        groups.addTrustedPlayer(owner, friend);
+        assertTrue(data.canBuild(friend, worldIndex, 0, 0));
+        assertFalse(data.canBuild(stranger, worldIndex, 0, 0));
+
+        groups.setPlayerDefaultPermissions(owner, PermissionMatrix.DEFAULT.alterBuild(PermissionMatrix.PERSON_STRANGER, true)
+                .alterBuild(PermissionMatrix.PERSON_TRUSTED, false).alterExplosions(true));
+        assertTrue(data.canBuild(stranger, worldIndex, 0, 0));
+        assertFalse(data.canBuild(friend, worldIndex, 0, 0));
+        assertTrue(data.canExplode(worldIndex, 1, 0));
+
+        ChunkGroup group = groups.createChunkGroup(owner, "base");
+        assertTrue(groups.addChunk(group, new WorldPosition(world, PresenceData.hashPositions(1, 0))));
+        assertTrue(data.canBuild(friend, worldIndex, 1, 0));
+        assertFalse(data.canBuild(stranger, worldIndex, 1, 0));
+        assertFalse(data.canExplode(worldIndex, 1, 0));
+        assertTrue(groups.compareAndSetPermissions(group, group.permissions(), group.permissions().alterBuild(PermissionMatrix.PERSON_OWNER, false)));
+        assertFalse(data.canBuild(owner, worldIndex, 1, 0));
+        assertTrue(data.canBuild(owner, worldIndex, 0, 0));
+
+        groups.removeTrustedPlayer(owner, friend);
+        assertFalse(data.canBuild(friend, worldIndex, 1, 0));
+        assertTrue(groups.addTrustedPlayer(group, friend));
+        assertTrue(data.canBuild(friend, worldIndex, 1, 0));
+        assertFalse(data.canBuild(stranger, worldIndex, 1, 0));
+        assertTrue(groups.isTrusted(group, friend));
+        assertFalse(groups.isTrusted(owner, friend));
+        assertTrue(groups.removeTrustedPlayer(group, friend));
+        assertFalse(data.canBuild(friend, worldIndex, 1, 0));
+
+        // The friend takes over the chunk, which also removes it from the group
+        data.tick(friend, world, 1, 0);
+        data.tick(friend, world, 1, 0);
+        assertTrue(data.canBuild(friend, worldIndex, 1, 0));
+        assertFalse(data.canBuild(owner, worldIndex, 1, 0));
+        assertTrue(data.canBuild(stranger, worldIndex, 0, 0));
+    }
+
+    @Test
+    public void testAreaAssignment() throws Exception {
+        PresenceData data = new PresenceData(0.0D);
+        ChunkGroupManager groups = data.getChunkGroupManager();
+        UUID world = UUID.randomUUID();
+        UUID owner = UUID.randomUUID();
+        UUID stranger = UUID.randomUUID();
+        for (int x = -2; x <= 2; x++) {
+            for (int z = -2; z <= 2; z++) {
+                data.tick(owner, world, x, z);
+            }
+        }
+        data.tick(stranger, world, 3, 0);
+        ChunkGroup group = groups.createChunkGroup(owner, "base");
+        ChunkGroup other = groups.createChunkGroup(owner, "farm");
+        groups.setPlayerDefaultPermissions(owner, PermissionMatrix.DEFAULT.alterBuild(PermissionMatrix.PERSON_STRANGER, true));
+        assertTrue(groups.addChunk(other, new WorldPosition(world, PresenceData.hashPositions(0, 0))));
+
+        assertEquals(-1, data.assignChunks(group, world, -2, -2, 3, 2));
+        assertEquals(-1, data.assignChunks(group, world, -3, -2, 2, 2));
+        assertEquals(0, group.claimedChunks().size());
+
+        assertEquals(24, data.assignChunks(group, world, -2, -2, 2, 2));
+        assertEquals(24, group.claimedChunks().size());
+        assertEquals(other, groups.getGroupAt(new WorldPosition(world, PresenceData.hashPositions(0, 0))));
+        assertEquals(group, groups.getGroupAt(new WorldPosition(world, PresenceData.hashPositions(-2, 2))));
+        int worldIndex = data.getWorldIndex(world);
+        assertFalse(data.canBuild(stranger, worldIndex, 2, 2));
+        assertEquals(0, data.assignChunks(group, world, -1, -1, 1, 1));
+
+        assertEquals(4, data.unassignChunks(group, world, 1, 1, 3, 3));
+        assertEquals(20, group.claimedChunks().size());
+        assertTrue(data.canBuild(stranger, worldIndex, 2, 2));
+        assertNull(groups.getGroupAt(new WorldPosition(world, PresenceData.hashPositions(2, 2))));
+        assertEquals(0, data.unassignChunks(group, world, 0, 0, 0, 0));
+        assertEquals(0, data.unassignChunks(group, UUID.randomUUID(), 0, 0, 0, 0));
+    }
+
+    /**
+     * Checks whether default permissions apply to exactly the chunks the player owns, including chunks that changed hands.
+     */
+    @Test
+    public void testDefaultPermissionsOfOwnedChunks() {
+        PresenceData data = new PresenceData(0.0D);
+        ChunkGroupManager groups = data.getChunkGroupManager();
+        UUID world = UUID.randomUUID();
+        UUID owner = UUID.randomUUID();
+        UUID rival = UUID.randomUUID();
+        UUID visitor = UUID.randomUUID();
+        data.tick(owner, world, 0, 0);
+        data.tick(owner, world, 1, 0);
+        data.tick(rival, world, 1, 0);
+        data.tick(rival, world, 1, 0);
+        int worldIndex = data.getWorldIndex(world);
+
+        groups.setPlayerDefaultPermissions(owner, PermissionMatrix.DEFAULT.alterBuild(PermissionMatrix.PERSON_STRANGER, true));
+        assertTrue(data.canBuild(visitor, worldIndex, 0, 0));
+        assertFalse(data.canBuild(visitor, worldIndex, 1, 0));
+
+        data.tick(owner, world, 1, 0);
+        data.tick(owner, world, 1, 0);
+        assertTrue(data.canBuild(visitor, worldIndex, 1, 0));
+
+        groups.setPlayerDefaultPermissions(owner, PermissionMatrix.DEFAULT);
+        assertFalse(data.canBuild(visitor, worldIndex, 0, 0));
+        assertFalse(data.canBuild(visitor, worldIndex, 1, 0));
+    }
+
+    private static int evaluate(PresenceData data, UUID player, int world, int x) {
+        int allowed = 0;
+        allowed += data.canAttack(player, world, x, 0) ? 1 : 0;
+        allowed += data.canAttackNamed(player, world, x, 0) ? 1 : 0;
+        allowed += data.canBreak(player, world, x, 0) ? 1 : 0;
+        allowed += data.canBuild(player, world, x, 0) ? 1 : 0;
+        allowed += data.canExplode(world, x, 0) ? 1 : 0;
+        allowed += data.canHarvest(player, world, x, 0) ? 1 : 0;
+        allowed += data.canInteractWithBlock(player, world, x, 0) ? 1 : 0;
+        allowed += data.canInteractWithEntities(player, world, x, 0) ? 1 : 0;
+        allowed += data.canTrample(player, world, x, 0) ? 1 : 0;
+        return allowed;
+    }
+}
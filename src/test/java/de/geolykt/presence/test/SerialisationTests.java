@@ -1,11 +1,21 @@
 package de.geolykt.presence.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 import java.util.zip.Adler32;
 import java.util.zip.CheckedOutputStream;
 import java.util.zip.Checksum;
@@ -13,7 +23,13 @@ import java.util.zip.Checksum;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
 
+import de.geolykt.presence.common.ChunkGroup;
+import de.geolykt.presence.common.PermissionMatrix;
 import de.geolykt.presence.common.PresenceData;
+import de.geolykt.presence.common.util.CheckedFileWriter;
+import de.geolykt.presence.common.util.PlayerChunkPosition;
+import de.geolykt.presence.common.util.UUIDRegistry;
+import de.geolykt.presence.common.util.WorldPosition;
 
 import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
 import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
@@ -26,10 +42,6 @@ public class SerialisationTests {
         assertEquals(true, isRoundtripable(data));
     }
 
-    // TODO this test is taking quite a long time, we might look into how we can optimise the calls to it
-    // After a bit of testing I have come to the conclusion that it is mostly caused by very frequent
-    // UUIDIntIntConcurrentMap#root lookups. I assume that a bulk-oriented tick method can thus multiply performance
-    // by two.
     @Test
     public void testTickedSerialisation() {
         TestPresenceData data = new TestPresenceData();
@@ -52,6 +64,411 @@ public class SerialisationTests {
         assertEquals(true, isRoundtripable(data));
     }
 
+    @Test
+    public void testLegacyStateFormat() throws IOException {
+        UUID world = UUID.randomUUID();
+        UUID[] players = {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+        FastByteArrayOutputStream legacy = new FastByteArrayOutputStream();
+        DataOutputStream legacyOut = new DataOutputStream(legacy);
+        int entries = 0;
+        for (int x = -300; x < 300; x += 7) {
+            for (int i = 0; i < players.length; i++) {
+                legacyOut.write(1);
+                legacyOut.writeInt(x * x + i + 1);
+                legacyOut.writeLong(world.getMostSignificantBits());
+                legacyOut.writeLong(world.getLeastSignificantBits());
+                legacyOut.writeLong(players[i].getMostSignificantBits());
+                legacyOut.writeLong(players[i].getLeastSignificantBits());
+                legacyOut.writeLong(PresenceData.hashPositions(x, -x));
+                entries++;
+            }
+        }
+        legacyOut.write(0);
+        Adler32 checksum = new Adler32();
+        checksum.update(legacy.array, 0, legacy.length);
+        byte[] legacyFile = new byte[legacy.length + 8];
+        ByteBuffer.wrap(legacyFile).putLong(checksum.getValue()).put(legacy.array, 0, legacy.length);
+
+        TestPresenceData data = new TestPresenceData();
+        data.loadFromArray(legacyFile);
+        for (int i = 0; i < players.length; i++) {
+            assertEquals(90_000 + i + 1, data.getPresence(players[i], world, -300, 300));
+            assertEquals(i + 2, data.getPresence(players[i], world, 1, -1));
+        }
+        assertTrue(isRoundtripable(data));
+        assertTrue(data.getStateLength() * 4 < legacy.length, "Compact state takes " + data.getStateLength() + " bytes for " + entries + " entries");
+    }
+
+    @Test
+    public void testUUIDRegistrySerialisation() throws IOException {
+        UUIDRegistry registry = new UUIDRegistry();
+        UUID[] uuids = new UUID[100];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = UUID.randomUUID();
+            assertEquals(i, registry.getOrCreateId(uuids[i]));
+        }
+        FastByteArrayOutputStream byteOut = new FastByteArrayOutputStream();
+        registry.save(new DataOutputStream(byteOut));
+
+        UUIDRegistry loaded = new UUIDRegistry();
+        loaded.getOrCreateId(uuids[0]);
+        assertThrows(IllegalStateException.class, () -> loaded.load(new DataInputStream(new FastByteArrayInputStream(byteOut.array, 0, (int) byteOut.length))));
+
+        UUIDRegistry loaded2 = new UUIDRegistry();
+        loaded2.load(new DataInputStream(new FastByteArrayInputStream(byteOut.array, 0, (int) byteOut.length)));
+        assertEquals(uuids.length, loaded2.size());
+        for (int i = 0; i < uuids.length; i++) {
+            assertEquals(i, loaded2.getId(uuids[i]));
+        }
+    }
+
+    @Test
+    public void testFolderSerialisation() throws IOException {
+        Path folder = Files.createTempDirectory("presence");
+        try {
+            PresenceData data = new PresenceData(0.0D);
+            UUID world = UUID.randomUUID();
+            UUID player1 = UUID.randomUUID();
+            UUID player2 = UUID.randomUUID();
+            data.tick(player1, world, 4, 2);
+            data.getChunkGroupManager().addTrustedPlayer(player1, player2);
+            data.getChunkGroupManager().setPlayerDefaultPermissions(player2, PermissionMatrix.DEFAULT);
+            data.save(folder.toFile());
+
+            PresenceData loaded = new PresenceData(0.0D);
+            loaded.load(folder.toFile());
+            assertEquals(data, loaded);
+            assertTrue(loaded.getChunkGroupManager().isTrusted(player1, player2));
+            assertFalse(loaded.getChunkGroupManager().isTrusted(player2, player1));
+            assertEquals(1, loaded.getPresence(player1, world, 4, 2));
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    @Test
+    public void testGroupTrustSerialisation() throws Exception {
+        Path folder = Files.createTempDirectory("presence");
+        try {
+            PresenceData data = new PresenceData(0.0D);
+            UUID world = UUID.randomUUID();
+            UUID owner = UUID.randomUUID();
+            UUID member = UUID.randomUUID();
+            data.tick(owner, world, 0, 0);
+            ChunkGroup group = data.getChunkGroupManager().createChunkGroup(owner, "base");
+            data.getChunkGroupManager().addChunk(group, new WorldPosition(world, PresenceData.hashPositions(0, 0)));
+            data.getChunkGroupManager().addTrustedPlayer(group, member);
+            data.save(folder.toFile());
+
+            PresenceData loaded = new PresenceData(0.0D);
+            loaded.load(folder.toFile());
+            ChunkGroup loadedGroup = loaded.getChunkGroupManager().getChunkGroup(owner, "base");
+            assertNotNull(loadedGroup);
+            assertTrue(loaded.getChunkGroupManager().isTrusted(loadedGroup, member));
+            assertFalse(loaded.getChunkGroupManager().isTrusted(owner, member));
+            assertTrue(loaded.canBuild(member, world, 0, 0));
+            assertEquals(data.getChunkGroupManager(), loaded.getChunkGroupManager());
+            assertEquals(loadedGroup, loaded.getChunkGroupManager().getGroupAt(new WorldPosition(world, PresenceData.hashPositions(0, 0))));
+            assertEquals(1, loadedGroup.claimedChunks().size());
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    @Test
+    public void testAtomicSave() throws Exception {
+        Path folder = Files.createTempDirectory("presence");
+        try {
+            Path file = folder.resolve("test.dat");
+            byte[] payload = {1, 2, 3, 4, 5};
+            CheckedFileWriter.write(file, new byte[] {0, 7}, out -> out.write(payload));
+            byte[] written = Files.readAllBytes(file);
+            assertEquals(2 + 8 + payload.length, written.length);
+            Adler32 checksum = new Adler32();
+            checksum.update(payload);
+            assertEquals(checksum.getValue(), ByteBuffer.wrap(written, 2, 8).getLong());
+
+            // A failed save must leave the previous file intact
+            assertThrows(IOException.class, () -> CheckedFileWriter.write(file, new byte[0], out -> {
+                out.write(payload);
+                throw new IOException("Simulated failure");
+            }));
+            assertEquals(ByteBuffer.wrap(written), ByteBuffer.wrap(Files.readAllBytes(file)));
+            assertFalse(Files.exists(folder.resolve("test.dat.tmp")));
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    @Test
+    public void testJournalReplay() throws Exception {
+        Path folder = Files.createTempDirectory("presence");
+        try {
+            PresenceData data = new PresenceData(0.0D);
+            data.load(folder.toFile());
+            data.enableJournal(folder.toFile());
+            UUID world = UUID.randomUUID();
+            UUID owner = UUID.randomUUID();
+            UUID member = UUID.randomUUID();
+            data.tick(owner, world, 0, 0);
+            data.tickAll(new PlayerChunkPosition[] {new PlayerChunkPosition(owner, world, 0, 0), new PlayerChunkPosition(member, world, 1, 0)});
+            ChunkGroup group = data.getChunkGroupManager().createChunkGroup(owner, "base");
+            data.getChunkGroupManager().addChunk(group, new WorldPosition(world, PresenceData.hashPositions(0, 0)));
+            data.getChunkGroupManager().addTrustedPlayer(group, member);
+            data.commitJournal();
+            data.tick(member, world, 2, 0); // Not committed, lost in the crash
+
+            // Simulate a crash: nothing was saved, only the journal was committed
+            PresenceData recovered = new PresenceData(0.0D);
+            recovered.load(folder.toFile());
+            assertEquals(2, recovered.getPresence(owner, world, 0, 0));
+            assertEquals(1, recovered.getPresence(member, world, 1, 0));
+            assertEquals(0, recovered.getPresence(member, world, 2, 0));
+            ChunkGroup recoveredGroup = recovered.getChunkGroupManager().getChunkGroup(owner, "base");
+            assertNotNull(recoveredGroup);
+            assertTrue(recovered.getChunkGroupManager().isTrusted(recoveredGroup, member));
+            assertEquals(recoveredGroup, recovered.getChunkGroupManager().getGroupAt(new WorldPosition(world, PresenceData.hashPositions(0, 0))));
+
+            // Saving truncates the journal, so the modifications are not applied twice
+            data.save(folder.toFile());
+            data.tick(owner, world, 5, 5);
+            data.closeJournal();
+            PresenceData reloaded = new PresenceData(0.0D);
+            reloaded.load(folder.toFile());
+            assertEquals(2, reloaded.getPresence(owner, world, 0, 0));
+            assertEquals(1, reloaded.getPresence(member, world, 2, 0));
+            assertEquals(1, reloaded.getPresence(owner, world, 5, 5));
+            assertEquals(data.getChunkGroupManager(), reloaded.getChunkGroupManager());
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    /**
+     * Checks whether the journal refers to players and worlds by their id rather than by their UUID.
+     */
+    @Test
+    public void testJournalSize() throws Exception {
+        Path folder = Files.createTempDirectory("presence");
+        try {
+            PresenceData data = new PresenceData(0.0D);
+            data.load(folder.toFile());
+            data.enableJournal(folder.toFile());
+            UUID world = UUID.randomUUID();
+            UUID[] players = {UUID.randomUUID(), UUID.randomUUID()};
+            for (int i = 0; i < 1000; i++) {
+                data.tick(players[i & 1], world, i, -i);
+            }
+            data.commitJournal();
+            // A record with two UUIDs alone would take up more than 32 bytes
+            assertTrue(Files.size(folder.resolve("journal-0.dat")) < 1000 * 16);
+
+            data.closeJournal();
+            PresenceData reloaded = new PresenceData(0.0D);
+            reloaded.load(folder.toFile());
+            assertEquals(data, reloaded);
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    /**
+     * Checks whether ticks that happen while the data is saved are neither lost nor applied twice when the journal is replayed.
+     */
+    @Test
+    public void testConcurrentJournalRotation() throws Exception {
+        Path folder = Files.createTempDirectory("presence");
+        try {
+            PresenceData data = new PresenceData(0.0D);
+            data.load(folder.toFile());
+            data.enableJournal(folder.toFile());
+            UUID world = UUID.randomUUID();
+            UUID player = UUID.randomUUID();
+            AtomicBoolean stop = new AtomicBoolean();
+            Thread ticker = new Thread(() -> {
+                for (int i = 0; !stop.get(); i++) {
+                    data.tick(player, world, i & 0x3FF, 0);
+                }
+            });
+            ticker.start();
+            for (int i = 0; i < 20; i++) {
+                data.save(folder.toFile());
+            }
+            stop.set(true);
+            ticker.join();
+            data.closeJournal();
+
+            PresenceData reloaded = new PresenceData(0.0D);
+            reloaded.load(folder.toFile());
+            assertEquals(data, reloaded);
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    /**
+     * Checks whether the journal is not applied twice if a save is interrupted after writing the saved files, but before
+     * the journal files that are covered by the save are deleted.
+     */
+    @Test
+    public void testInterruptedSave() throws Exception {
+        Path folder = Files.createTempDirectory("presence");
+        try {
+            PresenceData data = new PresenceData(0.0D);
+            data.load(folder.toFile());
+            data.enableJournal(folder.toFile());
+            UUID world = UUID.randomUUID();
+            UUID owner = UUID.randomUUID();
+            UUID member = UUID.randomUUID();
+            data.tick(owner, world, 0, 0);
+            data.tick(member, world, 300, 0);
+            data.tick(member, world, 1, 0);
+            data.purgePlayer(member);
+            data.tick(member, world, 300, 0);
+            data.getChunkGroupManager().createChunkGroup(owner, "base");
+            data.commitJournal();
+            byte[] journal = Files.readAllBytes(folder.resolve("journal-0.dat"));
+
+            data.save(folder.toFile());
+            data.tick(owner, world, 0, 0);
+            data.getChunkGroupManager().createChunkGroup(owner, "farm");
+            data.closeJournal();
+            // Restore the journal as if the save crashed right after writing the region files
+            Files.write(folder.resolve("journal-0.dat"), journal);
+            Files.delete(folder.resolve("journal-base.dat"));
+
+            PresenceData reloaded = new PresenceData(0.0D);
+            reloaded.load(folder.toFile());
+            assertEquals(data, reloaded);
+            assertEquals(data.getChunkGroupManager(), reloaded.getChunkGroupManager());
+            assertEquals(2, reloaded.getPresence(owner, world, 0, 0));
+            assertEquals(1, reloaded.getPresence(member, world, 300, 0));
+            assertEquals(0, reloaded.getPresence(member, world, 1, 0));
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    @Test
+    public void testJournaledPurge() throws Exception {
+        Path folder = Files.createTempDirectory("presence");
+        try {
+            PresenceData data = new PresenceData(0.0D);
+            data.load(folder.toFile());
+            data.enableJournal(folder.toFile());
+            UUID world = UUID.randomUUID();
+            UUID owner = UUID.randomUUID();
+            UUID member = UUID.randomUUID();
+            data.tick(owner, world, 0, 0);
+            data.tick(member, world, 0, 0);
+            data.tick(member, world, 0, 0);
+            data.tick(member, world, 1, 0);
+            data.save(folder.toFile());
+
+            // The purge is only journaled, the saved state still contains the presence of the player
+            assertEquals(2, data.purgePlayer(member));
+            data.tick(member, world, 1, 0);
+            data.closeJournal();
+            PresenceData reloaded = new PresenceData(0.0D);
+            reloaded.load(folder.toFile());
+            assertEquals(data, reloaded);
+            assertEquals(0, reloaded.getPresence(member, world, 0, 0));
+            assertEquals(1, reloaded.getPresence(member, world, 1, 0));
+            assertEquals(owner, Objects.requireNonNull(reloaded.getOwner(world, 0, 0)).getPlayer());
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    @Test
+    public void testRegionSaves() throws Exception {
+        Path folder = Files.createTempDirectory("presence");
+        try {
+            UUID world = UUID.randomUUID();
+            UUID player = UUID.randomUUID();
+            TestPresenceData data = new TestPresenceData();
+            data.tick(player, world, 0, 0);
+            data.tick(player, world, 300, -1);
+
+            // Migrate a legacy state db
+            Files.write(folder.resolve("statedb.dat"), data.saveStateToArrayChecked());
+            PresenceData migrated = new PresenceData(0.0D);
+            migrated.load(folder.toFile());
+            migrated.save(folder.toFile());
+            assertFalse(Files.exists(folder.resolve("statedb.dat")));
+            Path worldFolder = folder.resolve("regions").resolve(world.toString());
+            assertTrue(Files.exists(worldFolder.resolve("r.0.0.dat")));
+            assertTrue(Files.exists(worldFolder.resolve("r.1.-1.dat")));
+            PresenceData loaded = new PresenceData(0.0D);
+            loaded.load(folder.toFile());
+            assertEquals(data, loaded);
+
+            // Only regions that were modified since the last save are written again
+            Files.delete(worldFolder.resolve("r.1.-1.dat"));
+            loaded.tick(player, world, 1, 1);
+            loaded.save(folder.toFile());
+            assertFalse(Files.exists(worldFolder.resolve("r.1.-1.dat")));
+            PresenceData reloaded = new PresenceData(0.0D);
+            reloaded.load(folder.toFile());
+            assertEquals(1, reloaded.getPresence(player, world, 0, 0));
+            assertEquals(1, reloaded.getPresence(player, world, 1, 1));
+            assertEquals(0, reloaded.getPresence(player, world, 300, -1));
+
+            // Regions without entries are kept as empty files, so that the journal is not replayed onto them
+            reloaded.purgePlayer(player);
+            reloaded.save(folder.toFile());
+            assertTrue(Files.exists(worldFolder.resolve("r.0.0.dat")));
+            PresenceData purged = new PresenceData(0.0D);
+            purged.load(folder.toFile());
+            assertEquals(0, purged.getPresence(player, world, 0, 0));
+            assertEquals(0, purged.getPresence(player, world, 1, 1));
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    @Test
+    public void testCompressedSerialisation() throws Exception {
+        Path folder = Files.createTempDirectory("presence");
+        try {
+            UUID world = UUID.randomUUID();
+            UUID owner = UUID.randomUUID();
+            PresenceData data = new PresenceData(0.0D);
+            data.setCompressionLevel(6);
+            for (int i = 0; i < 1000; i++) {
+                data.tick(owner, world, i, -i);
+            }
+            ChunkGroup group = data.getChunkGroupManager().createChunkGroup(owner, "base");
+            data.getChunkGroupManager().addChunk(group, new WorldPosition(world, PresenceData.hashPositions(0, 0)));
+            data.save(folder.toFile());
+            byte[] region = Files.readAllBytes(folder.resolve("regions").resolve(world.toString()).resolve("r.0.-1.dat"));
+            // The sequence number of the journal precedes the compressed state
+            assertEquals(5, region[8]);
+            assertEquals(4, region[17]);
+            byte[] chunkGroups = Files.readAllBytes(folder.resolve("chunkgroups.dat"));
+            assertTrue((chunkGroups[0] & 0x40) != 0);
+
+            // Compressed files are loaded regardless of the compression level
+            PresenceData loaded = new PresenceData(0.0D);
+            loaded.load(folder.toFile());
+            assertEquals(data, loaded);
+            assertEquals(data.getChunkGroupManager(), loaded.getChunkGroupManager());
+        } finally {
+            deleteRecursively(folder);
+        }
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> children = Files.list(path)) {
+                for (Path child : (Iterable<Path>) children::iterator) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.delete(path);
+    }
+
     private boolean isRoundtripable(TestPresenceData data) {
         TestPresenceData tpd = new TestPresenceData();
         tpd.loadFromArray(data.saveStateToArrayChecked());
@@ -80,6 +497,12 @@ public class SerialisationTests {
         }
     }
 
+    public int getStateLength() throws IOException {
+        FastByteArrayOutputStream out = new FastByteArrayOutputStream();
+        super.saveStateToStream(out);
+        return out.length;
+    }
+
     public void loadFromArray(byte[] object) {
         try (FastByteArrayInputStream in = new FastByteArrayInputStream(object)) {
             super.loadStateChecked(in);
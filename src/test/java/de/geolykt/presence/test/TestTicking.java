@@ -1,20 +1,28 @@
 package de.geolykt.presence.test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
 
 import de.geolykt.presence.common.PresenceData;
+import de.geolykt.presence.common.util.ContenderTable;
+import de.geolykt.presence.common.util.OffHeapContenderTable;
 import de.geolykt.presence.common.util.PlayerAttachedScore;
+import de.geolykt.presence.common.util.PlayerChunkPosition;
+import de.geolykt.presence.common.util.ScoreDecay;
+import de.geolykt.presence.common.util.UUIDRegistry;
 
 public class TestTicking {
 
@@ -99,4 +107,199 @@ public class TestTicking {
             throw new AssertionFailedError("The presence count must be below 1000, but was " + presenceCount, null, presenceCount);
         }
     }
+
+    /**
+     * Checks whether {@link PresenceData#tickAll(PlayerChunkPosition[])} yields the same state as calling
+     * {@link PresenceData#tick(UUID, UUID, int, int)} for every position.
+     */
+    @Test
+    public void testBatchedTicking() {
+        TestPresenceData single = new TestPresenceData();
+        TestPresenceData batched = new TestPresenceData();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID[] players = new UUID[30];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+        }
+        UUID[] worlds = {UUID.randomUUID(), UUID.randomUUID()};
+        for (int batch = 0; batch < 200; batch++) {
+            PlayerChunkPosition[] positions = new PlayerChunkPosition[random.nextInt(200)];
+            for (int i = 0; i < positions.length; i++) {
+                // Many players in few chunks, but also cross region borders
+                positions[i] = new PlayerChunkPosition(players[random.nextInt(players.length)], worlds[random.nextInt(worlds.length)],
+                        random.nextInt(-260, -250), random.nextInt(250, 260));
+                single.tick(positions[i].player(), positions[i].world(), positions[i].x(), positions[i].z());
+            }
+            batched.tickAll(positions);
+        }
+        assertEquals(single, batched);
+        for (UUID world : worlds) {
+            for (int x = -260; x < -250; x++) {
+                for (int z = 250; z < 260; z++) {
+                    PlayerAttachedScore expectedOwner = single.getOwner(world, x, z);
+                    PlayerAttachedScore owner = batched.getOwner(world, x, z);
+                    assertEquals(expectedOwner == null, owner == null);
+                    if (owner != null) {
+                        // Ties may be broken differently, but the scores must match
+                        assertEquals(expectedOwner.score().get(), owner.score().get());
+                        assertEquals(owner.score().get(), batched.getPresence(owner.getPlayer(), world, x, z));
+                    }
+                    PlayerAttachedScore expectedSuccessor = single.getSuccessor(world, x, z);
+                    PlayerAttachedScore successor = batched.getSuccessor(world, x, z);
+                    assertEquals(expectedSuccessor == null, successor == null);
+                    if (successor != null) {
+                        assertEquals(expectedSuccessor.score().get(), successor.score().get());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testContenders() {
+        PresenceData presence = new PresenceData(0.0D, ScoreDecay.NONE, 3);
+        UUID world = UUID.randomUUID();
+        UUID[] players = new UUID[6];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+        }
+        // Interleave the ticks so that the order of the contenders changes frequently
+        int[] ticks = {3, 7, 1, 5, 6, 2};
+        for (int round = 0; round < 7; round++) {
+            for (int i = 0; i < players.length; i++) {
+                if (round < ticks[i]) {
+                    presence.tick(players[i], world, 4, 4);
+                }
+            }
+        }
+        PlayerAttachedScore[] contenders = presence.getContenders(world, 4, 4);
+        assertEquals(3, contenders.length);
+        assertEquals(players[1], contenders[0].getPlayer());
+        assertEquals(7, contenders[0].score().get());
+        assertEquals(players[4], contenders[1].getPlayer());
+        assertEquals(6, contenders[1].score().get());
+        assertEquals(players[3], contenders[2].getPlayer());
+        assertEquals(5, contenders[2].score().get());
+        assertEquals(contenders[0], presence.getOwner(world, 4, 4));
+        assertEquals(contenders[1], presence.getSuccessor(world, 4, 4));
+
+        // A player that was dropped from the contenders has to be able to return
+        for (int i = 0; i < 10; i++) {
+            presence.tick(players[2], world, 4, 4);
+        }
+        contenders = presence.getContenders(world, 4, 4);
+        assertEquals(players[2], contenders[0].getPlayer());
+        assertEquals(11, contenders[0].score().get());
+        assertEquals(players[1], contenders[1].getPlayer());
+        assertEquals(players[4], contenders[2].getPlayer());
+        assertEquals(0, presence.getContenders(world, 5, 4).length);
+    }
+
+    /**
+     * Checks whether storing the contenders off-heap yields the same contenders as storing them on the heap.
+     */
+    @Test
+    public void testOffHeapContenders() {
+        PresenceData heap = new PresenceData(0.0D, ScoreDecay.NONE, 3, ContenderTable.Storage.HEAP);
+        PresenceData offHeap = new PresenceData(0.0D, ScoreDecay.NONE, 3, ContenderTable.Storage.OFF_HEAP);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID[] players = new UUID[8];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+        }
+        UUID world = UUID.randomUUID();
+        for (int i = 0; i < 20_000; i++) {
+            UUID player = players[random.nextInt(players.length)];
+            int x = random.nextInt(-20, 20);
+            int z = random.nextInt(-20, 20);
+            heap.tick(player, world, x, z);
+            offHeap.tick(player, world, x, z);
+        }
+        PlayerChunkPosition[] positions = new PlayerChunkPosition[500];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new PlayerChunkPosition(players[random.nextInt(players.length)], world, random.nextInt(-20, 20), random.nextInt(-20, 20));
+        }
+        heap.tickAll(positions);
+        offHeap.tickAll(positions);
+        heap.purgePlayer(players[0]);
+        offHeap.purgePlayer(players[0]);
+        assertEquals(heap, offHeap);
+        assertNull(offHeap.getWorldOwnerMap(world));
+        for (int x = -21; x < 21; x++) {
+            for (int z = -21; z < 21; z++) {
+                assertArrayEquals(heap.getContenders(world, x, z), offHeap.getContenders(world, x, z));
+                assertEquals(heap.getOwner(world, x, z), offHeap.getOwner(world, x, z));
+                assertEquals(heap.getSuccessor(world, x, z), offHeap.getSuccessor(world, x, z));
+            }
+        }
+
+        // Bulk lookups must be equivalent to looking up every owner on its own
+        PlayerAttachedScore[] heapOwners = new PlayerAttachedScore[42 * 42];
+        PlayerAttachedScore[] offHeapOwners = new PlayerAttachedScore[42 * 42];
+        heap.getOwners(world, -21, -21, 20, 20, heapOwners);
+        offHeap.getOwners(world, -21, -21, 20, 20, offHeapOwners);
+        for (int i = 0; i < heapOwners.length; i++) {
+            assertEquals(heap.getOwner(world, -21 + i % 42, -21 + i / 42), heapOwners[i]);
+        }
+        assertArrayEquals(heapOwners, offHeapOwners);
+    }
+
+    /**
+     * Checks whether off-heap tables are compared by the UUIDs of the contenders rather than by their ids.
+     */
+    @Test
+    public void testOffHeapContenderEquality() {
+        UUID player1 = UUID.randomUUID();
+        UUID player2 = UUID.randomUUID();
+        UUIDRegistry idsA = new UUIDRegistry();
+        UUIDRegistry idsB = new UUIDRegistry();
+        idsA.getOrCreateId(player1);
+        idsA.getOrCreateId(player2);
+        idsB.getOrCreateId(player2);
+        idsB.getOrCreateId(player1);
+        OffHeapContenderTable a = new OffHeapContenderTable(idsA, 3);
+        OffHeapContenderTable b = new OffHeapContenderTable(idsB, 3);
+        a.offer(4, -9, null, 0, idsA.getId(player1), 5);
+        a.offer(4, -9, null, 0, idsA.getId(player2), 3);
+        b.offer(4, -9, null, 0, idsB.getId(player2), 3);
+        assertNotEquals(a, b);
+        b.offer(4, -9, null, 0, idsB.getId(player1), 5);
+        assertEquals(a, b);
+        assertEquals(b, a);
+        b.offer(-700, 0, null, 0, idsB.getId(player1), 1);
+        assertNotEquals(a, b);
+        b.remove(-700, 0, idsB.getId(player1));
+        assertEquals(a, b);
+    }
+
+    @Test
+    public void testPlayerQueriesAndPurge() {
+        PresenceData presence = new PresenceData(0.0D);
+        UUID world1 = UUID.randomUUID();
+        UUID world2 = UUID.randomUUID();
+        UUID player1 = UUID.randomUUID();
+        UUID player2 = UUID.randomUUID();
+        presence.tick(player1, world1, 0, 0);
+        presence.tick(player1, world1, 0, 0);
+        presence.tick(player1, world1, -3, 700);
+        presence.tick(player2, world1, -3, 700);
+        presence.tick(player2, world1, -3, 700);
+        presence.tickAll(new PlayerChunkPosition[] {new PlayerChunkPosition(player1, world2, 1, 1)});
+
+        assertEquals(2, presence.getPresenceChunks(player1, world1).length);
+        assertEquals(1, presence.getPresenceChunks(player1, world2).length);
+        assertEquals(0, presence.getPresenceChunks(UUID.randomUUID(), world1).length);
+        assertArrayEquals(new long[] {PresenceData.hashPositions(0, 0)}, presence.getOwnedChunks(player1, world1));
+        assertEquals(4, presence.getTotalPresence(player1));
+
+        assertEquals(3, presence.purgePlayer(player1));
+        assertEquals(0, presence.getTotalPresence(player1));
+        assertEquals(0, presence.getPresenceChunks(player1, world1).length);
+        assertNull(presence.getOwner(world1, 0, 0));
+        PlayerAttachedScore owner = presence.getOwner(world1, -3, 700);
+        assertNotNull(owner);
+        assertEquals(player2, owner.getPlayer());
+        assertNull(presence.getSuccessor(world1, -3, 700));
+        assertEquals(0, presence.purgePlayer(player1));
+    }
 }
@@ -0,0 +1,66 @@
+package de.geolykt.presence.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import de.geolykt.presence.common.ChunkGroupManager;
+import de.geolykt.presence.common.util.TrustGraph;
+
+public class TrustGraphTests {
+
+    @Test
+    public void testForwardAndReverseQueries() {
+        TrustGraph graph = new TrustGraph();
+        assertTrue(graph.add(1, 300));
+        assertTrue(graph.add(1, 2));
+        assertTrue(graph.add(5, 2));
+        assertFalse(graph.add(1, 2));
+
+        assertTrue(graph.isTrusted(1, 300));
+        assertTrue(graph.isTrusted(1, 2));
+        assertFalse(graph.isTrusted(2, 1));
+        assertFalse(graph.isTrusted(-1, 2));
+        assertArrayEquals(new int[] {2, 300}, graph.getTrusted(1));
+        assertArrayEquals(new int[] {1, 5}, graph.getTrusters(2));
+
+        assertTrue(graph.remove(1, 2));
+        assertFalse(graph.remove(1, 2));
+        assertFalse(graph.isTrusted(1, 2));
+        assertArrayEquals(new int[] {5}, graph.getTrusters(2));
+        assertArrayEquals(new int[] {300}, graph.getTrusted(1));
+
+        // Returned arrays are copies
+        graph.getTrusted(1)[0] = 7;
+        assertTrue(graph.isTrusted(1, 300));
+
+        graph.clear();
+        assertFalse(graph.isTrusted(1, 300));
+        assertArrayEquals(new int[0], graph.getTrusters(300));
+    }
+
+    @Test
+    public void testTrustingPlayers() {
+        ChunkGroupManager manager = new ChunkGroupManager();
+        UUID player1 = UUID.randomUUID();
+        UUID player2 = UUID.randomUUID();
+        UUID player3 = UUID.randomUUID();
+        manager.addTrustedPlayer(player1, player3);
+        manager.addTrustedPlayer(player2, player3);
+        manager.addTrustedPlayer(player3, player1);
+
+        assertEquals(Set.of(player1, player2), manager.getTrustingPlayers(player3));
+        assertEquals(Set.of(player3), manager.getTrustedPlayers(player1));
+        assertEquals(Set.of(), manager.getTrustingPlayers(player2));
+        assertEquals(Set.of(), manager.getTrustedPlayers(UUID.randomUUID()));
+
+        manager.removeTrustedPlayer(player2, player3);
+        assertEquals(Set.of(player1), manager.getTrustingPlayers(player3));
+    }
+}